@@ -0,0 +1,113 @@
+package vn.com.msb.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.repository.ColumnarCustomerRepository;
+import vn.com.msb.repository.CustomerRepository;
+import vn.com.msb.repository.CustomerRepositoryImpl;
+import vn.com.msb.repository.CustomerWriteAheadLog;
+import vn.com.msb.repository.PartitionedCustomerRepository;
+
+/**
+ * Synthetic customers for the benchmarks. Customer {@code i} is always generated the same way,
+ * so every run and every release benchmarks the same data at a given store size.
+ */
+final class CustomerFixtures {
+
+    private static final long SEED = 20240301L;
+    private static final int POPULATE_BATCH_SIZE = 10_000;
+
+    private static final String[] SURNAMES = {"Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Huỳnh", "Phan", "Vũ", "Võ", "Đặng"};
+    private static final String[] SURNAMES_ASCII = {"nguyen", "tran", "le", "pham", "hoang", "huynh", "phan", "vu", "vo", "dang"};
+    private static final String[] MIDDLE_NAMES = {"Văn", "Thị", "Minh", "Ngọc", "Quốc", "Thanh", "Hữu", "Đức"};
+    private static final String[] GIVEN_NAMES = {"An", "Bình", "Châu", "Dũng", "Giang", "Hà", "Hùng", "Khánh", "Linh", "Long",
+        "Mai", "Nam", "Phúc", "Quân", "Sơn", "Tâm", "Thảo", "Trang", "Tuấn", "Yến"};
+    private static final String[] GIVEN_NAMES_ASCII = {"an", "binh", "chau", "dung", "giang", "ha", "hung", "khanh", "linh",
+        "long", "mai", "nam", "phuc", "quan", "son", "tam", "thao", "trang", "tuan", "yen"};
+    private static final String[] CITIES = {"Hà Nội", "Hồ Chí Minh", "Đà Nẵng", "Hải Phòng", "Cần Thơ", "Huế", "Nha Trang",
+        "Vũng Tàu", "Quy Nhơn", "Đà Lạt"};
+    private static final String[] STREETS = {"Lê Lợi", "Trần Hưng Đạo", "Nguyễn Huệ", "Hai Bà Trưng", "Lý Thường Kiệt"};
+
+    private CustomerFixtures() {
+    }
+
+    /**
+     * "heap-wal" is the heap store with a write-ahead log that fsyncs every write, in a temporary directory;
+     * "partitioned" has one partition per available processor.
+     */
+    static CustomerRepository newRepository(String store) {
+        return switch (store) {
+            case "heap" -> new CustomerRepositoryImpl();
+            case "heap-wal" -> new CustomerRepositoryImpl(newWriteAheadLog());
+            case "columnar" -> new ColumnarCustomerRepository();
+            case "partitioned" -> new PartitionedCustomerRepository(0);
+            default -> throw new IllegalArgumentException("Unknown customer store: " + store);
+        };
+    }
+
+    // Saved in batches, so that a store with a write-ahead log fills up at a reasonable pace
+    static CustomerRepository populatedRepository(String store, int size) {
+        return populate(newRepository(store), size);
+    }
+
+    static CustomerRepository populate(CustomerRepository customerRepository, int size) {
+        List<Customer> batch = new ArrayList<>(POPULATE_BATCH_SIZE);
+        for (int i = 0; i < size; i++) {
+            batch.add(customer(i));
+            if (batch.size() == POPULATE_BATCH_SIZE || i == size - 1) {
+                customerRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        return customerRepository;
+    }
+
+    private static CustomerWriteAheadLog newWriteAheadLog() {
+        try {
+            return new CustomerWriteAheadLog(Files.createTempDirectory("customer-wal"), true, Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The customer with index {@code i}; saved in index order it gets id {@code i + 1}. */
+    static Customer customer(int i) {
+        Random random = new Random(SEED ^ i * 0x9E3779B97F4A7C15L);
+        int surname = random.nextInt(SURNAMES.length);
+        int given = random.nextInt(GIVEN_NAMES.length);
+        Customer customer = new Customer();
+        customer.setCustomerCode(customerCode(i));
+        customer.setFirstName(GIVEN_NAMES[given]);
+        customer.setLastName(SURNAMES[surname]);
+        customer.setFullName(SURNAMES[surname] + " " + MIDDLE_NAMES[random.nextInt(MIDDLE_NAMES.length)] + " "
+                + GIVEN_NAMES[given]);
+        customer.setDateOfBirth(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(55 * 365)));
+        customer.setGender(random.nextBoolean() ? "Male" : "Female");
+        customer.setAddress((1 + random.nextInt(500)) + " " + STREETS[random.nextInt(STREETS.length)]);
+        customer.setCity(CITIES[random.nextInt(CITIES.length)]);
+        customer.setEmail(GIVEN_NAMES_ASCII[given] + "." + SURNAMES_ASCII[surname] + i + "@example.com");
+        customer.setPhoneNumber(String.format("09%08d", random.nextInt(100_000_000)));
+        return customer;
+    }
+
+    static String customerCode(int i) {
+        return String.format("CUST%08d", i);
+    }
+
+    /** Indexes of existing customers to look up, spread over the whole store. */
+    static int[] sampleIndexes(int size, int count) {
+        Random random = new Random(SEED);
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = random.nextInt(size);
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,126 @@
+package vn.com.msb.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerPage;
+import vn.com.msb.repository.CustomerRepository;
+
+/**
+ * Lookups and searches against a pre-populated store. The 10M size needs a heap of roughly
+ * 12 GB for the heap store: add {@code -jvmArgsAppend -Xmx12g} to {@code jmh.args}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerRepositoryBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"heap", "columnar", "partitioned"})
+        String store;
+
+        CustomerRepository customerRepository;
+        Customer[] targets;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            customerRepository = CustomerFixtures.populatedRepository(store, size);
+            int[] indexes = CustomerFixtures.sampleIndexes(size, SAMPLES);
+            targets = new Customer[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                targets[i] = CustomerFixtures.customer(indexes[i]);
+                targets[i].setId(indexes[i] + 1L);
+            }
+        }
+    }
+
+    // Each thread walks the samples on its own so that threads don't all hit the same customer
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        Customer next(Store store) {
+            return store.targets[next++ & (SAMPLES - 1)];
+        }
+    }
+
+    @Benchmark
+    public Optional<Customer> findById(Store store, Cursor cursor) {
+        return store.customerRepository.findById(cursor.next(store).getId());
+    }
+
+    @Benchmark
+    public Optional<Customer> findByCustomerCode(Store store, Cursor cursor) {
+        return store.customerRepository.findByCustomerCode(cursor.next(store).getCustomerCode());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Customer> findByCustomerCodeConcurrent(Store store, Cursor cursor) {
+        return store.customerRepository.findByCustomerCode(cursor.next(store).getCustomerCode());
+    }
+
+    // A selective keyword: the exact code of one customer
+    @Benchmark
+    public List<Customer> searchByCode(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getCustomerCode());
+    }
+
+    // A selective keyword typed as a phone number, which also goes through canonical digits
+    @Benchmark
+    public List<Customer> searchByPhoneNumber(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getPhoneNumber().substring(2));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Customer> searchByPhoneNumberConcurrent(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getPhoneNumber().substring(2));
+    }
+
+    // A broad keyword matching about a tenth of the store, read one page at a time
+    @Benchmark
+    public CustomerPage searchBroadFirstPage(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getLastName(), null, 20);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomerPage searchBroadFirstPageConcurrent(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getLastName(), null, 20);
+    }
+
+    // A surname with its last letter mistyped; unless the surname is too short to allow an edit,
+    // it matches about a tenth of the store
+    @Benchmark
+    public List<Customer> searchFuzzyBroad(Store store, Cursor cursor) {
+        String lastName = cursor.next(store).getLastName();
+        return store.customerRepository.searchFuzzy(lastName.substring(0, lastName.length() - 1) + "x", 2, 20);
+    }
+}
@@ -0,0 +1,77 @@
+package vn.com.msb.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerPage;
+
+/** Jackson (de)serialization of customers with the same mapper settings Spring MVC uses. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerSerializationBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private ObjectMapper objectMapper;
+    private Customer customer;
+    private CustomerPage page;
+    private byte[] customerJson;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        customer = CustomerFixtures.customer(42);
+        customer.setId(43L);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            Customer item = CustomerFixtures.customer(i);
+            item.setId(i + 1L);
+            customers.add(item);
+        }
+        page = new CustomerPage(customers, (long) PAGE_SIZE);
+        customerJson = objectMapper.writeValueAsBytes(customer);
+    }
+
+    @Benchmark
+    public byte[] writeCustomer() throws IOException {
+        return objectMapper.writeValueAsBytes(customer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] writeCustomerConcurrent() throws IOException {
+        return objectMapper.writeValueAsBytes(customer);
+    }
+
+    @Benchmark
+    public byte[] writePage() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Customer readCustomer() throws IOException {
+        return objectMapper.readValue(customerJson, Customer.class);
+    }
+}
@@ -0,0 +1,88 @@
+package vn.com.msb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.service.CustomerService;
+import vn.com.msb.service.CustomerServiceImpl;
+
+/**
+ * Customer creation through the service, including its duplicate-code check, on top of a
+ * pre-populated store. The store keeps growing during a run, by at most a few million customers.
+ * Batch creation is reported per customer, so it compares directly with single creates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerServiceBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Service {
+
+        @Param({"1000", "100000", "1000000"})
+        int size;
+
+        @Param({"heap", "heap-wal", "columnar"})
+        String store;
+
+        CustomerService customerService;
+        // New customers continue the fixture sequence, so their codes never collide
+        AtomicInteger nextIndex;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            customerService = new CustomerServiceImpl(CustomerFixtures.populatedRepository(store, size));
+            nextIndex = new AtomicInteger(size);
+        }
+    }
+
+    @Benchmark
+    public Customer createCustomer(Service service) {
+        return service.customerService.createCustomer(newCustomer(service));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Customer createCustomerConcurrent(Service service) {
+        return service.customerService.createCustomer(newCustomer(service));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Customer> createCustomers(Service service) {
+        List<Customer> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(newCustomer(service));
+        }
+        return service.customerService.createCustomers(batch);
+    }
+
+    private static Customer newCustomer(Service service) {
+        Customer customer = CustomerFixtures.customer(service.nextIndex.getAndIncrement());
+        // Let the service derive it, as it does for most API requests
+        customer.setFullName(null);
+        return customer;
+    }
+}
@@ -0,0 +1,85 @@
+package vn.com.msb.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.repository.CustomerRepositoryImpl;
+import vn.com.msb.repository.CustomerSnapshotFile;
+
+/**
+ * Warm start from a mapped snapshot: how soon a restarted heap store answers its first lookup
+ * by id, which it decodes straight from the mapping, and how soon it has loaded every customer
+ * into its map and indexes. Every invocation is one restart.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerSnapshotBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Snapshot {
+
+        @Param({"100000", "1000000"})
+        int size;
+
+        Path directory;
+        CustomerSnapshotFile snapshotFile;
+        CustomerRepositoryImpl restarted;
+
+        // The store writes its snapshot when it is closed
+        @Setup(Level.Trial)
+        public void populate() throws Exception {
+            directory = Files.createTempDirectory("customer-snapshot");
+            snapshotFile = new CustomerSnapshotFile(directory.resolve("customers.snapshot"));
+            CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(null, snapshotFile);
+            CustomerFixtures.populate(customerRepository, size);
+            customerRepository.close();
+        }
+
+        // A load still running in the background would slow down the next restart
+        @TearDown(Level.Invocation)
+        public void awaitLoaded() {
+            restarted.countCustomers();
+            restarted = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.delete(directory.resolve("customers.snapshot"));
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Optional<Customer> firstLookup(Snapshot snapshot) {
+        snapshot.restarted = new CustomerRepositoryImpl(null, snapshot.snapshotFile);
+        return snapshot.restarted.findById(snapshot.size / 2L);
+    }
+
+    @Benchmark
+    public CustomerCounts fullyLoaded(Snapshot snapshot) {
+        snapshot.restarted = new CustomerRepositoryImpl(null, snapshot.snapshotFile);
+        return snapshot.restarted.countCustomers();
+    }
+}
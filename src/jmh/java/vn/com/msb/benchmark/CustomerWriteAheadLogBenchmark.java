@@ -0,0 +1,84 @@
+package vn.com.msb.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vn.com.msb.repository.CustomerRepositoryImpl;
+import vn.com.msb.repository.CustomerWriteAheadLog;
+
+/**
+ * How long the heap store takes to come back after a restart, indexes included: from a log
+ * that holds every customer, or from a checkpoint snapshot and the empty log written after it.
+ * Every invocation is one restart.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerWriteAheadLogBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Directory {
+
+        @Param({"100000", "1000000"})
+        int size;
+
+        @Param({"log", "snapshot"})
+        String source;
+
+        Path path;
+        CustomerWriteAheadLog writeAheadLog;
+
+        // For a snapshot the checkpoint interval is the store size, so the last batch schedules a
+        // checkpoint, and close() waits for it
+        @Setup(Level.Trial)
+        public void populate() throws Exception {
+            path = Files.createTempDirectory("customer-wal");
+            long checkpointInterval = source.equals("snapshot") ? size : Long.MAX_VALUE;
+            try (CustomerWriteAheadLog populating = new CustomerWriteAheadLog(path, false, checkpointInterval)) {
+                CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(populating);
+                CustomerFixtures.populate(customerRepository, size);
+                customerRepository.close();
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void closeLog() throws IOException {
+            writeAheadLog.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public CustomerRepositoryImpl recover(Directory directory) throws IOException {
+        directory.writeAheadLog = new CustomerWriteAheadLog(directory.path, false, Long.MAX_VALUE);
+        return new CustomerRepositoryImpl(directory.writeAheadLog);
+    }
+}
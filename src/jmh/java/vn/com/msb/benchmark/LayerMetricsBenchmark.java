@@ -0,0 +1,96 @@
+package vn.com.msb.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import vn.com.msb.config.MetricsConfig;
+import vn.com.msb.metrics.LayerTimingInterceptor;
+import vn.com.msb.model.Customer;
+import vn.com.msb.repository.CustomerRepository;
+import vn.com.msb.service.CustomerService;
+import vn.com.msb.service.CustomerServiceImpl;
+
+/**
+ * Cost of the per-layer timers: the same service and repository calls with and without
+ * {@link LayerTimingInterceptor} proxies, which time both layers on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LayerMetricsBenchmark {
+
+    private static final int SIZE = 10_000;
+
+    @Param({"plain", "timed"})
+    String mode;
+
+    private CustomerService customerService;
+    private int next;
+
+    @Setup
+    public void setup() {
+        CustomerRepository customerRepository = CustomerFixtures.populatedRepository("heap", SIZE);
+        CustomerService service = new CustomerServiceImpl(customerRepository);
+        if (mode.equals("timed")) {
+            MeterRegistry meterRegistry = new SimpleMeterRegistry();
+            service = new CustomerServiceImpl(proxy(customerRepository,
+                    new LayerTimingInterceptor(MetricsConfig.REPOSITORY_TIMER, false, () -> meterRegistry)));
+            service = proxy(service, new LayerTimingInterceptor(MetricsConfig.SERVICE_TIMER, true, () -> meterRegistry));
+        }
+        customerService = service;
+    }
+
+    @Benchmark
+    public Customer getCustomerById() {
+        return customerService.getCustomerById(1L + (next++ % SIZE));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Customer getCustomerByIdConcurrent() {
+        return customerService.getCustomerById(1L + ThreadLocalIndex.next(SIZE));
+    }
+
+    @Benchmark
+    public List<Customer> searchCustomers() {
+        return customerService.searchCustomers(CustomerFixtures.customerCode(next++ % SIZE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target, LayerTimingInterceptor interceptor) {
+        ProxyFactory factory = new ProxyFactory(target);
+        // Class proxies, as Spring Boot creates them
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(interceptor);
+        return (T) factory.getProxy();
+    }
+
+    private static final class ThreadLocalIndex {
+
+        private static final ThreadLocal<int[]> NEXT = ThreadLocal.withInitial(() -> new int[1]);
+
+        static int next(int bound) {
+            int[] next = NEXT.get();
+            return next[0]++ % bound;
+        }
+    }
+}
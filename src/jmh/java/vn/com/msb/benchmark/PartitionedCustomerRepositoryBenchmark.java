@@ -0,0 +1,105 @@
+package vn.com.msb.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.repository.PartitionedCustomerRepository;
+
+/**
+ * How searches and writes scale with the number of partitions. A single search only gets
+ * faster with more partitions while there are idle cores to run them on, so compare the counts
+ * up to the machine's processor count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PartitionedCustomerRepositoryBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({"100000", "1000000"})
+        int size;
+
+        @Param({"1", "2", "4", "8", "16"})
+        int partitions;
+
+        PartitionedCustomerRepository customerRepository;
+        Customer[] targets;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            customerRepository = new PartitionedCustomerRepository(partitions);
+            CustomerFixtures.populate(customerRepository, size);
+            int[] indexes = CustomerFixtures.sampleIndexes(size, SAMPLES);
+            targets = new Customer[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                targets[i] = CustomerFixtures.customer(indexes[i]);
+                targets[i].setId(indexes[i] + 1L);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        Customer next(Store store) {
+            return store.targets[next++ & (SAMPLES - 1)];
+        }
+    }
+
+    // A broad keyword matching about a tenth of the store, every match returned
+    @Benchmark
+    public List<Customer> searchBroad(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getLastName());
+    }
+
+    // A selective keyword, where fanning out costs more than the search itself
+    @Benchmark
+    public List<Customer> searchByCode(Store store, Cursor cursor) {
+        return store.customerRepository.search(cursor.next(store).getCustomerCode());
+    }
+
+    // A whole name, which about one customer in 1,600 shares
+    @Benchmark
+    public List<Customer> findByFullName(Store store, Cursor cursor) {
+        return store.customerRepository.findByFullNameContaining(cursor.next(store).getFullName());
+    }
+
+    @Benchmark
+    public List<Customer> searchRankedBroad(Store store, Cursor cursor) {
+        return store.customerRepository.searchRanked(cursor.next(store).getLastName(), 20);
+    }
+
+    // Writers to different partitions share no locks or indexes
+    @Benchmark
+    @Threads(8)
+    public Customer saveConcurrent(Store store, Cursor cursor) {
+        Customer target = cursor.next(store);
+        Customer customer = new Customer(target.getId(), target.getCustomerCode(), target.getFirstName(),
+                target.getLastName(), target.getFullName(), target.getDateOfBirth(), target.getGender(),
+                target.getAddress(), target.getCity(), target.getEmail(), target.getPhoneNumber());
+        return store.customerRepository.save(customer);
+    }
+}
@@ -0,0 +1,57 @@
+package vn.com.msb.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import vn.com.msb.repository.CustomerRepositoryImpl;
+import vn.com.msb.repository.CustomerSearchCache;
+import vn.com.msb.repository.CustomerSnapshotFile;
+import vn.com.msb.repository.CustomerWriteAheadLog;
+
+@Configuration
+public class CustomerStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "customer.wal.enabled", havingValue = "true")
+    public CustomerWriteAheadLog customerWriteAheadLog(
+            @Value("${customer.wal.directory:data/wal}") String directory,
+            @Value("${customer.wal.fsync:true}") boolean fsync,
+            @Value("${customer.wal.checkpoint-interval:100000}") long checkpointInterval) throws IOException {
+        return new CustomerWriteAheadLog(Path.of(directory), fsync, checkpointInterval);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "customer.snapshot.enabled", havingValue = "true")
+    public CustomerSnapshotFile customerSnapshotFile(
+            @Value("${customer.snapshot.file:data/customers.snapshot}") String file) {
+        return new CustomerSnapshotFile(Path.of(file));
+    }
+
+    // Served as /actuator/health/customerStore: down once the snapshot failed to load, since the
+    // store then holds only part of the customers
+    @Bean
+    @ConditionalOnProperty(name = "customer.snapshot.enabled", havingValue = "true")
+    public HealthIndicator customerStoreHealthIndicator(ObjectProvider<CustomerRepositoryImpl> customerRepository) {
+        return () -> {
+            CustomerRepositoryImpl repository = customerRepository.getIfAvailable();
+            Throwable failure = repository != null ? repository.snapshotLoadFailure().orElse(null) : null;
+            return failure != null ? Health.down().withException(failure).build() : Health.up().build();
+        };
+    }
+
+    // Only the heap store searches through indexes that make a cached result worth keeping
+    @Bean
+    @ConditionalOnProperty(name = "customer.store", havingValue = "heap", matchIfMissing = true)
+    public CustomerSearchCache customerSearchCache(
+            @Value("${customer.search-cache.max-customers:100000}") long maxCustomers) {
+        return new CustomerSearchCache(maxCustomers);
+    }
+}
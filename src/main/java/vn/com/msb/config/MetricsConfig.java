@@ -0,0 +1,51 @@
+package vn.com.msb.config;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import vn.com.msb.metrics.LayerTimingInterceptor;
+
+@Configuration
+@ConditionalOnProperty(name = "customer.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+    public static final String CONTROLLER_TIMER = "customer.controller";
+    public static final String SERVICE_TIMER = "customer.service";
+    public static final String REPOSITORY_TIMER = "customer.repository";
+
+    // Static so that the advisors, which are created very early, don't drag this configuration along
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor controllerTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return advisor("execution(public * vn.com.msb.controller.CustomerController.*(..))",
+                new LayerTimingInterceptor(CONTROLLER_TIMER, false, meterRegistry::getObject));
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor serviceTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return advisor("execution(* vn.com.msb.service.CustomerService.*(..))",
+                new LayerTimingInterceptor(SERVICE_TIMER, true, meterRegistry::getObject));
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor repositoryTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return advisor("execution(* vn.com.msb.repository.CustomerRepository.*(..))",
+                new LayerTimingInterceptor(REPOSITORY_TIMER, false, meterRegistry::getObject));
+    }
+
+    private static Advisor advisor(String expression, LayerTimingInterceptor interceptor) {
+        AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+        pointcut.setExpression(expression);
+        return new DefaultPointcutAdvisor(pointcut, interceptor);
+    }
+}
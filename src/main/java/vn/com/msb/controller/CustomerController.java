@@ -1,18 +1,37 @@
 package vn.com.msb.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -21,8 +40,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import vn.com.msb.exception.CustomerVersionConflictException;
 import vn.com.msb.exception.ErrorResponse;
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
 import vn.com.msb.service.CustomerService;
 
 @RestController
@@ -30,23 +54,100 @@ import vn.com.msb.service.CustomerService;
 @Tag(name = "Customer", description = "Customer Management API")
 public class CustomerController {
     
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    
     private final CustomerService customerService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter streamingWriter;
+    // Versions and generations restart with an in-memory store, so every ETag also names the
+    // process that issued it
+    private final String etagPrefix = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
     
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService, ObjectMapper objectMapper) {
         this.customerService = customerService;
+        this.objectMapper = objectMapper;
+        // Let the generator decide when to flush instead of pushing every record to the socket
+        this.streamingWriter = objectMapper.writerFor(Customer.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
     
     @Operation(summary = "Get all customers", description = "Retrieves a list of all customers")
-    @ApiResponse(responseCode = "200", description = "List of customers retrieved successfully")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "List of customers retrieved successfully"),
+        @ApiResponse(responseCode = "304", description = "No customer changed since the ETag in If-None-Match")
+    })
     @GetMapping
-    public ResponseEntity<List<Customer>> getAllCustomers() {
+    public ResponseEntity<List<Customer>> getAllCustomers(WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         List<Customer> customers = customerService.getAllCustomers();
-        return new ResponseEntity<>(customers, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Stream all customers as NDJSON", 
+        description = "Writes every customer as one JSON document per line while iterating the store, "
+                + "so the response is never held in memory as a whole"
+    )
+    @ApiResponse(responseCode = "200", description = "Customers streamed successfully")
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllCustomersAsNdjson(WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        StreamingResponseBody body = outputStream -> writeCustomers(outputStream, false);
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+    
+    @Operation(
+        summary = "Stream all customers as a JSON array", 
+        description = "Same JSON array as the plain listing, written to the response while iterating the store; "
+                + "with a limit the request gets a page instead"
+    )
+    @ApiResponse(responseCode = "200", description = "Customers streamed successfully")
+    @GetMapping(params = {"stream=true", "!limit"})
+    public ResponseEntity<StreamingResponseBody> streamAllCustomers(WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        StreamingResponseBody body = outputStream -> writeCustomers(outputStream, true);
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+    
+    @Operation(
+        summary = "Get a page of customers", 
+        description = "Retrieves up to limit customers in id order, starting after the given cursor"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Page of customers retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or cursor", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(params = "limit")
+    public ResponseEntity<CustomerPage> getCustomerPage(
+            @Parameter(description = "Maximum number of customers to return (1-1000)", required = true)
+            @RequestParam int limit,
+            @Parameter(description = "nextCursor of the previous page; omit for the first page")
+            @RequestParam(required = false) Long cursor,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        CustomerPage page = customerService.getCustomers(cursor, limit);
+        return ResponseEntity.ok().eTag(etag).body(page);
     }
     
     @Operation(summary = "Get customer by ID", description = "Returns a customer by ID")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Customer found"),
+        @ApiResponse(responseCode = "304", description = "Customer unchanged since the ETag in If-None-Match"),
         @ApiResponse(responseCode = "404", description = "Customer not found", 
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
@@ -54,13 +155,15 @@ public class CustomerController {
     public ResponseEntity<Customer> getCustomerById(
             @Parameter(description = "Customer ID", required = true) 
             @PathVariable Long id) {
+        // A matching If-None-Match turns this into a 304 before the customer is serialized
         Customer customer = customerService.getCustomerById(id);
-        return new ResponseEntity<>(customer, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(etag(customer)).body(customer);
     }
     
     @Operation(summary = "Get customer by code", description = "Returns a customer by customer code")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Customer found"),
+        @ApiResponse(responseCode = "304", description = "Customer unchanged since the ETag in If-None-Match"),
         @ApiResponse(responseCode = "404", description = "Customer not found", 
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
@@ -69,7 +172,7 @@ public class CustomerController {
             @Parameter(description = "Customer code", required = true) 
             @PathVariable String customerCode) {
         Customer customer = customerService.getCustomerByCode(customerCode);
-        return new ResponseEntity<>(customer, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(etag(customer)).body(customer);
     }
     
     @Operation(
@@ -79,9 +182,253 @@ public class CustomerController {
     @GetMapping("/search")
     public ResponseEntity<List<Customer>> searchCustomers(
             @Parameter(description = "Search keyword")
-            @RequestParam(required = false) String keyword) {
+            @RequestParam(required = false) String keyword,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         List<Customer> customers = customerService.searchCustomers(keyword);
-        return new ResponseEntity<>(customers, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Search a page of customers", 
+        description = "Same matching as search, returning up to limit customers in id order after the cursor"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Page of matching customers"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or cursor", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/search", params = {"limit", "fuzzy!=true"})
+    public ResponseEntity<CustomerPage> searchCustomerPage(
+            @Parameter(description = "Search keyword")
+            @RequestParam(required = false) String keyword,
+            @Parameter(description = "Maximum number of customers to return (1-1000)", required = true)
+            @RequestParam int limit,
+            @Parameter(description = "nextCursor of the previous page; omit for the first page")
+            @RequestParam(required = false) Long cursor,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        CustomerPage page = customerService.searchCustomers(keyword, cursor, limit);
+        return ResponseEntity.ok().eTag(etag).body(page);
+    }
+    
+    @Operation(
+        summary = "Search customers by name, tolerating typos", 
+        description = "Finds customers with, for every word of the keyword, a name word within a few typos of "
+                + "it: none for words of up to two letters, one for up to five, and maxEdits beyond. Accents and "
+                + "case are ignored. Returns up to limit customers, the fewest typos first"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Closest matching customers"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or maxEdits", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/search", params = "fuzzy=true")
+    public ResponseEntity<List<Customer>> searchCustomersFuzzy(
+            @Parameter(description = "Search keyword")
+            @RequestParam(required = false) String keyword,
+            @Parameter(description = "Maximum typos per word (1-2)")
+            @RequestParam(defaultValue = "2") int maxEdits,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "20") int limit,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.searchCustomersFuzzy(keyword, maxEdits, limit);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Search the best matching customers", 
+        description = "Same matching as search, returning up to limit customers best first: an exact customer "
+                + "code, then full names starting with the keyword, then names with a later word starting with "
+                + "it, then matches anywhere in the name, email, phone number or code"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Best matching customers"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/search/ranked")
+    public ResponseEntity<List<Customer>> searchCustomersRanked(
+            @Parameter(description = "Search keyword")
+            @RequestParam(required = false) String keyword,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "20") int limit,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.searchCustomersRanked(keyword, limit);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Filter customers", 
+        description = "Returns up to limit customers in id order after the cursor that meet every given "
+                + "criterion: city and gender ignoring case and accents, and a date of birth range with both "
+                + "ends inclusive. The most selective criterion is looked up in its index first"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Page of matching customers"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit, cursor or date range", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/filter")
+    public ResponseEntity<CustomerPage> filterCustomers(
+            @Parameter(description = "City", example = "Ha Noi")
+            @RequestParam(required = false) String city,
+            @Parameter(description = "Gender", example = "Female")
+            @RequestParam(required = false) String gender,
+            @Parameter(description = "Earliest date of birth (yyyy-MM-dd), inclusive")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate bornFrom,
+            @Parameter(description = "Latest date of birth (yyyy-MM-dd), inclusive")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate bornTo,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "100") int limit,
+            @Parameter(description = "nextCursor of the previous page; omit for the first page")
+            @RequestParam(required = false) Long cursor,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        CustomerPage page = customerService.filterCustomers(new CustomerFilter(city, gender, bornFrom, bornTo),
+                cursor, limit);
+        return ResponseEntity.ok().eTag(etag).body(page);
+    }
+    
+    @Operation(
+        summary = "Get customers by date of birth", 
+        description = "Returns up to limit customers born between from and to, both inclusive and either one "
+                + "optional, oldest first"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Customers born in the range"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or date range", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/date-of-birth")
+    public ResponseEntity<List<Customer>> getCustomersBornBetween(
+            @Parameter(description = "Earliest date of birth (yyyy-MM-dd), inclusive")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Latest date of birth (yyyy-MM-dd), inclusive")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "100") int limit,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.getCustomersBornBetween(from, to, limit);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Get customers in an age bracket", 
+        description = "Returns up to limit customers aged between min and max years, both inclusive, on the "
+                + "given day, oldest first"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Customers in the age bracket"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or ages", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/age")
+    public ResponseEntity<List<Customer>> getCustomersByAge(
+            @Parameter(description = "Minimum age in years", required = true)
+            @RequestParam int min,
+            @Parameter(description = "Maximum age in years", required = true)
+            @RequestParam int max,
+            @Parameter(description = "Day to compute ages on (yyyy-MM-dd); today when omitted")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate on,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "100") int limit,
+            WebRequest request) {
+        LocalDate day = on != null ? on : LocalDate.now();
+        String etag = generationETag(day);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.getCustomersByAge(min, max, day, limit);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Get upcoming birthdays", 
+        description = "Returns up to limit customers whose birthday falls within the given number of days "
+                + "starting at from, soonest first. Birthdays on 29 February fall on 28 February in common years"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Customers with a birthday in the window"),
+        @ApiResponse(responseCode = "400", description = "Invalid limit or days", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/birthdays")
+    public ResponseEntity<List<Customer>> getUpcomingBirthdays(
+            @Parameter(description = "First day of the window (yyyy-MM-dd); today when omitted")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Length of the window in days (1-366)")
+            @RequestParam(defaultValue = "7") int days,
+            @Parameter(description = "Maximum number of customers to return (1-1000)")
+            @RequestParam(defaultValue = "100") int limit,
+            WebRequest request) {
+        LocalDate day = from != null ? from : LocalDate.now();
+        String etag = generationETag(day);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.getUpcomingBirthdays(day, days, limit);
+        return ResponseEntity.ok().eTag(etag).body(customers);
+    }
+    
+    @Operation(
+        summary = "Count customers per city and gender", 
+        description = "Returns the number of customers and, largest group first, the number per city and per "
+                + "gender as saved. The counts are kept up to date by every write, so this reads no customers"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Customer counts"),
+        @ApiResponse(responseCode = "304", description = "No customer changed since the ETag in If-None-Match")
+    })
+    @GetMapping("/counts")
+    public ResponseEntity<CustomerCounts> getCustomerCounts(WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        CustomerCounts counts = customerService.getCustomerCounts();
+        return ResponseEntity.ok().eTag(etag).body(counts);
+    }
+    
+    @Operation(
+        summary = "Search customers by phone number", 
+        description = "Finds customers whose phone number ends with the given digits, or contains them when "
+                + "contains=true. Separators are ignored and +84/0084 prefixes are treated as a leading 0"
+    )
+    @GetMapping("/phone")
+    public ResponseEntity<List<Customer>> searchCustomersByPhoneNumber(
+            @Parameter(description = "Phone number or its last digits", required = true)
+            @RequestParam String number,
+            @Parameter(description = "Match anywhere in the number instead of at the end")
+            @RequestParam(defaultValue = "false") boolean contains,
+            WebRequest request) {
+        String etag = generationETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Customer> customers = customerService.searchCustomersByPhoneNumber(number, contains);
+        return ResponseEntity.ok().eTag(etag).body(customers);
     }
     
     @Operation(summary = "Create customer", description = "Creates a new customer")
@@ -95,7 +442,45 @@ public class CustomerController {
             @Parameter(description = "Customer data", required = true)
             @RequestBody Customer customer) {
         Customer createdCustomer = customerService.createCustomer(customer);
-        return new ResponseEntity<>(createdCustomer, HttpStatus.CREATED);
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(etag(createdCustomer)).body(createdCustomer);
+    }
+    
+    @Operation(
+        summary = "Create customers in a batch", 
+        description = "Creates up to 10000 customers at once, or none of them if any customer code already exists "
+                + "or repeats within the batch"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "201", description = "Customers created successfully"),
+        @ApiResponse(responseCode = "400", description = "Too many customers", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "409", description = "Customer codes already exist or repeat within the batch", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<List<Customer>> createCustomers(
+            @Parameter(description = "Customers to create", required = true)
+            @RequestBody List<Customer> customers) {
+        List<Customer> createdCustomers = customerService.createCustomers(customers);
+        return new ResponseEntity<>(createdCustomers, HttpStatus.CREATED);
+    }
+    
+    @Operation(
+        summary = "Create customers in a batch, one by one", 
+        description = "Creates every customer of the batch whose code is new and reports, per customer and in "
+                + "request order, whether it was created or why it was rejected"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Batch processed; see the result of each customer"),
+        @ApiResponse(responseCode = "400", description = "Too many customers", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(value = "/batch", params = "atomic=false")
+    public ResponseEntity<CustomerBatchResult> createCustomersIndividually(
+            @Parameter(description = "Customers to create", required = true)
+            @RequestBody List<Customer> customers) {
+        CustomerBatchResult result = customerService.createCustomersIndividually(customers);
+        return new ResponseEntity<>(result, HttpStatus.OK);
     }
     
     @Operation(summary = "Update customer", description = "Updates an existing customer")
@@ -104,6 +489,8 @@ public class CustomerController {
         @ApiResponse(responseCode = "404", description = "Customer not found", 
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
         @ApiResponse(responseCode = "409", description = "Customer code already exists", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "412", description = "Customer changed since the version in If-Match", 
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PutMapping("/{id}")
@@ -111,9 +498,37 @@ public class CustomerController {
             @Parameter(description = "Customer ID", required = true)
             @PathVariable Long id, 
             @Parameter(description = "Updated customer data", required = true)
-            @RequestBody Customer customer) {
-        Customer updatedCustomer = customerService.updateCustomer(id, customer);
-        return new ResponseEntity<>(updatedCustomer, HttpStatus.OK);
+            @RequestBody Customer customer,
+            @Parameter(description = "ETag of the version being updated; the update fails with 412 if the customer has changed since")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Customer updatedCustomer = customerService.updateCustomer(id, customer, expectedVersion(id, ifMatch));
+        return ResponseEntity.ok().eTag(etag(updatedCustomer)).body(updatedCustomer);
+    }
+    
+    @Operation(summary = "Patch customer", description = "Changes only the fields present in a JSON Merge Patch "
+            + "(RFC 7396): a null member removes that field. The full name is generated again when the first or "
+            + "last name changes, unless the patch sets it too.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Customer patched successfully"),
+        @ApiResponse(responseCode = "400", description = "Unknown field or invalid value", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "404", description = "Customer not found", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "409", description = "Customer code already exists", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "412", description = "Customer changed since the version in If-Match", 
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Customer> patchCustomer(
+            @Parameter(description = "Customer ID", required = true)
+            @PathVariable Long id, 
+            @Parameter(description = "Fields to change", required = true)
+            @RequestBody Map<String, Object> patch,
+            @Parameter(description = "ETag of the version being patched; the patch fails with 412 if the customer has changed since")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Customer patchedCustomer = customerService.patchCustomer(id, patch, expectedVersion(id, ifMatch));
+        return ResponseEntity.ok().eTag(etag(patchedCustomer)).body(patchedCustomer);
     }
     
     @Operation(summary = "Delete customer", description = "Deletes a customer by ID")
@@ -129,4 +544,65 @@ public class CustomerController {
         customerService.deleteCustomer(id);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
+    
+    // A customer's ETag changes with its version; the id keeps apart customers that have held
+    // the same code
+    private String etag(Customer customer) {
+        long version = customer.getVersion() != null ? customer.getVersion() : 0;
+        return "\"" + etagPrefix + "-" + customer.getId() + "-" + version + "\"";
+    }
+    
+    // The version an If-Match header holds for this customer, or null when there is no header or
+    // it is "*". Weak ETags never match, and neither do those of another customer or of an
+    // earlier run of the application.
+    private Long expectedVersion(Long id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String prefix = "\"" + etagPrefix + "-" + id + "-";
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+                } catch (NumberFormatException e) {
+                    // Not one of ours after all
+                }
+            }
+        }
+        throw new CustomerVersionConflictException("If-Match does not match the current version of customer " + id);
+    }
+    
+    // Lists and searches share the store-wide generation, sampled before anything is read
+    private String generationETag() {
+        return "\"" + etagPrefix + "-g" + customerService.getCustomersGeneration() + "\"";
+    }
+    
+    // Ages and upcoming birthdays also change with the day they are computed for
+    private String generationETag(LocalDate day) {
+        return "\"" + etagPrefix + "-g" + customerService.getCustomersGeneration() + "-" + day + "\"";
+    }
+    
+    // Serializes customers one at a time straight to the response; the generator only ever
+    // buffers a few kilobytes before handing them to the servlet output stream
+    private void writeCustomers(OutputStream outputStream, boolean asArray) throws IOException {
+        try (Stream<Customer> customers = customerService.streamAllCustomers();
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            if (asArray) {
+                generator.writeStartArray();
+            }
+            Iterator<Customer> iterator = customers.iterator();
+            while (iterator.hasNext()) {
+                streamingWriter.writeValue(generator, iterator.next());
+                if (!asArray) {
+                    generator.writeRaw('\n');
+                }
+            }
+            if (asArray) {
+                generator.writeEndArray();
+            }
+        }
+    }
 }
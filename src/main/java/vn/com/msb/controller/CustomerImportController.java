@@ -0,0 +1,121 @@
+package vn.com.msb.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import vn.com.msb.exception.ErrorResponse;
+import vn.com.msb.model.CustomerImport;
+import vn.com.msb.service.CustomerImportService;
+
+@RestController
+@RequestMapping("/api/customers/imports")
+@Tag(name = "Customer import", description = "Bulk import of customers from CSV files")
+public class CustomerImportController {
+
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final CustomerImportService customerImportService;
+
+    public CustomerImportController(CustomerImportService customerImportService) {
+        this.customerImportService = customerImportService;
+    }
+
+    @Operation(
+        summary = "Import customers from an uploaded CSV file",
+        description = "Queues the import of a CSV file whose header row names the columns (customerCode, firstName, "
+                + "lastName, fullName, dateOfBirth as yyyy-MM-dd, gender, address, city, email, phoneNumber). "
+                + "Rows are created like single customers; rejected rows are listed in the error file"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Import queued; poll the Location for progress"),
+        @ApiResponse(responseCode = "400", description = "Unknown or repeated column in the header",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<CustomerImport> importCustomers(
+            @Parameter(description = "CSV file", required = true)
+            @RequestParam("file") MultipartFile file) throws IOException {
+        // Given an absolute file, the container moves the part it has already written to disk
+        // instead of copying it
+        return accepted(customerImportService.submit(target -> file.transferTo(target.toAbsolutePath().toFile())));
+    }
+
+    @Operation(
+        summary = "Import customers from a CSV request body",
+        description = "Same as the multipart upload, for clients that stream the file as the request body"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Import queued; poll the Location for progress"),
+        @ApiResponse(responseCode = "400", description = "Unknown or repeated column in the header",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<CustomerImport> importCustomers(InputStream body) throws IOException {
+        return accepted(customerImportService.submit(
+                target -> Files.copy(body, target, StandardCopyOption.REPLACE_EXISTING)));
+    }
+
+    @Operation(summary = "Get import progress", description = "Returns the state and counters of an import")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Import found"),
+        @ApiResponse(responseCode = "404", description = "Import not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<CustomerImport> getImport(
+            @Parameter(description = "Import ID", required = true)
+            @PathVariable String id) {
+        return new ResponseEntity<>(customerImportService.getImport(id), HttpStatus.OK);
+    }
+
+    @Operation(
+        summary = "Download the rejected rows of an import",
+        description = "CSV with the line of each rejected row, the reason, and the row as uploaded; "
+                + "grows while the import runs"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Error file"),
+        @ApiResponse(responseCode = "404", description = "Import not found or not started yet",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/{id}/errors", produces = TEXT_CSV_VALUE)
+    public ResponseEntity<Resource> getImportErrors(
+            @Parameter(description = "Import ID", required = true)
+            @PathVariable String id) {
+        Resource errors = new FileSystemResource(customerImportService.getErrorFile(id));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + "-errors.csv\"")
+                .contentType(MediaType.parseMediaType(TEXT_CSV_VALUE))
+                .body(errors);
+    }
+
+    private static ResponseEntity<CustomerImport> accepted(CustomerImport customerImport) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/customers/imports/" + customerImport.getId()))
+                .body(customerImport);
+    }
+}
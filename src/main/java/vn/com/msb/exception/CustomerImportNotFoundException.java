@@ -0,0 +1,7 @@
+package vn.com.msb.exception;
+
+public class CustomerImportNotFoundException extends RuntimeException {
+    public CustomerImportNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package vn.com.msb.exception;
+
+public class CustomerVersionConflictException extends RuntimeException {
+    public CustomerVersionConflictException(String message) {
+        super(message);
+    }
+}
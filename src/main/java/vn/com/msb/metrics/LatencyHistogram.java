@@ -0,0 +1,119 @@
+package vn.com.msb.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution that is cheap enough to update on every call: recording is one atomic
+ * increment of a log-linear bucket (eight buckets per power of two, so quantiles are within
+ * 12.5% of the true value) plus two adders. Quantiles cover the last one to two rotation
+ * intervals and are only computed when they are read.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long rotationNanos;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong rotation = new AtomicLong(Long.MIN_VALUE);
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+
+    public LatencyHistogram(long rotationInterval, TimeUnit unit) {
+        this.rotationNanos = unit.toNanos(rotationInterval);
+    }
+
+    /** Records one call; {@code now} is the {@link System#nanoTime} at which it ended. */
+    public void record(long nanos, long now) {
+        long interval = now / rotationNanos;
+        long last = rotation.get();
+        if (interval != last && rotation.compareAndSet(last, interval)) {
+            rotate(interval - last == 1);
+        }
+        current.incrementAndGet(bucket(Math.max(0, nanos)));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double totalTime(TimeUnit unit) {
+        return totalNanos.sum() / (double) unit.toNanos(1);
+    }
+
+    /** The latency at quantile {@code q} over the recent window, or 0 when nothing was recorded. */
+    public double quantile(double q, TimeUnit unit) {
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray window : new AtomicLongArray[] {previous, current}) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = window.get(i);
+                merged[i] += n;
+                total += n;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += merged[i];
+            if (seen >= rank) {
+                return midpoint(i) / unit.toNanos(1);
+            }
+        }
+        return midpoint(BUCKETS - 1) / unit.toNanos(1);
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that, the highest bit picks a group of
+    // SUB_BUCKETS buckets and the next SUB_BUCKET_BITS bits pick the bucket within it
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int mantissa = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    static double lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return Math.scalb((double) (SUB_BUCKETS + bucket % SUB_BUCKETS), exponent - SUB_BUCKET_BITS);
+    }
+
+    private static double midpoint(int bucket) {
+        double lower = lowerBound(bucket);
+        double upper = bucket + 1 < BUCKETS ? lowerBound(bucket + 1) : lower * 2;
+        return (lower + upper) / 2;
+    }
+
+    // A record racing with the rotation may land in the window being cleared; quantiles are
+    // approximate anyway, so that one sample is not worth a lock on the recording path
+    private void rotate(boolean consecutive) {
+        AtomicLongArray expired = previous;
+        for (int i = 0; i < BUCKETS; i++) {
+            expired.set(i, 0);
+        }
+        if (consecutive) {
+            previous = current;
+            current = expired;
+        } else {
+            // Nothing was recorded for a whole interval, so the current window is stale too
+            AtomicLongArray stale = current;
+            for (int i = 0; i < BUCKETS; i++) {
+                stale.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package vn.com.msb.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import vn.com.msb.model.CustomerPage;
+
+/**
+ * Times every call into one layer and publishes, per class, method signature and exception,
+ * a timer {@code <name>} and gauges {@code <name>.percentile} for p50, p99 and p999 tagged with
+ * {@code phi}, which is how Micrometer names client-side percentiles. Calls are recorded into a
+ * {@link LatencyHistogram} rather than a Micrometer timer with percentiles, whose recording path
+ * costs several times more. Optionally also records the sizes of search results.
+ */
+public class LayerTimingInterceptor implements MethodInterceptor {
+
+    public static final String SEARCH_RESULTS_SUMMARY = "customer.search.results";
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+    private static final String NO_EXCEPTION = "none";
+
+    private final String name;
+    private final boolean recordSearchResults;
+    // Resolved on first use: advisors are created before the registry has been configured
+    private final Supplier<MeterRegistry> meterRegistry;
+    private final ConcurrentMap<Method, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Failure, LatencyHistogram> failureLatencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, DistributionSummary> searchResults = new ConcurrentHashMap<>();
+
+    public LayerTimingInterceptor(String name, boolean recordSearchResults, Supplier<MeterRegistry> meterRegistry) {
+        this.name = name;
+        this.recordSearchResults = recordSearchResults;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            long end = System.nanoTime();
+            Method method = invocation.getMethod();
+            failureLatencies.computeIfAbsent(new Failure(method, e.getClass()),
+                    failure -> register(method, failure.exception().getSimpleName()))
+                    .record(end - start, end);
+            throw e;
+        }
+        long end = System.nanoTime();
+        Method method = invocation.getMethod();
+        LatencyHistogram latency = latencies.get(method);
+        if (latency == null) {
+            latency = latencies.computeIfAbsent(method, key -> register(key, NO_EXCEPTION));
+        }
+        latency.record(end - start, end);
+        if (recordSearchResults && method.getName().startsWith("search")) {
+            recordSearchResults(method, result);
+        }
+        return result;
+    }
+
+    private void recordSearchResults(Method method, Object result) {
+        int size = result instanceof CustomerPage page ? page.getItems().size()
+                : result instanceof List<?> list ? list.size() : -1;
+        if (size >= 0) {
+            searchResults.computeIfAbsent(method, key -> DistributionSummary.builder(SEARCH_RESULTS_SUMMARY)
+                    .baseUnit("customers")
+                    .tag("method", signature(key))
+                    .register(meterRegistry.get()))
+                    .record(size);
+        }
+    }
+
+    private LatencyHistogram register(Method method, String exception) {
+        LatencyHistogram latency = new LatencyHistogram(1, TimeUnit.MINUTES);
+        Tags tags = Tags.of("class", method.getDeclaringClass().getSimpleName(), "method", signature(method),
+                "exception", exception);
+        MeterRegistry registry = meterRegistry.get();
+        FunctionTimer.builder(name, latency, LatencyHistogram::count, h -> h.totalTime(TimeUnit.NANOSECONDS),
+                TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .register(registry);
+        for (double percentile : PERCENTILES) {
+            Gauge.builder(name + ".percentile", latency, h -> h.quantile(percentile, TimeUnit.SECONDS))
+                    .tags(tags)
+                    .tag("phi", String.valueOf(percentile))
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+        return latency;
+    }
+
+    // Overloads such as search(String) and search(String,Long,int) are kept apart
+    static String signature(Method method) {
+        return method.getName() + Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private record Failure(Method method, Class<? extends Throwable> exception) {
+    }
+}
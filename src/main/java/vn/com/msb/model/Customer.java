@@ -39,6 +39,10 @@ public class Customer {
     
     @Schema(description = "Customer's phone number", example = "555-123-4567")
     private String phoneNumber;
+    
+    @Schema(description = "Version of the stored customer, starting at 1 and bumped on every save; "
+            + "ignored when sent", example = "1", accessMode = Schema.AccessMode.READ_ONLY)
+    private Long version;
 
     public Customer() {
     }
@@ -147,4 +151,12 @@ public class Customer {
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
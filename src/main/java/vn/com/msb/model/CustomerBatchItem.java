@@ -0,0 +1,50 @@
+package vn.com.msb.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Outcome for one customer of a batch")
+public class CustomerBatchItem {
+    
+    @Schema(description = "Position of the customer in the request", example = "0")
+    private int index;
+    
+    @Schema(description = "The created customer; absent when it was rejected")
+    private Customer customer;
+    
+    @Schema(description = "Why the customer was rejected; absent when it was created",
+            example = "Customer code already exists: CUST001")
+    private String error;
+
+    public CustomerBatchItem() {
+    }
+
+    public CustomerBatchItem(int index, Customer customer, String error) {
+        this.index = index;
+        this.customer = customer;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
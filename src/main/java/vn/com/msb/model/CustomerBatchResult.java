@@ -0,0 +1,51 @@
+package vn.com.msb.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Per-customer outcome of a batch create, in request order")
+public class CustomerBatchResult {
+    
+    @Schema(description = "Number of customers created", example = "998")
+    private int created;
+    
+    @Schema(description = "Number of customers rejected", example = "2")
+    private int failed;
+    
+    @Schema(description = "One entry per customer in the request")
+    private List<CustomerBatchItem> items;
+
+    public CustomerBatchResult() {
+    }
+
+    public CustomerBatchResult(int created, int failed, List<CustomerBatchItem> items) {
+        this.created = created;
+        this.failed = failed;
+        this.items = items;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public void setCreated(int created) {
+        this.created = created;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public List<CustomerBatchItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<CustomerBatchItem> items) {
+        this.items = items;
+    }
+}
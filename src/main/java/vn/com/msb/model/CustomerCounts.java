@@ -0,0 +1,51 @@
+package vn.com.msb.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Customer counts per city and per gender, largest group first")
+public class CustomerCounts {
+    
+    @Schema(description = "Number of customers", example = "5000")
+    private long total;
+    
+    @Schema(description = "Number of customers per city")
+    private List<CustomerGroupCount> byCity;
+    
+    @Schema(description = "Number of customers per gender")
+    private List<CustomerGroupCount> byGender;
+
+    public CustomerCounts() {
+    }
+
+    public CustomerCounts(long total, List<CustomerGroupCount> byCity, List<CustomerGroupCount> byGender) {
+        this.total = total;
+        this.byCity = byCity;
+        this.byGender = byGender;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public List<CustomerGroupCount> getByCity() {
+        return byCity;
+    }
+
+    public void setByCity(List<CustomerGroupCount> byCity) {
+        this.byCity = byCity;
+    }
+
+    public List<CustomerGroupCount> getByGender() {
+        return byGender;
+    }
+
+    public void setByGender(List<CustomerGroupCount> byGender) {
+        this.byGender = byGender;
+    }
+}
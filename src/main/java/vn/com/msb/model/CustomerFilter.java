@@ -0,0 +1,63 @@
+package vn.com.msb.model;
+
+import java.time.LocalDate;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Criteria that a customer must all meet; absent criteria match every customer")
+public class CustomerFilter {
+
+    @Schema(description = "City, ignoring case and accents", example = "Ha Noi")
+    private String city;
+
+    @Schema(description = "Gender, ignoring case", example = "Female")
+    private String gender;
+
+    @Schema(description = "Earliest date of birth, inclusive", example = "1990-01-01")
+    private LocalDate bornFrom;
+
+    @Schema(description = "Latest date of birth, inclusive", example = "1999-12-31")
+    private LocalDate bornTo;
+
+    public CustomerFilter() {
+    }
+
+    public CustomerFilter(String city, String gender, LocalDate bornFrom, LocalDate bornTo) {
+        this.city = city;
+        this.gender = gender;
+        this.bornFrom = bornFrom;
+        this.bornTo = bornTo;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public void setGender(String gender) {
+        this.gender = gender;
+    }
+
+    public LocalDate getBornFrom() {
+        return bornFrom;
+    }
+
+    public void setBornFrom(LocalDate bornFrom) {
+        this.bornFrom = bornFrom;
+    }
+
+    public LocalDate getBornTo() {
+        return bornTo;
+    }
+
+    public void setBornTo(LocalDate bornTo) {
+        this.bornTo = bornTo;
+    }
+}
@@ -0,0 +1,37 @@
+package vn.com.msb.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Number of customers sharing one value of a field")
+public class CustomerGroupCount {
+    
+    @Schema(description = "The value, exactly as saved; absent for customers without one", example = "Ha Noi")
+    private String value;
+    
+    @Schema(description = "Number of customers with the value", example = "1200")
+    private long count;
+
+    public CustomerGroupCount() {
+    }
+
+    public CustomerGroupCount(String value, long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
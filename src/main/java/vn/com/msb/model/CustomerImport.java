@@ -0,0 +1,128 @@
+package vn.com.msb.model;
+
+import java.time.LocalDateTime;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Progress of a CSV import")
+public class CustomerImport {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    @Schema(description = "Import ID", example = "5f0c8a53-8a1e-4a57-9f3e-2d6f1e0f4b7c")
+    private String id;
+
+    @Schema(description = "QUEUED until an earlier import finishes, then RUNNING, then COMPLETED or FAILED",
+            example = "RUNNING")
+    private State state;
+
+    @Schema(description = "Size of the uploaded file in bytes", example = "104857600")
+    private long fileBytes;
+
+    @Schema(description = "Bytes of the file parsed so far", example = "52428800")
+    private long bytesRead;
+
+    @Schema(description = "Data rows parsed so far, not counting the header", example = "500000")
+    private long rows;
+
+    @Schema(description = "Customers created so far", example = "499990")
+    private long created;
+
+    @Schema(description = "Rows rejected so far; each one is listed in the error file", example = "10")
+    private long failed;
+
+    @Schema(description = "Why the import stopped; absent unless it FAILED",
+            example = "Unknown column: nickname")
+    private String message;
+
+    @Schema(description = "When the import started running")
+    private LocalDateTime startedAt;
+
+    @Schema(description = "When the import completed or failed")
+    private LocalDateTime finishedAt;
+
+    public CustomerImport() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    public void setFileBytes(long fileBytes) {
+        this.fileBytes = fileBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
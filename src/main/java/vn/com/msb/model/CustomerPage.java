@@ -0,0 +1,39 @@
+package vn.com.msb.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "A page of customers in ascending id order")
+public class CustomerPage {
+    
+    @Schema(description = "Customers on this page")
+    private List<Customer> items;
+    
+    @Schema(description = "Cursor to pass to get the next page; absent on the last page", example = "100")
+    private Long nextCursor;
+
+    public CustomerPage() {
+    }
+
+    public CustomerPage(List<Customer> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Customer> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Customer> items) {
+        this.items = items;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,151 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index from the value of one customer field to the ids of the customers that have
+ * it, sorted by value so that a range of values can be looked up as well as a single one.
+ * Customers without a value are not indexed.
+ *
+ * <p>The number of ids per value is known without reading them, which is what lets a query
+ * start from whichever of its criteria selects the fewest customers.
+ */
+final class AttributeIndex<K extends Comparable<? super K>> {
+
+    private final Function<CustomerEntry, K> keyExtractor;
+    // As in TrigramIndex, emptied posting lists stay: cities, genders and dates of birth only
+    // ever take a small number of distinct values
+    private final ConcurrentNavigableMap<K, PostingList> postings = new ConcurrentSkipListMap<>();
+
+    AttributeIndex(Function<CustomerEntry, K> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    void add(CustomerEntry entry) {
+        K key = keyExtractor.apply(entry);
+        if (key != null) {
+            postings.computeIfAbsent(key, ignored -> new PostingList()).add(entry.id());
+        }
+    }
+
+    // Groups a batch by value first, so each posting list is locked once per batch
+    void addAll(List<CustomerEntry> entries) {
+        Map<K, List<CustomerEntry>> batch = new HashMap<>();
+        for (CustomerEntry entry : entries) {
+            K key = keyExtractor.apply(entry);
+            if (key != null) {
+                batch.computeIfAbsent(key, ignored -> new ArrayList<>()).add(entry);
+            }
+        }
+        for (Map.Entry<K, List<CustomerEntry>> value : batch.entrySet()) {
+            long[] ids = value.getValue().stream().mapToLong(CustomerEntry::id).toArray();
+            postings.computeIfAbsent(value.getKey(), ignored -> new PostingList()).addAll(ids, ids.length);
+        }
+    }
+
+    void remove(CustomerEntry entry) {
+        K key = keyExtractor.apply(entry);
+        PostingList ids = key != null ? postings.get(key) : null;
+        if (ids != null) {
+            ids.remove(entry.id());
+        }
+    }
+
+    void replace(CustomerEntry previous, CustomerEntry replacement) {
+        if (Objects.equals(keyExtractor.apply(previous), keyExtractor.apply(replacement))) {
+            return;
+        }
+        remove(previous);
+        add(replacement);
+    }
+
+    int count(K key) {
+        PostingList ids = postings.get(key);
+        return ids != null ? ids.size() : 0;
+    }
+
+    /**
+     * Counts the customers with a value between from and to, both inclusive and either one null
+     * for no bound, but stops counting once the count exceeds the given bound.
+     */
+    long count(K from, K to, long bound) {
+        long count = 0;
+        for (PostingList ids : range(from, to).values()) {
+            count += ids.size();
+            if (count > bound) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the ids, in ascending order, of the customers with this value. */
+    long[] ids(K key) {
+        PostingList ids = postings.get(key);
+        return ids != null ? ids.toArray() : new long[0];
+    }
+
+    /**
+     * Returns the ids, in ascending order, of the customers with a value between from and to.
+     * An id that moved between two values while they were read may appear twice.
+     */
+    long[] ids(K from, K to) {
+        List<long[]> parts = new ArrayList<>();
+        int size = 0;
+        for (PostingList ids : range(from, to).values()) {
+            long[] part = ids.toArray();
+            parts.add(part);
+            size += part.length;
+        }
+        long[] all = new long[size];
+        int offset = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, all, offset, part.length);
+            offset += part.length;
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    /**
+     * Walks the ids of the customers with a value between from and to, in value order and each
+     * value's ids in ascending order, until the visitor returns false. Finding the first value
+     * costs O(log n), and every id after that one step. Returns whether the walk was completed.
+     */
+    boolean forEach(K from, K to, Visitor<K> visitor) {
+        for (Map.Entry<K, PostingList> value : range(from, to).entrySet()) {
+            K key = value.getKey();
+            if (!value.getValue().forEach(id -> visitor.visit(key, id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<K, PostingList> range(K from, K to) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return Map.of();
+        }
+        ConcurrentNavigableMap<K, PostingList> range = postings;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        return range;
+    }
+
+    /** Receives the ids of a walk over the index; returning false ends the walk. */
+    interface Visitor<K> {
+        boolean visit(K key, long id);
+    }
+}
@@ -0,0 +1,38 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * When birthdays fall. Someone born on 29 February has their birthday on 28 February in years
+ * without one, as {@link MonthDay#atYear} has it.
+ */
+final class Birthdays {
+
+    private static final MonthDay FEBRUARY_28 = MonthDay.of(2, 28);
+    private static final MonthDay FEBRUARY_29 = MonthDay.of(2, 29);
+
+    private Birthdays() {
+    }
+
+    /** The birthdays celebrated on a day: its own month and day, and 29 February on a 28th in a common year. */
+    static List<MonthDay> on(LocalDate day) {
+        MonthDay monthDay = MonthDay.from(day);
+        if (monthDay.equals(FEBRUARY_28) && !day.isLeapYear()) {
+            return List.of(FEBRUARY_28, FEBRUARY_29);
+        }
+        return List.of(monthDay);
+    }
+
+    /** Days from the given day until the next birthday of someone born on dateOfBirth, 0 if it is that day. */
+    static int daysUntil(LocalDate dateOfBirth, LocalDate day) {
+        MonthDay birthday = MonthDay.from(dateOfBirth);
+        LocalDate next = birthday.atYear(day.getYear());
+        if (next.isBefore(day)) {
+            next = birthday.atYear(day.getYear() + 1);
+        }
+        return (int) ChronoUnit.DAYS.between(day, next);
+    }
+}
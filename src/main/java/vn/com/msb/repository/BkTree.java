@@ -0,0 +1,93 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Burkhard-Keller tree over a dictionary of terms, for finding every term within a few edits of a
+ * query without comparing it to all of them. Each child hangs off its parent at its edit distance
+ * from the parent, and by the triangle inequality a term within k edits of the query can only be
+ * under children at distance d - k to d + k from a node that is d edits away.
+ *
+ * <p>Terms are only ever added. Writers are serialized by a lock rather than a monitor, so a virtual
+ * thread adding a term is not pinned to its carrier; a reader never blocks and sees every term
+ * added before it started, since a node's children array is replaced, never changed in place.
+ */
+final class BkTree {
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Node root;
+    private volatile int size;
+
+    boolean add(String term) {
+        writeLock.lock();
+        try {
+            if (root == null) {
+                root = new Node(term);
+                size++;
+                return true;
+            }
+            Node node = root;
+            while (true) {
+                int distance = EditDistance.between(node.term, term, Integer.MAX_VALUE);
+                if (distance == 0) {
+                    return false;
+                }
+                Node[] children = node.children;
+                if (distance < children.length && children[distance] != null) {
+                    node = children[distance];
+                    continue;
+                }
+                Node[] grown = Arrays.copyOf(children, Math.max(children.length, distance + 1));
+                grown[distance] = new Node(term);
+                node.children = grown;
+                size++;
+                return true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Passes every term within maxEdits of the query to the consumer, with its distance. */
+    void forEachWithin(String query, int maxEdits, ObjIntConsumer<String> consumer) {
+        Node start = root;
+        if (start == null) {
+            return;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = EditDistance.between(node.term, query, Integer.MAX_VALUE);
+            if (distance <= maxEdits) {
+                consumer.accept(node.term, distance);
+            }
+            Node[] children = node.children;
+            int to = Math.min(children.length - 1, distance + maxEdits);
+            for (int i = Math.max(1, distance - maxEdits); i <= to; i++) {
+                if (children[i] != null) {
+                    pending.push(children[i]);
+                }
+            }
+        }
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String term;
+        private volatile Node[] children = NO_CHILDREN;
+
+        private Node(String term) {
+            this.term = term;
+        }
+    }
+}
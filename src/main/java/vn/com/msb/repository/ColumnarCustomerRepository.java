@@ -0,0 +1,601 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
+
+/**
+ * Customer store that keeps its data off the Java heap in {@link CustomerColumns} and builds a
+ * {@link Customer} only for the rows a caller asks for. Apart from the per-customer slots of
+ * the code hash table, the heap holds no per-customer objects, so the store's size barely
+ * affects GC. There are no search indexes: searches scan the relevant columns.
+ */
+@Repository
+@ConditionalOnProperty(name = "customer.store", havingValue = "columnar")
+public class ColumnarCustomerRepository implements CustomerRepository {
+
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final int STREAM_BATCH_SIZE = 1000;
+    private static final int MIN_COMPACTION_ROWS = 1024;
+
+    // Writers replace rows and strings in place, so every reader shares one lock with them
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final StringDictionary genders = new StringDictionary();
+    private final StringDictionary cities = new StringDictionary();
+    private final GroupCounts cityCounts = new GroupCounts();
+    private final GroupCounts genderCounts = new GroupCounts();
+    private final AtomicLong nextId = new AtomicLong(1L);
+    // Bumped under the write lock once a change is in place
+    private final AtomicLong generation = new AtomicLong();
+    private long compactions;
+    private CustomerColumns columns = new CustomerColumns(genders, cities);
+    private final CustomerCodeTable customerCodes = new CustomerCodeTable(columns);
+
+    @Override
+    public List<Customer> findAll() {
+        return scan(null, UNLIMITED, row -> true);
+    }
+
+    @Override
+    public CustomerPage findAll(Long cursor, int limit) {
+        return toPage(scan(cursor, limit + 1, row -> true), limit);
+    }
+
+    // Reads a batch at a time so that a slow consumer never holds the lock between batches
+    @Override
+    public Stream<Customer> streamAll() {
+        Iterator<Customer> iterator = new Iterator<>() {
+            private Iterator<Customer> batch = Collections.emptyIterator();
+            private Long cursor;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (!batch.hasNext() && !exhausted) {
+                    List<Customer> customers = scan(cursor, STREAM_BATCH_SIZE, row -> true);
+                    exhausted = customers.size() < STREAM_BATCH_SIZE;
+                    if (!customers.isEmpty()) {
+                        cursor = customers.get(customers.size() - 1).getId();
+                    }
+                    batch = customers.iterator();
+                }
+                return batch.hasNext();
+            }
+
+            @Override
+            public Customer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public Optional<Customer> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int row = columns.findRow(id);
+            return row >= 0 && columns.isLive(row) ? Optional.of(columns.customer(row)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Customer> findByCustomerCode(String customerCode) {
+        if (customerCode == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int row = customerCodes.find(customerCode);
+            return row >= 0 ? Optional.of(columns.customer(row)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> findByFullNameContaining(String fullName) {
+        String term = TextFolding.fold(fullName);
+        return scan(null, UNLIMITED, row -> TextFolding.containsFolded(columns.fullName(row), term));
+    }
+
+    @Override
+    public List<Customer> findByEmailContaining(String email) {
+        String term = TextFolding.fold(email);
+        return scan(null, UNLIMITED, row -> TextFolding.containsFolded(columns.email(row), term));
+    }
+
+    @Override
+    public List<Customer> findByPhoneNumberContaining(String phoneNumber) {
+        String digits = PhoneNumbers.canonicalize(phoneNumber);
+        if (digits.isEmpty()) {
+            // Nothing to canonicalize, so keep matching the number as it was entered
+            return scan(null, UNLIMITED, row -> contains(columns.phoneNumber(row), phoneNumber));
+        }
+        boolean anchored = PhoneNumbers.hasInternationalPrefix(phoneNumber);
+        return scan(null, UNLIMITED, row -> contains(columns.phoneNumber(row), phoneNumber)
+                || containsDigits(columns.phoneNumber(row), digits, anchored));
+    }
+
+    @Override
+    public List<Customer> findByPhoneNumberEndingWith(String phoneNumber) {
+        String digits = PhoneNumbers.canonicalize(phoneNumber);
+        if (digits == null || digits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return scan(null, UNLIMITED, row -> {
+            String stored = PhoneNumbers.canonicalize(columns.phoneNumber(row));
+            return stored != null && stored.endsWith(digits);
+        });
+    }
+
+    @Override
+    public List<Customer> search(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll();
+        }
+        return scan(null, UNLIMITED, keywordMatcher(keyword));
+    }
+
+    @Override
+    public CustomerPage search(String keyword, Long cursor, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(cursor, limit);
+        }
+        return toPage(scan(cursor, limit + 1, keywordMatcher(keyword)), limit);
+    }
+
+    // One scan in id order after the exact codes, which stops once limit names start with the keyword
+    @Override
+    public List<Customer> searchRanked(String keyword, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        RankedMatches matches = new RankedMatches(keyword, limit);
+        IntPredicate matcher = keywordMatcher(keyword);
+        lock.readLock().lock();
+        try {
+            for (String customerCode : matches.exactCodes()) {
+                int row = customerCodes.find(customerCode);
+                if (row >= 0) {
+                    matches.offer(RankedMatches.EXACT_CODE, columns.id(row), columns.customer(row));
+                }
+            }
+            for (int row = 0; row < columns.rows() && !matches.settled(RankedMatches.NAME_PREFIX); row++) {
+                if (!columns.isLive(row) || !matcher.test(row)) {
+                    continue;
+                }
+                String fullName = columns.fullName(row);
+                int rank = matches.rank(columns.customerCode(row), TextFolding.fold(fullName));
+                if (rank != RankedMatches.EXACT_CODE && matches.accepts(rank, columns.id(row))) {
+                    matches.offer(rank, columns.id(row), columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.toList();
+    }
+
+    // Computes the edit distance for every name, having no word dictionary to narrow them down
+    @Override
+    public List<Customer> searchFuzzy(String keyword, int maxEdits, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        List<String> queryTokens = NameTokenIndex.tokens(TextFolding.fold(keyword).trim());
+        TopMatches matches = new TopMatches(limit);
+        if (queryTokens.isEmpty()) {
+            return matches.toList();
+        }
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < columns.rows() && !matches.settled(0); row++) {
+                if (!columns.isLive(row)) {
+                    continue;
+                }
+                int edits = NameTokenIndex.edits(queryTokens, TextFolding.fold(columns.fullName(row)), maxEdits);
+                if (edits >= 0 && matches.accepts(edits, columns.id(row))) {
+                    matches.offer(edits, columns.id(row), columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.toList();
+    }
+
+    // Cities and genders are compared by their dictionary codes, so a row is matched without
+    // decoding any of its strings
+    @Override
+    public CustomerPage filter(CustomerFilter filter, Long cursor, int limit) {
+        FilterCriteria criteria = FilterCriteria.of(filter);
+        List<Customer> customers = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            boolean[] cityCodes = criteria.city() == null ? null
+                    : cities.codesMatching(city -> criteria.city().equals(FilterCriteria.key(city)));
+            boolean[] genderCodes = criteria.gender() == null ? null
+                    : genders.codesMatching(gender -> criteria.gender().equals(FilterCriteria.key(gender)));
+            int start = cursor == null ? 0 : columns.firstRowAfter(cursor);
+            for (int row = start; row < columns.rows() && customers.size() <= limit; row++) {
+                if (columns.isLive(row)
+                        && (cityCodes == null || cityCodes[columns.cityCode(row)])
+                        && (genderCodes == null || genderCodes[columns.genderCode(row)])
+                        && criteria.matchesDateOfBirth(columns.dateOfBirth(row))) {
+                    customers.add(columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return toPage(customers, limit);
+    }
+
+    @Override
+    public List<Customer> findByDateOfBirthBetween(LocalDate from, LocalDate to, int limit) {
+        FilterCriteria criteria = new FilterCriteria(null, null, from, to);
+        TopMatches matches = new TopMatches(limit);
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < columns.rows(); row++) {
+                LocalDate dateOfBirth = columns.isLive(row) ? columns.dateOfBirth(row) : null;
+                if (dateOfBirth == null || !criteria.matchesDateOfBirth(dateOfBirth)) {
+                    continue;
+                }
+                int rank = Math.toIntExact(dateOfBirth.toEpochDay());
+                if (matches.accepts(rank, columns.id(row))) {
+                    matches.offer(rank, columns.id(row), columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.toList();
+    }
+
+    @Override
+    public List<Customer> findUpcomingBirthdays(LocalDate from, int days, int limit) {
+        TopMatches matches = new TopMatches(limit);
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < columns.rows(); row++) {
+                LocalDate dateOfBirth = columns.isLive(row) ? columns.dateOfBirth(row) : null;
+                if (dateOfBirth == null) {
+                    continue;
+                }
+                int rank = Birthdays.daysUntil(dateOfBirth, from);
+                if (rank < days && matches.accepts(rank, columns.id(row))) {
+                    matches.offer(rank, columns.id(row), columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.toList();
+    }
+
+    @Override
+    public CustomerCounts countCustomers() {
+        lock.readLock().lock();
+        try {
+            return new CustomerCounts(columns.rows() - columns.deletedRows(), cityCounts.toList(),
+                    genderCounts.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // New ids are taken under the write lock so that they are appended in id order; an append
+    // out of order would make put() compact the whole store
+    @Override
+    public Customer save(Customer customer) {
+        validateId(customer);
+        lock.writeLock().lock();
+        try {
+            if (customer.getId() == null) {
+                // Creating a new customer
+                customer.setId(nextId.getAndIncrement());
+            }
+            put(customer);
+            compactIfWasteful();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return customer;
+    }
+
+    @Override
+    public Optional<Customer> saveIfVersion(Customer customer, long expectedVersion) {
+        validateId(customer);
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("Customer id is required to compare versions");
+        }
+        lock.writeLock().lock();
+        try {
+            int row = columns.findRow(customer.getId());
+            if (row < 0 || !columns.isLive(row) || columns.version(row) != expectedVersion) {
+                return Optional.empty();
+            }
+            put(customer);
+            compactIfWasteful();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return Optional.of(customer);
+    }
+
+    // Ids are checked before anything is written, and the batch gets its new ids and goes in
+    // under one write lock
+    @Override
+    public List<Customer> saveAll(List<Customer> customers) {
+        customers.forEach(ColumnarCustomerRepository::validateId);
+        lock.writeLock().lock();
+        try {
+            for (Customer customer : customers) {
+                if (customer.getId() == null) {
+                    customer.setId(nextId.getAndIncrement());
+                }
+                put(customer);
+            }
+            compactIfWasteful();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return customers;
+    }
+
+    // The codes are looked up and written under the same write lock, so no other writer can take
+    // one in between
+    @Override
+    public Set<String> saveAllIfCodesFree(List<Customer> customers, boolean allOrNothing) {
+        for (Customer customer : customers) {
+            if (customer.getId() != null) {
+                throw new IllegalArgumentException("Customer to create already has an id: " + customer.getId());
+            }
+        }
+        Set<String> taken = new LinkedHashSet<>();
+        lock.writeLock().lock();
+        try {
+            Set<String> claimed = new HashSet<>();
+            List<Customer> accepted = new ArrayList<>(customers.size());
+            for (Customer customer : customers) {
+                String code = customer.getCustomerCode();
+                if (code == null || customerCodes.find(code) < 0 && claimed.add(code)) {
+                    accepted.add(customer);
+                } else {
+                    taken.add(code);
+                }
+            }
+            if (accepted.isEmpty() || allOrNothing && !taken.isEmpty()) {
+                return taken;
+            }
+            for (Customer customer : accepted) {
+                customer.setId(nextId.getAndIncrement());
+                put(customer);
+            }
+            compactIfWasteful();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return taken;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int row = columns.findRow(id);
+            if (row < 0 || !columns.isLive(row)) {
+                return;
+            }
+            String code = columns.customerCode(row);
+            if (code != null) {
+                customerCodes.remove(code, row);
+            }
+            cityCounts.remove(cities.decode(columns.cityCode(row)));
+            genderCounts.remove(genders.decode(columns.genderCode(row)));
+            columns.delete(row);
+            compactIfWasteful();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByCustomerCode(String customerCode) {
+        return findByCustomerCode(customerCode).isPresent();
+    }
+
+    @Override
+    public boolean existsByCustomerCodeAndIdNot(String customerCode, Long id) {
+        return findByCustomerCode(customerCode)
+                .filter(customer -> !customer.getId().equals(id))
+                .isPresent();
+    }
+
+    @Override
+    public Set<String> findExistingCustomerCodes(Collection<String> codes) {
+        Set<String> existing = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (String customerCode : codes) {
+                if (customerCode != null && customerCodes.find(customerCode) >= 0) {
+                    existing.add(customerCode);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return existing;
+    }
+
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+
+    // How many times the columns were rewritten, each a copy of the whole store
+    long compactions() {
+        lock.readLock().lock();
+        try {
+            return compactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bytes of direct memory currently reserved by the columns and string arenas. */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return columns.offHeapBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void validateId(Customer customer) {
+        if (customer.getId() != null && customer.getId() <= 0) {
+            throw new IllegalArgumentException("Customer id must be positive: " + customer.getId());
+        }
+    }
+
+    // Writes one customer and stamps its version; the caller holds the write lock
+    private void put(Customer customer) {
+        int row = columns.findRow(customer.getId());
+        customer.setVersion(row < 0 ? 1 : columns.version(row) + 1);
+        if (row >= 0 && columns.isLive(row)) {
+            cityCounts.move(cities.decode(columns.cityCode(row)), customer.getCity());
+            genderCounts.move(genders.decode(columns.genderCode(row)), customer.getGender());
+        } else {
+            cityCounts.add(customer.getCity());
+            genderCounts.add(customer.getGender());
+        }
+        if (row < 0) {
+            row = columns.append(customer);
+            if (!columns.ordered()) {
+                // Rebuilds the code table too, this customer included
+                compact();
+                return;
+            }
+        } else {
+            String previousCode = columns.isLive(row) ? columns.customerCode(row) : null;
+            if (previousCode != null) {
+                customerCodes.remove(previousCode, row);
+            }
+            columns.update(row, customer);
+        }
+        if (customer.getCustomerCode() != null) {
+            customerCodes.put(customer.getCustomerCode(), row);
+        }
+    }
+
+    // Returns up to limit live customers after the cursor, in id order, whose row matches
+    private List<Customer> scan(Long cursor, int limit, IntPredicate matches) {
+        List<Customer> customers = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int start = cursor == null ? 0 : columns.firstRowAfter(cursor);
+            for (int row = start; row < columns.rows() && customers.size() < limit; row++) {
+                if (columns.isLive(row) && matches.test(row)) {
+                    customers.add(columns.customer(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return customers;
+    }
+
+    // Same fields and rules as the heap store's keyword search
+    private IntPredicate keywordMatcher(String keyword) {
+        String term = TextFolding.fold(keyword).trim();
+        String digits = PhoneNumbers.looksLikePhoneNumber(term) ? PhoneNumbers.canonicalize(term) : null;
+        boolean anchored = PhoneNumbers.hasInternationalPrefix(term);
+        return row -> {
+            String phoneNumber = columns.phoneNumber(row);
+            return TextFolding.containsFolded(columns.fullName(row), term)
+                    || TextFolding.containsFolded(columns.email(row), term)
+                    || contains(phoneNumber, term)
+                    || TextFolding.containsFolded(columns.customerCode(row), term)
+                    || digits != null && containsDigits(phoneNumber, digits, anchored);
+        };
+    }
+
+    private static boolean contains(String value, String term) {
+        return value != null && value.contains(term);
+    }
+
+    // Same as the heap store: digits typed after an international prefix must start the number
+    private static boolean containsDigits(String phoneNumber, String digits, boolean anchored) {
+        String stored = PhoneNumbers.canonicalize(phoneNumber);
+        return stored != null && (anchored ? stored.startsWith(digits) : stored.contains(digits));
+    }
+
+    // Rewrites the columns once deleted rows or replaced strings take up as much room as live ones
+    private void compactIfWasteful() {
+        int deleted = columns.deletedRows();
+        boolean wastefulRows = deleted >= MIN_COMPACTION_ROWS && deleted * 2 >= columns.rows();
+        long garbage = columns.garbageBytes();
+        boolean wastefulStrings = garbage >= MIN_COMPACTION_ROWS * 64L && garbage * 2 >= columns.usedBytes();
+        if (wastefulRows || wastefulStrings) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        columns = columns.compact();
+        customerCodes.rebuild(columns);
+        compactions++;
+    }
+
+    // Expects up to limit + 1 customers; the extra one only signals that another page exists
+    private static CustomerPage toPage(List<Customer> customers, int limit) {
+        if (customers.size() <= limit) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> items = new ArrayList<>(customers.subList(0, limit));
+        return new CustomerPage(items, items.get(items.size() - 1).getId());
+    }
+}
@@ -0,0 +1,117 @@
+package vn.com.msb.repository;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Open-addressing hash table from customer code to a row of {@link CustomerColumns}. It holds
+ * only the row and the code's hash, so no code string stays on the heap; a probe confirms a
+ * candidate by comparing the code's UTF-8 bytes with the column. Not thread-safe.
+ */
+final class CustomerCodeTable {
+
+    private static final int EMPTY = 0;
+
+    private CustomerColumns columns;
+    // Slots hold row + 1 so that zero marks an empty slot
+    private int[] slots;
+    private int[] hashes;
+    private int size;
+
+    CustomerCodeTable(CustomerColumns columns) {
+        rebuild(columns);
+    }
+
+    /** Re-points the table at compacted columns, whose rows have all moved. */
+    void rebuild(CustomerColumns columns) {
+        this.columns = columns;
+        int capacity = 16;
+        while (capacity < columns.rows() * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        hashes = new int[capacity];
+        size = 0;
+        for (int row = 0; row < columns.rows(); row++) {
+            String code = columns.customerCode(row);
+            if (code != null && columns.isLive(row)) {
+                put(code, row);
+            }
+        }
+    }
+
+    int find(String code) {
+        int slot = slotOf(code.getBytes(StandardCharsets.UTF_8), hash(code));
+        return slots[slot] == EMPTY ? -1 : slots[slot] - 1;
+    }
+
+    // Like the heap store's index, a code saved again for another customer now points there
+    void put(String code, int row) {
+        int hash = hash(code);
+        int slot = slotOf(code.getBytes(StandardCharsets.UTF_8), hash);
+        if (slots[slot] == EMPTY) {
+            size++;
+        }
+        slots[slot] = row + 1;
+        hashes[slot] = hash;
+        if (size * 2 > slots.length) {
+            resize();
+        }
+    }
+
+    // Only removes the code if it still points at the row, so a stale remove is harmless
+    void remove(String code, int row) {
+        int slot = slotOf(code.getBytes(StandardCharsets.UTF_8), hash(code));
+        if (slots[slot] != row + 1) {
+            return;
+        }
+        size--;
+        int mask = slots.length - 1;
+        // Backward-shift deletion keeps every later entry of the probe run reachable
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                slots[hole] = slots[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+        }
+        slots[hole] = EMPTY;
+        hashes[hole] = 0;
+    }
+
+    // Returns the slot holding the code, or the empty slot where it belongs
+    private int slotOf(byte[] utf8, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY
+                && (hashes[slot] != hash || !columns.customerCodeEquals(slots[slot] - 1, utf8))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != EMPTY) {
+                int slot = oldHashes[i] & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int hash(String code) {
+        int h = code.hashCode();
+        return (h ^ (h >>> 16)) * 0x9E3779B9;
+    }
+}
@@ -0,0 +1,177 @@
+package vn.com.msb.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * Compact binary form of a {@link Customer} shared by the write-ahead log and snapshots:
+ * the id, a bitmap of which optional fields are present, the date of birth as an epoch day,
+ * every present string as a varint length followed by its UTF-8 bytes, and the version as a
+ * varint. Records written before customers had versions simply lack the version bit.
+ */
+final class CustomerCodec {
+
+    private static final int STRING_FIELDS = 9;
+    private static final int DATE_OF_BIRTH = 1 << 4;
+    private static final int VERSION = 1 << 10;
+
+    private CustomerCodec() {
+    }
+
+    static byte[] encode(Customer customer) {
+        Writer writer = new Writer();
+        String[] strings = strings(customer);
+        int presence = 0;
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null) {
+                presence |= 1 << stringBit(i);
+            }
+        }
+        if (customer.getDateOfBirth() != null) {
+            presence |= DATE_OF_BIRTH;
+        }
+        if (customer.getVersion() != null) {
+            presence |= VERSION;
+        }
+        writer.writeLong(customer.getId());
+        writer.writeVarInt(presence);
+        if (customer.getDateOfBirth() != null) {
+            writer.writeVarLong(zigZag(customer.getDateOfBirth().toEpochDay()));
+        }
+        for (String value : strings) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writer.writeVarInt(bytes.length);
+                writer.write(bytes);
+            }
+        }
+        if (customer.getVersion() != null) {
+            writer.writeVarLong(customer.getVersion());
+        }
+        return writer.toByteArray();
+    }
+
+    // Decodes one customer starting at the buffer's position and leaves the position after it
+    static Customer decode(ByteBuffer buffer) {
+        Customer customer = new Customer();
+        customer.setId(buffer.getLong());
+        int presence = readVarInt(buffer);
+        if ((presence & DATE_OF_BIRTH) != 0) {
+            customer.setDateOfBirth(LocalDate.ofEpochDay(unZigZag(readVarLong(buffer))));
+        }
+        String[] strings = new String[STRING_FIELDS];
+        for (int i = 0; i < STRING_FIELDS; i++) {
+            if ((presence & (1 << stringBit(i))) != 0) {
+                strings[i] = readString(buffer, readVarInt(buffer));
+            }
+        }
+        customer.setCustomerCode(strings[0]);
+        customer.setFirstName(strings[1]);
+        customer.setLastName(strings[2]);
+        customer.setFullName(strings[3]);
+        customer.setGender(strings[4]);
+        customer.setAddress(strings[5]);
+        customer.setCity(strings[6]);
+        customer.setEmail(strings[7]);
+        customer.setPhoneNumber(strings[8]);
+        if ((presence & VERSION) != 0) {
+            customer.setVersion(readVarLong(buffer));
+        }
+        return customer;
+    }
+
+    private static String[] strings(Customer customer) {
+        return new String[] {
+            customer.getCustomerCode(), customer.getFirstName(), customer.getLastName(), customer.getFullName(),
+            customer.getGender(), customer.getAddress(), customer.getCity(), customer.getEmail(),
+            customer.getPhoneNumber()
+        };
+    }
+
+    // Bits 0-3 and 5-9 flag the strings, bit 4 flags the date of birth and bit 10 the version
+    private static int stringBit(int index) {
+        return index < 4 ? index : index + 1;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        return (int) readVarLong(buffer);
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in customer record");
+    }
+
+    private static final class Writer {
+
+        private byte[] bytes = new byte[128];
+        private int size;
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
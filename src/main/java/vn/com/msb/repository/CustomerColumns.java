@@ -0,0 +1,275 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.util.stream.IntStream;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * Customers stored column by column in direct memory, one row per customer in ascending id
+ * order: the id as a long (negated once the row is deleted), the version as a long, the date
+ * of birth as an epoch-day int, gender and city as dictionary codes, and every other string as an address into a
+ * per-field {@link Utf8Arena}. Rows are only ever appended; deleted rows and replaced strings
+ * are reclaimed by {@link #compact}. Not thread-safe.
+ */
+final class CustomerColumns {
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final StringDictionary genders;
+    private final StringDictionary cities;
+    private final OffHeapColumn ids = new OffHeapColumn(Long.BYTES);
+    private final OffHeapColumn versions = new OffHeapColumn(Long.BYTES);
+    private final OffHeapColumn datesOfBirth = new OffHeapColumn(Integer.BYTES);
+    private final OffHeapColumn genderCodes = new OffHeapColumn(Integer.BYTES);
+    private final OffHeapColumn cityCodes = new OffHeapColumn(Integer.BYTES);
+    private final StringColumn customerCodes = new StringColumn();
+    private final StringColumn firstNames = new StringColumn();
+    private final StringColumn lastNames = new StringColumn();
+    private final StringColumn fullNames = new StringColumn();
+    private final StringColumn addresses = new StringColumn();
+    private final StringColumn emails = new StringColumn();
+    private final StringColumn phoneNumbers = new StringColumn();
+    private int rows;
+    private int deletedRows;
+    private boolean ordered = true;
+
+    CustomerColumns(StringDictionary genders, StringDictionary cities) {
+        this.genders = genders;
+        this.cities = cities;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int deletedRows() {
+        return deletedRows;
+    }
+
+    // Appending an id below the last one leaves the rows unordered until the next compaction
+    boolean ordered() {
+        return ordered;
+    }
+
+    boolean isLive(int row) {
+        return ids.getLong(row) > 0;
+    }
+
+    long id(int row) {
+        return Math.abs(ids.getLong(row));
+    }
+
+    // Deleted rows keep their last version, so an id that is saved again continues from it
+    long version(int row) {
+        return versions.getLong(row);
+    }
+
+    /** Binary search by id over live and deleted rows, with {@link java.util.Arrays} semantics. */
+    int findRow(long id) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = id(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    int firstRowAfter(long id) {
+        int row = findRow(id);
+        return row >= 0 ? row + 1 : -row - 1;
+    }
+
+    int append(Customer customer) {
+        if (rows > 0 && customer.getId() <= id(rows - 1)) {
+            ordered = false;
+        }
+        int row = rows++;
+        write(row, customer, false);
+        return row;
+    }
+
+    void update(int row, Customer customer) {
+        // A deleted row's strings were already counted as garbage when it was deleted
+        boolean live = isLive(row);
+        if (!live) {
+            deletedRows--;
+        }
+        write(row, customer, live);
+    }
+
+    void delete(int row) {
+        ids.putLong(row, -id(row));
+        deletedRows++;
+        customerCodes.discard(row);
+        firstNames.discard(row);
+        lastNames.discard(row);
+        fullNames.discard(row);
+        addresses.discard(row);
+        emails.discard(row);
+        phoneNumbers.discard(row);
+    }
+
+    Customer customer(int row) {
+        Customer customer = new Customer();
+        customer.setId(id(row));
+        customer.setVersion(versions.getLong(row));
+        customer.setCustomerCode(customerCodes.get(row));
+        customer.setFirstName(firstNames.get(row));
+        customer.setLastName(lastNames.get(row));
+        customer.setFullName(fullNames.get(row));
+        customer.setDateOfBirth(dateOfBirth(row));
+        customer.setGender(genders.decode(genderCodes.getInt(row)));
+        customer.setAddress(addresses.get(row));
+        customer.setCity(cities.decode(cityCodes.getInt(row)));
+        customer.setEmail(emails.get(row));
+        customer.setPhoneNumber(phoneNumbers.get(row));
+        return customer;
+    }
+
+    String customerCode(int row) {
+        return customerCodes.get(row);
+    }
+
+    int genderCode(int row) {
+        return genderCodes.getInt(row);
+    }
+
+    int cityCode(int row) {
+        return cityCodes.getInt(row);
+    }
+
+    LocalDate dateOfBirth(int row) {
+        int dateOfBirth = datesOfBirth.getInt(row);
+        return dateOfBirth == NO_DATE ? null : LocalDate.ofEpochDay(dateOfBirth);
+    }
+
+    boolean customerCodeEquals(int row, byte[] utf8) {
+        return customerCodes.equals(row, utf8);
+    }
+
+    String fullName(int row) {
+        return fullNames.get(row);
+    }
+
+    String email(int row) {
+        return emails.get(row);
+    }
+
+    String phoneNumber(int row) {
+        return phoneNumbers.get(row);
+    }
+
+    long garbageBytes() {
+        return customerCodes.garbageBytes + firstNames.garbageBytes + lastNames.garbageBytes
+                + fullNames.garbageBytes + addresses.garbageBytes + emails.garbageBytes + phoneNumbers.garbageBytes;
+    }
+
+    long usedBytes() {
+        return customerCodes.arena.usedBytes() + firstNames.arena.usedBytes() + lastNames.arena.usedBytes()
+                + fullNames.arena.usedBytes() + addresses.arena.usedBytes() + emails.arena.usedBytes()
+                + phoneNumbers.arena.usedBytes();
+    }
+
+    long offHeapBytes() {
+        return ids.allocatedBytes() + versions.allocatedBytes() + datesOfBirth.allocatedBytes() + genderCodes.allocatedBytes()
+                + cityCodes.allocatedBytes() + customerCodes.allocatedBytes() + firstNames.allocatedBytes()
+                + lastNames.allocatedBytes() + fullNames.allocatedBytes() + addresses.allocatedBytes()
+                + emails.allocatedBytes() + phoneNumbers.allocatedBytes();
+    }
+
+    /** Copies the live rows, in id order, into fresh columns without any garbage. */
+    CustomerColumns compact() {
+        CustomerColumns compacted = new CustomerColumns(genders, cities);
+        IntStream liveRows = IntStream.range(0, rows).filter(this::isLive);
+        if (!ordered) {
+            liveRows = liveRows.boxed().sorted((a, b) -> Long.compare(id(a), id(b))).mapToInt(Integer::intValue);
+        }
+        liveRows.forEachOrdered(row -> compacted.copyRow(this, row));
+        return compacted;
+    }
+
+    private void copyRow(CustomerColumns source, int sourceRow) {
+        int row = rows++;
+        ids.putLong(row, source.ids.getLong(sourceRow));
+        versions.putLong(row, source.versions.getLong(sourceRow));
+        datesOfBirth.putInt(row, source.datesOfBirth.getInt(sourceRow));
+        genderCodes.putInt(row, source.genderCodes.getInt(sourceRow));
+        cityCodes.putInt(row, source.cityCodes.getInt(sourceRow));
+        customerCodes.copy(row, source.customerCodes, sourceRow);
+        firstNames.copy(row, source.firstNames, sourceRow);
+        lastNames.copy(row, source.lastNames, sourceRow);
+        fullNames.copy(row, source.fullNames, sourceRow);
+        addresses.copy(row, source.addresses, sourceRow);
+        emails.copy(row, source.emails, sourceRow);
+        phoneNumbers.copy(row, source.phoneNumbers, sourceRow);
+    }
+
+    private void write(int row, Customer customer, boolean replace) {
+        ids.putLong(row, customer.getId());
+        versions.putLong(row, customer.getVersion());
+        LocalDate dateOfBirth = customer.getDateOfBirth();
+        datesOfBirth.putInt(row, dateOfBirth == null ? NO_DATE : Math.toIntExact(dateOfBirth.toEpochDay()));
+        genderCodes.putInt(row, genders.encode(customer.getGender()));
+        cityCodes.putInt(row, cities.encode(customer.getCity()));
+        customerCodes.set(row, customer.getCustomerCode(), replace);
+        firstNames.set(row, customer.getFirstName(), replace);
+        lastNames.set(row, customer.getLastName(), replace);
+        fullNames.set(row, customer.getFullName(), replace);
+        addresses.set(row, customer.getAddress(), replace);
+        emails.set(row, customer.getEmail(), replace);
+        phoneNumbers.set(row, customer.getPhoneNumber(), replace);
+    }
+
+    // A string field: one arena address per row, or NULL_ADDRESS for null
+    private static final class StringColumn {
+
+        private static final long NULL_ADDRESS = -1L;
+
+        private final OffHeapColumn addresses = new OffHeapColumn(Long.BYTES);
+        private final Utf8Arena arena = new Utf8Arena();
+        private long garbageBytes;
+
+        String get(int row) {
+            long address = addresses.getLong(row);
+            return address == NULL_ADDRESS ? null : arena.get(address);
+        }
+
+        boolean equals(int row, byte[] utf8) {
+            long address = addresses.getLong(row);
+            return address != NULL_ADDRESS && arena.equals(address, utf8);
+        }
+
+        void set(int row, String value, boolean replace) {
+            if (replace) {
+                discard(row);
+            }
+            addresses.putLong(row, value == null ? NULL_ADDRESS : arena.append(value));
+        }
+
+        // Counts the row's string as garbage; the address stays readable until compaction
+        void discard(int row) {
+            long address = addresses.getLong(row);
+            if (address != NULL_ADDRESS) {
+                garbageBytes += Integer.BYTES + arena.length(address);
+            }
+        }
+
+        void copy(int row, StringColumn source, int sourceRow) {
+            long address = source.addresses.getLong(sourceRow);
+            addresses.putLong(row, address == NULL_ADDRESS ? NULL_ADDRESS : arena.append(source.arena.bytes(address)));
+        }
+
+        long allocatedBytes() {
+            return addresses.allocatedBytes() + arena.allocatedBytes();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * A stored customer together with the index keys captured at the time it was saved.
+ * Indexes are always maintained from these captured keys, so a caller mutating the
+ * {@link Customer} instance after saving it can never leave a stale index entry behind.
+ */
+final class CustomerEntry {
+
+    private final Customer customer;
+    private final String customerCode;
+    private final String customerCodeKey;
+    private final String fullNameKey;
+    private final String emailKey;
+    private final String phoneNumberKey;
+    private final String phoneNumberDigits;
+    private final String city;
+    private final String gender;
+    private final String cityKey;
+    private final String genderKey;
+    private final LocalDate dateOfBirth;
+    // Stamped by the writer before the entry is published; the customer's own field can be
+    // changed by whoever holds the instance
+    private long version;
+
+    CustomerEntry(Customer customer) {
+        this.customer = customer;
+        this.customerCode = customer.getCustomerCode();
+        // Folded once here, so searches compare against them without folding anything per customer
+        this.customerCodeKey = TextFolding.fold(customerCode);
+        this.fullNameKey = TextFolding.fold(customer.getFullName());
+        this.emailKey = TextFolding.fold(customer.getEmail());
+        this.phoneNumberKey = customer.getPhoneNumber();
+        this.phoneNumberDigits = PhoneNumbers.canonicalize(phoneNumberKey);
+        this.city = customer.getCity();
+        this.gender = customer.getGender();
+        this.cityKey = FilterCriteria.key(city);
+        this.genderKey = FilterCriteria.key(gender);
+        this.dateOfBirth = customer.getDateOfBirth();
+        this.version = customer.getVersion() != null ? customer.getVersion() : 0;
+    }
+
+    Customer customer() {
+        return customer;
+    }
+
+    Long id() {
+        return customer.getId();
+    }
+
+    long version() {
+        return version;
+    }
+
+    // Sets the version on the entry and its customer
+    void stamp(long version) {
+        this.version = version;
+        customer.setVersion(version);
+    }
+
+    String customerCode() {
+        return customerCode;
+    }
+
+    String customerCodeKey() {
+        return customerCodeKey;
+    }
+
+    String fullNameKey() {
+        return fullNameKey;
+    }
+
+    String emailKey() {
+        return emailKey;
+    }
+
+    String phoneNumberKey() {
+        return phoneNumberKey;
+    }
+
+    String phoneNumberDigits() {
+        return phoneNumberDigits;
+    }
+
+    String city() {
+        return city;
+    }
+
+    String gender() {
+        return gender;
+    }
+
+    String cityKey() {
+        return cityKey;
+    }
+
+    String genderKey() {
+        return genderKey;
+    }
+
+    LocalDate dateOfBirth() {
+        return dateOfBirth;
+    }
+
+    MonthDay birthday() {
+        return dateOfBirth != null ? MonthDay.from(dateOfBirth) : null;
+    }
+}
@@ -1,23 +1,58 @@
 package vn.com.msb.repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.springframework.stereotype.Repository;
 
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
 
 @Repository
 public interface CustomerRepository {
     List<Customer> findAll();
+    CustomerPage findAll(Long cursor, int limit);
+    Stream<Customer> streamAll();
     Optional<Customer> findById(Long id);
     Optional<Customer> findByCustomerCode(String customerCode);
     List<Customer> findByFullNameContaining(String fullName);
     List<Customer> findByEmailContaining(String email);
     List<Customer> findByPhoneNumberContaining(String phoneNumber);
+    List<Customer> findByPhoneNumberEndingWith(String phoneNumber);
     List<Customer> search(String keyword);
+    CustomerPage search(String keyword, Long cursor, int limit);
+    // Up to limit matches of search, best first: exact code, name prefix, then any other match
+    List<Customer> searchRanked(String keyword, int limit);
+    // Up to limit customers whose name words are within maxEdits typos of the keyword's, closest first
+    List<Customer> searchFuzzy(String keyword, int maxEdits, int limit);
+    // Up to limit customers after the cursor, in id order, that meet every criterion of the filter
+    CustomerPage filter(CustomerFilter filter, Long cursor, int limit);
+    // Up to limit customers born between from and to, both inclusive and either one null for no
+    // bound, oldest first
+    List<Customer> findByDateOfBirthBetween(LocalDate from, LocalDate to, int limit);
+    // Up to limit customers with a birthday in the days days starting at from, soonest first
+    List<Customer> findUpcomingBirthdays(LocalDate from, int days, int limit);
+    // Number of customers per city and per gender, kept up to date by every write
+    CustomerCounts countCustomers();
     Customer save(Customer customer);
+    // Saves an existing customer only if its stored version is still expectedVersion, checked
+    // atomically with the write; empty, with nothing written, if it has changed or is gone
+    Optional<Customer> saveIfVersion(Customer customer, long expectedVersion);
+    List<Customer> saveAll(List<Customer> customers);
+    // Creates the new customers whose codes no other customer holds, checked atomically with the
+    // write, and returns the codes that were taken. With allOrNothing one taken code keeps the
+    // whole batch out. A customer left out keeps its null id.
+    Set<String> saveAllIfCodesFree(List<Customer> customers, boolean allOrNothing);
     void deleteById(Long id);
     boolean existsByCustomerCode(String customerCode);
     boolean existsByCustomerCodeAndIdNot(String customerCode, Long id);
+    Set<String> findExistingCustomerCodes(Collection<String> customerCodes);
+    // Changes after every save or delete, once its change is visible
+    long generation();
 }
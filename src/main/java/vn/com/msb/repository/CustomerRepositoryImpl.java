@@ -1,58 +1,244 @@
 package vn.com.msb.repository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.MonthDay;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
 
 @Repository
+@ConditionalOnProperty(name = "customer.store", havingValue = "heap", matchIfMissing = true)
 public class CustomerRepositoryImpl implements CustomerRepository {
     
-    private final Map<Long, Customer> customerStore = new HashMap<>();
-    private Long nextId = 1L;
+    private static final Logger log = LoggerFactory.getLogger(CustomerRepositoryImpl.class);
+    
+    private static final int LOCK_STRIPES = 64;
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    // Versions start at 1, so no stored customer ever has this one
+    private static final long ANY_VERSION = -1;
+    
+    // Readers iterate the weakly consistent views of the map, so findAll/search never block
+    // writers and never observe a half-written entry. Keeping it sorted by id makes every
+    // listing come back in a stable order and lets a page start right after its cursor.
+    private final ConcurrentNavigableMap<Long, CustomerEntry> customerStore = new ConcurrentSkipListMap<>();
+    private final AtomicLong customerCount = new AtomicLong();
+    private final ConcurrentMap<String, Long> customerCodeIndex = new ConcurrentHashMap<>();
+    private final TrigramIndex fullNameIndex = new TrigramIndex(CustomerEntry::fullNameKey);
+    private final TrigramIndex emailIndex = new TrigramIndex(CustomerEntry::emailKey);
+    private final TrigramIndex phoneNumberIndex = new TrigramIndex(CustomerEntry::phoneNumberKey);
+    private final TrigramIndex customerCodeSearchIndex = new TrigramIndex(CustomerEntry::customerCodeKey);
+    private final TrigramIndex phoneNumberDigitsIndex = new TrigramIndex(CustomerEntry::phoneNumberDigits);
+    private final PhoneNumberSuffixIndex phoneNumberSuffixIndex = new PhoneNumberSuffixIndex();
+    private final NameTokenIndex fullNameTokenIndex = new NameTokenIndex();
+    private final AttributeIndex<String> cityIndex = new AttributeIndex<>(CustomerEntry::cityKey);
+    private final AttributeIndex<String> genderIndex = new AttributeIndex<>(CustomerEntry::genderKey);
+    private final AttributeIndex<LocalDate> dateOfBirthIndex = new AttributeIndex<>(CustomerEntry::dateOfBirth);
+    private final AttributeIndex<MonthDay> birthdayIndex = new AttributeIndex<>(CustomerEntry::birthday);
+    private final GroupCounts cityCounts = new GroupCounts();
+    private final GroupCounts genderCounts = new GroupCounts();
+    private final AtomicLong nextId = new AtomicLong(1L);
+    // Bumped after every change has become visible, so a reader that samples it before reading
+    // can never attach a generation to data older than that generation
+    private final AtomicLong generation = new AtomicLong();
+    
+    // Writers to the same id are serialized so the store and its indexes change together;
+    // writers to different ids only contend when they hash to the same stripe.
+    private final ReentrantLock[] writeLocks = new ReentrantLock[LOCK_STRIPES];
+    
+    // Optional durability: every change is logged before it is applied, under the same stripe lock
+    private final CustomerWriteAheadLog writeAheadLog;
+    private final ExecutorService checkpointExecutor;
+    
+    // Optional warm start: until a mapped snapshot has been loaded into the store and indexes,
+    // findById decodes customers straight from the mapping and every other operation waits
+    private final CustomerSnapshotFile snapshotFile;
+    private final CompletableFuture<Void> snapshotLoaded;
+    private volatile CustomerSnapshotFile.Mapped loadingSnapshot;
+    
+    // Optional: results of unpaged keyword searches, evicted by the writers whose change could
+    // affect them once that change is visible
+    private final CustomerSearchCache searchCache;
+    
+    public CustomerRepositoryImpl() {
+        this(null, null);
+    }
+    
+    public CustomerRepositoryImpl(@Nullable CustomerWriteAheadLog writeAheadLog) {
+        this(writeAheadLog, null);
+    }
+    
+    public CustomerRepositoryImpl(@Nullable CustomerWriteAheadLog writeAheadLog,
+            @Nullable CustomerSnapshotFile snapshotFile) {
+        this(writeAheadLog, snapshotFile, null);
+    }
+    
+    @Autowired
+    public CustomerRepositoryImpl(@Nullable CustomerWriteAheadLog writeAheadLog,
+            @Nullable CustomerSnapshotFile snapshotFile, @Nullable CustomerSearchCache searchCache) {
+        this.searchCache = searchCache;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        this.writeAheadLog = writeAheadLog;
+        if (writeAheadLog != null && snapshotFile != null) {
+            log.warn("Ignoring customer snapshot {}: the write-ahead log keeps its own snapshots", snapshotFile.path());
+        }
+        this.snapshotFile = writeAheadLog == null ? snapshotFile : null;
+        this.snapshotLoaded = this.snapshotFile != null ? loadSnapshot(this.snapshotFile)
+                : CompletableFuture.completedFuture(null);
+        if (writeAheadLog == null) {
+            this.checkpointExecutor = null;
+            return;
+        }
+        this.checkpointExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long recoveredNextId = writeAheadLog.recover(new CustomerWriteAheadLog.Replay() {
+                @Override
+                public void save(Customer customer) {
+                    apply(new CustomerEntry(customer));
+                }
+                
+                @Override
+                public void delete(long id) {
+                    remove(id);
+                }
+            });
+            nextId.set(recoveredNextId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover customers from the write-ahead log", e);
+        }
+    }
     
     @Override
     public List<Customer> findAll() {
-        return new ArrayList<>(customerStore.values());
+        awaitSnapshotLoaded();
+        return customerStore.values().stream()
+                .map(CustomerEntry::customer)
+                .collect(Collectors.toList());
+    }
+    
+    @Override
+    public CustomerPage findAll(Long cursor, int limit) {
+        awaitSnapshotLoaded();
+        List<Customer> customers = new ArrayList<>();
+        for (CustomerEntry entry : entriesAfter(cursor).values()) {
+            customers.add(entry.customer());
+            if (customers.size() > limit) {
+                break;
+            }
+        }
+        return toPage(customers, limit);
+    }
+    
+    // Lazily walks the store in id order without copying it, for callers that write out
+    // every customer as they go
+    @Override
+    public Stream<Customer> streamAll() {
+        awaitSnapshotLoaded();
+        return customerStore.values().stream().map(CustomerEntry::customer);
     }
     
     @Override
     public Optional<Customer> findById(Long id) {
-        return Optional.ofNullable(customerStore.get(id));
+        if (id == null) {
+            return Optional.empty();
+        }
+        // Read before the store: once the load has finished, the store holds every customer
+        CustomerSnapshotFile.Mapped snapshot = loadingSnapshot;
+        CustomerEntry entry = customerStore.get(id);
+        if (entry == null && snapshot != null) {
+            return Optional.ofNullable(snapshot.findById(id));
+        }
+        return Optional.ofNullable(entry).map(CustomerEntry::customer);
     }
     
     @Override
     public Optional<Customer> findByCustomerCode(String customerCode) {
-        return customerStore.values().stream()
-                .filter(customer -> customer.getCustomerCode().equals(customerCode))
-                .findFirst();
+        return findEntryByCustomerCode(customerCode).map(CustomerEntry::customer);
     }
     
     @Override
     public List<Customer> findByFullNameContaining(String fullName) {
-        return customerStore.values().stream()
-                .filter(customer -> customer.getFullName().toLowerCase().contains(fullName.toLowerCase()))
-                .collect(Collectors.toList());
+        return findContaining(TextFolding.fold(fullName), fullNameIndex);
     }
     
     @Override
     public List<Customer> findByEmailContaining(String email) {
-        return customerStore.values().stream()
-                .filter(customer -> customer.getEmail().toLowerCase().contains(email.toLowerCase()))
-                .collect(Collectors.toList());
+        return findContaining(TextFolding.fold(email), emailIndex);
     }
     
     @Override
     public List<Customer> findByPhoneNumberContaining(String phoneNumber) {
-        return customerStore.values().stream()
-                .filter(customer -> customer.getPhoneNumber().contains(phoneNumber))
-                .collect(Collectors.toList());
+        String digits = PhoneNumbers.canonicalize(phoneNumber);
+        if (digits.isEmpty()) {
+            // Nothing to canonicalize, so keep matching the number as it was entered
+            return findContaining(phoneNumber, phoneNumberIndex);
+        }
+        // Only the number as stored keeps an international prefix, so "84912" must also be
+        // matched as typed to find "+84912345678", whose canonical form is "0912345678"
+        return findMatching(List.of(new TermMatch(phoneNumberIndex, phoneNumber), phoneNumberDigitsTerm(phoneNumber)),
+                null, UNLIMITED);
+    }
+    
+    @Override
+    public List<Customer> findByPhoneNumberEndingWith(String phoneNumber) {
+        String digits = PhoneNumbers.canonicalize(phoneNumber);
+        if (digits == null || digits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        awaitSnapshotLoaded();
+        Map<Long, Customer> matches = new TreeMap<>();
+        for (Long id : phoneNumberSuffixIndex.findEndingWith(digits)) {
+            CustomerEntry entry = customerStore.get(id);
+            if (entry != null && entry.phoneNumberDigits() != null && entry.phoneNumberDigits().endsWith(digits)) {
+                matches.put(id, entry.customer());
+            }
+        }
+        return new ArrayList<>(matches.values());
     }
     
     @Override
@@ -60,43 +246,861 @@ public class CustomerRepositoryImpl implements CustomerRepository {
         if (keyword == null || keyword.trim().isEmpty()) {
             return findAll();
         }
-        
-        String searchTerm = keyword.toLowerCase().trim();
-        
-        return customerStore.values().stream()
-                .filter(customer -> 
-                    (customer.getFullName() != null && customer.getFullName().toLowerCase().contains(searchTerm)) ||
-                    (customer.getEmail() != null && customer.getEmail().toLowerCase().contains(searchTerm)) ||
-                    (customer.getPhoneNumber() != null && customer.getPhoneNumber().contains(searchTerm)) ||
-                    (customer.getCustomerCode() != null && customer.getCustomerCode().toLowerCase().contains(searchTerm))
-                )
-                .collect(Collectors.toList());
+        List<TermMatch> terms = searchTerms(keyword);
+        if (searchCache == null) {
+            return findMatching(terms, null, UNLIMITED);
+        }
+        CustomerSearchCache.Lookup lookup = searchCache.lookUp(normalize(keyword),
+                entry -> matchesAny(entry, terms));
+        if (lookup.customers() != null) {
+            return new ArrayList<>(lookup.customers());
+        }
+        List<Customer> customers = null;
+        try {
+            customers = findMatching(terms, null, UNLIMITED);
+            return customers;
+        } finally {
+            searchCache.complete(lookup, customers);
+        }
+    }
+    
+    @Override
+    public CustomerPage search(String keyword, Long cursor, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(cursor, limit);
+        }
+        // Pages are served from a cached result when there is one, but don't fill the cache
+        List<Customer> cached = searchCache != null ? searchCache.peek(normalize(keyword)) : null;
+        if (cached != null) {
+            return pageOf(cached, cursor, limit);
+        }
+        return toPage(findMatching(searchTerms(keyword), cursor, limit + 1), limit);
+    }
+    
+    // Exact codes come straight from the code index. Names are then walked in id order until
+    // limit of them start with the keyword, and the other matches only if that leaves room.
+    @Override
+    public List<Customer> searchRanked(String keyword, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        awaitSnapshotLoaded();
+        RankedMatches matches = new RankedMatches(keyword, limit);
+        for (String customerCode : matches.exactCodes()) {
+            findEntryByCustomerCode(customerCode).ifPresent(entry -> offer(matches, entry));
+        }
+        String term = normalize(keyword);
+        offerRanked(List.of(new TermMatch(fullNameIndex, term)), matches,
+                RankedMatches.NAME_PREFIX, RankedMatches.NAME_WORD_PREFIX);
+        if (!matches.settled(RankedMatches.NAME_WORD_PREFIX)) {
+            offerRanked(searchTerms(keyword), matches, RankedMatches.OTHER, RankedMatches.OTHER);
+        }
+        return matches.toList();
+    }
+    
+    // The index narrows the customers down to those whose name has words close to the keyword's;
+    // each is checked again against its current name before it is ranked
+    @Override
+    public List<Customer> searchFuzzy(String keyword, int maxEdits, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        awaitSnapshotLoaded();
+        List<String> queryTokens = NameTokenIndex.tokens(normalize(keyword));
+        TopMatches matches = new TopMatches(limit);
+        for (Map.Entry<Long, Integer> candidate : fullNameTokenIndex.find(queryTokens, maxEdits).entrySet()) {
+            if (!matches.accepts(candidate.getValue(), candidate.getKey())) {
+                continue;
+            }
+            CustomerEntry entry = customerStore.get(candidate.getKey());
+            int edits = entry != null ? NameTokenIndex.edits(queryTokens, entry.fullNameKey(), maxEdits) : -1;
+            if (edits >= 0) {
+                matches.offer(edits, entry.id(), entry.customer());
+            }
+        }
+        return matches.toList();
+    }
+    
+    // Walks the ids of the most selective criterion's index and checks the others on each entry,
+    // or walks the store in id order when even that index holds too many ids for one page
+    @Override
+    public CustomerPage filter(CustomerFilter filter, Long cursor, int limit) {
+        FilterCriteria criteria = FilterCriteria.of(filter);
+        if (criteria.isEmpty()) {
+            return findAll(cursor, limit);
+        }
+        awaitSnapshotLoaded();
+        IndexScan scan = planFilter(criteria);
+        List<Customer> customers = new ArrayList<>();
+        if (scan.estimate() == 0) {
+            return toPage(customers, limit);
+        }
+        // Same trade-off as findMatching: about (limit + 1) * n / matches entries visited in id
+        // order versus one visit per id of the index
+        if (scan.estimate() * scan.estimate() <= (long) (limit + 1) * customerCount.get()) {
+            long[] ids = scan.ids().get();
+            for (int i = cursor == null ? 0 : firstAfter(ids, cursor); i < ids.length && customers.size() <= limit; i++) {
+                if (i > 0 && ids[i] == ids[i - 1]) {
+                    continue;
+                }
+                CustomerEntry entry = customerStore.get(ids[i]);
+                if (entry != null && criteria.matches(entry)) {
+                    customers.add(entry.customer());
+                }
+            }
+            return toPage(customers, limit);
+        }
+        for (CustomerEntry entry : entriesAfter(cursor).values()) {
+            if (criteria.matches(entry)) {
+                customers.add(entry.customer());
+                if (customers.size() > limit) {
+                    break;
+                }
+            }
+        }
+        return toPage(customers, limit);
+    }
+    
+    // Picks the criterion whose index holds the fewest ids; the equality indexes know their
+    // counts outright, and the range count stops as soon as it can no longer be the smallest
+    private IndexScan planFilter(FilterCriteria criteria) {
+        IndexScan best = null;
+        if (criteria.city() != null) {
+            best = new IndexScan(cityIndex.count(criteria.city()), () -> cityIndex.ids(criteria.city()));
+        }
+        if (criteria.gender() != null) {
+            long estimate = genderIndex.count(criteria.gender());
+            if (best == null || estimate < best.estimate()) {
+                best = new IndexScan(estimate, () -> genderIndex.ids(criteria.gender()));
+            }
+        }
+        if (criteria.hasDateOfBirthRange()) {
+            long bound = best != null ? best.estimate() : Long.MAX_VALUE;
+            long estimate = dateOfBirthIndex.count(criteria.bornFrom(), criteria.bornTo(), bound);
+            if (best == null || estimate < best.estimate()) {
+                best = new IndexScan(estimate, () -> dateOfBirthIndex.ids(criteria.bornFrom(), criteria.bornTo()));
+            }
+        }
+        return best;
+    }
+    
+    // Starts at the first date in range and stops at the limit-th customer
+    @Override
+    public List<Customer> findByDateOfBirthBetween(LocalDate from, LocalDate to, int limit) {
+        awaitSnapshotLoaded();
+        List<Customer> customers = new ArrayList<>();
+        dateOfBirthIndex.forEach(from, to, (dateOfBirth, id) -> {
+            CustomerEntry entry = customerStore.get(id);
+            // Only under its current date, so a customer moved during the walk comes back once
+            if (entry != null && dateOfBirth.equals(entry.dateOfBirth())) {
+                customers.add(entry.customer());
+            }
+            return customers.size() < limit;
+        });
+        return customers;
+    }
+    
+    // Looks up the birthdays of each day of the window in turn, and stops after the day by which
+    // limit customers have had theirs
+    @Override
+    public List<Customer> findUpcomingBirthdays(LocalDate from, int days, int limit) {
+        awaitSnapshotLoaded();
+        TopMatches matches = new TopMatches(limit);
+        for (int offset = 0; offset < days && !matches.settled(offset - 1); offset++) {
+            int rank = offset;
+            for (MonthDay birthday : Birthdays.on(from.plusDays(offset))) {
+                birthdayIndex.forEach(birthday, birthday, (key, id) -> {
+                    if (!matches.accepts(rank, id)) {
+                        return false;
+                    }
+                    CustomerEntry entry = customerStore.get(id);
+                    if (entry != null && key.equals(entry.birthday())) {
+                        matches.offer(rank, id, entry.customer());
+                    }
+                    return true;
+                });
+            }
+        }
+        return matches.toList();
+    }
+    
+    // The counters move with every write, so nothing is scanned here
+    @Override
+    public CustomerCounts countCustomers() {
+        awaitSnapshotLoaded();
+        return new CustomerCounts(customerCount.get(), cityCounts.toList(), genderCounts.toList());
     }
     
     @Override
     public Customer save(Customer customer) {
+        awaitSnapshotLoaded();
         if (customer.getId() == null) {
             // Creating a new customer
-            customer.setId(nextId++);
+            customer.setId(nextId.getAndIncrement());
+        }
+        return write(customer, ANY_VERSION);
+    }
+    
+    @Override
+    public Optional<Customer> saveIfVersion(Customer customer, long expectedVersion) {
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("Customer id is required to compare versions");
+        }
+        awaitSnapshotLoaded();
+        return Optional.ofNullable(write(customer, expectedVersion));
+    }
+    
+    // The version check and the write happen under the same stripe lock, so two writers that
+    // both expect a version cannot both succeed. Returns null if the check fails.
+    private Customer write(Customer customer, long expectedVersion) {
+        CustomerEntry entry = new CustomerEntry(customer);
+        CustomerEntry previous;
+        boolean checkpointDue = false;
+        ReentrantLock lock = writeLockFor(entry.id());
+        lock.lock();
+        try {
+            previous = customerStore.get(entry.id());
+            if (expectedVersion != ANY_VERSION
+                    && (previous == null || previous.version() != expectedVersion)) {
+                return null;
+            }
+            entry.stamp(nextVersion(previous));
+            if (writeAheadLog != null) {
+                checkpointDue = writeAheadLog.appendSave(customer);
+            }
+            apply(entry);
+            generation.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        invalidateSearches(previous != null ? List.of(previous, entry) : List.of(entry));
+        if (checkpointDue) {
+            scheduleCheckpoint();
         }
-        customerStore.put(customer.getId(), customer);
         return customer;
     }
     
+    // The whole batch is logged as one record, with a single fsync, and applied while holding
+    // the stripe locks of all of its ids, so a checkpoint sees either none of it or all of it
+    @Override
+    public List<Customer> saveAll(List<Customer> customers) {
+        awaitSnapshotLoaded();
+        long newCustomers = customers.stream().filter(customer -> customer.getId() == null).count();
+        long id = nextId.getAndAdd(newCustomers);
+        List<CustomerEntry> entries = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            if (customer.getId() == null) {
+                customer.setId(id++);
+            }
+            entries.add(new CustomerEntry(customer));
+        }
+        List<CustomerEntry> changed;
+        boolean checkpointDue = false;
+        List<ReentrantLock> locks = writeLocksFor(entries);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            changed = stampVersions(entries);
+            if (writeAheadLog != null && !customers.isEmpty()) {
+                checkpointDue = writeAheadLog.appendSaveAll(customers);
+            }
+            applyAll(entries);
+            generation.incrementAndGet();
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
+        changed.addAll(entries);
+        invalidateSearches(changed);
+        if (checkpointDue) {
+            scheduleCheckpoint();
+        }
+        return customers;
+    }
+    
+    // Each code is claimed in the code index while the batch's stripe locks are held, so of two
+    // writers creating the same code only the first one to claim it saves its customer
+    @Override
+    public Set<String> saveAllIfCodesFree(List<Customer> customers, boolean allOrNothing) {
+        awaitSnapshotLoaded();
+        long id = nextId.getAndAdd(customers.size());
+        List<CustomerEntry> entries = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            if (customer.getId() != null) {
+                throw new IllegalArgumentException("Customer to create already has an id: " + customer.getId());
+            }
+            customer.setId(id++);
+            entries.add(new CustomerEntry(customer));
+        }
+        Set<String> taken = new LinkedHashSet<>();
+        List<CustomerEntry> claimed = new ArrayList<>(entries.size());
+        boolean checkpointDue = false;
+        List<ReentrantLock> locks = writeLocksFor(entries);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            for (CustomerEntry entry : entries) {
+                if (entry.customerCode() == null
+                        || customerCodeIndex.putIfAbsent(entry.customerCode(), entry.id()) == null) {
+                    claimed.add(entry);
+                } else {
+                    taken.add(entry.customerCode());
+                    entry.customer().setId(null);
+                }
+            }
+            if (claimed.isEmpty() || allOrNothing && !taken.isEmpty()) {
+                releaseClaims(claimed);
+                return taken;
+            }
+            stampVersions(claimed);
+            if (writeAheadLog != null) {
+                try {
+                    checkpointDue = writeAheadLog.appendSaveAll(
+                            claimed.stream().map(CustomerEntry::customer).toList());
+                } catch (RuntimeException e) {
+                    releaseClaims(claimed);
+                    throw e;
+                }
+            }
+            applyAll(claimed);
+            generation.incrementAndGet();
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
+        invalidateSearches(claimed);
+        if (checkpointDue) {
+            scheduleCheckpoint();
+        }
+        return taken;
+    }
+    
+    // Gives back codes claimed for customers that end up not being saved, along with their ids
+    private void releaseClaims(List<CustomerEntry> claimed) {
+        for (CustomerEntry entry : claimed) {
+            removeCustomerCode(entry);
+            entry.customer().setId(null);
+        }
+    }
+    
     @Override
     public void deleteById(Long id) {
-        customerStore.remove(id);
+        if (id == null) {
+            return;
+        }
+        awaitSnapshotLoaded();
+        CustomerEntry previous;
+        boolean checkpointDue = false;
+        ReentrantLock lock = writeLockFor(id);
+        lock.lock();
+        try {
+            if (!customerStore.containsKey(id)) {
+                return;
+            }
+            if (writeAheadLog != null) {
+                checkpointDue = writeAheadLog.appendDelete(id);
+            }
+            previous = remove(id);
+            generation.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        invalidateSearches(List.of(previous));
+        if (checkpointDue) {
+            scheduleCheckpoint();
+        }
+    }
+    
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+    
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        if (checkpointExecutor != null) {
+            checkpointExecutor.shutdown();
+            checkpointExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        // A snapshot that failed to load is left in place rather than replaced by a partial store
+        if (snapshotFile != null && !snapshotLoaded.isCompletedExceptionally()) {
+            writeSnapshot();
+        }
+    }
+    
+    void writeSnapshot() throws IOException {
+        snapshotFile.write(nextId.get(), streamAll().iterator());
+    }
+    
+    private static long nextVersion(@Nullable CustomerEntry current) {
+        return current != null ? current.version() + 1 : 1;
+    }
+    
+    // An id that appears twice in a batch gets two versions, as if it had been saved twice.
+    // Returns the stored entries that the batch replaces.
+    private List<CustomerEntry> stampVersions(List<CustomerEntry> entries) {
+        Map<Long, Long> batchVersions = new HashMap<>();
+        List<CustomerEntry> replaced = new ArrayList<>();
+        for (CustomerEntry entry : entries) {
+            Long previous = batchVersions.get(entry.id());
+            long version;
+            if (previous != null) {
+                version = previous + 1;
+            } else {
+                CustomerEntry current = customerStore.get(entry.id());
+                if (current != null) {
+                    replaced.add(current);
+                }
+                version = nextVersion(current);
+            }
+            entry.stamp(version);
+            batchVersions.put(entry.id(), version);
+        }
+        return replaced;
+    }
+    
+    // Called once the change is visible, outside the stripe locks: a search that read the store
+    // before that is either still pending, and gets marked stale, or already cached and evicted
+    private void invalidateSearches(List<CustomerEntry> changed) {
+        if (searchCache != null) {
+            searchCache.invalidate(changed);
+        }
+    }
+    
+    // Applies a change to the store and its indexes; callers hold the id's stripe lock, except
+    // during recovery and snapshot loading, which no writer can run alongside
+    private void apply(CustomerEntry entry) {
+        CustomerEntry previous = customerStore.put(entry.id(), entry);
+        if (previous != null) {
+            reindex(previous, entry);
+        } else {
+            customerCount.incrementAndGet();
+            index(entry);
+        }
+    }
+    
+    // Same as applying each entry in turn, but new customers are indexed together
+    private void applyAll(List<CustomerEntry> entries) {
+        List<CustomerEntry> added = new ArrayList<>(entries.size());
+        for (CustomerEntry entry : entries) {
+            CustomerEntry previous = customerStore.put(entry.id(), entry);
+            if (previous == null) {
+                customerCount.incrementAndGet();
+                added.add(entry);
+                continue;
+            }
+            // The previous entry may itself be waiting to be indexed, earlier in the batch
+            indexAll(added);
+            added.clear();
+            reindex(previous, entry);
+        }
+        indexAll(added);
+    }
+    
+    private CustomerEntry remove(Long id) {
+        CustomerEntry previous = customerStore.remove(id);
+        if (previous != null) {
+            customerCount.decrementAndGet();
+            unindex(previous);
+        }
+        return previous;
+    }
+    
+    private CompletableFuture<Void> loadSnapshot(CustomerSnapshotFile file) {
+        CustomerSnapshotFile.Mapped snapshot;
+        try {
+            snapshot = file.map();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open customer snapshot " + file.path(), e);
+        }
+        if (snapshot == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        nextId.set(snapshot.nextId());
+        loadingSnapshot = snapshot;
+        long start = System.nanoTime();
+        return CompletableFuture.runAsync(() -> {
+            snapshot.forEach(customer -> apply(new CustomerEntry(customer)));
+            loadingSnapshot = null;
+            log.info("Loaded {} customers from snapshot {} in {} ms", snapshot.size(), file.path(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "customer-snapshot-load");
+            thread.setDaemon(true);
+            thread.start();
+        }).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                loadingSnapshot = null;
+                log.error("Failed to load customer snapshot {}; serving the {} customers loaded before the failure",
+                        file.path(), customerCount.get(), failure);
+            }
+        });
+    }
+    
+    // A failed load is not rethrown to every caller: it is reported by snapshotLoadFailure()
+    private void awaitSnapshotLoaded() {
+        if (loadingSnapshot != null) {
+            snapshotLoaded.exceptionally(failure -> null).join();
+        }
+    }
+    
+    /**
+     * Why the warm-start snapshot could not be loaded, if it could not. The store then holds only
+     * the customers loaded before the failure, and keeps the snapshot file on close.
+     */
+    public Optional<Throwable> snapshotLoadFailure() {
+        return snapshotLoaded.state() == Future.State.FAILED ? Optional.of(snapshotLoaded.exceptionNow())
+                : Optional.empty();
+    }
+    
+    private void scheduleCheckpoint() {
+        checkpointExecutor.execute(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                log.error("Customer checkpoint failed; writes go on to the current log segment until a later one succeeds", e);
+            }
+        });
+    }
+    
+    // Starts a new log segment while no write is between its append and its apply, then
+    // snapshots the store without blocking writers
+    void checkpoint() throws IOException {
+        long segment;
+        for (ReentrantLock lock : writeLocks) {
+            lock.lock();
+        }
+        try {
+            segment = writeAheadLog.rotate();
+        } finally {
+            for (ReentrantLock lock : writeLocks) {
+                lock.unlock();
+            }
+        }
+        writeAheadLog.writeSnapshot(segment, nextId.get(), streamAll().iterator());
     }
     
     @Override
     public boolean existsByCustomerCode(String customerCode) {
-        return customerStore.values().stream()
-                .anyMatch(customer -> customer.getCustomerCode().equals(customerCode));
+        return findEntryByCustomerCode(customerCode).isPresent();
     }
     
     @Override
     public boolean existsByCustomerCodeAndIdNot(String customerCode, Long id) {
-        return customerStore.values().stream()
-                .anyMatch(customer -> customer.getCustomerCode().equals(customerCode) && !customer.getId().equals(id));
+        return findEntryByCustomerCode(customerCode)
+                .filter(entry -> !entry.id().equals(id))
+                .isPresent();
+    }
+    
+    @Override
+    public Set<String> findExistingCustomerCodes(Collection<String> customerCodes) {
+        Set<String> existing = new HashSet<>();
+        for (String customerCode : customerCodes) {
+            if (findEntryByCustomerCode(customerCode).isPresent()) {
+                existing.add(customerCode);
+            }
+        }
+        return existing;
+    }
+    
+    private Optional<CustomerEntry> findEntryByCustomerCode(String customerCode) {
+        if (customerCode == null) {
+            return Optional.empty();
+        }
+        awaitSnapshotLoaded();
+        Long id = customerCodeIndex.get(customerCode);
+        if (id == null) {
+            return Optional.empty();
+        }
+        // The index is updated right after the store, so re-check the code on the entry itself
+        return Optional.ofNullable(customerStore.get(id))
+                .filter(entry -> customerCode.equals(entry.customerCode()));
+    }
+    
+    // The keyword is matched against every searchable field the way search() always has; a
+    // keyword that looks like a phone number is also matched against the canonical digits.
+    private List<TermMatch> searchTerms(String keyword) {
+        String searchTerm = normalize(keyword);
+        List<TermMatch> terms = new ArrayList<>(List.of(
+                new TermMatch(fullNameIndex, searchTerm),
+                new TermMatch(emailIndex, searchTerm),
+                new TermMatch(phoneNumberIndex, searchTerm),
+                new TermMatch(customerCodeSearchIndex, searchTerm)));
+        if (PhoneNumbers.looksLikePhoneNumber(searchTerm)) {
+            terms.add(phoneNumberDigitsTerm(searchTerm));
+        }
+        return terms;
+    }
+    
+    // A number typed with its international prefix is anchored at the start of the canonical digits
+    private TermMatch phoneNumberDigitsTerm(String phoneNumber) {
+        return new TermMatch(phoneNumberDigitsIndex, PhoneNumbers.canonicalize(phoneNumber),
+                PhoneNumbers.hasInternationalPrefix(phoneNumber));
+    }
+    
+    // Lower-cased and stripped of diacritics like the keys of every entry
+    private static String normalize(String keyword) {
+        return TextFolding.fold(keyword).trim();
+    }
+    
+    private List<Customer> findContaining(String term, TrigramIndex index) {
+        return findMatching(List.of(new TermMatch(index, term)), null, UNLIMITED);
+    }
+    
+    // Returns up to limit customers after the cursor, in id order, that match any of the terms
+    private List<Customer> findMatching(List<TermMatch> terms, Long cursor, int limit) {
+        awaitSnapshotLoaded();
+        boolean narrowable = terms.stream().allMatch(term -> TrigramIndex.canNarrow(term.term()));
+        if (narrowable) {
+            long estimate = 0;
+            for (TermMatch term : terms) {
+                estimate += term.index().candidateCount(term.term());
+            }
+            // Walking the store in id order stops after limit matches, which for a broad keyword is
+            // cheaper than sorting all of its candidates: roughly limit * n / matches entries
+            // visited versus one visit per candidate. The candidates are only copied once they
+            // are going to be used.
+            if (limit == UNLIMITED || estimate * estimate <= (long) limit * customerCount.get()) {
+                List<long[]> candidates = new ArrayList<>();
+                for (TermMatch term : terms) {
+                    candidates.add(term.index().candidates(term.term()));
+                }
+                return collectCandidates(terms, candidates, cursor, limit);
+            }
+        }
+        List<Customer> matches = new ArrayList<>();
+        for (CustomerEntry entry : entriesAfter(cursor).values()) {
+            if (matchesAny(entry, terms)) {
+                matches.add(entry.customer());
+                if (matches.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+    
+    // Candidates arrive sorted by id, so each term can start right after the cursor and stop at
+    // its limit-th match; the union of those prefixes holds the first limit matches overall.
+    private List<Customer> collectCandidates(List<TermMatch> terms, List<long[]> candidates, Long cursor,
+            int limit) {
+        TreeMap<Long, Customer> matches = new TreeMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            TermMatch term = terms.get(i);
+            long[] ids = candidates.get(i);
+            int found = 0;
+            for (int j = cursor == null ? 0 : firstAfter(ids, cursor); j < ids.length && found < limit; j++) {
+                CustomerEntry entry = customerStore.get(ids[j]);
+                if (entry != null && term.matches(entry)) {
+                    found++;
+                    matches.put(ids[j], entry.customer());
+                    if (matches.size() > limit) {
+                        matches.pollLastEntry();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(matches.values());
+    }
+    
+    private static int firstAfter(long[] ids, long cursor) {
+        int position = Arrays.binarySearch(ids, cursor);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+    
+    // Offers the matches ranked from best to worst. Candidates come in id order, per term, so a
+    // term stops at the first id where even a match of the best rank could no longer get in.
+    private void offerRanked(List<TermMatch> terms, RankedMatches matches, int best, int worst) {
+        if (terms.stream().allMatch(term -> TrigramIndex.canNarrow(term.term()))) {
+            for (TermMatch term : terms) {
+                for (long id : term.index().candidates(term.term())) {
+                    if (!matches.accepts(best, id)) {
+                        break;
+                    }
+                    CustomerEntry entry = customerStore.get(id);
+                    if (entry != null && term.matches(entry)) {
+                        offerRanked(matches, entry, best, worst);
+                    }
+                }
+            }
+            return;
+        }
+        for (CustomerEntry entry : customerStore.values()) {
+            if (!matches.accepts(best, entry.id())) {
+                return;
+            }
+            if (matchesAny(entry, terms)) {
+                offerRanked(matches, entry, best, worst);
+            }
+        }
+    }
+    
+    private static void offerRanked(RankedMatches matches, CustomerEntry entry, int best, int worst) {
+        int rank = matches.rank(entry.customerCode(), entry.fullNameKey());
+        if (rank >= best && rank <= worst) {
+            matches.offer(rank, entry.id(), entry.customer());
+        }
+    }
+    
+    private static void offer(RankedMatches matches, CustomerEntry entry) {
+        matches.offer(matches.rank(entry.customerCode(), entry.fullNameKey()), entry.id(), entry.customer());
+    }
+    
+    private static boolean matchesAny(CustomerEntry entry, List<TermMatch> terms) {
+        for (TermMatch term : terms) {
+            if (term.matches(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private NavigableMap<Long, CustomerEntry> entriesAfter(Long cursor) {
+        return cursor == null ? customerStore : customerStore.tailMap(cursor, false);
+    }
+    
+    // The customers of a cached result are sorted by id like every other search result
+    private static CustomerPage pageOf(List<Customer> customers, Long cursor, int limit) {
+        int from = 0;
+        if (cursor != null) {
+            int low = 0;
+            int high = customers.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (customers.get(middle).getId() <= cursor) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            from = low;
+        }
+        int to = Math.min(customers.size(), from + limit + 1);
+        return toPage(new ArrayList<>(customers.subList(from, to)), limit);
+    }
+    
+    // Expects up to limit + 1 customers; the extra one only signals that another page exists
+    private static CustomerPage toPage(List<Customer> customers, int limit) {
+        if (customers.size() <= limit) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> items = new ArrayList<>(customers.subList(0, limit));
+        return new CustomerPage(items, items.get(items.size() - 1).getId());
+    }
+    
+    private void index(CustomerEntry entry) {
+        if (entry.customerCode() != null) {
+            customerCodeIndex.put(entry.customerCode(), entry.id());
+        }
+        fullNameIndex.add(entry);
+        emailIndex.add(entry);
+        phoneNumberIndex.add(entry);
+        customerCodeSearchIndex.add(entry);
+        phoneNumberDigitsIndex.add(entry);
+        phoneNumberSuffixIndex.add(entry);
+        fullNameTokenIndex.add(entry);
+        cityIndex.add(entry);
+        genderIndex.add(entry);
+        dateOfBirthIndex.add(entry);
+        birthdayIndex.add(entry);
+        cityCounts.add(entry.city());
+        genderCounts.add(entry.gender());
+    }
+    
+    private void indexAll(List<CustomerEntry> entries) {
+        for (CustomerEntry entry : entries) {
+            if (entry.customerCode() != null) {
+                customerCodeIndex.put(entry.customerCode(), entry.id());
+            }
+            phoneNumberSuffixIndex.add(entry);
+            cityCounts.add(entry.city());
+            genderCounts.add(entry.gender());
+        }
+        fullNameIndex.addAll(entries);
+        emailIndex.addAll(entries);
+        phoneNumberIndex.addAll(entries);
+        customerCodeSearchIndex.addAll(entries);
+        phoneNumberDigitsIndex.addAll(entries);
+        fullNameTokenIndex.addAll(entries);
+        cityIndex.addAll(entries);
+        genderIndex.addAll(entries);
+        dateOfBirthIndex.addAll(entries);
+        birthdayIndex.addAll(entries);
+    }
+    
+    private void reindex(CustomerEntry previous, CustomerEntry replacement) {
+        if (!Objects.equals(previous.customerCode(), replacement.customerCode())) {
+            removeCustomerCode(previous);
+            if (replacement.customerCode() != null) {
+                customerCodeIndex.put(replacement.customerCode(), replacement.id());
+            }
+        }
+        fullNameIndex.replace(previous, replacement);
+        emailIndex.replace(previous, replacement);
+        phoneNumberIndex.replace(previous, replacement);
+        customerCodeSearchIndex.replace(previous, replacement);
+        phoneNumberDigitsIndex.replace(previous, replacement);
+        phoneNumberSuffixIndex.replace(previous, replacement);
+        fullNameTokenIndex.replace(previous, replacement);
+        cityIndex.replace(previous, replacement);
+        genderIndex.replace(previous, replacement);
+        dateOfBirthIndex.replace(previous, replacement);
+        birthdayIndex.replace(previous, replacement);
+        cityCounts.move(previous.city(), replacement.city());
+        genderCounts.move(previous.gender(), replacement.gender());
+    }
+    
+    private void unindex(CustomerEntry previous) {
+        removeCustomerCode(previous);
+        fullNameIndex.remove(previous);
+        emailIndex.remove(previous);
+        phoneNumberIndex.remove(previous);
+        customerCodeSearchIndex.remove(previous);
+        phoneNumberDigitsIndex.remove(previous);
+        phoneNumberSuffixIndex.remove(previous);
+        fullNameTokenIndex.remove(previous);
+        cityIndex.remove(previous);
+        genderIndex.remove(previous);
+        dateOfBirthIndex.remove(previous);
+        birthdayIndex.remove(previous);
+        cityCounts.remove(previous.city());
+        genderCounts.remove(previous.gender());
+    }
+    
+    private void removeCustomerCode(CustomerEntry previous) {
+        if (previous.customerCode() != null) {
+            customerCodeIndex.remove(previous.customerCode(), previous.id());
+        }
+    }
+    
+    // A prefix term only matches keys that start with it; its trigrams still narrow the candidates
+    private record TermMatch(TrigramIndex index, String term, boolean prefix) {
+
+        TermMatch(TrigramIndex index, String term) {
+            this(index, term, false);
+        }
+
+        boolean matches(CustomerEntry entry) {
+            return prefix ? index.matchesPrefix(entry, term) : index.matches(entry, term);
+        }
+    }
+    
+    // The ids of the customers meeting one criterion, and how many there are
+    private record IndexScan(long estimate, Supplier<long[]> ids) {
+    }
+    
+    private ReentrantLock writeLockFor(Long id) {
+        return writeLocks[Long.hashCode(id) & (LOCK_STRIPES - 1)];
+    }
+    
+    // In stripe order, the same order checkpoint() takes them in, so batches cannot deadlock
+    private List<ReentrantLock> writeLocksFor(List<CustomerEntry> entries) {
+        boolean[] stripes = new boolean[LOCK_STRIPES];
+        for (CustomerEntry entry : entries) {
+            stripes[Long.hashCode(entry.id()) & (LOCK_STRIPES - 1)] = true;
+        }
+        List<ReentrantLock> locks = new ArrayList<>();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            if (stripes[i]) {
+                locks.add(writeLocks[i]);
+            }
+        }
+        return locks;
     }
 }
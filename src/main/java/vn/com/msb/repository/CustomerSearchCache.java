@@ -0,0 +1,261 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * Results of recent keyword searches, keyed by the normalized keyword.
+ *
+ * <p>The cache is bounded by the total number of customers held across all results, so one broad
+ * keyword costs as much as many narrow ones; when that budget is exceeded, the least recently
+ * read results are evicted. A result larger than a quarter of the budget is never cached.
+ *
+ * <p>Every cached result keeps the predicate that decided which customers matched its keyword.
+ * A change to the store evicts only the results whose predicate matches the customer as it was
+ * before or after the change, since no other result can have been affected by it.
+ */
+public final class CustomerSearchCache implements MeterBinder {
+
+    public static final String CACHE_NAME = "customerSearch";
+
+    // Beyond this many changed customers, checking each against every result costs more than
+    // recomputing the results, so a large batch simply clears the cache
+    static final int MAX_PRECISE_INVALIDATION = 64;
+
+    private final long maxCustomers;
+    private final ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<>();
+    // Searches between reading the store and caching their result, see lookUp()
+    private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong weight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxCustomers how many customers the cached results may hold in total; 0 disables
+     *                     caching while still counting misses
+     */
+    public CustomerSearchCache(long maxCustomers) {
+        if (maxCustomers < 0) {
+            throw new IllegalArgumentException("maxCustomers must not be negative: " + maxCustomers);
+        }
+        this.maxCustomers = maxCustomers;
+    }
+
+    /**
+     * Returns the cached customers for a normalized keyword or, when there are none, registers
+     * the caller to read them from the store. A caller that gets no customers must then call
+     * {@link #complete(Lookup, List)}, even if the read fails.
+     */
+    Lookup lookUp(String keyword, Predicate<CustomerEntry> matcher) {
+        Result result = results.get(keyword);
+        if (result != null) {
+            hits.increment();
+            result.lastRead = System.nanoTime();
+            return new Lookup(result.customers, null);
+        }
+        misses.increment();
+        // Registered before the store is read: a writer either finishes its change before the read
+        // starts, or finds this search here afterwards and marks it stale
+        Pending search = new Pending(keyword, matcher);
+        pending.add(search);
+        return new Lookup(null, search);
+    }
+
+    /** Returns the cached customers for a normalized keyword, if any, without registering a search. */
+    List<Customer> peek(String keyword) {
+        Result result = results.get(keyword);
+        if (result == null) {
+            return null;
+        }
+        hits.increment();
+        result.lastRead = System.nanoTime();
+        return result.customers;
+    }
+
+    /**
+     * Caches the customers a search read, unless a change that could affect them happened while
+     * it was reading. Passing null only unregisters the search.
+     */
+    void complete(Lookup lookup, List<Customer> customers) {
+        Pending search = lookup.pending();
+        if (customers == null || search.stale || customers.size() + 1L > maxCustomers / 4) {
+            pending.remove(search);
+            return;
+        }
+        Result result = new Result(search.keyword, List.copyOf(customers), search.matcher);
+        Result replaced = results.put(search.keyword, result);
+        weight.addAndGet(result.weight() - (replaced != null ? replaced.weight() : 0));
+        puts.increment();
+        // The search leaves pending only once its result is in results, so a writer always finds
+        // one of them: if it marked the search stale before the removal, the check below evicts
+        // the result, and if it came after, its own pass over results does
+        pending.remove(search);
+        if (search.stale) {
+            evict(result, invalidations);
+        }
+        if (weight.get() > maxCustomers) {
+            evictLeastRecentlyRead();
+        }
+    }
+
+    /**
+     * Evicts every result that a change to these customers could affect. Writers call this after
+     * the change is visible to readers, passing each customer both as it was and as it is now.
+     */
+    void invalidate(Collection<CustomerEntry> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        if (changed.size() > MAX_PRECISE_INVALIDATION) {
+            pending.forEach(search -> search.stale = true);
+            results.values().forEach(result -> evict(result, invalidations));
+            return;
+        }
+        // Pending searches first: one that caches its result after this pass sees it is stale
+        for (Pending search : pending) {
+            if (matchesAny(search.matcher, changed)) {
+                search.stale = true;
+            }
+        }
+        for (Result result : results.values()) {
+            if (matchesAny(result.matcher, changed)) {
+                evict(result, invalidations);
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /** Total number of customers held across the cached results. */
+    public long weight() {
+        return weight.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Same names as the cache metrics Spring Boot binds for its own caches
+        Tags tags = Tags.of("cache", CACHE_NAME);
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum).tags(tags).tag("result", "hit")
+                .description("Searches answered from the cache").register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum).tags(tags).tag("result", "miss")
+                .description("Searches that had to read the store").register(registry);
+        FunctionCounter.builder("cache.puts", puts, LongAdder::sum).tags(tags)
+                .description("Search results added to the cache").register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum).tags(tags)
+                .description("Search results evicted to stay within the budget").register(registry);
+        Gauge.builder("cache.size", results, ConcurrentHashMap::size).tags(tags)
+                .description("Cached search results").register(registry);
+        Gauge.builder("cache.weight", weight, AtomicLong::get).tags(tags)
+                .description("Customers held across the cached search results").register(registry);
+        FunctionCounter.builder("customer.search.cache.invalidations", invalidations, LongAdder::sum)
+                .description("Search results evicted because a change could affect them").register(registry);
+    }
+
+    private void evict(Result result, LongAdder counter) {
+        if (results.remove(result.keyword, result)) {
+            weight.addAndGet(-result.weight());
+            counter.increment();
+        }
+    }
+
+    // One thread evicts at a time; the others carry on rather than queue up behind it, since
+    // a single pass brings the cache back under its budget for all of them
+    private void evictLeastRecentlyRead() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Result> byLastRead = new ArrayList<>(results.values());
+            byLastRead.sort(Comparator.comparingLong(result -> result.lastRead));
+            // Down to nine tenths of the budget, so the next few puts don't each need a pass
+            long target = maxCustomers - maxCustomers / 10;
+            for (Result result : byLastRead) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                evict(result, evictions);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static boolean matchesAny(Predicate<CustomerEntry> matcher, Collection<CustomerEntry> changed) {
+        for (CustomerEntry entry : changed) {
+            if (matcher.test(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Either the cached customers, or the registration of a search that has to read the store. */
+    record Lookup(List<Customer> customers, Pending pending) {
+    }
+
+    static final class Pending {
+        private final String keyword;
+        private final Predicate<CustomerEntry> matcher;
+        private volatile boolean stale;
+
+        private Pending(String keyword, Predicate<CustomerEntry> matcher) {
+            this.keyword = keyword;
+            this.matcher = matcher;
+        }
+    }
+
+    private static final class Result {
+        private final String keyword;
+        private final List<Customer> customers;
+        private final Predicate<CustomerEntry> matcher;
+        private volatile long lastRead = System.nanoTime();
+
+        private Result(String keyword, List<Customer> customers, Predicate<CustomerEntry> matcher) {
+            this.keyword = keyword;
+            this.customers = customers;
+            this.matcher = matcher;
+        }
+
+        private long weight() {
+            return customers.size() + 1L;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package vn.com.msb.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * Point-in-time dump of the customer store laid out to be memory-mapped rather than read.
+ *
+ * <p>The file is a fixed header, the {@link CustomerCodec} records each framed as
+ * {@code [int length][record][int crc32c]}, and a table of {@code (id, offset)} pairs sorted by
+ * id. Opening it only checks the header and the table, so a single customer can be looked up
+ * by binary search and decoded straight from the mapping before anything else is loaded; each
+ * record's checksum is verified when it is decoded.
+ */
+public class CustomerSnapshotFile {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSnapshotFile.class);
+
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x434D4150; // "CMAP"
+    // magic, version, count, nextId, indexOffset, indexCrc, headerCrc
+    private static final int HEADER_LENGTH = 40;
+    private static final int INDEX_ENTRY_LENGTH = 2 * Long.BYTES;
+
+    private final Path file;
+
+    public CustomerSnapshotFile(Path file) {
+        this.file = file;
+    }
+
+    Path path() {
+        return file;
+    }
+
+    /**
+     * Writes the customers, which must come in ascending id order, to a temporary file that
+     * then atomically replaces the snapshot.
+     */
+    void write(long nextId, Iterator<Customer> customers) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = parent.resolve(file.getFileName() + ".tmp");
+        long[] ids = new long[1024];
+        long[] offsets = new long[1024];
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(unclosable(Channels.newOutputStream(channel)), 1 << 16));
+            out.write(new byte[HEADER_LENGTH]);
+            long offset = HEADER_LENGTH;
+            long previousId = Long.MIN_VALUE;
+            while (customers.hasNext()) {
+                Customer customer = customers.next();
+                if (customer.getId() <= previousId) {
+                    throw new IllegalArgumentException("Snapshot customers must be in ascending id order");
+                }
+                previousId = customer.getId();
+                byte[] record = CustomerCodec.encode(customer);
+                CRC32C crc = new CRC32C();
+                crc.update(record);
+                out.writeInt(record.length);
+                out.write(record);
+                out.writeInt((int) crc.getValue());
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                ids[count] = customer.getId();
+                offsets[count] = offset;
+                count++;
+                offset += Integer.BYTES + record.length + Integer.BYTES;
+            }
+            long indexOffset = offset;
+            CRC32C indexCrc = new CRC32C();
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+            for (int i = 0; i < count; i++) {
+                entry.clear();
+                entry.putLong(ids[i]).putLong(offsets[i]);
+                indexCrc.update(entry.array());
+                out.write(entry.array());
+            }
+            out.flush();
+            if (indexOffset + (long) count * INDEX_ENTRY_LENGTH > Integer.MAX_VALUE) {
+                throw new IOException("Customer snapshot exceeds the 2 GiB that can be mapped at once");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(count).putLong(nextId).putLong(indexOffset)
+                    .putInt((int) indexCrc.getValue());
+            CRC32C headerCrc = new CRC32C();
+            headerCrc.update(header.array(), 0, header.position());
+            header.putInt((int) headerCrc.getValue()).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.info("Wrote {} customers to snapshot {}", count, file);
+    }
+
+    /**
+     * Maps the snapshot read-only, or returns {@code null} when there is none yet. Throws
+     * {@link IllegalStateException} when the header or the id table is corrupt.
+     */
+    Mapped map() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Customer snapshot is too large to map: " + file);
+            }
+            // The mapping stays valid after its channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a customer snapshot: " + file);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported customer snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+        if (checksum(buffer, 0, HEADER_LENGTH - Integer.BYTES) != buffer.getInt(HEADER_LENGTH - Integer.BYTES)) {
+            throw new IllegalStateException("Corrupt customer snapshot header: " + file);
+        }
+        long count = buffer.getLong(8);
+        long indexOffset = buffer.getLong(24);
+        if (indexOffset < HEADER_LENGTH || indexOffset + count * INDEX_ENTRY_LENGTH != buffer.capacity()
+                || checksum(buffer, (int) indexOffset, (int) count * INDEX_ENTRY_LENGTH) != buffer.getInt(32)) {
+            throw new IllegalStateException("Corrupt customer snapshot index: " + file);
+        }
+        return new Mapped(buffer, (int) count, buffer.getLong(16), (int) indexOffset);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    // The channel is closed by its owner after it has been forced to disk
+    private static OutputStream unclosable(OutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /** A mapped snapshot; only absolute reads are used, so it is safe to share between threads. */
+    static final class Mapped {
+
+        private final ByteBuffer buffer;
+        private final int count;
+        private final long nextId;
+        private final int indexOffset;
+
+        private Mapped(ByteBuffer buffer, int count, long nextId, int indexOffset) {
+            this.buffer = buffer;
+            this.count = count;
+            this.nextId = nextId;
+            this.indexOffset = indexOffset;
+        }
+
+        int size() {
+            return count;
+        }
+
+        long nextId() {
+            return nextId;
+        }
+
+        Customer findById(long id) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = idAt(middle);
+                if (middleId < id) {
+                    low = middle + 1;
+                } else if (middleId > id) {
+                    high = middle - 1;
+                } else {
+                    return decodeAt(middle);
+                }
+            }
+            return null;
+        }
+
+        void forEach(Consumer<Customer> action) {
+            for (int i = 0; i < count; i++) {
+                action.accept(decodeAt(i));
+            }
+        }
+
+        private long idAt(int position) {
+            return buffer.getLong(indexOffset + position * INDEX_ENTRY_LENGTH);
+        }
+
+        private Customer decodeAt(int position) {
+            int offset = (int) buffer.getLong(indexOffset + position * INDEX_ENTRY_LENGTH + Long.BYTES);
+            int length = buffer.getInt(offset);
+            ByteBuffer record = buffer.slice(offset + Integer.BYTES, length);
+            CRC32C crc = new CRC32C();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES + length)) {
+                throw new IllegalStateException("Corrupt customer record " + idAt(position) + " in snapshot");
+            }
+            return CustomerCodec.decode(record.rewind());
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package vn.com.msb.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * Append-only log of customer saves and deletes, split into numbered segments, plus periodic
+ * snapshots of the whole store.
+ *
+ * <p>A log record is {@code [int length][byte type][payload][int crc32c]}, where the payload is
+ * a {@link CustomerCodec} record for saves, the customer id for deletes, and a count followed by
+ * that many codec records for a batch of saves, which is replayed either whole or not at all.
+ * Snapshot {@code N}
+ * holds the store as of the start of segment {@code N}; once it is written, every older segment
+ * and snapshot is deleted. Recovery loads the newest snapshot and replays the segments from it
+ * onwards in order, dropping a torn record at the end of the last segment.
+ */
+public class CustomerWriteAheadLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerWriteAheadLog.class);
+
+    static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_MAGIC = 0x43574C47;  // "CWLG"
+    private static final int SNAPSHOT_MAGIC = 0x43534E50; // "CSNP"
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+    private static final int END_OF_SNAPSHOT = -1;
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte SAVE_ALL = 3;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    /** Receives the operations found in the snapshot and log during recovery. */
+    interface Replay {
+        void save(Customer customer);
+        void delete(long id);
+    }
+
+    private final Path directory;
+    private final boolean fsync;
+    private final long checkpointInterval;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final AtomicLong recordsSinceCheckpoint = new AtomicLong();
+    private FileChannel segment;
+    private long segmentNumber;
+
+    public CustomerWriteAheadLog(Path directory, boolean fsync, long checkpointInterval) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.checkpointInterval = checkpointInterval;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Replays the newest snapshot and every later log record, then starts a fresh segment for new
+     * writes. Returns the smallest id that is safe to hand out to the next new customer.
+     */
+    long recover(Replay replay) throws IOException {
+        long nextId = 1L;
+        long firstSegment = 0L;
+        List<Long> snapshots = fileNumbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            firstSegment = snapshots.get(snapshots.size() - 1);
+            nextId = readSnapshot(snapshotPath(firstSegment), replay);
+        }
+        List<Long> segments = fileNumbers(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long lastSegment = firstSegment;
+        for (int i = 0; i < segments.size(); i++) {
+            long number = segments.get(i);
+            if (number < firstSegment) {
+                continue;
+            }
+            boolean last = i == segments.size() - 1;
+            nextId = Math.max(nextId, replaySegment(segmentPath(number), replay, last));
+            lastSegment = number;
+        }
+        openSegment(lastSegment + 1);
+        return nextId;
+    }
+
+    // The appends return true for one caller each time another checkpoint interval's worth of
+    // customers has been written to the current segment; that caller should schedule a checkpoint
+    boolean appendSave(Customer customer) {
+        return append(SAVE, CustomerCodec.encode(customer), 1);
+    }
+
+    boolean appendSaveAll(List<Customer> customers) {
+        List<byte[]> records = new ArrayList<>(customers.size());
+        int length = Integer.BYTES;
+        for (Customer customer : customers) {
+            byte[] record = CustomerCodec.encode(customer);
+            records.add(record);
+            length += record.length;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length).putInt(records.size());
+        for (byte[] record : records) {
+            payload.put(record);
+        }
+        return append(SAVE_ALL, payload.array(), records.size());
+    }
+
+    boolean appendDelete(long id) {
+        return append(DELETE, ByteBuffer.allocate(Long.BYTES).putLong(id).array(), 1);
+    }
+
+    /**
+     * Starts the next segment and closes the current one. The caller must guarantee that no
+     * write is between its log append and its in-memory apply, so that everything logged to
+     * earlier segments is visible to the snapshot taken afterwards. If the next segment cannot
+     * be created, appends keep going to the current one.
+     */
+    long rotate() throws IOException {
+        appendLock.lock();
+        try {
+            long next = segmentNumber + 1;
+            segment.force(false);
+            FileChannel previous = segment;
+            openSegment(next);
+            previous.close();
+            return next;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the snapshot that segment {@code number} continues from, then deletes the segments
+     * and snapshots it supersedes. The customers may change while they are written, because
+     * replaying the segment re-applies every later change in order.
+     */
+    void writeSnapshot(long number, long nextId, Iterator<Customer> customers) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + format(number) + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(unclosable(Channels.newOutputStream(channel)), 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(nextId);
+            while (customers.hasNext()) {
+                byte[] record = CustomerCodec.encode(customers.next());
+                out.writeInt(record.length);
+                out.write(record);
+                count++;
+            }
+            out.writeInt(END_OF_SNAPSHOT);
+            out.writeLong(count);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(number), StandardCopyOption.ATOMIC_MOVE);
+        for (long older : fileNumbers(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (older < number) {
+                Files.deleteIfExists(segmentPath(older));
+            }
+        }
+        for (long older : fileNumbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (older < number) {
+                Files.deleteIfExists(snapshotPath(older));
+            }
+        }
+        log.info("Wrote customer snapshot {} with {} customers", number, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (segment != null && segment.isOpen()) {
+                segment.force(false);
+                segment.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private boolean append(byte type, byte[] payload, int customers) {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + 1 + payload.length + Integer.BYTES);
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload);
+        record.putInt(1 + payload.length).put(type).put(payload).putInt((int) crc.getValue()).flip();
+        appendLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+            if (fsync) {
+                segment.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to customer write-ahead log", e);
+        } finally {
+            appendLock.unlock();
+        }
+        long written = recordsSinceCheckpoint.addAndGet(customers);
+        return written / checkpointInterval != (written - customers) / checkpointInterval;
+    }
+
+    // Only becomes the current segment once its header is on disk; a half-created file is removed
+    // so that a later attempt can create it again
+    private void openSegment(long number) throws IOException {
+        Path path = segmentPath(number);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH).putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        segment = channel;
+        segmentNumber = number;
+        recordsSinceCheckpoint.set(0);
+    }
+
+    private long readSnapshot(Path path, Replay replay) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16), new CRC32C())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported customer snapshot format: " + path);
+            }
+            long nextId = in.readLong();
+            long count = 0;
+            for (int length = in.readInt(); length != END_OF_SNAPSHOT; length = in.readInt()) {
+                byte[] record = new byte[length];
+                in.readFully(record);
+                Customer customer = CustomerCodec.decode(ByteBuffer.wrap(record));
+                replay.save(customer);
+                nextId = Math.max(nextId, customer.getId() + 1);
+                count++;
+            }
+            long expectedCount = in.readLong();
+            int actualChecksum = (int) checked.getChecksum().getValue();
+            if (expectedCount != count || in.readInt() != actualChecksum) {
+                throw new IllegalStateException("Corrupt customer snapshot: " + path);
+            }
+            log.info("Loaded {} customers from snapshot {}", count, path.getFileName());
+            return nextId;
+        } catch (EOFException e) {
+            throw new IllegalStateException("Truncated customer snapshot: " + path, e);
+        }
+    }
+
+    // Returns the next id implied by the segment; a bad record is only tolerated at the very
+    // end of the last segment, where it is a write torn by a crash and is cut off
+    private long replaySegment(Path path, Replay replay, boolean last) throws IOException {
+        long nextId = 1L;
+        long validLength = SEGMENT_HEADER_LENGTH;
+        long records = 0;
+        long fileLength = Files.size(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SEGMENT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported customer log segment format: " + path);
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] body = length > 0 && length <= fileLength ? new byte[length] : null;
+                if (body == null || !readRecord(in, body)) {
+                    if (!last) {
+                        throw new IllegalStateException("Corrupt record in customer log segment: " + path);
+                    }
+                    log.warn("Discarding torn record at offset {} of {}", validLength, path.getFileName());
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.wrap(body, 1, body.length - 1);
+                if (body[0] == SAVE) {
+                    Customer customer = CustomerCodec.decode(payload);
+                    replay.save(customer);
+                    nextId = Math.max(nextId, customer.getId() + 1);
+                } else if (body[0] == SAVE_ALL) {
+                    for (int count = payload.getInt(); count > 0; count--) {
+                        Customer customer = CustomerCodec.decode(payload);
+                        replay.save(customer);
+                        nextId = Math.max(nextId, customer.getId() + 1);
+                    }
+                } else {
+                    replay.delete(payload.getLong());
+                }
+                validLength += Integer.BYTES + length + Integer.BYTES;
+                records++;
+            }
+        } catch (EOFException e) {
+            // The header itself was torn: the segment was created but never written to
+            if (!last) {
+                throw new IllegalStateException("Truncated customer log segment: " + path, e);
+            }
+            validLength = 0;
+        }
+        if (last && validLength == 0) {
+            // Left in place, the empty file would no longer be the last segment after the next
+            // restart, and replay would reject it as truncated
+            log.warn("Deleting customer log segment {} with a torn header", path.getFileName());
+            Files.delete(path);
+        } else if (last && validLength < fileLength) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        log.info("Replayed {} records from {}", records, path.getFileName());
+        return nextId;
+    }
+
+    private static boolean readRecord(DataInputStream in, byte[] body) throws IOException {
+        try {
+            in.readFully(body);
+            int checksum = in.readInt();
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+            return checksum == (int) crc.getValue() && (body[0] == SAVE || body[0] == DELETE || body[0] == SAVE_ALL);
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private List<Long> fileNumbers(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .forEach(name -> numbers.add(
+                            Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()))));
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(SEGMENT_PREFIX + format(number) + SEGMENT_SUFFIX);
+    }
+
+    private Path snapshotPath(long number) {
+        return directory.resolve(SNAPSHOT_PREFIX + format(number) + SNAPSHOT_SUFFIX);
+    }
+
+    private static String format(long number) {
+        return String.format("%019d", number);
+    }
+
+    // The channel is closed by its owner after it has been forced to disk
+    private static OutputStream unclosable(OutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package vn.com.msb.repository;
+
+/** Levenshtein distance: the fewest single-char insertions, deletions and substitutions. */
+final class EditDistance {
+
+    private EditDistance() {
+    }
+
+    /**
+     * Returns the distance between a and b, or max + 1 as soon as it is known to exceed max; pass
+     * Integer.MAX_VALUE for the exact distance.
+     */
+    static int between(String a, String b, int max) {
+        String shorter = a.length() <= b.length() ? a : b;
+        String longer = shorter == a ? b : a;
+        if (longer.length() - shorter.length() > max) {
+            return max + 1;
+        }
+        // One row of the table at a time, over the shorter string
+        int[] previous = new int[shorter.length() + 1];
+        int[] current = new int[shorter.length() + 1];
+        for (int i = 0; i <= shorter.length(); i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= longer.length(); j++) {
+            current[0] = j;
+            int rowMinimum = j;
+            char c = longer.charAt(j - 1);
+            for (int i = 1; i <= shorter.length(); i++) {
+                int substitution = previous[i - 1] + (shorter.charAt(i - 1) == c ? 0 : 1);
+                current[i] = Math.min(substitution, Math.min(previous[i], current[i - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[i]);
+            }
+            if (rowMinimum > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[shorter.length()];
+    }
+}
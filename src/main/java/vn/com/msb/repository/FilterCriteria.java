@@ -0,0 +1,53 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+
+import vn.com.msb.model.CustomerFilter;
+
+/**
+ * A {@link CustomerFilter} with its city and gender turned into keys the way the stores key
+ * those fields, so that "ha noi" and " Hà Nội" select the same customers. Null criteria match
+ * every customer.
+ */
+record FilterCriteria(String city, String gender, LocalDate bornFrom, LocalDate bornTo) {
+
+    static FilterCriteria of(CustomerFilter filter) {
+        if (filter == null) {
+            return new FilterCriteria(null, null, null, null);
+        }
+        return new FilterCriteria(key(filter.getCity()), key(filter.getGender()), filter.getBornFrom(),
+                filter.getBornTo());
+    }
+
+    /** The key of a city or gender: folded and trimmed, or null when blank. */
+    static String key(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = TextFolding.fold(value).trim();
+        return key.isEmpty() ? null : key;
+    }
+
+    boolean isEmpty() {
+        return city == null && gender == null && !hasDateOfBirthRange();
+    }
+
+    boolean hasDateOfBirthRange() {
+        return bornFrom != null || bornTo != null;
+    }
+
+    boolean matches(CustomerEntry entry) {
+        return (city == null || city.equals(entry.cityKey()))
+                && (gender == null || gender.equals(entry.genderKey()))
+                && matchesDateOfBirth(entry.dateOfBirth());
+    }
+
+    boolean matchesDateOfBirth(LocalDate dateOfBirth) {
+        if (!hasDateOfBirthRange()) {
+            return true;
+        }
+        return dateOfBirth != null
+                && (bornFrom == null || !dateOfBirth.isBefore(bornFrom))
+                && (bornTo == null || !dateOfBirth.isAfter(bornTo));
+    }
+}
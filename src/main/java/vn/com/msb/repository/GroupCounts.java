@@ -0,0 +1,71 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import vn.com.msb.model.CustomerGroupCount;
+
+/**
+ * Number of customers per value of one field, moved by the writers as they add, change and
+ * remove customers, so that reading every count costs one step per distinct value instead of a
+ * pass over the store.
+ *
+ * <p>The counts are read one by one while writers carry on, so a customer moving between two
+ * values at that moment may be counted under both of them or under neither.
+ */
+final class GroupCounts {
+
+    private static final Comparator<CustomerGroupCount> LARGEST_FIRST = Comparator
+            .comparingLong(CustomerGroupCount::getCount).reversed()
+            .thenComparing(CustomerGroupCount::getValue, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    // As with the posting lists of the indexes, groups that empty stay with a count of 0
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder withoutValue = new LongAdder();
+
+    void add(String value) {
+        counter(value).increment();
+    }
+
+    // Adds a count taken elsewhere, such as another store's
+    void add(String value, long count) {
+        counter(value).add(count);
+    }
+
+    void remove(String value) {
+        counter(value).decrement();
+    }
+
+    void move(String from, String to) {
+        if (!Objects.equals(from, to)) {
+            remove(from);
+            add(to);
+        }
+    }
+
+    /** The groups holding any customers, largest first, then by value with no value last. */
+    List<CustomerGroupCount> toList() {
+        List<CustomerGroupCount> groups = new ArrayList<>();
+        counts.forEach((value, counter) -> {
+            long count = counter.sum();
+            if (count > 0) {
+                groups.add(new CustomerGroupCount(value, count));
+            }
+        });
+        long count = withoutValue.sum();
+        if (count > 0) {
+            groups.add(new CustomerGroupCount(null, count));
+        }
+        groups.sort(LARGEST_FIRST);
+        return groups;
+    }
+
+    private LongAdder counter(String value) {
+        return value == null ? withoutValue : counts.computeIfAbsent(value, ignored -> new LongAdder());
+    }
+}
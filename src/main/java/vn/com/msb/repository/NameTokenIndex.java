@@ -0,0 +1,167 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inverted index from the words of every folded full name to the ids of the customers whose name
+ * has them, with a {@link BkTree} over the distinct words, so a fuzzy lookup compares the query
+ * with a fraction of the dictionary rather than with every customer.
+ *
+ * <p>A name matches a fuzzy query when each query word is within its allowed edits of some word
+ * of the name: none for words of up to two chars, one up to five chars, and maxEdits beyond.
+ * Matches are ranked by the edits summed over the query words.
+ */
+final class NameTokenIndex {
+
+    // As in TrigramIndex, emptied posting lists stay, and the tree only ever grows: the set of
+    // distinct name words is small
+    private final ConcurrentMap<String, PostingList> postings = new ConcurrentHashMap<>();
+    private final BkTree words = new BkTree();
+
+    void add(CustomerEntry entry) {
+        for (String token : tokens(entry.fullNameKey())) {
+            PostingList ids = postings.get(token);
+            if (ids == null) {
+                PostingList created = new PostingList();
+                ids = postings.putIfAbsent(token, created);
+                if (ids == null) {
+                    ids = created;
+                    words.add(token);
+                }
+            }
+            ids.add(entry.id());
+        }
+    }
+
+    void addAll(List<CustomerEntry> entries) {
+        for (CustomerEntry entry : entries) {
+            add(entry);
+        }
+    }
+
+    void remove(CustomerEntry entry) {
+        for (String token : tokens(entry.fullNameKey())) {
+            PostingList ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(entry.id());
+            }
+        }
+    }
+
+    void replace(CustomerEntry previous, CustomerEntry replacement) {
+        if (Objects.equals(previous.fullNameKey(), replacement.fullNameKey())) {
+            return;
+        }
+        remove(previous);
+        add(replacement);
+    }
+
+    int dictionarySize() {
+        return words.size();
+    }
+
+    /**
+     * Returns the ids whose name matches every query word, each with its edits summed over them.
+     * The ids are candidates: a concurrent writer may have changed the name since.
+     */
+    Map<Long, Integer> find(List<String> queryTokens, int maxEdits) {
+        if (queryTokens.isEmpty()) {
+            return Map.of();
+        }
+        List<Map<String, Integer>> matchesPerToken = new ArrayList<>();
+        for (String token : queryTokens) {
+            Map<String, Integer> matches = new HashMap<>();
+            words.forEachWithin(token, allowedEdits(token, maxEdits), matches::put);
+            if (matches.isEmpty()) {
+                return Map.of();
+            }
+            matchesPerToken.add(matches);
+        }
+        // The query word with the fewest customers first, so later ones only look those up
+        matchesPerToken.sort(Comparator.comparingLong(this::customers));
+        Map<Long, Integer> edits = null;
+        for (Map<String, Integer> matches : matchesPerToken) {
+            Map<Long, Integer> tokenEdits = new HashMap<>();
+            for (Map.Entry<String, Integer> word : matches.entrySet()) {
+                for (long id : postings.get(word.getKey()).toArray()) {
+                    if (edits == null || edits.containsKey(id)) {
+                        tokenEdits.merge(id, word.getValue(), Math::min);
+                    }
+                }
+            }
+            if (edits != null) {
+                Map<Long, Integer> previous = edits;
+                tokenEdits.replaceAll((id, distance) -> distance + previous.get(id));
+            }
+            edits = tokenEdits;
+            if (edits.isEmpty()) {
+                break;
+            }
+        }
+        return edits;
+    }
+
+    /** The distinct words of a folded text, in order. */
+    static List<String> tokens(String folded) {
+        if (folded == null) {
+            return List.of();
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    static int allowedEdits(String token, int maxEdits) {
+        if (token.length() <= 2) {
+            return 0;
+        }
+        return token.length() <= 5 ? Math.min(1, maxEdits) : maxEdits;
+    }
+
+    /**
+     * Same matching as {@link #find}, for one folded name: the edits summed over the query words,
+     * or -1 when the name doesn't match.
+     */
+    static int edits(List<String> queryTokens, String foldedName, int maxEdits) {
+        List<String> nameTokens = tokens(foldedName);
+        int total = 0;
+        for (String token : queryTokens) {
+            int allowed = allowedEdits(token, maxEdits);
+            int best = allowed + 1;
+            for (int i = 0; i < nameTokens.size() && best > 0; i++) {
+                best = Math.min(best, EditDistance.between(token, nameTokens.get(i), allowed));
+            }
+            if (best > allowed) {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private long customers(Map<String, Integer> matches) {
+        long customers = 0;
+        for (String word : matches.keySet()) {
+            customers += postings.get(word).size();
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,54 @@
+package vn.com.msb.repository;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-width column of ints or longs addressed by row number, kept in direct memory that is
+ * allocated in chunks of {@value #ROWS_PER_CHUNK} rows as the column grows. Not thread-safe.
+ */
+final class OffHeapColumn {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int ROWS_PER_CHUNK = 1 << CHUNK_BITS;
+    private static final int ROW_MASK = ROWS_PER_CHUNK - 1;
+
+    private final int width;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    OffHeapColumn(int width) {
+        this.width = width;
+    }
+
+    long getLong(int row) {
+        return chunks[row >>> CHUNK_BITS].getLong((row & ROW_MASK) * width);
+    }
+
+    void putLong(int row, long value) {
+        chunkFor(row).putLong((row & ROW_MASK) * width, value);
+    }
+
+    int getInt(int row) {
+        return chunks[row >>> CHUNK_BITS].getInt((row & ROW_MASK) * width);
+    }
+
+    void putInt(int row, int value) {
+        chunkFor(row).putInt((row & ROW_MASK) * width, value);
+    }
+
+    long allocatedBytes() {
+        return (long) chunks.length * ROWS_PER_CHUNK * width;
+    }
+
+    private ByteBuffer chunkFor(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        if (chunk >= chunks.length) {
+            int previous = chunks.length;
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            for (int i = previous; i < chunks.length; i++) {
+                chunks[i] = ByteBuffer.allocateDirect(ROWS_PER_CHUNK * width);
+            }
+        }
+        return chunks[chunk];
+    }
+}
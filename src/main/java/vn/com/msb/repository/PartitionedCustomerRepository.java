@@ -0,0 +1,634 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import vn.com.msb.exception.DuplicateCustomerCodeException;
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
+
+/**
+ * Customer store split by id hash into partitions, each a {@link CustomerRepositoryImpl} with
+ * its own map, write locks and indexes. A write touches one partition; a search runs on every
+ * partition at once, one of them on the calling thread and the others on the common
+ * {@link ForkJoinPool}, and their answers are merged into the order a single store returns.
+ *
+ * <p>Ids are handed out here, so they are unique across partitions, and so are customer codes:
+ * a write claims its code in a store-wide index before it reaches a partition, and is refused
+ * with a {@link DuplicateCustomerCodeException} if another customer holds it. A batch is saved
+ * as one batch per partition, so unlike the heap store it is not applied all at once. The write-ahead log, snapshot and search cache only
+ * apply to the heap store.
+ */
+@Repository
+@ConditionalOnProperty(name = "customer.store", havingValue = "partitioned")
+public class PartitionedCustomerRepository implements CustomerRepository {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final Comparator<Customer> BY_ID = Comparator.comparing(Customer::getId);
+
+    private final CustomerRepositoryImpl[] partitions;
+    private final Executor executor = ForkJoinPool.commonPool();
+    // With a single processor, handing partitions to the pool only adds thread switches
+    private final boolean fanOut = Runtime.getRuntime().availableProcessors() > 1;
+    private final AtomicLong nextId = new AtomicLong(1L);
+    // Every customer code in the store and the id holding it, claimed before a write reaches a
+    // partition, so a code is unique across all partitions and not just within one
+    private final ConcurrentMap<String, Long> customerCodes = new ConcurrentHashMap<>();
+    // Writers to the same id are serialized, so the code a write replaces is the one it read
+    private final ReentrantLock[] writeLocks = new ReentrantLock[LOCK_STRIPES];
+
+    /** @param partitions the number of partitions, or 0 for one per available processor */
+    public PartitionedCustomerRepository(@Value("${customer.partitions:0}") int partitions) {
+        if (partitions < 0) {
+            throw new IllegalArgumentException("Number of partitions must not be negative: " + partitions);
+        }
+        if (partitions == 0) {
+            partitions = Runtime.getRuntime().availableProcessors();
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        this.partitions = new CustomerRepositoryImpl[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new CustomerRepositoryImpl();
+        }
+    }
+
+    int partitionCount() {
+        return partitions.length;
+    }
+
+    @Override
+    public List<Customer> findAll() {
+        return mergeById(scatter(CustomerRepository::findAll));
+    }
+
+    @Override
+    public CustomerPage findAll(Long cursor, int limit) {
+        return mergePages(scatter(partition -> partition.findAll(cursor, limit)), limit);
+    }
+
+    // Merges the partitions' streams as it goes, so it stays lazy and in id order
+    @Override
+    public Stream<Customer> streamAll() {
+        List<Stream<Customer>> streams = new ArrayList<>(partitions.length);
+        List<Iterator<Customer>> iterators = new ArrayList<>(partitions.length);
+        for (CustomerRepositoryImpl partition : partitions) {
+            Stream<Customer> stream = partition.streamAll();
+            streams.add(stream);
+            iterators.add(stream.iterator());
+        }
+        Spliterator<Customer> spliterator = Spliterators.spliteratorUnknownSize(new MergedIterator(iterators),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> streams.forEach(Stream::close));
+    }
+
+    @Override
+    public Optional<Customer> findById(Long id) {
+        return id == null ? Optional.empty() : partitionOf(id).findById(id);
+    }
+
+    // The store-wide code index names the partition; a code claimed by a write still in progress
+    // is not found until the customer has it
+    @Override
+    public Optional<Customer> findByCustomerCode(String customerCode) {
+        Long id = customerCode == null ? null : customerCodes.get(customerCode);
+        if (id == null) {
+            return Optional.empty();
+        }
+        return partitionOf(id).findById(id).filter(customer -> customerCode.equals(customer.getCustomerCode()));
+    }
+
+    @Override
+    public List<Customer> findByFullNameContaining(String fullName) {
+        return mergeById(scatter(partition -> partition.findByFullNameContaining(fullName)));
+    }
+
+    @Override
+    public List<Customer> findByEmailContaining(String email) {
+        return mergeById(scatter(partition -> partition.findByEmailContaining(email)));
+    }
+
+    @Override
+    public List<Customer> findByPhoneNumberContaining(String phoneNumber) {
+        return mergeById(scatter(partition -> partition.findByPhoneNumberContaining(phoneNumber)));
+    }
+
+    @Override
+    public List<Customer> findByPhoneNumberEndingWith(String phoneNumber) {
+        return mergeById(scatter(partition -> partition.findByPhoneNumberEndingWith(phoneNumber)));
+    }
+
+    @Override
+    public List<Customer> search(String keyword) {
+        return mergeById(scatter(partition -> partition.search(keyword)));
+    }
+
+    @Override
+    public CustomerPage search(String keyword, Long cursor, int limit) {
+        return mergePages(scatter(partition -> partition.search(keyword, cursor, limit)), limit);
+    }
+
+    // Every partition returns its best limit; the ranks are worked out again from the customers
+    // to pick the best limit of those
+    @Override
+    public List<Customer> searchRanked(String keyword, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        RankedMatches matches = new RankedMatches(keyword, limit);
+        return mergeTop(scatter(partition -> partition.searchRanked(keyword, limit)), matches, customer -> true,
+                customer -> matches.rank(customer.getCustomerCode(), TextFolding.fold(customer.getFullName())));
+    }
+
+    @Override
+    public List<Customer> searchFuzzy(String keyword, int maxEdits, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return findAll(null, limit).getItems();
+        }
+        List<String> queryTokens = NameTokenIndex.tokens(TextFolding.fold(keyword).trim());
+        ToIntFunction<Customer> edits =
+                customer -> NameTokenIndex.edits(queryTokens, TextFolding.fold(customer.getFullName()), maxEdits);
+        return mergeTop(scatter(partition -> partition.searchFuzzy(keyword, maxEdits, limit)), new TopMatches(limit),
+                customer -> edits.applyAsInt(customer) >= 0, edits);
+    }
+
+    @Override
+    public CustomerPage filter(CustomerFilter filter, Long cursor, int limit) {
+        return mergePages(scatter(partition -> partition.filter(filter, cursor, limit)), limit);
+    }
+
+    @Override
+    public List<Customer> findByDateOfBirthBetween(LocalDate from, LocalDate to, int limit) {
+        return mergeTop(scatter(partition -> partition.findByDateOfBirthBetween(from, to, limit)),
+                new TopMatches(limit), customer -> customer.getDateOfBirth() != null,
+                customer -> (int) customer.getDateOfBirth().toEpochDay());
+    }
+
+    @Override
+    public List<Customer> findUpcomingBirthdays(LocalDate from, int days, int limit) {
+        return mergeTop(scatter(partition -> partition.findUpcomingBirthdays(from, days, limit)),
+                new TopMatches(limit), customer -> customer.getDateOfBirth() != null,
+                customer -> Birthdays.daysUntil(customer.getDateOfBirth(), from));
+    }
+
+    @Override
+    public CustomerCounts countCustomers() {
+        long total = 0;
+        GroupCounts cityCounts = new GroupCounts();
+        GroupCounts genderCounts = new GroupCounts();
+        for (CustomerRepositoryImpl partition : partitions) {
+            CustomerCounts counts = partition.countCustomers();
+            total += counts.getTotal();
+            for (CustomerGroupCount group : counts.getByCity()) {
+                cityCounts.add(group.getValue(), group.getCount());
+            }
+            for (CustomerGroupCount group : counts.getByGender()) {
+                genderCounts.add(group.getValue(), group.getCount());
+            }
+        }
+        return new CustomerCounts(total, cityCounts.toList(), genderCounts.toList());
+    }
+
+    // The code is claimed store-wide before the partition sees the customer, so two partitions
+    // can never both take it
+    @Override
+    public Customer save(Customer customer) {
+        boolean created = customer.getId() == null;
+        if (created) {
+            // Creating a new customer
+            customer.setId(nextId.getAndIncrement());
+        }
+        Long id = customer.getId();
+        ReentrantLock lock = writeLockFor(id);
+        lock.lock();
+        try {
+            String previousCode;
+            try {
+                previousCode = claimCode(customer, created);
+            } catch (DuplicateCustomerCodeException e) {
+                if (created) {
+                    customer.setId(null);
+                }
+                throw e;
+            }
+            boolean saved = false;
+            try {
+                partitionOf(id).save(customer);
+                saved = true;
+            } finally {
+                releaseCode(saved, previousCode, customer.getCustomerCode(), id);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return customer;
+    }
+
+    @Override
+    public Optional<Customer> saveIfVersion(Customer customer, long expectedVersion) {
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("Customer id is required to compare versions");
+        }
+        Long id = customer.getId();
+        ReentrantLock lock = writeLockFor(id);
+        lock.lock();
+        try {
+            String previousCode = claimCode(customer, false);
+            Optional<Customer> saved = Optional.empty();
+            try {
+                saved = partitionOf(id).saveIfVersion(customer, expectedVersion);
+            } finally {
+                releaseCode(saved.isPresent(), previousCode, customer.getCustomerCode(), id);
+            }
+            return saved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every code of the batch is claimed before any partition saves its share, under the write
+    // locks of all of the batch's ids; one taken code keeps the whole batch out. Each partition
+    // then saves its share of the batch, in the batch's order, alongside the others.
+    @Override
+    public List<Customer> saveAll(List<Customer> customers) {
+        long id = nextId.getAndAdd(customers.stream().filter(customer -> customer.getId() == null).count());
+        boolean[] created = new boolean[customers.size()];
+        for (int i = 0; i < customers.size(); i++) {
+            if (customers.get(i).getId() == null) {
+                customers.get(i).setId(id++);
+                created[i] = true;
+            }
+        }
+        // The code each id held before the batch, and every code the batch claimed for it
+        Map<Long, String> previousCodes = new HashMap<>();
+        Map<Long, Set<String>> claimedCodes = new HashMap<>();
+        boolean saved = false;
+        List<ReentrantLock> locks = writeLocksFor(customers);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            for (int i = 0; i < customers.size(); i++) {
+                Customer customer = customers.get(i);
+                String previousCode = claimCode(customer, created[i]);
+                previousCodes.putIfAbsent(customer.getId(), previousCode);
+                claimedCodes.computeIfAbsent(customer.getId(), ignored -> new HashSet<>())
+                        .add(customer.getCustomerCode());
+            }
+            saveInPartitions(customers);
+            saved = true;
+        } finally {
+            // An id keeps the code of its last customer in the batch if the batch went in, and
+            // the code it had before if not; every other code claimed for it is given back
+            Map<Long, String> keptCodes = new HashMap<>(previousCodes);
+            if (saved) {
+                customers.forEach(customer -> keptCodes.put(customer.getId(), customer.getCustomerCode()));
+            }
+            claimedCodes.forEach((claimedId, codes) -> {
+                codes.add(previousCodes.get(claimedId));
+                for (String code : codes) {
+                    if (code != null && !code.equals(keptCodes.get(claimedId))) {
+                        customerCodes.remove(code, claimedId);
+                    }
+                }
+            });
+            locks.forEach(ReentrantLock::unlock);
+            if (!saved) {
+                for (int i = 0; i < customers.size(); i++) {
+                    if (created[i]) {
+                        customers.get(i).setId(null);
+                    }
+                }
+            }
+        }
+        return customers;
+    }
+
+    // Codes are claimed store-wide as in saveAll, but a taken code only leaves its own customer
+    // out unless the batch is all or nothing. The ids are new, so no other writer can hold them.
+    @Override
+    public Set<String> saveAllIfCodesFree(List<Customer> customers, boolean allOrNothing) {
+        for (Customer customer : customers) {
+            if (customer.getId() != null) {
+                throw new IllegalArgumentException("Customer to create already has an id: " + customer.getId());
+            }
+        }
+        long id = nextId.getAndAdd(customers.size());
+        Set<String> taken = new LinkedHashSet<>();
+        List<Customer> claimed = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            customer.setId(id++);
+            String code = customer.getCustomerCode();
+            if (code == null || customerCodes.putIfAbsent(code, customer.getId()) == null) {
+                claimed.add(customer);
+            } else {
+                taken.add(code);
+                customer.setId(null);
+            }
+        }
+        if (claimed.isEmpty() || allOrNothing && !taken.isEmpty()) {
+            releaseClaims(claimed);
+            return taken;
+        }
+        boolean saved = false;
+        try {
+            saveInPartitions(claimed);
+            saved = true;
+        } finally {
+            if (!saved) {
+                releaseClaims(claimed);
+            }
+        }
+        return taken;
+    }
+
+    // Undoes the claims of new customers that are not saved after all
+    private void releaseClaims(List<Customer> claimed) {
+        for (Customer customer : claimed) {
+            if (customer.getCustomerCode() != null) {
+                customerCodes.remove(customer.getCustomerCode(), customer.getId());
+            }
+            customer.setId(null);
+        }
+    }
+
+    private void saveInPartitions(List<Customer> customers) {
+        Map<CustomerRepositoryImpl, List<Customer>> batches = new LinkedHashMap<>();
+        for (Customer customer : customers) {
+            batches.computeIfAbsent(partitionOf(customer.getId()), ignored -> new ArrayList<>()).add(customer);
+        }
+        if (!fanOut) {
+            batches.forEach(CustomerRepositoryImpl::saveAll);
+            return;
+        }
+        List<CompletableFuture<List<Customer>>> saves = new ArrayList<>(batches.size());
+        batches.forEach((partition, batch) ->
+                saves.add(CompletableFuture.supplyAsync(() -> partition.saveAll(batch), executor)));
+        saves.forEach(PartitionedCustomerRepository::join);
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        if (id == null) {
+            return;
+        }
+        ReentrantLock lock = writeLockFor(id);
+        lock.lock();
+        try {
+            CustomerRepositoryImpl partition = partitionOf(id);
+            Optional<Customer> previous = partition.findById(id);
+            partition.deleteById(id);
+            previous.map(Customer::getCustomerCode).ifPresent(code -> customerCodes.remove(code, id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByCustomerCode(String customerCode) {
+        return findByCustomerCode(customerCode).isPresent();
+    }
+
+    @Override
+    public boolean existsByCustomerCodeAndIdNot(String customerCode, Long id) {
+        return findByCustomerCode(customerCode).filter(customer -> !customer.getId().equals(id)).isPresent();
+    }
+
+    @Override
+    public Set<String> findExistingCustomerCodes(Collection<String> customerCodes) {
+        Set<String> existing = new HashSet<>();
+        for (String customerCode : customerCodes) {
+            if (findByCustomerCode(customerCode).isPresent()) {
+                existing.add(customerCode);
+            }
+        }
+        return existing;
+    }
+
+    // Every partition's generation only grows, so their sum changes with every write to any of them
+    @Override
+    public long generation() {
+        long generation = 0;
+        for (CustomerRepositoryImpl partition : partitions) {
+            generation += partition.generation();
+        }
+        return generation;
+    }
+
+    // Claims the customer's code for its id and returns the code the id held until now; the
+    // caller holds the id's write lock, so that code cannot change underneath it
+    private String claimCode(Customer customer, boolean created) {
+        Long id = customer.getId();
+        String previousCode = created ? null
+                : partitionOf(id).findById(id).map(Customer::getCustomerCode).orElse(null);
+        String code = customer.getCustomerCode();
+        if (code != null) {
+            Long holder = customerCodes.putIfAbsent(code, id);
+            if (holder != null && !holder.equals(id)) {
+                throw new DuplicateCustomerCodeException("Customer code already exists: " + code);
+            }
+        }
+        return previousCode;
+    }
+
+    // Gives back the code the id no longer has: the previous one once the write went in, or the
+    // one claimed for it if the write did not
+    private void releaseCode(boolean saved, String previousCode, String code, Long id) {
+        if (Objects.equals(previousCode, code)) {
+            return;
+        }
+        String released = saved ? previousCode : code;
+        if (released != null) {
+            customerCodes.remove(released, id);
+        }
+    }
+
+    private ReentrantLock writeLockFor(Long id) {
+        return writeLocks[Long.hashCode(id) & (LOCK_STRIPES - 1)];
+    }
+
+    // In stripe order, so batches cannot deadlock
+    private List<ReentrantLock> writeLocksFor(List<Customer> customers) {
+        boolean[] stripes = new boolean[LOCK_STRIPES];
+        for (Customer customer : customers) {
+            stripes[Long.hashCode(customer.getId()) & (LOCK_STRIPES - 1)] = true;
+        }
+        List<ReentrantLock> locks = new ArrayList<>();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            if (stripes[i]) {
+                locks.add(writeLocks[i]);
+            }
+        }
+        return locks;
+    }
+
+    // Fibonacci hashing, so that ids sharing a stride still spread over all the partitions
+    private CustomerRepositoryImpl partitionOf(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return partitions[(int) Math.floorMod(hash ^ (hash >>> 32), (long) partitions.length)];
+    }
+
+    // Runs the query on every partition, the first one on the calling thread while the others
+    // run on the pool, and returns the answers in partition order
+    private <T> List<T> scatter(Function<CustomerRepositoryImpl, T> query) {
+        if (!fanOut) {
+            List<T> results = new ArrayList<>(partitions.length);
+            for (CustomerRepositoryImpl partition : partitions) {
+                results.add(query.apply(partition));
+            }
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(partitions.length - 1);
+        for (int i = 1; i < partitions.length; i++) {
+            CustomerRepositoryImpl partition = partitions[i];
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(partition), executor));
+        }
+        List<T> results = new ArrayList<>(partitions.length);
+        results.add(query.apply(partitions[0]));
+        for (CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    // Rethrows what the query threw rather than a CompletionException around it
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Each answer is already in id order, and the sort merges such runs rather than sorting anew
+    private static List<Customer> mergeById(List<List<Customer>> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        int size = 0;
+        for (List<Customer> customers : results) {
+            size += customers.size();
+        }
+        List<Customer> merged = new ArrayList<>(size);
+        results.forEach(merged::addAll);
+        merged.sort(BY_ID);
+        return merged;
+    }
+
+    // A partition that has more than its page holds limit customers, so the merged page is full
+    // and has a next page too
+    private static CustomerPage mergePages(List<CustomerPage> pages, int limit) {
+        List<List<Customer>> items = new ArrayList<>(pages.size());
+        boolean more = false;
+        for (CustomerPage page : pages) {
+            items.add(page.getItems());
+            more |= page.getNextCursor() != null;
+        }
+        List<Customer> customers = mergeById(items);
+        if (customers.size() <= limit && !more) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> page = new ArrayList<>(customers.subList(0, Math.min(limit, customers.size())));
+        return new CustomerPage(page, page.get(page.size() - 1).getId());
+    }
+
+    // Offers every partition's best to one TopMatches; a customer that no longer matches, because
+    // it was changed since its partition ranked it, is left out. Ranks may be negative, such as
+    // the epoch day of a birth before 1970.
+    private static List<Customer> mergeTop(List<List<Customer>> results, TopMatches matches,
+            Predicate<Customer> matching, ToIntFunction<Customer> rank) {
+        for (List<Customer> customers : results) {
+            for (Customer customer : customers) {
+                if (matching.test(customer)) {
+                    matches.offer(rank.applyAsInt(customer), customer.getId(), customer);
+                }
+            }
+        }
+        return matches.toList();
+    }
+
+    // Merges iterators that each return customers in id order into one in id order
+    private static final class MergedIterator implements Iterator<Customer> {
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(head -> head.customer, BY_ID));
+
+        MergedIterator(List<Iterator<Customer>> iterators) {
+            for (Iterator<Customer> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Customer next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Customer customer = head.customer;
+            if (head.rest.hasNext()) {
+                head.customer = head.rest.next();
+                heads.add(head);
+            }
+            return customer;
+        }
+
+        private static final class Head {
+
+            private final Iterator<Customer> rest;
+            private Customer customer;
+
+            Head(Iterator<Customer> rest) {
+                this.rest = rest;
+                this.customer = rest.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index of canonical phone numbers stored back to front, so that "ends with these
+ * digits" becomes a prefix range scan costing O(log n + k) instead of a scan of every customer.
+ */
+final class PhoneNumberSuffixIndex {
+
+    // Sorts before every digit, so all entries for one reversed number stay contiguous
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final NavigableSet<String> reversedNumbers = new ConcurrentSkipListSet<>();
+
+    void add(CustomerEntry entry) {
+        String key = key(entry);
+        if (key != null) {
+            reversedNumbers.add(key);
+        }
+    }
+
+    void remove(CustomerEntry entry) {
+        String key = key(entry);
+        if (key != null) {
+            reversedNumbers.remove(key);
+        }
+    }
+
+    void replace(CustomerEntry previous, CustomerEntry replacement) {
+        if (Objects.equals(previous.phoneNumberDigits(), replacement.phoneNumberDigits())) {
+            return;
+        }
+        remove(previous);
+        add(replacement);
+    }
+
+    // Returns the ids of customers whose canonical phone number ends with the given digits
+    List<Long> findEndingWith(String digits) {
+        String prefix = new StringBuilder(digits).reverse().toString();
+        List<Long> ids = new ArrayList<>();
+        for (String key : reversedNumbers.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+            ids.add(Long.valueOf(key.substring(key.lastIndexOf(ID_SEPARATOR) + 1)));
+        }
+        return ids;
+    }
+
+    private static String key(CustomerEntry entry) {
+        String digits = entry.phoneNumberDigits();
+        if (digits == null || digits.isEmpty()) {
+            return null;
+        }
+        return new StringBuilder(digits).reverse().append(ID_SEPARATOR).append(entry.id()).toString();
+    }
+}
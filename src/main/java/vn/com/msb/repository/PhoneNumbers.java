@@ -0,0 +1,76 @@
+package vn.com.msb.repository;
+
+/**
+ * Canonical form of phone numbers used for indexing and matching: digits only, with the
+ * Vietnamese international prefix ({@code +84}, {@code 0084} or a bare {@code 84} in front of a
+ * nine digit subscriber number) folded to the national trunk prefix {@code 0}, so that
+ * "+84 912 345 678", "0084912345678" and "0912-345-678" all become "0912345678".
+ */
+final class PhoneNumbers {
+
+    private static final String VIETNAM_COUNTRY_CODE = "84";
+    private static final int VIETNAM_SUBSCRIBER_LENGTH = 9;
+
+    private PhoneNumbers() {
+    }
+
+    static String canonicalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        String result = digits(phoneNumber);
+        if (phoneNumber.trim().startsWith("+")) {
+            return result.startsWith(VIETNAM_COUNTRY_CODE) ? "0" + result.substring(2) : result;
+        }
+        if (result.startsWith("00" + VIETNAM_COUNTRY_CODE)) {
+            return "0" + result.substring(4);
+        }
+        if (isBareInternational(result)) {
+            return "0" + result.substring(2);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the number starts with an international prefix. The start of such a number is known,
+     * so a query like "+84 91" must match canonical numbers starting with "091", not any number
+     * that merely contains those digits.
+     */
+    static boolean hasInternationalPrefix(String phoneNumber) {
+        if (phoneNumber == null) {
+            return false;
+        }
+        String digits = digits(phoneNumber);
+        return phoneNumber.trim().startsWith("+") || digits.startsWith("00") || isBareInternational(digits);
+    }
+
+    private static boolean isBareInternational(String digits) {
+        return digits.startsWith(VIETNAM_COUNTRY_CODE)
+                && digits.length() == VIETNAM_COUNTRY_CODE.length() + VIETNAM_SUBSCRIBER_LENGTH;
+    }
+
+    private static String digits(String phoneNumber) {
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    // True for terms made only of digits and the separators people type between them
+    static boolean looksLikePhoneNumber(String term) {
+        boolean hasDigit = false;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (c != '+' && c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+}
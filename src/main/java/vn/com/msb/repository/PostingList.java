@@ -0,0 +1,237 @@
+package vn.com.msb.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Compact set of customer ids for one trigram. Ids are split into chunks of 65536 by their high
+ * bits; a chunk keeps its low 16 bits either as a sorted {@code char[]} (two bytes per id) or,
+ * once it holds more than {@value #MAX_ARRAY_CARDINALITY} ids, as a 8 KiB bitmap. Boxed ids in a
+ * concurrent set cost around 60 bytes each, which does not scale to tens of postings per customer.
+ */
+final class PostingList {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int LOW_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+    private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] chunkKeys = new long[1];
+    // Each container is either a char[] array container or a long[] bitmap container
+    private Object[] containers = new Object[1];
+    private int[] cardinalities = new int[1];
+    private int chunkCount;
+    private volatile int size;
+
+    int size() {
+        return size;
+    }
+
+    void add(long id) {
+        lock.lock();
+        try {
+            addUnlocked(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds the first {@code count} ids while taking the lock once; ascending ids are cheapest. */
+    void addAll(long[] ids, int count) {
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                addUnlocked(ids[i]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(long id) {
+        lock.lock();
+        try {
+            int chunk = Arrays.binarySearch(chunkKeys, 0, chunkCount, id >>> CHUNK_BITS);
+            if (chunk < 0 || !removeLow(chunk, (char) (id & LOW_MASK))) {
+                return;
+            }
+            size--;
+            if (--cardinalities[chunk] == 0) {
+                removeChunk(chunk);
+            } else if (containers[chunk] instanceof long[] bitmap
+                    && cardinalities[chunk] <= MAX_ARRAY_CARDINALITY / 2) {
+                containers[chunk] = toArrayContainer(bitmap, cardinalities[chunk]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns a snapshot of the ids in ascending order. */
+    long[] toArray() {
+        lock.lock();
+        try {
+            long[] ids = new long[size];
+            int[] n = {0};
+            forEach(id -> {
+                ids[n[0]++] = id;
+                return true;
+            });
+            return ids;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passes the ids in ascending order to the action until it returns false, holding the lock
+     * throughout, so the action must not block. Returns whether the action saw every id.
+     */
+    boolean forEach(LongPredicate action) {
+        lock.lock();
+        try {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                long high = chunkKeys[chunk] << CHUNK_BITS;
+                if (containers[chunk] instanceof char[] values) {
+                    for (int i = 0; i < cardinalities[chunk]; i++) {
+                        if (!action.test(high | values[i])) {
+                            return false;
+                        }
+                    }
+                } else {
+                    long[] bitmap = (long[]) containers[chunk];
+                    for (int word = 0; word < BITMAP_WORDS; word++) {
+                        long bits = bitmap[word];
+                        while (bits != 0) {
+                            if (!action.test(high | ((long) word << 6) | Long.numberOfTrailingZeros(bits))) {
+                                return false;
+                            }
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // New customers get ever larger ids, so both searches first check whether the id goes last
+    private void addUnlocked(long id) {
+        long key = id >>> CHUNK_BITS;
+        int chunk = chunkCount > 0 && chunkKeys[chunkCount - 1] == key ? chunkCount - 1
+                : Arrays.binarySearch(chunkKeys, 0, chunkCount, key);
+        if (chunk < 0) {
+            chunk = insertChunk(-chunk - 1, key);
+        }
+        if (addLow(chunk, (char) (id & LOW_MASK))) {
+            cardinalities[chunk]++;
+            size++;
+        }
+    }
+
+    private boolean addLow(int chunk, char low) {
+        if (containers[chunk] instanceof long[] bitmap) {
+            return setBit(bitmap, low);
+        }
+        char[] values = (char[]) containers[chunk];
+        int cardinality = cardinalities[chunk];
+        int position = cardinality == 0 || values[cardinality - 1] < low ? -cardinality - 1
+                : Arrays.binarySearch(values, 0, cardinality, low);
+        if (position >= 0) {
+            return false;
+        }
+        if (cardinality == MAX_ARRAY_CARDINALITY) {
+            long[] bitmap = toBitmapContainer(values, cardinality);
+            containers[chunk] = bitmap;
+            return setBit(bitmap, low);
+        }
+        position = -position - 1;
+        if (cardinality == values.length) {
+            values = Arrays.copyOf(values, Math.min(MAX_ARRAY_CARDINALITY, cardinality * 2));
+            containers[chunk] = values;
+        }
+        System.arraycopy(values, position, values, position + 1, cardinality - position);
+        values[position] = low;
+        return true;
+    }
+
+    private boolean removeLow(int chunk, char low) {
+        if (containers[chunk] instanceof long[] bitmap) {
+            long mask = 1L << low;
+            if ((bitmap[low >>> 6] & mask) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~mask;
+            return true;
+        }
+        char[] values = (char[]) containers[chunk];
+        int cardinality = cardinalities[chunk];
+        int position = Arrays.binarySearch(values, 0, cardinality, low);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+        return true;
+    }
+
+    private int insertChunk(int position, long key) {
+        if (chunkCount == chunkKeys.length) {
+            int capacity = chunkCount * 2;
+            chunkKeys = Arrays.copyOf(chunkKeys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        int tail = chunkCount - position;
+        System.arraycopy(chunkKeys, position, chunkKeys, position + 1, tail);
+        System.arraycopy(containers, position, containers, position + 1, tail);
+        System.arraycopy(cardinalities, position, cardinalities, position + 1, tail);
+        chunkKeys[position] = key;
+        containers[position] = new char[4];
+        cardinalities[position] = 0;
+        chunkCount++;
+        return position;
+    }
+
+    private void removeChunk(int position) {
+        int tail = chunkCount - position - 1;
+        System.arraycopy(chunkKeys, position + 1, chunkKeys, position, tail);
+        System.arraycopy(containers, position + 1, containers, position, tail);
+        System.arraycopy(cardinalities, position + 1, cardinalities, position, tail);
+        chunkCount--;
+        containers[chunkCount] = null;
+    }
+
+    private static boolean setBit(long[] bitmap, char low) {
+        long mask = 1L << low;
+        if ((bitmap[low >>> 6] & mask) != 0) {
+            return false;
+        }
+        bitmap[low >>> 6] |= mask;
+        return true;
+    }
+
+    private static long[] toBitmapContainer(char[] values, int cardinality) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < cardinality; i++) {
+            bitmap[values[i] >>> 6] |= 1L << values[i];
+        }
+        return bitmap;
+    }
+
+    private static char[] toArrayContainer(long[] bitmap, int cardinality) {
+        char[] values = new char[cardinality];
+        int n = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long bits = bitmap[word];
+            while (bits != 0) {
+                values[n++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,67 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The best matches of a ranked keyword search, at most limit of them.
+ *
+ * <p>A customer whose code is the keyword (as typed, upper- or lower-case) ranks first, then one
+ * whose full name starts with the keyword, then one with a later word of the name starting with
+ * it, then any other match; customers of the same rank come in id order.
+ */
+final class RankedMatches extends TopMatches {
+
+    static final int EXACT_CODE = 0;
+    static final int NAME_PREFIX = 1;
+    static final int NAME_WORD_PREFIX = 2;
+    static final int OTHER = 3;
+
+    private final String keyword;
+    private final String upperCase;
+    private final String term;
+
+    RankedMatches(String keyword, int limit) {
+        super(limit);
+        this.keyword = keyword.trim();
+        this.upperCase = this.keyword.toUpperCase(Locale.ROOT);
+        this.term = TextFolding.fold(keyword).trim();
+    }
+
+    /** The customer codes that rank as {@link #EXACT_CODE}. */
+    List<String> exactCodes() {
+        List<String> codes = new ArrayList<>(List.of(keyword));
+        if (!upperCase.equals(keyword)) {
+            codes.add(upperCase);
+        }
+        if (!term.equals(keyword) && !term.equals(upperCase)) {
+            codes.add(term);
+        }
+        return codes;
+    }
+
+    /**
+     * Ranks a customer that matches the keyword.
+     *
+     * @param fullNameKey the full name folded by {@link TextFolding}
+     */
+    int rank(String customerCode, String fullNameKey) {
+        if (customerCode != null
+                && (customerCode.equals(keyword) || customerCode.equals(upperCase) || customerCode.equals(term))) {
+            return EXACT_CODE;
+        }
+        if (fullNameKey == null) {
+            return OTHER;
+        }
+        if (fullNameKey.startsWith(term)) {
+            return NAME_PREFIX;
+        }
+        for (int i = fullNameKey.indexOf(term, 1); i > 0; i = fullNameKey.indexOf(term, i + 1)) {
+            if (!Character.isLetterOrDigit(fullNameKey.charAt(i - 1))) {
+                return NAME_WORD_PREFIX;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,47 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Maps the few distinct values of a low-cardinality field to small int codes, with
+ * {@code 0} reserved for {@code null}. Codes are never reused, so they stay valid for the
+ * lifetime of the store. Not thread-safe.
+ */
+final class StringDictionary {
+
+    static final int NULL_CODE = 0;
+
+    private final List<String> values = new ArrayList<>(List.of(""));
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        return codes.computeIfAbsent(value, key -> {
+            values.add(key);
+            return values.size() - 1;
+        });
+    }
+
+    String decode(int code) {
+        return code == NULL_CODE ? null : values.get(code);
+    }
+
+    /** Which codes, as indexes into the returned array, stand for a value the predicate accepts. */
+    boolean[] codesMatching(Predicate<String> predicate) {
+        boolean[] matching = new boolean[values.size()];
+        for (int code = NULL_CODE + 1; code < values.size(); code++) {
+            matching[code] = predicate.test(values.get(code));
+        }
+        return matching;
+    }
+
+    int size() {
+        return values.size() - 1;
+    }
+}
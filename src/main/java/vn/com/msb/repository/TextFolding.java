@@ -0,0 +1,99 @@
+package vn.com.msb.repository;
+
+import java.text.Normalizer;
+
+/**
+ * Case and diacritic folding for search keys, so that "nguyen" finds "Nguyễn" and "Đức" finds
+ * "Duc": every letter is lower-cased and stripped of its accents, and đ becomes d.
+ *
+ * <p>Folding maps each char below U+1F00, which covers the Latin, Greek and Cyrillic letters, to
+ * exactly one char through a table built once, so already folded text is returned as is and
+ * {@link #containsFolded} can compare without allocating. Only free-standing combining marks, as
+ * in text that was entered decomposed, are dropped and change the length.
+ */
+final class TextFolding {
+
+    // Up to and including Latin Extended Additional, where the precomposed Vietnamese letters are
+    private static final int TABLE_SIZE = 0x1F00;
+    private static final char DROPPED = '\uFFFF';
+    private static final char[] TABLE = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            TABLE[c] = Character.toLowerCase(base((char) c));
+        }
+        TABLE['\u0111'] = 'd';
+        TABLE['\u0110'] = 'd';
+    }
+
+    private TextFolding() {
+    }
+
+    static String fold(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (fold(c) != c) {
+                return foldFrom(value, i);
+            }
+        }
+        return value;
+    }
+
+    /** Whether the folded value contains a term that is already folded. */
+    static boolean containsFolded(String value, String term) {
+        if (value == null) {
+            return false;
+        }
+        int length = term.length();
+        outer:
+        for (int i = 0; i + length <= value.length(); i++) {
+            for (int j = 0; j < length; j++) {
+                char folded = fold(value.charAt(i + j));
+                if (folded == DROPPED) {
+                    return fold(value).contains(term);
+                }
+                if (folded != term.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static char fold(char c) {
+        return c < TABLE_SIZE ? TABLE[c] : Character.toLowerCase(c);
+    }
+
+    private static String foldFrom(String value, int start) {
+        StringBuilder folded = new StringBuilder(value.length());
+        folded.append(value, 0, start);
+        for (int i = start; i < value.length(); i++) {
+            char c = fold(value.charAt(i));
+            if (c != DROPPED) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+
+    // The letter a precomposed char decomposes to, with its combining marks left out
+    private static char base(char c) {
+        if (Character.getType(c) == Character.NON_SPACING_MARK) {
+            return DROPPED;
+        }
+        if (Character.isSurrogate(c)) {
+            return c;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        for (int i = 1; i < decomposed.length(); i++) {
+            if (Character.getType(decomposed.charAt(i)) != Character.NON_SPACING_MARK) {
+                return c;
+            }
+        }
+        return decomposed.charAt(0);
+    }
+}
@@ -0,0 +1,72 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * The best limit matches offered so far, by rank (lower is better) and then id. They are kept in
+ * a heap with the worst of them at its root, so each offer costs O(log limit).
+ *
+ * <p>Stores offer matches in id order, so they can stop as soon as {@link #accepts(int, long)}
+ * turns down the best rank still to come, or {@link #settled(int)} says the heap is full of
+ * matches ranked no worse than it.
+ */
+class TopMatches {
+
+    private static final Comparator<Match> BEST_FIRST = Comparator.comparingInt(Match::rank)
+            .thenComparingLong(Match::id);
+
+    private final int limit;
+    private final PriorityQueue<Match> heap;
+    private final Set<Long> ids = new HashSet<>();
+
+    TopMatches(int limit) {
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+    }
+
+    /** Whether a match would make it into the best limit seen so far, unless it is already in. */
+    boolean accepts(int rank, long id) {
+        if (heap.size() < limit) {
+            return true;
+        }
+        Match worst = heap.peek();
+        return rank < worst.rank() || rank == worst.rank() && id < worst.id();
+    }
+
+    /** Returns whether the match made it into the best limit seen so far. */
+    boolean offer(int rank, long id, Customer customer) {
+        if (!accepts(rank, id) || !ids.add(id)) {
+            return false;
+        }
+        heap.add(new Match(rank, id, customer));
+        if (heap.size() > limit) {
+            ids.remove(heap.poll().id());
+        }
+        return true;
+    }
+
+    /** Whether no match of this rank or worse, offered after the ones so far, can get in. */
+    boolean settled(int rank) {
+        return heap.size() == limit && heap.peek().rank() <= rank;
+    }
+
+    List<Customer> toList() {
+        List<Match> matches = new ArrayList<>(heap);
+        matches.sort(BEST_FIRST);
+        List<Customer> customers = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            customers.add(match.customer());
+        }
+        return customers;
+    }
+
+    private record Match(int rank, long id, Customer customer) {
+    }
+}
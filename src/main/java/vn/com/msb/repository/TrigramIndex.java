@@ -0,0 +1,147 @@
+package vn.com.msb.repository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Inverted index from every three-character window of a customer field to the ids of the
+ * customers containing it. Any string containing a query of length three or more contains all
+ * of the query's trigrams, so the smallest posting list is a superset of the real matches and
+ * only those candidates need to be verified with {@link String#contains}.
+ */
+final class TrigramIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final Function<CustomerEntry, String> keyExtractor;
+    // Emptied posting lists stay in the map: the set of distinct trigrams is small, and never
+    // unmapping a list means an add can't land on one that a concurrent remove just dropped.
+    private final ConcurrentMap<Long, PostingList> postings = new ConcurrentHashMap<>();
+
+    TrigramIndex(Function<CustomerEntry, String> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    static boolean canNarrow(String term) {
+        return term.length() >= GRAM_LENGTH;
+    }
+
+    boolean matches(CustomerEntry entry, String term) {
+        String key = keyExtractor.apply(entry);
+        return key != null && key.contains(term);
+    }
+
+    boolean matchesPrefix(CustomerEntry entry, String term) {
+        String key = keyExtractor.apply(entry);
+        return key != null && key.startsWith(term);
+    }
+
+    void add(CustomerEntry entry) {
+        String key = keyExtractor.apply(entry);
+        if (key == null) {
+            return;
+        }
+        long id = entry.id();
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            postings.computeIfAbsent(gram(key, i), gram -> new PostingList()).add(id);
+        }
+    }
+
+    // Groups the ids of a batch by trigram first, so each posting list is looked up and locked
+    // once per batch rather than once per customer
+    void addAll(List<CustomerEntry> entries) {
+        Map<Long, GramIds> batch = new HashMap<>();
+        for (CustomerEntry entry : entries) {
+            String key = keyExtractor.apply(entry);
+            if (key == null) {
+                continue;
+            }
+            for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+                batch.computeIfAbsent(gram(key, i), gram -> new GramIds()).add(entry.id());
+            }
+        }
+        for (Map.Entry<Long, GramIds> gram : batch.entrySet()) {
+            postings.computeIfAbsent(gram.getKey(), key -> new PostingList())
+                    .addAll(gram.getValue().ids, gram.getValue().count);
+        }
+    }
+
+    void remove(CustomerEntry entry) {
+        String key = keyExtractor.apply(entry);
+        if (key == null) {
+            return;
+        }
+        long id = entry.id();
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            PostingList ids = postings.get(gram(key, i));
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    // Re-indexes only when the key actually changed between two saves of the same customer
+    void replace(CustomerEntry previous, CustomerEntry replacement) {
+        if (Objects.equals(keyExtractor.apply(previous), keyExtractor.apply(replacement))) {
+            return;
+        }
+        remove(previous);
+        add(replacement);
+    }
+
+    /**
+     * Returns the ids, in ascending order, of customers that may contain {@code term}; callers
+     * must verify each one with {@link #matches}. Only valid when {@link #canNarrow} holds for
+     * the term.
+     */
+    long[] candidates(String term) {
+        PostingList smallest = smallestPosting(term);
+        return smallest != null ? smallest.toArray() : new long[0];
+    }
+
+    /** How many ids {@link #candidates} would return right now, without copying them. */
+    int candidateCount(String term) {
+        PostingList smallest = smallestPosting(term);
+        return smallest != null ? smallest.size() : 0;
+    }
+
+    // Null when one of the term's trigrams is in no key at all
+    private PostingList smallestPosting(String term) {
+        PostingList smallest = null;
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            PostingList ids = postings.get(gram(term, i));
+            if (ids == null) {
+                return null;
+            }
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        return smallest;
+    }
+
+    private static long gram(String key, int offset) {
+        return ((long) key.charAt(offset) << 32)
+                | ((long) key.charAt(offset + 1) << 16)
+                | key.charAt(offset + 2);
+    }
+
+    private static final class GramIds {
+
+        private long[] ids = new long[4];
+        private int count;
+
+        void add(long id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package vn.com.msb.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only store of UTF-8 strings in direct memory. Each string is written as an int byte
+ * length followed by its bytes and is addressed by {@code chunk << 32 | offset}; a string never
+ * spans two chunks. Space is only reclaimed by copying the live strings into a new arena.
+ * Not thread-safe.
+ */
+final class Utf8Arena {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long usedBytes;
+
+    long append(String value) {
+        return append(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    long append(byte[] bytes) {
+        int size = Integer.BYTES + bytes.length;
+        if (current == null || current.remaining() < size) {
+            current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, size));
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = current;
+        }
+        long address = (long) (chunks.length - 1) << 32 | current.position();
+        current.putInt(bytes.length).put(bytes);
+        usedBytes += size;
+        return address;
+    }
+
+    String get(long address) {
+        return new String(bytes(address), StandardCharsets.UTF_8);
+    }
+
+    byte[] bytes(long address) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int offset = (int) address;
+        byte[] bytes = new byte[chunk.getInt(offset)];
+        chunk.get(offset + Integer.BYTES, bytes);
+        return bytes;
+    }
+
+    int length(long address) {
+        return chunks[(int) (address >>> 32)].getInt((int) address);
+    }
+
+    // Compares without decoding, for key lookups that probe several rows
+    boolean equals(long address, byte[] utf8) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int offset = (int) address;
+        if (chunk.getInt(offset) != utf8.length) {
+            return false;
+        }
+        return chunk.slice(offset + Integer.BYTES, utf8.length).equals(ByteBuffer.wrap(utf8));
+    }
+
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    long allocatedBytes() {
+        long allocated = 0;
+        for (ByteBuffer chunk : chunks) {
+            allocated += chunk.capacity();
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,151 @@
+package vn.com.msb.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV one record at a time from a 64K character buffer, so memory does not grow
+ * with the input. Fields may be quoted, with {@code ""} for a quote and line breaks inside the
+ * quotes; records end with LF or CRLF. Unquoted fields are cut straight out of the buffer.
+ */
+final class CustomerCsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int position;
+    private int limit;
+    private long line = 1;
+    private long recordLine;
+
+    CustomerCsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** The next record, or null at the end of the input. */
+    String[] next() throws IOException {
+        if (!ensure()) {
+            return null;
+        }
+        if (recordLine == 0 && buffer[position] == '\uFEFF') {
+            position++;
+            if (!ensure()) {
+                return null;
+            }
+        }
+        recordLine = line;
+        fields.clear();
+        while (true) {
+            fields.add(readField());
+            if (!ensure()) {
+                break;
+            }
+            char c = buffer[position++];
+            if (c == ',') {
+                if (!ensure()) {
+                    fields.add("");
+                    break;
+                }
+                continue;
+            }
+            if (c == '\r' && ensure() && buffer[position] == '\n') {
+                position++;
+            }
+            line++;
+            break;
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /** The line on which the last record returned by {@link #next} starts, counting from 1. */
+    long line() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Stops in front of the delimiter or line break that ends the field. Text after a closing
+    // quote is kept rather than rejected, as most spreadsheets do
+    private String readField() throws IOException {
+        if (buffer[position] != '"') {
+            return readUnquoted(null);
+        }
+        long quoteLine = line;
+        position++;
+        field.setLength(0);
+        while (true) {
+            if (!ensure()) {
+                throw new IOException("Unterminated quoted field starting on line " + quoteLine);
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '"') {
+                if (buffer[position] == '\n') {
+                    line++;
+                }
+                position++;
+            }
+            field.append(buffer, start, position - start);
+            if (position == limit) {
+                continue;
+            }
+            position++;
+            if (ensure() && buffer[position] == '"') {
+                field.append('"');
+                position++;
+            } else {
+                return ensure() && !isDelimiter(buffer[position]) ? readUnquoted(field) : field.toString();
+            }
+        }
+    }
+
+    private String readUnquoted(StringBuilder prefix) throws IOException {
+        int start = position;
+        while (position < limit && !isDelimiter(buffer[position])) {
+            position++;
+        }
+        if (position < limit && prefix == null) {
+            return new String(buffer, start, position - start);
+        }
+        // The field runs past the end of the buffer
+        StringBuilder text = prefix;
+        if (text == null) {
+            text = field;
+            text.setLength(0);
+        }
+        text.append(buffer, start, position - start);
+        while (position == limit && ensure()) {
+            start = position;
+            while (position < limit && !isDelimiter(buffer[position])) {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+        }
+        return text.toString();
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == '\n' || c == '\r';
+    }
+
+    private boolean ensure() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int read;
+        do {
+            read = reader.read(buffer, 0, BUFFER_SIZE);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(0, read);
+        return read > 0;
+    }
+}
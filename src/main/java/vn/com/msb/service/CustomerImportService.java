@@ -0,0 +1,443 @@
+package vn.com.msb.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import vn.com.msb.exception.CustomerImportNotFoundException;
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchItem;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerImport;
+
+/**
+ * Imports customers from CSV files with a header row naming the columns. An upload is spooled to
+ * disk and imported in the background, one import at a time, in batches through
+ * {@link CustomerService#createCustomersIndividually}, so customers get the same full name and
+ * code checks as when they are created one by one, and memory is bounded by the batch size
+ * rather than the file size. Rejected rows are written to an error file as they are found.
+ */
+@Service
+public class CustomerImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+    private static final int MAX_RETAINED_IMPORTS = 100;
+
+    private final CustomerService customerService;
+    private final Path directory;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, ImportJob> imports = new ConcurrentHashMap<>();
+    private final Queue<String> importOrder = new ConcurrentLinkedQueue<>();
+
+    public CustomerImportService(CustomerService customerService,
+            @Value("${customer.import.directory:data/imports}") String directory,
+            @Value("${customer.import.batch-size:5000}") int batchSize) throws IOException {
+        if (batchSize < 1 || batchSize > CustomerServiceImpl.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("customer.import.batch-size must be between 1 and "
+                    + CustomerServiceImpl.MAX_BATCH_SIZE + ": " + batchSize);
+        }
+        this.customerService = customerService;
+        this.directory = Files.createDirectories(Path.of(directory));
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Receives an upload into the given file. */
+    public interface Upload {
+        void transferTo(Path file) throws IOException;
+    }
+
+    /**
+     * Spools the upload and queues its import. The header is checked right away, so a file with
+     * unknown columns is rejected with an IllegalArgumentException instead of becoming a failed
+     * import.
+     */
+    public CustomerImport submit(Upload upload) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path file = directory.resolve(id + ".csv");
+        ImportJob job;
+        try {
+            upload.transferTo(file);
+            try (CustomerCsvReader reader = reader(Files.newInputStream(file))) {
+                String[] header = reader.next();
+                job = new ImportJob(id, Files.size(file), header, header == null ? new Column[0] : columns(header));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        imports.put(id, job);
+        importOrder.add(id);
+        evictFinishedImports();
+        executor.execute(() -> run(job, file));
+        return job.toImport();
+    }
+
+    public CustomerImport getImport(String id) {
+        return job(id).toImport();
+    }
+
+    /**
+     * The rejected rows of an import so far, as CSV: the line of the row in the uploaded file, why
+     * it was rejected, then the row itself under the uploaded header.
+     */
+    public Path getErrorFile(String id) {
+        ImportJob job = job(id);
+        if (job.state == CustomerImport.State.QUEUED) {
+            throw new CustomerImportNotFoundException("Import has not started yet: " + id);
+        }
+        return errorFile(id);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        // The running import stops after its current batch
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private ImportJob job(String id) {
+        ImportJob job = id == null ? null : imports.get(id);
+        if (job == null) {
+            throw new CustomerImportNotFoundException("Import not found with id: " + id);
+        }
+        return job;
+    }
+
+    private Path errorFile(String id) {
+        return directory.resolve(id + ".errors.csv");
+    }
+
+    private void run(ImportJob job, Path file) {
+        job.startedAt = LocalDateTime.now();
+        job.state = CustomerImport.State.RUNNING;
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+                CustomerCsvReader reader = reader(in);
+                Writer errors = Files.newBufferedWriter(errorFile(job.id), StandardCharsets.UTF_8)) {
+            writeRecord(errors, "line", "error", job.header == null ? new String[0] : job.header);
+            reader.next();
+            Batch batch = new Batch(batchSize);
+            for (String[] record = reader.next(); record != null; record = reader.next()) {
+                if (record.length == 1 && record[0].isEmpty()) {
+                    continue;
+                }
+                job.rows++;
+                try {
+                    batch.add(toCustomer(record, job.columns), reader.line(), record);
+                } catch (IllegalArgumentException e) {
+                    writeRecord(errors, Long.toString(reader.line()), e.getMessage(), record);
+                    job.failed++;
+                }
+                if (batch.size() == batchSize) {
+                    importBatch(job, batch, errors);
+                    job.bytesRead = in.count;
+                }
+            }
+            importBatch(job, batch, errors);
+            job.bytesRead = in.count;
+            // Whoever sees the import completed must find every rejected row in the file
+            errors.flush();
+            job.finish(CustomerImport.State.COMPLETED, null);
+        } catch (InterruptedException e) {
+            job.finish(CustomerImport.State.FAILED, "Interrupted by shutdown");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Customer import {} failed", job.id, e);
+            job.finish(CustomerImport.State.FAILED, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete uploaded file {}", file, e);
+            }
+        }
+    }
+
+    private void importBatch(ImportJob job, Batch batch, Writer errors) throws IOException, InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (batch.size() == 0) {
+            return;
+        }
+        CustomerBatchResult result = customerService.createCustomersIndividually(batch.customers);
+        for (CustomerBatchItem item : result.getItems()) {
+            if (item.getError() != null) {
+                writeRecord(errors, Long.toString(batch.lines[item.getIndex()]), item.getError(),
+                        batch.records.get(item.getIndex()));
+            }
+        }
+        job.created += result.getCreated();
+        job.failed += result.getFailed();
+        batch.clear();
+    }
+
+    // Old imports are forgotten, with their error files, once there are too many to keep
+    private void evictFinishedImports() {
+        for (String id : importOrder) {
+            if (imports.size() <= MAX_RETAINED_IMPORTS) {
+                return;
+            }
+            ImportJob job = imports.get(id);
+            if (job != null && job.finishedAt != null && importOrder.remove(id)) {
+                imports.remove(id);
+                try {
+                    Files.deleteIfExists(errorFile(id));
+                } catch (IOException e) {
+                    log.warn("Could not delete error file of import {}", id, e);
+                }
+            }
+        }
+    }
+
+    private static CustomerCsvReader reader(InputStream in) {
+        return new CustomerCsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static Column[] columns(String[] header) {
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columns[i] = Column.named(header[i]);
+            for (int j = 0; j < i; j++) {
+                if (columns[j] == columns[i]) {
+                    throw new IllegalArgumentException("Column appears twice: " + header[i]);
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static Customer toCustomer(String[] record, Column[] columns) {
+        if (record.length != columns.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + columns.length + " fields but found " + record.length);
+        }
+        Customer customer = new Customer();
+        for (int i = 0; i < columns.length; i++) {
+            if (!record[i].isEmpty()) {
+                columns[i].setter.accept(customer, record[i]);
+            }
+        }
+        return customer;
+    }
+
+    // Parses yyyy-MM-dd without going through a DateTimeFormatter, which costs more than the
+    // rest of the row
+    static LocalDate parseDate(String text) {
+        if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return LocalDate.of(year, month, day);
+                } catch (DateTimeException e) {
+                    // Reported below
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid dateOfBirth, expected yyyy-MM-dd: " + text);
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void writeRecord(Writer writer, String line, String error, String[] record) throws IOException {
+        writeField(writer, line);
+        writer.write(',');
+        writeField(writer, error);
+        for (String field : record) {
+            writer.write(',');
+            writeField(writer, field);
+        }
+        writer.write('\n');
+    }
+
+    private static void writeField(Writer writer, String field) throws IOException {
+        if (field == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private enum Column {
+        CUSTOMER_CODE("customerCode", Customer::setCustomerCode),
+        FIRST_NAME("firstName", Customer::setFirstName),
+        LAST_NAME("lastName", Customer::setLastName),
+        FULL_NAME("fullName", Customer::setFullName),
+        DATE_OF_BIRTH("dateOfBirth", (customer, text) -> customer.setDateOfBirth(parseDate(text))),
+        GENDER("gender", Customer::setGender),
+        ADDRESS("address", Customer::setAddress),
+        CITY("city", Customer::setCity),
+        EMAIL("email", Customer::setEmail),
+        PHONE_NUMBER("phoneNumber", Customer::setPhoneNumber);
+
+        private final String name;
+        private final BiConsumer<Customer, String> setter;
+
+        Column(String name, BiConsumer<Customer, String> setter) {
+            this.name = name;
+            this.setter = setter;
+        }
+
+        // Matches the JSON property names, ignoring case, spaces, underscores and dashes, so
+        // "Customer Code" and customer_code both work
+        static Column named(String header) {
+            String key = header.replaceAll("[\\s_-]", "").toLowerCase(Locale.ROOT);
+            for (Column column : values()) {
+                if (column.name.toLowerCase(Locale.ROOT).equals(key)) {
+                    return column;
+                }
+            }
+            throw new IllegalArgumentException("Unknown column: " + header);
+        }
+    }
+
+    // Progress is written by the import thread only and read by any request thread
+    private static final class ImportJob {
+        final String id;
+        final long fileBytes;
+        final String[] header;
+        final Column[] columns;
+        volatile CustomerImport.State state = CustomerImport.State.QUEUED;
+        volatile long bytesRead;
+        volatile long rows;
+        volatile long created;
+        volatile long failed;
+        volatile String message;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+
+        ImportJob(String id, long fileBytes, String[] header, Column[] columns) {
+            this.id = id;
+            this.fileBytes = fileBytes;
+            this.header = header;
+            this.columns = columns;
+        }
+
+        void finish(CustomerImport.State outcome, String reason) {
+            message = reason;
+            finishedAt = LocalDateTime.now();
+            state = outcome;
+        }
+
+        CustomerImport toImport() {
+            CustomerImport customerImport = new CustomerImport();
+            customerImport.setId(id);
+            customerImport.setState(state);
+            customerImport.setFileBytes(fileBytes);
+            customerImport.setBytesRead(bytesRead);
+            customerImport.setRows(rows);
+            customerImport.setCreated(created);
+            customerImport.setFailed(failed);
+            customerImport.setMessage(message);
+            customerImport.setStartedAt(startedAt);
+            customerImport.setFinishedAt(finishedAt);
+            return customerImport;
+        }
+    }
+
+    // The rows waiting to be created, with what is needed to report them if they are rejected
+    private static final class Batch {
+        final List<Customer> customers;
+        final List<String[]> records;
+        final long[] lines;
+
+        Batch(int capacity) {
+            customers = new ArrayList<>(capacity);
+            records = new ArrayList<>(capacity);
+            lines = new long[capacity];
+        }
+
+        int size() {
+            return customers.size();
+        }
+
+        void add(Customer customer, long line, String[] record) {
+            lines[customers.size()] = line;
+            customers.add(customer);
+            records.add(record);
+        }
+
+        void clear() {
+            customers.clear();
+            records.clear();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
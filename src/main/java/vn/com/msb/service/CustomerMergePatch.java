@@ -0,0 +1,126 @@
+package vn.com.msb.service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import vn.com.msb.model.Customer;
+
+/**
+ * An RFC 7396 JSON Merge Patch of a customer: a member sets that field, a null member removes
+ * it and a missing one leaves it alone. Customers are flat, so every member names a field.
+ * The patch is checked once when it is created and can then be applied to as many versions of
+ * the customer as it takes to get it saved.
+ */
+final class CustomerMergePatch {
+
+    private final Map<Field, Object> changes = new EnumMap<>(Field.class);
+
+    CustomerMergePatch(Map<String, ?> patch) {
+        for (Map.Entry<String, ?> member : patch.entrySet()) {
+            String name = member.getKey();
+            // The id comes from the path and the version from the store, as with a full update
+            if (name.equals("id") || name.equals("version")) {
+                continue;
+            }
+            Field field = Field.named(name);
+            Object value = field.convert(member.getValue());
+            if (field == Field.CUSTOMER_CODE && value == null) {
+                throw new IllegalArgumentException("customerCode cannot be removed");
+            }
+            changes.put(field, value);
+        }
+    }
+
+    /**
+     * Returns a copy of the customer with the patch applied, or the customer itself when the
+     * patch changes nothing. A changed first or last name clears the full name, so that it is
+     * generated again, unless the patch sets the full name too.
+     */
+    Customer applyTo(Customer customer) {
+        Customer patched = null;
+        boolean nameChanged = false;
+        for (Map.Entry<Field, Object> change : changes.entrySet()) {
+            Field field = change.getKey();
+            if (Objects.equals(field.getter.apply(customer), change.getValue())) {
+                continue;
+            }
+            if (patched == null) {
+                patched = copy(customer);
+            }
+            field.setter.accept(patched, change.getValue());
+            nameChanged |= field == Field.FIRST_NAME || field == Field.LAST_NAME;
+        }
+        if (patched == null) {
+            return customer;
+        }
+        if (nameChanged && !changes.containsKey(Field.FULL_NAME)) {
+            patched.setFullName(null);
+        }
+        return patched;
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer(customer.getId(), customer.getCustomerCode(), customer.getFirstName(),
+                customer.getLastName(), customer.getFullName(), customer.getDateOfBirth(), customer.getGender(),
+                customer.getAddress(), customer.getCity(), customer.getEmail(), customer.getPhoneNumber());
+        copy.setVersion(customer.getVersion());
+        return copy;
+    }
+
+    private enum Field {
+        CUSTOMER_CODE("customerCode", Customer::getCustomerCode, (customer, value) -> customer.setCustomerCode((String) value)),
+        FIRST_NAME("firstName", Customer::getFirstName, (customer, value) -> customer.setFirstName((String) value)),
+        LAST_NAME("lastName", Customer::getLastName, (customer, value) -> customer.setLastName((String) value)),
+        FULL_NAME("fullName", Customer::getFullName, (customer, value) -> customer.setFullName((String) value)),
+        DATE_OF_BIRTH("dateOfBirth", Customer::getDateOfBirth,
+                (customer, value) -> customer.setDateOfBirth((LocalDate) value)),
+        GENDER("gender", Customer::getGender, (customer, value) -> customer.setGender((String) value)),
+        ADDRESS("address", Customer::getAddress, (customer, value) -> customer.setAddress((String) value)),
+        CITY("city", Customer::getCity, (customer, value) -> customer.setCity((String) value)),
+        EMAIL("email", Customer::getEmail, (customer, value) -> customer.setEmail((String) value)),
+        PHONE_NUMBER("phoneNumber", Customer::getPhoneNumber,
+                (customer, value) -> customer.setPhoneNumber((String) value));
+
+        private final String name;
+        private final Function<Customer, Object> getter;
+        private final BiConsumer<Customer, Object> setter;
+
+        Field(String name, Function<Customer, Object> getter, BiConsumer<Customer, Object> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        static Field named(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown customer field: " + name);
+        }
+
+        // Every field is a JSON string, dates of birth in ISO format as the full customer has them
+        Object convert(Object value) {
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof String text)) {
+                throw new IllegalArgumentException(name + " must be a string or null");
+            }
+            if (this != DATE_OF_BIRTH) {
+                return text;
+            }
+            try {
+                return LocalDate.parse(text);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("dateOfBirth must be a date such as 1990-01-15: " + text);
+            }
+        }
+    }
+}
@@ -1,15 +1,38 @@
 package vn.com.msb.service;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
 
 public interface CustomerService {
     List<Customer> getAllCustomers();
+    CustomerPage getCustomers(Long cursor, int limit);
+    Stream<Customer> streamAllCustomers();
     Customer getCustomerById(Long id);
     Customer getCustomerByCode(String customerCode);
     List<Customer> searchCustomers(String keyword);
+    CustomerPage searchCustomers(String keyword, Long cursor, int limit);
+    List<Customer> searchCustomersRanked(String keyword, int limit);
+    List<Customer> searchCustomersFuzzy(String keyword, int maxEdits, int limit);
+    CustomerPage filterCustomers(CustomerFilter filter, Long cursor, int limit);
+    List<Customer> getCustomersBornBetween(LocalDate from, LocalDate to, int limit);
+    List<Customer> getCustomersByAge(int minAge, int maxAge, LocalDate on, int limit);
+    List<Customer> getUpcomingBirthdays(LocalDate from, int days, int limit);
+    CustomerCounts getCustomerCounts();
+    List<Customer> searchCustomersByPhoneNumber(String phoneNumber, boolean contains);
     Customer createCustomer(Customer customer);
+    List<Customer> createCustomers(List<Customer> customers);
+    CustomerBatchResult createCustomersIndividually(List<Customer> customers);
     Customer updateCustomer(Long id, Customer customer);
+    Customer updateCustomer(Long id, Customer customer, Long expectedVersion);
+    Customer patchCustomer(Long id, Map<String, Object> patch, Long expectedVersion);
     void deleteCustomer(Long id);
+    long getCustomersGeneration();
 }
@@ -1,17 +1,39 @@
 package vn.com.msb.service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.stereotype.Service;
 
 import vn.com.msb.exception.CustomerNotFoundException;
+import vn.com.msb.exception.CustomerVersionConflictException;
 import vn.com.msb.exception.DuplicateCustomerCodeException;
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchItem;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerPage;
 import vn.com.msb.repository.CustomerRepository;
 
 @Service
 public class CustomerServiceImpl implements CustomerService {
     
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 10_000;
+    static final int MAX_FUZZY_EDITS = 2;
+    static final int MAX_BIRTHDAY_WINDOW_DAYS = 366;
+    static final int MAX_PATCH_ATTEMPTS = 10;
+    private static final int MAX_CODES_IN_MESSAGE = 10;
+    
     private final CustomerRepository customerRepository;
     
     public CustomerServiceImpl(CustomerRepository customerRepository) {
@@ -23,6 +45,24 @@ public class CustomerServiceImpl implements CustomerService {
         return customerRepository.findAll();
     }
     
+    @Override
+    public CustomerPage getCustomers(Long cursor, int limit) {
+        validatePageSize(limit);
+        return customerRepository.findAll(cursor, limit);
+    }
+    
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return customerRepository.streamAll();
+    }
+    
+    // Changes whenever any customer is saved or deleted, so anything read after sampling it is
+    // at least that recent
+    @Override
+    public long getCustomersGeneration() {
+        return customerRepository.generation();
+    }
+    
     @Override
     public Customer getCustomerById(Long id) {
         return customerRepository.findById(id)
@@ -40,25 +80,162 @@ public class CustomerServiceImpl implements CustomerService {
         return customerRepository.search(keyword);
     }
     
+    @Override
+    public CustomerPage searchCustomers(String keyword, Long cursor, int limit) {
+        validatePageSize(limit);
+        return customerRepository.search(keyword, cursor, limit);
+    }
+    
+    @Override
+    public List<Customer> searchCustomersRanked(String keyword, int limit) {
+        validatePageSize(limit);
+        return customerRepository.searchRanked(keyword, limit);
+    }
+    
+    @Override
+    public List<Customer> searchCustomersFuzzy(String keyword, int maxEdits, int limit) {
+        validatePageSize(limit);
+        if (maxEdits < 1 || maxEdits > MAX_FUZZY_EDITS) {
+            throw new IllegalArgumentException("maxEdits must be between 1 and " + MAX_FUZZY_EDITS + ": " + maxEdits);
+        }
+        return customerRepository.searchFuzzy(keyword, maxEdits, limit);
+    }
+    
+    @Override
+    public CustomerPage filterCustomers(CustomerFilter filter, Long cursor, int limit) {
+        validatePageSize(limit);
+        if (filter != null && filter.getBornFrom() != null && filter.getBornTo() != null
+                && filter.getBornFrom().isAfter(filter.getBornTo())) {
+            throw new IllegalArgumentException("bornFrom must not be after bornTo: " + filter.getBornFrom()
+                    + " > " + filter.getBornTo());
+        }
+        return customerRepository.filter(filter, cursor, limit);
+    }
+    
+    @Override
+    public List<Customer> getCustomersBornBetween(LocalDate from, LocalDate to, int limit) {
+        validatePageSize(limit);
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to: " + from + " > " + to);
+        }
+        return customerRepository.findByDateOfBirthBetween(from, to, limit);
+    }
+    
+    // Someone is n years old from their n-th birthday up to the day before their next one
+    @Override
+    public List<Customer> getCustomersByAge(int minAge, int maxAge, LocalDate on, int limit) {
+        validatePageSize(limit);
+        if (minAge < 0 || maxAge < minAge) {
+            throw new IllegalArgumentException("Ages must satisfy 0 <= minAge <= maxAge: " + minAge + ", " + maxAge);
+        }
+        LocalDate bornFrom = on.minusYears(maxAge + 1L).plusDays(1);
+        LocalDate bornTo = on.minusYears(minAge);
+        return customerRepository.findByDateOfBirthBetween(bornFrom, bornTo, limit);
+    }
+    
+    @Override
+    public List<Customer> getUpcomingBirthdays(LocalDate from, int days, int limit) {
+        validatePageSize(limit);
+        if (days < 1 || days > MAX_BIRTHDAY_WINDOW_DAYS) {
+            throw new IllegalArgumentException("days must be between 1 and " + MAX_BIRTHDAY_WINDOW_DAYS + ": " + days);
+        }
+        return customerRepository.findUpcomingBirthdays(from, days, limit);
+    }
+    
+    @Override
+    public CustomerCounts getCustomerCounts() {
+        return customerRepository.countCustomers();
+    }
+    
+    @Override
+    public List<Customer> searchCustomersByPhoneNumber(String phoneNumber, boolean contains) {
+        if (contains) {
+            return customerRepository.findByPhoneNumberContaining(phoneNumber);
+        }
+        return customerRepository.findByPhoneNumberEndingWith(phoneNumber);
+    }
+    
+    // The repository claims the code as it saves, so of two creates racing on one code only one
+    // gets it
     @Override
     public Customer createCustomer(Customer customer) {
-        // Check if customer code already exists
-        if (customerRepository.existsByCustomerCode(customer.getCustomerCode())) {
+        // Generate full name if not provided
+        generateFullName(customer);
+        
+        if (!customerRepository.saveAllIfCodesFree(List.of(customer), true).isEmpty()) {
             throw new DuplicateCustomerCodeException("Customer code already exists: " + customer.getCustomerCode());
         }
-        
-        // Generate full name if not provided
-        if (customer.getFullName() == null || customer.getFullName().isEmpty()) {
-            customer.setFullName(customer.getFirstName() + " " + customer.getLastName());
+        return customer;
+    }
+    
+    // All or nothing: nothing is saved unless every code is new to the store and to the batch.
+    // The codes are checked up front for the error message, and again by the repository as it
+    // saves, in case another writer took one in between.
+    @Override
+    public List<Customer> createCustomers(List<Customer> customers) {
+        String[] errors = validateCustomerCodes(customers);
+        List<String> rejected = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                rejected.add(customers.get(i).getCustomerCode());
+            }
         }
-        
-        return customerRepository.save(customer);
+        if (!rejected.isEmpty()) {
+            throw new DuplicateCustomerCodeException("Customer codes already exist or repeat within the batch: "
+                    + summarize(rejected));
+        }
+        customers.forEach(CustomerServiceImpl::generateFullName);
+        Set<String> taken = customerRepository.saveAllIfCodesFree(customers, true);
+        if (!taken.isEmpty()) {
+            throw new DuplicateCustomerCodeException("Customer codes already exist: " + summarize(List.copyOf(taken)));
+        }
+        return customers;
+    }
+    
+    // Saves every customer whose code is valid and reports the rest, in request order. A code
+    // another writer takes after the check is reported like one that already existed.
+    @Override
+    public CustomerBatchResult createCustomersIndividually(List<Customer> customers) {
+        String[] errors = validateCustomerCodes(customers);
+        List<Customer> accepted = new ArrayList<>(customers.size());
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                generateFullName(customers.get(i));
+                accepted.add(customers.get(i));
+            }
+        }
+        // The accepted codes are distinct, so each taken one names a single customer
+        Set<String> taken = customerRepository.saveAllIfCodesFree(accepted, false);
+        int created = accepted.size();
+        for (int i = 0; i < errors.length; i++) {
+            String code = customers.get(i).getCustomerCode();
+            if (errors[i] == null && code != null && taken.contains(code)) {
+                errors[i] = "Customer code already exists: " + code;
+                created--;
+            }
+        }
+        List<CustomerBatchItem> items = new ArrayList<>(customers.size());
+        for (int i = 0; i < errors.length; i++) {
+            items.add(errors[i] == null ? new CustomerBatchItem(i, customers.get(i), null)
+                    : new CustomerBatchItem(i, null, errors[i]));
+        }
+        return new CustomerBatchResult(created, customers.size() - created, items);
     }
     
     @Override
     public Customer updateCustomer(Long id, Customer customer) {
+        return updateCustomer(id, customer, null);
+    }
+    
+    // With an expected version the update is a compare-and-swap: it only goes in if nobody has
+    // saved the customer since that version was read, and no lock is held while it is prepared
+    @Override
+    public Customer updateCustomer(Long id, Customer customer, Long expectedVersion) {
         // Check if customer exists
         Customer existingCustomer = getCustomerById(id);
+        if (expectedVersion != null && !expectedVersion.equals(existingCustomer.getVersion())) {
+            throw versionConflict(id, expectedVersion);
+        }
         
         // Check if customer code is being changed and already exists for another customer
         if (!existingCustomer.getCustomerCode().equals(customer.getCustomerCode()) &&
@@ -70,11 +247,54 @@ public class CustomerServiceImpl implements CustomerService {
         customer.setId(id);
         
         // Generate full name if not provided
-        if (customer.getFullName() == null || customer.getFullName().isEmpty()) {
-            customer.setFullName(customer.getFirstName() + " " + customer.getLastName());
-        }
+        generateFullName(customer);
         
-        return customerRepository.save(customer);
+        if (expectedVersion == null) {
+            return customerRepository.save(customer);
+        }
+        return customerRepository.saveIfVersion(customer, expectedVersion).orElseThrow(() -> {
+            // Lost the race to a concurrent update or delete
+            if (customerRepository.findById(id).isEmpty()) {
+                return new CustomerNotFoundException("Customer not found with id: " + id);
+            }
+            return versionConflict(id, expectedVersion);
+        });
+    }
+    
+    // Applies the patch to the stored customer and saves it only if nobody else has saved the
+    // customer in the meantime. Without an expected version a patch that loses that race is
+    // applied again to the newer version, so concurrent patches of different fields all stick.
+    @Override
+    public Customer patchCustomer(Long id, Map<String, Object> patch, Long expectedVersion) {
+        CustomerMergePatch mergePatch = new CustomerMergePatch(patch);
+        for (int attempt = 1; ; attempt++) {
+            Customer existingCustomer = getCustomerById(id);
+            long version = existingCustomer.getVersion() != null ? existingCustomer.getVersion() : 0;
+            if (expectedVersion != null && version != expectedVersion) {
+                throw versionConflict(id, expectedVersion);
+            }
+            
+            Customer patched = mergePatch.applyTo(existingCustomer);
+            if (patched == existingCustomer) {
+                // Nothing changed, so nothing to write and no new version
+                return existingCustomer;
+            }
+            if (!Objects.equals(existingCustomer.getCustomerCode(), patched.getCustomerCode()) &&
+                    customerRepository.existsByCustomerCodeAndIdNot(patched.getCustomerCode(), id)) {
+                throw new DuplicateCustomerCodeException("Customer code already exists: " + patched.getCustomerCode());
+            }
+            generateFullName(patched);
+            
+            Optional<Customer> saved = customerRepository.saveIfVersion(patched, version);
+            if (saved.isPresent()) {
+                return saved.get();
+            }
+            if (expectedVersion != null || attempt == MAX_PATCH_ATTEMPTS) {
+                // Reports a concurrent delete as such
+                getCustomerById(id);
+                throw versionConflict(id, expectedVersion != null ? expectedVersion : version);
+            }
+        }
     }
     
     @Override
@@ -83,4 +303,60 @@ public class CustomerServiceImpl implements CustomerService {
         getCustomerById(id);
         customerRepository.deleteById(id);
     }
+    
+    private static CustomerVersionConflictException versionConflict(Long id, long expectedVersion) {
+        return new CustomerVersionConflictException(
+                "Customer " + id + " has been modified since version " + expectedVersion);
+    }
+    
+    // Checks every code against the store in one repository call and against the earlier
+    // customers of the batch; returns the error for each rejected customer, null for the others
+    private String[] validateCustomerCodes(List<Customer> customers) {
+        if (customers.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(
+                    "A batch holds at most " + MAX_BATCH_SIZE + " customers: " + customers.size());
+        }
+        List<String> codes = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            if (customer == null) {
+                throw new IllegalArgumentException("A batch must not contain null customers");
+            }
+            if (customer.getCustomerCode() != null) {
+                codes.add(customer.getCustomerCode());
+            }
+        }
+        Set<String> existing = customerRepository.findExistingCustomerCodes(codes);
+        Set<String> seen = new HashSet<>(codes.size() * 2);
+        String[] errors = new String[customers.size()];
+        for (int i = 0; i < customers.size(); i++) {
+            String code = customers.get(i).getCustomerCode();
+            if (code == null) {
+                continue;
+            }
+            if (existing.contains(code)) {
+                errors[i] = "Customer code already exists: " + code;
+            } else if (!seen.add(code)) {
+                errors[i] = "Customer code repeats within the batch: " + code;
+            }
+        }
+        return errors;
+    }
+    
+    private static String summarize(List<String> codes) {
+        String listed = codes.stream().distinct().limit(MAX_CODES_IN_MESSAGE).collect(Collectors.joining(", "));
+        long more = codes.stream().distinct().count() - MAX_CODES_IN_MESSAGE;
+        return more > 0 ? listed + " and " + more + " more" : listed;
+    }
+    
+    private static void generateFullName(Customer customer) {
+        if (customer.getFullName() == null || customer.getFullName().isEmpty()) {
+            customer.setFullName(customer.getFirstName() + " " + customer.getLastName());
+        }
+    }
+    
+    private static void validatePageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ": " + limit);
+        }
+    }
 }
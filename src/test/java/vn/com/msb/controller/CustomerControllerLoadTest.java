@@ -0,0 +1,175 @@
+package vn.com.msb.controller;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import vn.com.msb.CustomerApplication;
+import vn.com.msb.model.Customer;
+import vn.com.msb.service.CustomerService;
+
+/**
+ * Starts the whole application on a random port, once on Tomcat's platform-thread pool and once
+ * with the "virtual" profile, and drives it over HTTP.
+ */
+public class CustomerControllerLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerControllerLoadTest.class);
+
+    private static final int CUSTOMERS = 10_000;
+
+    @Test
+    public void testVirtualProfileServesRequestsOnVirtualThreads() throws Exception {
+        try (ConfigurableApplicationContext context = start(true)) {
+            assertTrue(tomcatExecutor(context) instanceof VirtualThreadExecutor);
+            populate(context, 1);
+            assertEquals(200, get(HttpClient.newHttpClient(), port(context), "/api/customers/1"));
+        }
+        try (ConfigurableApplicationContext context = start(false)) {
+            assertFalse(tomcatExecutor(context) instanceof VirtualThreadExecutor);
+        }
+    }
+
+    // Virtual threads are not expected to win on every machine, but with far more clients than
+    // platform threads they must not fall behind: at least half the platform pool's throughput
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.load.requests", matches = "\\d+")
+    public void benchmarkPlatformVersusVirtualThreads() throws Exception {
+        int requests = Integer.getInteger("benchmark.load.requests");
+        int concurrency = Integer.getInteger("benchmark.load.concurrency", 1000);
+        double[] throughput = new double[2];
+        for (boolean virtual : new boolean[] {false, true}) {
+            try (ConfigurableApplicationContext context = start(virtual)) {
+                populate(context, CUSTOMERS);
+                // Warm up the JIT and the client's connection pool first
+                load(port(context), concurrency, requests / 5);
+                long[] latencies = new long[requests];
+                long start = System.nanoTime();
+                load(port(context), concurrency, latencies);
+                long elapsed = System.nanoTime() - start;
+
+                Arrays.sort(latencies);
+                assertTrue(latencies[0] > 0, "Not every request was sent");
+                throughput[virtual ? 1 : 0] = requests / (elapsed / 1e9);
+                log.info("{} threads, {} concurrent clients: {} requests/s, p50 {} ms, p99 {} ms, p999 {} ms, "
+                        + "max {} ms", virtual ? "Virtual" : "Platform", concurrency,
+                        String.format("%.0f", throughput[virtual ? 1 : 0]),
+                        String.format("%.2f", percentile(latencies, 0.5)),
+                        String.format("%.2f", percentile(latencies, 0.99)),
+                        String.format("%.2f", percentile(latencies, 0.999)),
+                        String.format("%.2f", latencies[latencies.length - 1] / 1e6));
+            }
+        }
+        assertTrue(throughput[1] >= throughput[0] / 2, String.format(
+                "Virtual threads served %.0f requests/s, platform threads %.0f", throughput[1], throughput[0]));
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtual) {
+        SpringApplicationBuilder application = new SpringApplicationBuilder(CustomerApplication.class)
+                .properties("server.port=0");
+        if (virtual) {
+            application.profiles("virtual");
+        }
+        return application.run();
+    }
+
+    private static void populate(ConfigurableApplicationContext context, int customers) {
+        CustomerService customerService = context.getBean(CustomerService.class);
+        for (int i = 0; i < customers; i++) {
+            customerService.createCustomer(newCustomer(i));
+        }
+    }
+
+    private static void load(int port, int concurrency, int requests) throws Exception {
+        load(port, concurrency, new long[requests]);
+    }
+
+    // A closed loop: every client sends its next request as soon as the previous one returns.
+    // Most requests are lookups by id, the rest searches and creates
+    private static void load(int port, int concurrency, long[] latencies) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient httpClient = HttpClient.newBuilder().executor(clients).build();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < concurrency; c++) {
+                futures.add(clients.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < latencies.length; i = next.getAndIncrement()) {
+                        long start = System.nanoTime();
+                        int status = switch (i % 10) {
+                            case 0 -> get(httpClient, port, "/api/customers/search?keyword=nguyen&limit=20");
+                            case 1 -> post(httpClient, port, "/api/customers",
+                                    "{\"customerCode\":\"LOAD" + System.nanoTime() + "\",\"firstName\":\"Load\","
+                                    + "\"lastName\":\"Test\"}");
+                            default -> get(httpClient, port, "/api/customers/" + (1 + i % CUSTOMERS));
+                        };
+                        latencies[i] = System.nanoTime() - start;
+                        assertTrue(status < 300, "Unexpected status " + status);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    private static int get(HttpClient httpClient, int port, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static int post(HttpClient httpClient, int port, String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static double percentile(long[] sortedLatencies, double q) {
+        int index = Math.min(sortedLatencies.length - 1, (int) Math.ceil(q * sortedLatencies.length) - 1);
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static Object tomcatExecutor(ConfigurableApplicationContext context) {
+        TomcatWebServer webServer = (TomcatWebServer) ((ServletWebServerApplicationContext) context).getWebServer();
+        return webServer.getTomcat().getConnector().getProtocolHandler().getExecutor();
+    }
+
+    private static Customer newCustomer(int i) {
+        Customer customer = new Customer();
+        customer.setCustomerCode("CUST" + i);
+        customer.setFirstName(i % 2 == 0 ? "Nguyen" : "Tran");
+        customer.setLastName("Customer" + i);
+        customer.setEmail("customer" + i + "@example.com");
+        customer.setPhoneNumber("0901" + String.format("%06d", i));
+        return customer;
+    }
+}
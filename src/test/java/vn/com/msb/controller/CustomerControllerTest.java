@@ -2,36 +2,59 @@ package vn.com.msb.controller;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import vn.com.msb.exception.CustomerNotFoundException;
+import vn.com.msb.exception.CustomerVersionConflictException;
 import vn.com.msb.exception.DuplicateCustomerCodeException;
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchItem;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
 import vn.com.msb.service.CustomerService;
 
 @WebMvcTest(CustomerController.class)
@@ -77,6 +100,220 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$[0].customerCode", is("CUST001")));
     }
 
+    @Test
+    public void testStreamAllCustomersAsNdjson() throws Exception {
+        Customer customer2 = new Customer();
+        customer2.setId(2L);
+        customer2.setCustomerCode("CUST002");
+        when(customerService.streamAllCustomers()).thenReturn(Stream.of(customer, customer2));
+
+        MvcResult result = mockMvc.perform(get("/api/customers")
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("CUST001", objectMapper.readValue(lines[0], Customer.class).getCustomerCode());
+        assertEquals("CUST002", objectMapper.readValue(lines[1], Customer.class).getCustomerCode());
+    }
+
+    @Test
+    public void testStreamAllCustomersAsJsonArray() throws Exception {
+        when(customerService.streamAllCustomers()).thenReturn(Stream.of(customer));
+
+        MvcResult result = mockMvc.perform(get("/api/customers?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].customerCode", is("CUST001")))
+                .andExpect(jsonPath("$[0].dateOfBirth", is("1990-01-15")));
+    }
+
+    @Test
+    public void testGetAllCustomersWithoutAcceptHeaderIsNotStreamed() throws Exception {
+        when(customerService.getAllCustomers()).thenReturn(Arrays.asList(customer));
+
+        mockMvc.perform(get("/api/customers"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    public void testGetCustomerPage() throws Exception {
+        when(customerService.getCustomers(eq(1L), eq(1))).thenReturn(new CustomerPage(Arrays.asList(customer), 1L));
+
+        mockMvc.perform(get("/api/customers?limit=1&cursor=1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].customerCode", is("CUST001")))
+                .andExpect(jsonPath("$.nextCursor", is(1)));
+    }
+
+    @Test
+    public void testGetCustomerPageTakesPrecedenceOverStreaming() throws Exception {
+        when(customerService.getCustomers(isNull(), eq(10))).thenReturn(new CustomerPage(Arrays.asList(customer), null));
+
+        mockMvc.perform(get("/api/customers?limit=10&stream=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].customerCode", is("CUST001")));
+        verify(customerService, never()).streamAllCustomers();
+    }
+
+    @Test
+    public void testGetCustomerPageWithInvalidCursor() throws Exception {
+        mockMvc.perform(get("/api/customers?limit=1&cursor=abc")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetCustomerPageWithInvalidLimit() throws Exception {
+        when(customerService.getCustomers(any(), eq(0)))
+                .thenThrow(new IllegalArgumentException("limit must be between 1 and 1000: 0"));
+
+        mockMvc.perform(get("/api/customers?limit=0")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchCustomerPage() throws Exception {
+        when(customerService.searchCustomers(eq("John"), eq(null), eq(20)))
+                .thenReturn(new CustomerPage(Arrays.asList(customer), null));
+
+        mockMvc.perform(get("/api/customers/search?keyword=John&limit=20")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].fullName", is("John Doe")));
+    }
+
+    @Test
+    public void testSearchCustomersRanked() throws Exception {
+        when(customerService.searchCustomersRanked("John", 20)).thenReturn(Arrays.asList(customer));
+
+        mockMvc.perform(get("/api/customers/search/ranked?keyword=John")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fullName", is("John Doe")));
+    }
+
+    @Test
+    public void testSearchCustomersFuzzy() throws Exception {
+        when(customerService.searchCustomersFuzzy("Jonh", 1, 5)).thenReturn(Arrays.asList(customer));
+
+        mockMvc.perform(get("/api/customers/search?keyword=Jonh&fuzzy=true&maxEdits=1&limit=5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fullName", is("John Doe")));
+    }
+
+    @Test
+    public void testFilterCustomers() throws Exception {
+        when(customerService.filterCustomers(any(), eq(5L), eq(2)))
+                .thenAnswer(invocation -> {
+                    CustomerFilter filter = invocation.getArgument(0);
+                    assertEquals("Ha Noi", filter.getCity());
+                    assertEquals("Female", filter.getGender());
+                    assertEquals(LocalDate.of(1990, 1, 1), filter.getBornFrom());
+                    assertEquals(null, filter.getBornTo());
+                    return new CustomerPage(Arrays.asList(customer), 1L);
+                });
+
+        mockMvc.perform(get("/api/customers/filter?city=Ha Noi&gender=Female&bornFrom=1990-01-01&limit=2&cursor=5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.items[0].fullName", is("John Doe")))
+                .andExpect(jsonPath("$.nextCursor", is(1)));
+    }
+
+    @Test
+    public void testFilterCustomersWithInvalidDate() throws Exception {
+        mockMvc.perform(get("/api/customers/filter?bornFrom=01/01/1990")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(customerService, never()).filterCustomers(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testGetCustomersBornBetween() throws Exception {
+        when(customerService.getCustomersBornBetween(LocalDate.of(1990, 1, 1), null, 100))
+                .thenReturn(Arrays.asList(customer));
+
+        mockMvc.perform(get("/api/customers/date-of-birth?from=1990-01-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fullName", is("John Doe")));
+    }
+
+    @Test
+    public void testGetCustomersByAge() throws Exception {
+        when(customerService.getCustomersByAge(30, 39, LocalDate.of(2024, 6, 15), 5))
+                .thenReturn(Arrays.asList(customer));
+
+        mockMvc.perform(get("/api/customers/age?min=30&max=39&on=2024-06-15&limit=5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fullName", is("John Doe")));
+    }
+
+    @Test
+    public void testGetUpcomingBirthdaysDefaultsToToday() throws Exception {
+        when(customerService.getUpcomingBirthdays(any(), eq(7), eq(100))).thenReturn(Arrays.asList(customer));
+
+        String etag = mockMvc.perform(get("/api/customers/birthdays")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fullName", is("John Doe")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        verify(customerService).getUpcomingBirthdays(eq(LocalDate.now()), eq(7), eq(100));
+        // The same store on another day gives other birthdays
+        mockMvc.perform(get("/api/customers/birthdays?from=" + LocalDate.now().plusDays(1))
+                .header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testGetCustomerCounts() throws Exception {
+        when(customerService.getCustomerCounts()).thenReturn(new CustomerCounts(3,
+                List.of(new CustomerGroupCount("Boston", 2), new CustomerGroupCount(null, 1)),
+                List.of(new CustomerGroupCount("Male", 3))));
+
+        mockMvc.perform(get("/api/customers/counts"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.total", is(3)))
+                .andExpect(jsonPath("$.byCity[0].value", is("Boston")))
+                .andExpect(jsonPath("$.byCity[0].count", is(2)))
+                .andExpect(jsonPath("$.byCity[1].count", is(1)))
+                .andExpect(jsonPath("$.byGender[0].value", is("Male")));
+    }
+
+    @Test
+    public void testSearchCustomerPageWhenNotFuzzy() throws Exception {
+        when(customerService.searchCustomers(eq("John"), eq(null), eq(20)))
+                .thenReturn(new CustomerPage(Arrays.asList(customer), null));
+
+        mockMvc.perform(get("/api/customers/search?keyword=John&fuzzy=false&limit=20")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].fullName", is("John Doe")));
+    }
+
     @Test
     public void testGetCustomerById() throws Exception {
         when(customerService.getCustomerById(anyLong())).thenReturn(customer);
@@ -88,6 +325,71 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.customerCode", is("CUST001")));
     }
 
+    @Test
+    public void testGetCustomerByIdRevalidatesWithETag() throws Exception {
+        customer.setVersion(3L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(3)))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/customers/1").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+
+        // The next save changes the version and with it the ETag
+        customer.setVersion(4L);
+        mockMvc.perform(get("/api/customers/1").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(4)));
+    }
+
+    @Test
+    public void testGetCustomerByCodeETagNamesTheCustomer() throws Exception {
+        customer.setVersion(1L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andReturn().getResponse().getHeader("ETag");
+        Customer other = new Customer();
+        other.setId(2L);
+        other.setCustomerCode("CUST001");
+        other.setVersion(1L);
+        when(customerService.getCustomerByCode("CUST001")).thenReturn(other);
+
+        // Same code and version, but a different customer
+        mockMvc.perform(get("/api/customers/code/CUST001").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(2)));
+    }
+
+    @Test
+    public void testListsRevalidateWithStoreGeneration() throws Exception {
+        when(customerService.getCustomersGeneration()).thenReturn(7L);
+        when(customerService.searchCustomers("John")).thenReturn(Arrays.asList(customer));
+
+        String etag = mockMvc.perform(get("/api/customers/search?keyword=John"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/customers/search?keyword=John").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/customers").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/customers?limit=10").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        // The search ran only for the first request
+        verify(customerService, times(1)).searchCustomers("John");
+        verify(customerService, never()).getAllCustomers();
+
+        when(customerService.getCustomersGeneration()).thenReturn(8L);
+        mockMvc.perform(get("/api/customers/search?keyword=John").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
     @Test
     public void testGetCustomerByIdNotFound() throws Exception {
         when(customerService.getCustomerById(anyLong()))
@@ -120,6 +422,18 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$[0].fullName", is("John Doe")));
     }
 
+    @Test
+    public void testSearchCustomersByPhoneNumber() throws Exception {
+        List<Customer> customers = Arrays.asList(customer);
+        when(customerService.searchCustomersByPhoneNumber(eq("4567"), eq(false))).thenReturn(customers);
+
+        mockMvc.perform(get("/api/customers/phone?number=4567")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].phoneNumber", is("555-123-4567")));
+    }
+
     @Test
     public void testCreateCustomer() throws Exception {
         when(customerService.createCustomer(any(Customer.class))).thenReturn(customer);
@@ -142,9 +456,50 @@ public class CustomerControllerTest {
                 .andExpect(status().isConflict());
     }
 
+    @Test
+    public void testCreateCustomers() throws Exception {
+        when(customerService.createCustomers(any())).thenReturn(List.of(customer));
+
+        mockMvc.perform(post("/api/customers/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(customer))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].customerCode", is("CUST001")));
+    }
+
+    @Test
+    public void testCreateCustomersDuplicateCodes() throws Exception {
+        when(customerService.createCustomers(any()))
+                .thenThrow(new DuplicateCustomerCodeException("Customer codes already exist or repeat within the batch: CUST001"));
+
+        mockMvc.perform(post("/api/customers/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(customer))))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void testCreateCustomersIndividually() throws Exception {
+        CustomerBatchResult result = new CustomerBatchResult(1, 1, List.of(
+                new CustomerBatchItem(0, customer, null),
+                new CustomerBatchItem(1, null, "Customer code repeats within the batch: CUST001")));
+        when(customerService.createCustomersIndividually(any())).thenReturn(result);
+
+        mockMvc.perform(post("/api/customers/batch?atomic=false")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(customer, customer))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.items[0].customer.customerCode", is("CUST001")))
+                .andExpect(jsonPath("$.items[1].index", is(1)))
+                .andExpect(jsonPath("$.items[1].error", is("Customer code repeats within the batch: CUST001")));
+    }
+
     @Test
     public void testUpdateCustomer() throws Exception {
-        when(customerService.updateCustomer(anyLong(), any(Customer.class))).thenReturn(customer);
+        when(customerService.updateCustomer(anyLong(), any(Customer.class), isNull())).thenReturn(customer);
 
         mockMvc.perform(put("/api/customers/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -155,7 +510,7 @@ public class CustomerControllerTest {
 
     @Test
     public void testUpdateCustomerNotFound() throws Exception {
-        when(customerService.updateCustomer(anyLong(), any(Customer.class)))
+        when(customerService.updateCustomer(anyLong(), any(Customer.class), isNull()))
                 .thenThrow(new CustomerNotFoundException("Customer not found with id: 1"));
 
         mockMvc.perform(put("/api/customers/1")
@@ -164,6 +519,105 @@ public class CustomerControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void testUpdateCustomerIfMatchPassesTheVersion() throws Exception {
+        customer.setVersion(3L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andReturn().getResponse().getHeader("ETag");
+        when(customerService.updateCustomer(eq(1L), any(Customer.class), eq(3L))).thenReturn(customer);
+
+        mockMvc.perform(put("/api/customers/1")
+                .header("If-Match", "W/\"weak\", " + etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(customer)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+    }
+
+    @Test
+    public void testUpdateCustomerIfMatchAnyVersion() throws Exception {
+        when(customerService.updateCustomer(eq(1L), any(Customer.class), isNull())).thenReturn(customer);
+
+        mockMvc.perform(put("/api/customers/1")
+                .header("If-Match", "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(customer)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testUpdateCustomerWithStaleVersion() throws Exception {
+        customer.setVersion(3L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andReturn().getResponse().getHeader("ETag");
+        when(customerService.updateCustomer(eq(1L), any(Customer.class), eq(3L)))
+                .thenThrow(new CustomerVersionConflictException("Customer 1 has been modified since version 3"));
+
+        mockMvc.perform(put("/api/customers/1")
+                .header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(customer)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.status", is(412)));
+    }
+
+    @Test
+    public void testUpdateCustomerWithForeignETag() throws Exception {
+        customer.setVersion(3L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // An ETag of another customer, and one from another run of the application
+        for (String ifMatch : List.of(etag.replace("-1-", "-2-"), "\"0-1-3\"", "W/" + etag)) {
+            mockMvc.perform(put("/api/customers/1")
+                    .header("If-Match", ifMatch)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(customer)))
+                    .andExpect(status().isPreconditionFailed());
+        }
+        verify(customerService, never()).updateCustomer(anyLong(), any(Customer.class), any());
+    }
+
+    @Test
+    public void testPatchCustomer() throws Exception {
+        customer.setVersion(3L);
+        when(customerService.getCustomerById(1L)).thenReturn(customer);
+        String etag = mockMvc.perform(get("/api/customers/1"))
+                .andReturn().getResponse().getHeader("ETag");
+        Customer patched = new Customer(1L, "CUST001", "John", "Doe", "John Doe", null, null, null,
+                "New York", null, "555-999-0000");
+        patched.setVersion(4L);
+        when(customerService.patchCustomer(eq(1L), any(), eq(3L))).thenReturn(patched);
+
+        mockMvc.perform(patch("/api/customers/1")
+                .header("If-Match", etag)
+                .contentType("application/merge-patch+json")
+                .content("{\"phoneNumber\": \"555-999-0000\", \"email\": null}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag.replace("-3\"", "-4\"")))
+                .andExpect(jsonPath("$.phoneNumber", is("555-999-0000")));
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("phoneNumber", "555-999-0000");
+        expected.put("email", null);
+        verify(customerService).patchCustomer(1L, expected, 3L);
+    }
+
+    @Test
+    public void testPatchCustomerWithInvalidField() throws Exception {
+        when(customerService.patchCustomer(eq(1L), any(), isNull()))
+                .thenThrow(new IllegalArgumentException("Unknown customer field: nickname"));
+
+        mockMvc.perform(patch("/api/customers/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"nickname\": \"JD\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Unknown customer field: nickname")));
+    }
+
     @Test
     public void testDeleteCustomer() throws Exception {
         doNothing().when(customerService).deleteCustomer(anyLong());
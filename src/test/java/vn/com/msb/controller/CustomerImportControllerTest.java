@@ -0,0 +1,134 @@
+package vn.com.msb.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import vn.com.msb.exception.CustomerImportNotFoundException;
+import vn.com.msb.model.CustomerImport;
+import vn.com.msb.service.CustomerImportService;
+
+@WebMvcTest(CustomerImportController.class)
+public class CustomerImportControllerTest {
+
+    private static final String CSV = "customerCode,firstName,lastName\nCUST001,John,Doe\n";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CustomerImportService customerImportService;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testImportMultipartFile() throws Exception {
+        Path spooled = directory.resolve("spooled.csv");
+        when(customerImportService.submit(any())).thenAnswer(invocation -> {
+            invocation.getArgument(0, CustomerImportService.Upload.class).transferTo(spooled);
+            return newImport("import-1", CustomerImport.State.QUEUED);
+        });
+
+        mockMvc.perform(multipart("/api/customers/imports")
+                .file(new MockMultipartFile("file", "customers.csv", "text/csv", CSV.getBytes(StandardCharsets.UTF_8))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/customers/imports/import-1"))
+                .andExpect(jsonPath("$.id", is("import-1")))
+                .andExpect(jsonPath("$.state", is("QUEUED")));
+
+        assertEquals(CSV, Files.readString(spooled));
+    }
+
+    @Test
+    public void testImportCsvBody() throws Exception {
+        Path spooled = directory.resolve("spooled.csv");
+        when(customerImportService.submit(any())).thenAnswer(invocation -> {
+            invocation.getArgument(0, CustomerImportService.Upload.class).transferTo(spooled);
+            return newImport("import-2", CustomerImport.State.QUEUED);
+        });
+
+        mockMvc.perform(post("/api/customers/imports")
+                .contentType("text/csv")
+                .content(CSV))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/customers/imports/import-2"));
+
+        assertEquals(CSV, Files.readString(spooled));
+    }
+
+    @Test
+    public void testImportWithUnknownColumn() throws Exception {
+        when(customerImportService.submit(any())).thenThrow(new IllegalArgumentException("Unknown column: nickname"));
+
+        mockMvc.perform(post("/api/customers/imports")
+                .contentType("text/csv")
+                .content("customerCode,nickname\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Unknown column: nickname")));
+    }
+
+    @Test
+    public void testGetImport() throws Exception {
+        CustomerImport customerImport = newImport("import-1", CustomerImport.State.RUNNING);
+        customerImport.setRows(10_000);
+        customerImport.setCreated(9_998);
+        customerImport.setFailed(2);
+        when(customerImportService.getImport("import-1")).thenReturn(customerImport);
+
+        mockMvc.perform(get("/api/customers/imports/import-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state", is("RUNNING")))
+                .andExpect(jsonPath("$.rows", is(10_000)))
+                .andExpect(jsonPath("$.created", is(9_998)))
+                .andExpect(jsonPath("$.failed", is(2)));
+    }
+
+    @Test
+    public void testGetUnknownImport() throws Exception {
+        when(customerImportService.getImport("missing"))
+                .thenThrow(new CustomerImportNotFoundException("Import not found with id: missing"));
+
+        mockMvc.perform(get("/api/customers/imports/missing"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message", is("Import not found with id: missing")));
+    }
+
+    @Test
+    public void testGetImportErrors() throws Exception {
+        String errors = "line,error,customerCode\n2,Customer code already exists: CUST001,CUST001\n";
+        Path errorFile = Files.writeString(directory.resolve("import-1.errors.csv"), errors);
+        when(customerImportService.getErrorFile("import-1")).thenReturn(errorFile);
+
+        mockMvc.perform(get("/api/customers/imports/import-1/errors"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv"))
+                .andExpect(content().string(errors));
+    }
+
+    private static CustomerImport newImport(String id, CustomerImport.State state) {
+        CustomerImport customerImport = new CustomerImport();
+        customerImport.setId(id);
+        customerImport.setState(state);
+        return customerImport;
+    }
+}
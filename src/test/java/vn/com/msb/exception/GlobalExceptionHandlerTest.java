@@ -22,6 +22,18 @@ public class GlobalExceptionHandlerTest {
         assertEquals("Customer not found with id: 1", response.getBody().getMessage());
     }
 
+    @Test
+    public void testHandleCustomerImportNotFoundException() {
+        CustomerImportNotFoundException ex = new CustomerImportNotFoundException("Import not found with id: x");
+        
+        ResponseEntity<ErrorResponse> response = exceptionHandler.handleCustomerImportNotFoundException(ex);
+        
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(404, response.getBody().getStatus());
+        assertEquals("Import not found with id: x", response.getBody().getMessage());
+    }
+
     @Test
     public void testHandleDuplicateCustomerCodeException() {
         DuplicateCustomerCodeException ex = new DuplicateCustomerCodeException("Customer code already exists: CUST001");
@@ -34,6 +46,18 @@ public class GlobalExceptionHandlerTest {
         assertEquals("Customer code already exists: CUST001", response.getBody().getMessage());
     }
 
+    @Test
+    public void testHandleBadRequestException() {
+        IllegalArgumentException ex = new IllegalArgumentException("limit must be between 1 and 1000: 0");
+        
+        ResponseEntity<ErrorResponse> response = exceptionHandler.handleBadRequestException(ex);
+        
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(400, response.getBody().getStatus());
+        assertEquals("limit must be between 1 and 1000: 0", response.getBody().getMessage());
+    }
+
     @Test
     public void testHandleGenericException() {
         Exception ex = new RuntimeException("Unexpected error");
@@ -0,0 +1,59 @@
+package vn.com.msb.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void testBucketsAreContiguousAndOrdered() {
+        for (long nanos = 0; nanos < 100_000; nanos++) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= nanos);
+            assertTrue(LatencyHistogram.lowerBound(bucket + 1) > nanos);
+        }
+        assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES);
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L, MINUTE);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(50_005_000_000L, histogram.totalTime(TimeUnit.NANOSECONDS), 1);
+        assertEquals(5_000_000, histogram.quantile(0.5, TimeUnit.NANOSECONDS), 5_000_000 * 0.125);
+        assertEquals(9_900_000, histogram.quantile(0.99, TimeUnit.NANOSECONDS), 9_900_000 * 0.125);
+        assertEquals(9_990_000, histogram.quantile(0.999, TimeUnit.NANOSECONDS), 9_990_000 * 0.125);
+        assertEquals(0.005, histogram.quantile(0.5, TimeUnit.SECONDS), 0.005 * 0.125);
+    }
+
+    @Test
+    public void testOldSamplesAgeOutOfQuantilesButNotCounts() {
+        LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES);
+        histogram.record(1_000_000, MINUTE);
+        histogram.record(10, 2 * MINUTE);
+
+        // Still within the previous window
+        assertEquals(1_000_000, histogram.quantile(0.99, TimeUnit.NANOSECONDS), 1_000_000 * 0.125);
+
+        histogram.record(10, 3 * MINUTE);
+        assertEquals(10, histogram.quantile(0.99, TimeUnit.NANOSECONDS), 1);
+
+        histogram.record(10, 10 * MINUTE);
+        assertEquals(10, histogram.quantile(1.0, TimeUnit.NANOSECONDS), 1);
+        assertEquals(4, histogram.count());
+    }
+
+    @Test
+    public void testEmptyHistogramReportsZero() {
+        assertEquals(0, new LatencyHistogram(1, TimeUnit.MINUTES).quantile(0.99, TimeUnit.SECONDS));
+    }
+}
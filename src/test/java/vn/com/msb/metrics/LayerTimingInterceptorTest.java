@@ -0,0 +1,104 @@
+package vn.com.msb.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import vn.com.msb.exception.CustomerNotFoundException;
+import vn.com.msb.model.Customer;
+import vn.com.msb.repository.CustomerRepository;
+import vn.com.msb.repository.CustomerRepositoryImpl;
+import vn.com.msb.service.CustomerService;
+import vn.com.msb.service.CustomerServiceImpl;
+
+public class LayerTimingInterceptorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private CustomerService customerService;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        CustomerRepository customerRepository = proxy(new CustomerRepositoryImpl(),
+                new LayerTimingInterceptor("customer.repository", false, () -> meterRegistry));
+        customerService = proxy(new CustomerServiceImpl(customerRepository),
+                new LayerTimingInterceptor("customer.service", true, () -> meterRegistry));
+
+        Customer customer = new Customer();
+        customer.setCustomerCode("CUST001");
+        customer.setFirstName("John");
+        customer.setLastName("Doe");
+        customerService.createCustomer(customer);
+    }
+
+    @Test
+    public void testTimesEachLayerWithPercentiles() {
+        customerService.getCustomerById(1L);
+        customerService.getCustomerById(1L);
+
+        FunctionTimer serviceTimer = meterRegistry.get("customer.service")
+                .tag("class", "CustomerServiceImpl")
+                .tag("method", "getCustomerById(Long)")
+                .tag("exception", "none")
+                .functionTimer();
+        FunctionTimer repositoryTimer = meterRegistry.get("customer.repository")
+                .tag("class", "CustomerRepositoryImpl")
+                .tag("method", "findById(Long)")
+                .functionTimer();
+        assertEquals(2, serviceTimer.count());
+        assertEquals(2, repositoryTimer.count());
+        assertEquals(3, meterRegistry.get("customer.service.percentile")
+                .tag("method", "getCustomerById(Long)")
+                .gauges().size());
+        assertTrue(meterRegistry.get("customer.service.percentile")
+                .tag("method", "getCustomerById(Long)")
+                .tag("phi", "0.99")
+                .gauge().value() > 0);
+    }
+
+    @Test
+    public void testFailedCallsAreTaggedWithTheException() {
+        assertThrows(CustomerNotFoundException.class, () -> customerService.getCustomerById(99L));
+
+        FunctionTimer timer = meterRegistry.get("customer.service")
+                .tag("method", "getCustomerById(Long)")
+                .tag("exception", "CustomerNotFoundException")
+                .functionTimer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    public void testSearchResultSizesAreRecordedPerOverload() {
+        customerService.searchCustomers("john");
+        customerService.searchCustomers("nobody");
+        customerService.searchCustomers("john", null, 10);
+
+        DistributionSummary list = meterRegistry.get(LayerTimingInterceptor.SEARCH_RESULTS_SUMMARY)
+                .tag("method", "searchCustomers(String)")
+                .summary();
+        DistributionSummary page = meterRegistry.get(LayerTimingInterceptor.SEARCH_RESULTS_SUMMARY)
+                .tag("method", "searchCustomers(String,Long,int)")
+                .summary();
+        assertEquals(2, list.count());
+        assertEquals(1.0, list.totalAmount());
+        assertEquals(1, page.count());
+        assertEquals(1, meterRegistry.get("customer.repository")
+                .tag("method", "search(String,Long,int)")
+                .functionTimer().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target, LayerTimingInterceptor interceptor) {
+        ProxyFactory factory = new ProxyFactory(target);
+        // Class proxies, as Spring Boot creates them
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(interceptor);
+        return (T) factory.getProxy();
+    }
+}
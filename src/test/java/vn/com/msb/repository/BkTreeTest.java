@@ -0,0 +1,74 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class BkTreeTest {
+
+    @Test
+    public void testEditDistance() {
+        assertEquals(0, EditDistance.between("nguyen", "nguyen", 2));
+        assertEquals(1, EditDistance.between("nguyen", "nguyn", 2));
+        assertEquals(1, EditDistance.between("nguyen", "nguyan", 2));
+        assertEquals(2, EditDistance.between("nguyen", "ngyuen", 2));
+        assertEquals(3, EditDistance.between("kitten", "sitting", Integer.MAX_VALUE));
+        assertEquals(6, EditDistance.between("", "nguyen", Integer.MAX_VALUE));
+        // Past max, only "more than max" is known
+        assertEquals(3, EditDistance.between("tran", "hoang", 2));
+    }
+
+    @Test
+    public void testAddsEachTermOnce() {
+        BkTree tree = new BkTree();
+
+        assertTrue(tree.add("nguyen"));
+        assertTrue(tree.add("nguyn"));
+        assertFalse(tree.add("nguyen"));
+        assertEquals(2, tree.size());
+    }
+
+    @Test
+    public void testFindsSameTermsAsComparingWithEveryTerm() {
+        Random random = new Random(3);
+        BkTree tree = new BkTree();
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String term = randomTerm(random);
+            if (tree.add(term)) {
+                terms.add(term);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            String query = randomTerm(random);
+            for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+                Map<String, Integer> expected = new TreeMap<>();
+                for (String term : terms) {
+                    int distance = EditDistance.between(query, term, Integer.MAX_VALUE);
+                    if (distance <= maxEdits) {
+                        expected.put(term, distance);
+                    }
+                }
+                Map<String, Integer> found = new TreeMap<>();
+                tree.forEachWithin(query, maxEdits, found::put);
+                assertEquals(expected, found, query + " within " + maxEdits);
+            }
+        }
+    }
+
+    private static String randomTerm(Random random) {
+        StringBuilder term = new StringBuilder();
+        for (int length = 2 + random.nextInt(6); term.length() < length; ) {
+            term.append("anhuyegtri".charAt(random.nextInt(10)));
+        }
+        return term.toString();
+    }
+}
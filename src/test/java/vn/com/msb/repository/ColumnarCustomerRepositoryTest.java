@@ -0,0 +1,447 @@
+package vn.com.msb.repository;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
+
+public class ColumnarCustomerRepositoryTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnarCustomerRepositoryTest.class);
+
+    private ColumnarCustomerRepository customerRepository;
+
+    @BeforeEach
+    public void setup() {
+        customerRepository = new ColumnarCustomerRepository();
+    }
+
+    @Test
+    public void testSaveAndFindByIdRoundTripsEveryField() {
+        Customer customer = newCustomer("CUST001", "Nguyễn Văn An", "Hà Nội");
+        customer.setFirstName("An");
+        customer.setLastName("Nguyễn");
+        customer.setDateOfBirth(LocalDate.of(1990, 1, 15));
+        customer.setGender("Male");
+        customer.setAddress("1 Tràng Tiền");
+
+        Customer saved = customerRepository.save(customer);
+        Customer found = customerRepository.findById(saved.getId()).get();
+
+        assertEquals(describe(customer), describe(found));
+    }
+
+    @Test
+    public void testNullFieldsStayNull() {
+        Customer customer = new Customer();
+        customer.setCustomerCode("CUST001");
+
+        Customer found = customerRepository.findById(customerRepository.save(customer).getId()).get();
+
+        assertEquals("CUST001", found.getCustomerCode());
+        assertNull(found.getFullName());
+        assertNull(found.getDateOfBirth());
+        assertNull(found.getGender());
+        assertNull(found.getCity());
+    }
+
+    @Test
+    public void testCustomerCodeFollowsUpdatesAndDeletes() {
+        Customer customer = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        customer.setCustomerCode("CUST009");
+        customerRepository.save(customer);
+
+        assertFalse(customerRepository.existsByCustomerCode("CUST001"));
+        assertEquals(customer.getId(), customerRepository.findByCustomerCode("CUST009").get().getId());
+        assertTrue(customerRepository.existsByCustomerCodeAndIdNot("CUST009", customer.getId() + 1));
+        assertFalse(customerRepository.existsByCustomerCodeAndIdNot("CUST009", customer.getId()));
+
+        customerRepository.deleteById(customer.getId());
+
+        assertFalse(customerRepository.existsByCustomerCode("CUST009"));
+        assertFalse(customerRepository.findById(customer.getId()).isPresent());
+    }
+
+    @Test
+    public void testExplicitIdsBelowTheLastOneKeepIdOrder() {
+        for (long id : new long[] {10, 3, 7, 1}) {
+            Customer customer = newCustomer("CUST" + id, "Customer " + id, null);
+            customer.setId(id);
+            customerRepository.save(customer);
+        }
+
+        assertEquals(List.of(1L, 3L, 7L, 10L), ids(customerRepository.findAll()));
+        assertEquals("CUST7", customerRepository.findById(7L).get().getCustomerCode());
+        assertEquals(3L, customerRepository.findByCustomerCode("CUST3").get().getId());
+    }
+
+    @Test
+    public void testNonPositiveIdsAreRejected() {
+        Customer customer = newCustomer("CUST001", "John Doe", null);
+        customer.setId(0L);
+
+        assertThrows(IllegalArgumentException.class, () -> customerRepository.save(customer));
+    }
+
+    @Test
+    public void testSaveAllWritesTheWholeBatch() {
+        Customer existing = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        existing.setCity("Hà Nội");
+        List<Customer> batch = List.of(newCustomer("CUST002", "Jane Smith", null), existing,
+                newCustomer("CUST003", "Bob Johnson", "Huế"));
+
+        customerRepository.saveAll(batch);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(customerRepository.findAll()));
+        assertEquals("Hà Nội", customerRepository.findById(1L).get().getCity());
+        assertEquals(Set.of("CUST002", "CUST003"),
+                customerRepository.findExistingCustomerCodes(List.of("CUST002", "CUST003", "CUST004")));
+    }
+
+    @Test
+    public void testSaveAllIfCodesFreeLeavesOutTakenCodes() {
+        customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        List<Customer> batch = List.of(newCustomer("CUST002", "Jane Smith", null),
+                newCustomer("CUST001", "Jon Doe", null), newCustomer("CUST002", "Bob Johnson", null));
+
+        assertEquals(Set.of("CUST001", "CUST002"), customerRepository.saveAllIfCodesFree(batch, true));
+        assertEquals(List.of(1L), ids(customerRepository.findAll()));
+
+        assertEquals(Set.of("CUST001", "CUST002"), customerRepository.saveAllIfCodesFree(batch, false));
+        assertEquals(2L, batch.get(0).getId());
+        assertNull(batch.get(1).getId());
+        assertNull(batch.get(2).getId());
+        assertEquals("Jane Smith", customerRepository.findByCustomerCode("CUST002").get().getFullName());
+    }
+
+    @Test
+    public void testVersionsAndGeneration() {
+        Customer john = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        long generation = customerRepository.generation();
+        assertEquals(1L, john.getVersion());
+
+        Customer update = newCustomer("CUST001", "Jonathan Doe", "Boston");
+        update.setId(john.getId());
+        customerRepository.saveAll(List.of(update, copy(update)));
+        assertEquals(3L, customerRepository.findById(john.getId()).get().getVersion());
+        assertEquals(generation + 1, customerRepository.generation());
+
+        // A deleted id that is saved again carries on from its last version
+        customerRepository.deleteById(john.getId());
+        assertEquals(generation + 2, customerRepository.generation());
+        customerRepository.deleteById(john.getId());
+        assertEquals(generation + 2, customerRepository.generation());
+        assertEquals(4L, customerRepository.save(copy(update)).getVersion());
+
+        // Versions survive compaction
+        for (int i = 0; i < 2000; i++) {
+            customerRepository.deleteById(customerRepository.save(newCustomer("TMP" + i, "Temp", null)).getId());
+        }
+        assertEquals(4L, customerRepository.findByCustomerCode("CUST001").get().getVersion());
+    }
+
+    @Test
+    public void testSaveIfVersionComparesAndSwaps() {
+        Customer john = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        long generation = customerRepository.generation();
+        Customer update = newCustomer("CUST001", "Jonathan Doe", "Hà Nội");
+        update.setId(john.getId());
+
+        assertTrue(customerRepository.saveIfVersion(copy(update), 2L).isEmpty());
+        assertEquals(generation, customerRepository.generation());
+        assertEquals(Optional.of(update), customerRepository.saveIfVersion(update, 1L));
+        assertEquals(2L, customerRepository.findById(john.getId()).get().getVersion());
+        assertEquals("Hà Nội", customerRepository.countCustomers().getByCity().get(0).getValue());
+        assertTrue(customerRepository.saveIfVersion(copy(update), 1L).isEmpty());
+
+        customerRepository.deleteById(john.getId());
+        assertTrue(customerRepository.saveIfVersion(copy(update), 3L).isEmpty());
+        assertEquals(0, customerRepository.countCustomers().getTotal());
+        assertThrows(IllegalArgumentException.class,
+                () -> customerRepository.saveIfVersion(newCustomer("CUST002", "Jane Smith", null), 1L));
+    }
+
+    @Test
+    public void testSaveAllRejectsTheBatchBeforeWritingAnything() {
+        Customer invalid = newCustomer("CUST002", "Jane Smith", null);
+        invalid.setId(-1L);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> customerRepository.saveAll(List.of(newCustomer("CUST001", "John Doe", null), invalid)));
+        assertTrue(customerRepository.findAll().isEmpty());
+    }
+
+    @Test
+    public void testCompactionAfterManyDeletesAndUpdates() {
+        for (int i = 0; i < 5000; i++) {
+            customerRepository.save(newCustomer("CUST" + i, "Customer " + i, "City " + (i % 7)));
+        }
+        long allocatedBefore = customerRepository.offHeapBytes();
+        for (long id = 1; id <= 5000; id++) {
+            if (id % 5 != 0) {
+                customerRepository.deleteById(id);
+            } else {
+                Customer customer = customerRepository.findById(id).get();
+                customer.setFullName("Renamed " + id);
+                customerRepository.save(customer);
+            }
+        }
+
+        List<Customer> remaining = customerRepository.findAll();
+        assertEquals(1000, remaining.size());
+        assertEquals("Renamed 5", remaining.get(0).getFullName());
+        assertEquals("CUST4999", customerRepository.findByCustomerCode("CUST4999").get().getCustomerCode());
+        assertFalse(customerRepository.existsByCustomerCode("CUST4998"));
+        assertTrue(customerRepository.offHeapBytes() <= allocatedBefore);
+    }
+
+    @Test
+    public void testConcurrentCreatesAppendInIdOrder() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            int first = thread * 2000;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = first; i < first + 2000; i++) {
+                    if (i % 100 == 0) {
+                        customerRepository.saveAll(List.of(newCustomer("BATCH" + i, "Batch " + i, null),
+                                newCustomer("BATCH" + i + "B", "Batch " + i, null)));
+                    }
+                    customerRepository.save(newCustomer("CUST" + i, "Customer " + i, null));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(8160, customerRepository.findAll().size());
+        // Creates never arrive out of id order, so none of them had to rewrite the columns
+        assertEquals(0, customerRepository.compactions());
+    }
+
+    @Test
+    public void testStreamAllCrossesBatches() {
+        for (int i = 0; i < 2500; i++) {
+            customerRepository.save(newCustomer("CUST" + i, "Customer " + i, null));
+        }
+
+        List<Long> streamed = customerRepository.streamAll().map(Customer::getId).collect(Collectors.toList());
+
+        assertEquals(2500, streamed.size());
+        assertEquals(ids(customerRepository.findAll()), streamed);
+    }
+
+    @Test
+    public void testBehavesLikeHeapRepository() {
+        // Same random history applied to both stores; every query must agree
+        Random random = new Random(11);
+        String[] names = {"Nguyễn Văn An", "Trần Thị Bình", "John Doe", "Jane Smith", "Lê Hoàng"};
+        String[] cities = {"Hà Nội", "Đà Nẵng", "Boston", null};
+        CustomerRepositoryImpl heapRepository = new CustomerRepositoryImpl();
+        for (int i = 0; i < 3000; i++) {
+            long id = 1 + random.nextInt(800);
+            int operation = random.nextInt(10);
+            if (operation < 2) {
+                heapRepository.deleteById(id);
+                customerRepository.deleteById(id);
+            } else {
+                Customer customer = newCustomer("CUST" + random.nextInt(1000),
+                        names[random.nextInt(names.length)] + " " + i, cities[random.nextInt(cities.length)]);
+                customer.setPhoneNumber((random.nextBoolean() ? "+84 9" : "09") + (10_000_000 + random.nextInt(90_000_000)));
+                customer.setGender(new String[] {"Male", "Female", "female", null}[i % 4]);
+                customer.setDateOfBirth(i % 7 == 0 ? null : LocalDate.of(1960 + i % 40, 1 + i % 12, 1 + i % 28));
+                customer.setId(operation < 6 ? id : null);
+                if (customer.getId() == null) {
+                    customer.setId(900L + i);
+                }
+                if (!heapRepository.existsByCustomerCodeAndIdNot(customer.getCustomerCode(), customer.getId())) {
+                    heapRepository.save(copy(customer));
+                    customerRepository.save(copy(customer));
+                }
+            }
+        }
+
+        assertEquals(describeAll(heapRepository.findAll()), describeAll(customerRepository.findAll()));
+        for (String keyword : List.of("an", "Nguyễn", "nguyen", "TRAN THI", "đa nang", "smith", "@example", "cust1",
+                "0912", "+84 91", "9")) {
+            assertEquals(ids(heapRepository.search(keyword)), ids(customerRepository.search(keyword)), keyword);
+            CustomerPage heapPage = heapRepository.search(keyword, 100L, 25);
+            CustomerPage columnarPage = customerRepository.search(keyword, 100L, 25);
+            assertEquals(ids(heapPage.getItems()), ids(columnarPage.getItems()), keyword);
+            assertEquals(heapPage.getNextCursor(), columnarPage.getNextCursor(), keyword);
+            for (int limit : new int[] {1, 10, 1000}) {
+                assertEquals(ids(heapRepository.searchRanked(keyword, limit)),
+                        ids(customerRepository.searchRanked(keyword, limit)), keyword + " top " + limit);
+            }
+        }
+        assertEquals(ids(heapRepository.findByFullNameContaining("Trần")),
+                ids(customerRepository.findByFullNameContaining("Trần")));
+        for (String keyword : List.of("nguyn", "tran thj", "Binh", "hoang 12", "smit")) {
+            assertEquals(ids(heapRepository.searchFuzzy(keyword, 2, 50)),
+                    ids(customerRepository.searchFuzzy(keyword, 2, 50)), keyword);
+        }
+        for (CustomerFilter filter : List.of(new CustomerFilter("ha noi", null, null, null),
+                new CustomerFilter("Đà Nẵng", "FEMALE", null, null),
+                new CustomerFilter(null, "male", LocalDate.of(1970, 1, 1), LocalDate.of(1979, 12, 31)),
+                new CustomerFilter("Boston", null, null, LocalDate.of(1965, 6, 30)))) {
+            for (Long cursor : new Long[] {null, 300L}) {
+                CustomerPage heapPage = heapRepository.filter(filter, cursor, 40);
+                CustomerPage columnarPage = customerRepository.filter(filter, cursor, 40);
+                assertEquals(ids(heapPage.getItems()), ids(columnarPage.getItems()));
+                assertEquals(heapPage.getNextCursor(), columnarPage.getNextCursor());
+            }
+        }
+        for (int limit : new int[] {1, 50, 1000}) {
+            assertEquals(ids(heapRepository.findByDateOfBirthBetween(LocalDate.of(1970, 1, 1), LocalDate.of(1985, 2, 28),
+                    limit)), ids(customerRepository.findByDateOfBirthBetween(LocalDate.of(1970, 1, 1),
+                    LocalDate.of(1985, 2, 28), limit)));
+            assertEquals(ids(heapRepository.findUpcomingBirthdays(LocalDate.of(2025, 12, 20), 30, limit)),
+                    ids(customerRepository.findUpcomingBirthdays(LocalDate.of(2025, 12, 20), 30, limit)));
+        }
+        CustomerCounts heapCounts = heapRepository.countCustomers();
+        CustomerCounts columnarCounts = customerRepository.countCustomers();
+        assertEquals(heapCounts.getTotal(), columnarCounts.getTotal());
+        assertEquals(describeGroups(heapCounts.getByCity()), describeGroups(columnarCounts.getByCity()));
+        assertEquals(describeGroups(heapCounts.getByGender()), describeGroups(columnarCounts.getByGender()));
+        assertEquals(ids(heapRepository.findByFullNameContaining("tran thi")),
+                ids(customerRepository.findByFullNameContaining("tran thi")));
+        for (String phoneNumber : List.of("+84 91", "0084 95", "84 9", "0912", "912")) {
+            assertEquals(ids(heapRepository.findByPhoneNumberContaining(phoneNumber)),
+                    ids(customerRepository.findByPhoneNumberContaining(phoneNumber)), phoneNumber);
+        }
+        assertEquals(ids(heapRepository.findByPhoneNumberEndingWith("12")),
+                ids(customerRepository.findByPhoneNumberEndingWith("12")));
+        for (int code = 0; code < 1000; code++) {
+            assertEquals(heapRepository.findByCustomerCode("CUST" + code).map(Customer::getId),
+                    customerRepository.findByCustomerCode("CUST" + code).map(Customer::getId));
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.footprint.records", matches = "\\d+")
+    public void benchmarkFootprint() {
+        int records = Integer.getInteger("benchmark.footprint.records");
+        boolean includeHeap = !Boolean.getBoolean("benchmark.footprint.columnarOnly");
+        long heapStoreBytes = Long.MAX_VALUE;
+        if (includeHeap) {
+            long before = usedHeap();
+            CustomerRepositoryImpl heapRepository = new CustomerRepositoryImpl();
+            fill(heapRepository, records);
+            heapStoreBytes = usedHeap() - before;
+            log.info("Heap store, {} customers: {} MB heap", records, heapStoreBytes >> 20);
+            heapRepository.deleteById(1L);
+            heapRepository = null;
+        }
+
+        long before = usedHeap();
+        long directBefore = directMemory();
+        ColumnarCustomerRepository columnarRepository = new ColumnarCustomerRepository();
+        fill(columnarRepository, records);
+        long heapBytes = usedHeap() - before;
+        long directBytes = directMemory() - directBefore;
+        log.info("Columnar store, {} customers: {} MB heap, {} MB direct", records, heapBytes >> 20,
+                directBytes >> 20);
+        assertEquals(records / 2, columnarRepository.findById(records / 2L).get().getId());
+        // The customers live off the heap, so the columnar store must need less of it
+        assertTrue(heapBytes < heapStoreBytes,
+                "Columnar store uses " + heapBytes + " bytes of heap, heap store " + heapStoreBytes);
+        assertTrue(directBytes >= columnarRepository.offHeapBytes(),
+                "Direct memory grew by " + directBytes + " bytes for " + columnarRepository.offHeapBytes());
+    }
+
+    private static void fill(CustomerRepository customerRepository, int records) {
+        String[] cities = {"Hà Nội", "Hồ Chí Minh", "Đà Nẵng", "Hải Phòng", "Cần Thơ"};
+        for (int i = 0; i < records; i++) {
+            Customer customer = newCustomer("CUST" + i, "Nguyễn Văn Khách " + i, cities[i % cities.length]);
+            customer.setFirstName("Khách " + i);
+            customer.setLastName("Nguyễn Văn");
+            customer.setGender(i % 2 == 0 ? "Male" : "Female");
+            customer.setDateOfBirth(LocalDate.of(1960 + i % 40, 1 + i % 12, 1 + i % 28));
+            customer.setAddress(i + " Lê Lợi");
+            customerRepository.save(customer);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directMemory() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+    private static Customer newCustomer(String code, String fullName, String city) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(code);
+        customer.setFullName(fullName);
+        customer.setCity(city);
+        customer.setEmail(code.toLowerCase() + "@example.com");
+        customer.setPhoneNumber("0912" + Math.abs(code.hashCode() % 1000000));
+        return customer;
+    }
+
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getId(), customer.getCustomerCode(), customer.getFirstName(),
+                customer.getLastName(), customer.getFullName(), customer.getDateOfBirth(), customer.getGender(),
+                customer.getAddress(), customer.getCity(), customer.getEmail(), customer.getPhoneNumber());
+    }
+
+    private static String describe(Customer customer) {
+        return String.join("|", String.valueOf(customer.getId()), customer.getCustomerCode(), customer.getFirstName(),
+                customer.getLastName(), customer.getFullName(), String.valueOf(customer.getDateOfBirth()),
+                customer.getGender(), customer.getAddress(), customer.getCity(), customer.getEmail(),
+                customer.getPhoneNumber());
+    }
+
+    private static List<String> describeAll(List<Customer> customers) {
+        return customers.stream().map(ColumnarCustomerRepositoryTest::describe).collect(Collectors.toList());
+    }
+
+    private static List<String> describeGroups(List<CustomerGroupCount> groups) {
+        return groups.stream().map(group -> group.getValue() + "=" + group.getCount()).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,70 @@
+package vn.com.msb.repository;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import vn.com.msb.model.Customer;
+
+public class CustomerCodecTest {
+
+    @Test
+    public void testRoundTripAllFields() {
+        Customer customer = new Customer(42L, "CUST042", "Nguyễn", "Văn An", "Nguyễn Văn An",
+                LocalDate.of(1985, 12, 31), "Male", "12 Đường Láng", "Hà Nội", "an@example.vn", "+84 912 345 678");
+        customer.setVersion(300L);
+
+        Customer decoded = CustomerCodec.decode(ByteBuffer.wrap(CustomerCodec.encode(customer)));
+
+        assertEquals(42L, decoded.getId());
+        assertEquals("CUST042", decoded.getCustomerCode());
+        assertEquals("Nguyễn", decoded.getFirstName());
+        assertEquals("Văn An", decoded.getLastName());
+        assertEquals("Nguyễn Văn An", decoded.getFullName());
+        assertEquals(LocalDate.of(1985, 12, 31), decoded.getDateOfBirth());
+        assertEquals("Male", decoded.getGender());
+        assertEquals("12 Đường Láng", decoded.getAddress());
+        assertEquals("Hà Nội", decoded.getCity());
+        assertEquals("an@example.vn", decoded.getEmail());
+        assertEquals("+84 912 345 678", decoded.getPhoneNumber());
+        assertEquals(300L, decoded.getVersion());
+    }
+
+    @Test
+    public void testRoundTripMissingFields() {
+        Customer customer = new Customer();
+        customer.setId(7L);
+        customer.setCustomerCode("CUST007");
+        customer.setDateOfBirth(LocalDate.of(1899, 1, 1)); // before the epoch
+
+        Customer decoded = CustomerCodec.decode(ByteBuffer.wrap(CustomerCodec.encode(customer)));
+
+        assertEquals(7L, decoded.getId());
+        assertEquals("CUST007", decoded.getCustomerCode());
+        assertEquals(LocalDate.of(1899, 1, 1), decoded.getDateOfBirth());
+        assertNull(decoded.getFirstName());
+        assertNull(decoded.getEmail());
+        assertNull(decoded.getPhoneNumber());
+        assertNull(decoded.getVersion());
+    }
+
+    @Test
+    public void testDecodeConsecutiveRecordsFromDirectBuffer() {
+        Customer first = new Customer();
+        first.setId(1L);
+        first.setFullName("First");
+        Customer second = new Customer();
+        second.setId(2L);
+        second.setFullName("Second");
+        byte[] a = CustomerCodec.encode(first);
+        byte[] b = CustomerCodec.encode(second);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(a.length + b.length).put(a).put(b).flip();
+
+        assertEquals("First", CustomerCodec.decode(buffer).getFullName());
+        assertEquals("Second", CustomerCodec.decode(buffer).getFullName());
+        assertEquals(0, buffer.remaining());
+    }
+}
@@ -0,0 +1,198 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import vn.com.msb.model.Customer;
+
+public class CustomerRepositoryImplConcurrencyTest {
+
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+
+    @Test
+    public void testConcurrentSavesAssignUniqueIds() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ConcurrentLinkedQueue<Long> ids = new ConcurrentLinkedQueue<>();
+
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                ids.add(customerRepository.save(newCustomer(thread, i)).getId());
+            }
+        });
+
+        Set<Long> uniqueIds = new HashSet<>(ids);
+        assertEquals(threads * OPERATIONS_PER_THREAD, ids.size());
+        assertEquals(ids.size(), uniqueIds.size());
+        assertEquals(ids.size(), customerRepository.findAll().size());
+    }
+
+    @Test
+    public void testReadersSeeConsistentDataWhileWritersRun() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl();
+        int writers = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+        runConcurrently(writers * 2, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD / 4; i++) {
+                if (thread < writers) {
+                    Customer saved = customerRepository.save(newCustomer(thread, i));
+                    if (i % 3 == 0) {
+                        customerRepository.deleteById(saved.getId());
+                    }
+                } else if (i % 50 == 0) {
+                    // Every entry a reader observes must be fully populated
+                    for (Customer customer : customerRepository.search("stress")) {
+                        assertTrue(customer.getId() != null && customer.getCustomerCode() != null);
+                    }
+                }
+            }
+        });
+
+        int expected = writers * (OPERATIONS_PER_THREAD / 4 - (OPERATIONS_PER_THREAD / 4 + 2) / 3);
+        assertEquals(expected, customerRepository.findAll().size());
+    }
+
+    @Test
+    public void testCompareAndSwapUpdatesAreNeverLost() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl();
+        Customer counter = newCustomer(0, 0);
+        counter.setAddress("0");
+        long id = customerRepository.save(counter).getId();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int increments = OPERATIONS_PER_THREAD / 20;
+
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < increments; i++) {
+                // Read, modify and retry until no other writer got in between
+                while (true) {
+                    Customer current = customerRepository.findById(id).get();
+                    long version = current.getVersion();
+                    Customer update = newCustomer(0, 0);
+                    update.setId(id);
+                    update.setAddress(Integer.toString(Integer.parseInt(current.getAddress()) + 1));
+                    if (customerRepository.saveIfVersion(update, version).isPresent()) {
+                        break;
+                    }
+                }
+            }
+        });
+
+        Customer result = customerRepository.findById(id).get();
+        assertEquals(Integer.toString(threads * increments), result.getAddress());
+        assertEquals(threads * increments + 1L, result.getVersion());
+    }
+
+    @Test
+    public void testConcurrentCreatesOfOneCodeSaveOneCustomer() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int codes = OPERATIONS_PER_THREAD / 20;
+        ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+
+        // Every thread creates every code, alone or in a batch next to a code of its own
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < codes; i++) {
+                Customer customer = newCustomer(0, i);
+                List<Customer> batch = thread % 2 == 0 ? List.of(customer)
+                        : List.of(newCustomer(thread + 1, i), customer);
+                Set<String> taken = customerRepository.saveAllIfCodesFree(batch, thread % 4 == 1);
+                if (!taken.contains(customer.getCustomerCode())) {
+                    created.add(customer.getCustomerCode());
+                }
+            }
+        });
+
+        assertEquals(codes, created.size());
+        assertEquals(codes, new HashSet<>(created).size());
+        assertEquals(codes, customerRepository.findAll().stream()
+                .filter(customer -> customer.getCustomerCode().startsWith("T0-")).count());
+        for (int i = 0; i < codes; i++) {
+            String code = newCustomer(0, i).getCustomerCode();
+            assertEquals(code, customerRepository.findByCustomerCode(code).get().getCustomerCode());
+        }
+    }
+
+    // Contended writes may not scale on every machine, but they must not collapse: with every core
+    // busy the store still has to do at least half the work of a single thread
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.concurrency.operations", matches = "\\d+")
+    public void benchmarkSaveThroughputScalesWithThreads() throws Exception {
+        int operationsPerThread = Integer.getInteger("benchmark.concurrency.operations");
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        Map<Integer, Double> opsPerSecond = new LinkedHashMap<>();
+        for (int threads : threadCounts) {
+            CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl();
+            long start = System.nanoTime();
+            runConcurrently(threads, thread -> {
+                for (int i = 0; i < operationsPerThread; i++) {
+                    Customer saved = customerRepository.save(newCustomer(thread, i));
+                    customerRepository.findById(saved.getId());
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(threads * operationsPerThread, customerRepository.findAll().size());
+            opsPerSecond.put(threads, threads * operationsPerThread * 2 / (elapsed / 1_000_000_000.0));
+        }
+        assertTrue(opsPerSecond.get(maxThreads) >= opsPerSecond.get(1) / 2,
+                "save+findById ops/s by thread count: " + opsPerSecond);
+    }
+
+    private static Customer newCustomer(int thread, int i) {
+        Customer customer = new Customer();
+        customer.setCustomerCode("T" + thread + "-" + i);
+        customer.setFirstName("Stress");
+        customer.setLastName("Tester" + i);
+        customer.setFullName("Stress Tester" + i);
+        customer.setEmail("stress" + thread + "." + i + "@example.com");
+        customer.setPhoneNumber("555-" + thread + "-" + i);
+        return customer;
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(int threads, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    worker.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package vn.com.msb.repository;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
 
 public class CustomerRepositoryImplTest {
 
@@ -188,6 +203,93 @@ public class CustomerRepositoryImplTest {
         assertEquals(1, customers.size());
     }
 
+    @Test
+    public void testSaveBumpsVersion() {
+        assertEquals(1L, customer1.getVersion());
+        
+        Customer update = new Customer();
+        update.setId(customer1.getId());
+        update.setCustomerCode("CUST001");
+        update.setFullName("Jonathan Doe");
+        update.setVersion(42L); // ignored
+        customerRepository.save(update);
+        
+        assertEquals(2L, update.getVersion());
+        assertEquals(2L, customerRepository.findById(customer1.getId()).get().getVersion());
+        assertEquals(1L, customerRepository.findById(customer2.getId()).get().getVersion());
+    }
+
+    @Test
+    public void testSaveIfVersionComparesAndSwaps() {
+        long generation = customerRepository.generation();
+        Customer stale = new Customer();
+        stale.setId(customer1.getId());
+        stale.setCustomerCode("CUST001");
+        stale.setFullName("Johnny Doe");
+        
+        assertTrue(customerRepository.saveIfVersion(stale, 2L).isEmpty());
+        assertEquals(generation, customerRepository.generation());
+        assertEquals("John Doe", customerRepository.findById(customer1.getId()).get().getFullName());
+        assertTrue(customerRepository.search("Johnny").isEmpty());
+        
+        Customer update = new Customer();
+        update.setId(customer1.getId());
+        update.setCustomerCode("CUST001");
+        update.setFullName("Jonathan Doe");
+        assertEquals(Optional.of(update), customerRepository.saveIfVersion(update, 1L));
+        assertEquals(2L, update.getVersion());
+        assertEquals(1, customerRepository.search("Jonathan").size());
+        
+        // A second writer that read version 1 too loses
+        assertTrue(customerRepository.saveIfVersion(stale, 1L).isEmpty());
+        assertEquals("Jonathan Doe", customerRepository.findById(customer1.getId()).get().getFullName());
+        
+        // Nothing to compare with once deleted, or before the customer exists
+        customerRepository.deleteById(customer1.getId());
+        assertTrue(customerRepository.saveIfVersion(stale, 2L).isEmpty());
+        stale.setId(99L);
+        assertTrue(customerRepository.saveIfVersion(stale, 0L).isEmpty());
+        assertFalse(customerRepository.findById(99L).isPresent());
+        assertThrows(IllegalArgumentException.class, () -> customerRepository.saveIfVersion(new Customer(), 1L));
+    }
+
+    @Test
+    public void testSaveAllBumpsVersionOncePerOccurrence() {
+        Customer first = new Customer();
+        first.setId(customer1.getId());
+        first.setCustomerCode("CUST001");
+        Customer second = new Customer();
+        second.setId(customer1.getId());
+        second.setCustomerCode("CUST001");
+        Customer created = new Customer();
+        created.setCustomerCode("CUST003");
+        
+        customerRepository.saveAll(List.of(first, second, created));
+        
+        assertEquals(2L, first.getVersion());
+        assertEquals(3L, second.getVersion());
+        assertEquals(1L, created.getVersion());
+        assertEquals(3L, customerRepository.findById(customer1.getId()).get().getVersion());
+    }
+
+    @Test
+    public void testGenerationChangesOnEveryWrite() {
+        long generation = customerRepository.generation();
+        
+        customerRepository.save(customer1);
+        assertEquals(generation + 1, customerRepository.generation());
+        customerRepository.saveAll(List.of(customer2));
+        assertEquals(generation + 2, customerRepository.generation());
+        customerRepository.deleteById(customer1.getId());
+        assertEquals(generation + 3, customerRepository.generation());
+        
+        // Reads and deletes of missing customers change nothing
+        customerRepository.deleteById(customer1.getId());
+        customerRepository.findAll();
+        customerRepository.search("Jane");
+        assertEquals(generation + 3, customerRepository.generation());
+    }
+
     @Test
     public void testExistsByCustomerCode() {
         assertTrue(customerRepository.existsByCustomerCode("CUST001"));
@@ -399,6 +501,57 @@ public class CustomerRepositoryImplTest {
         assertTrue(hasCustomer10);
     }
     
+    @Test
+    public void testSaveAllAssignsConsecutiveIdsAndIndexesEveryCustomer() {
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 3; i <= 100; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("BATCH" + i);
+            customer.setFullName("Batch Customer " + i);
+            batch.add(customer);
+        }
+        customer1.setFullName("Johnny Doe");
+        batch.add(customer1);
+
+        customerRepository.saveAll(batch);
+
+        for (int i = 0; i < 98; i++) {
+            assertEquals(3L + i, batch.get(i).getId());
+        }
+        assertEquals(100, customerRepository.findAll().size());
+        assertEquals(98, customerRepository.search("batch customer").size());
+        assertEquals(1L, customerRepository.findByCustomerCode("CUST001").get().getId());
+        assertEquals("Johnny Doe", customerRepository.findById(1L).get().getFullName());
+        assertEquals(101L, customerRepository.save(new Customer()).getId());
+    }
+    
+    @Test
+    public void testSaveAllIfCodesFreeLeavesOutTakenCodes() {
+        List<Customer> batch = List.of(newCustomer("CUST003"), newCustomer("CUST001"), newCustomer("CUST004"));
+        
+        assertEquals(Set.of("CUST001"), customerRepository.saveAllIfCodesFree(batch, true));
+        assertTrue(batch.stream().allMatch(customer -> customer.getId() == null));
+        assertFalse(customerRepository.existsByCustomerCode("CUST003"));
+        assertEquals(2, customerRepository.findAll().size());
+        
+        assertEquals(Set.of("CUST001"), customerRepository.saveAllIfCodesFree(batch, false));
+        assertNull(batch.get(1).getId());
+        assertEquals(batch.get(0).getId(), customerRepository.findByCustomerCode("CUST003").get().getId());
+        assertEquals(batch.get(2).getId(), customerRepository.findByCustomerCode("CUST004").get().getId());
+        assertEquals(1L, customerRepository.findByCustomerCode("CUST001").get().getId());
+        assertEquals(4, customerRepository.findAll().size());
+        assertThrows(IllegalArgumentException.class,
+                () -> customerRepository.saveAllIfCodesFree(List.of(customer1), false));
+    }
+    
+    @Test
+    public void testFindExistingCustomerCodes() {
+        Set<String> existing = customerRepository.findExistingCustomerCodes(
+                Arrays.asList("CUST001", "CUST003", null, "cust002", "CUST002"));
+        
+        assertEquals(Set.of("CUST001", "CUST002"), existing);
+    }
+    
     @Test
     public void testFindByPhoneNumberPartialMatch() {
         // First test - find by area code
@@ -410,4 +563,833 @@ public class CustomerRepositoryImplTest {
         assertEquals(1, customers2.size());
         assertEquals("CUST001", customers2.get(0).getCustomerCode());
     }
+    
+    @Test
+    public void testCustomerCodeIndexFollowsCodeChange() {
+        Long id = customer1.getId();
+        
+        // Change the code of an existing customer
+        customer1.setCustomerCode("CUST101");
+        customerRepository.save(customer1);
+        
+        assertFalse(customerRepository.existsByCustomerCode("CUST001"));
+        assertFalse(customerRepository.findByCustomerCode("CUST001").isPresent());
+        assertTrue(customerRepository.existsByCustomerCode("CUST101"));
+        assertEquals(id, customerRepository.findByCustomerCode("CUST101").get().getId());
+        assertFalse(customerRepository.existsByCustomerCodeAndIdNot("CUST101", id));
+    }
+    
+    @Test
+    public void testCustomerCodeIndexIgnoresUnsavedMutation() {
+        // Mutating a stored instance without saving it must not change what the index answers
+        customer2.setCustomerCode("CUST999");
+        
+        assertTrue(customerRepository.existsByCustomerCode("CUST002"));
+        assertFalse(customerRepository.existsByCustomerCode("CUST999"));
+    }
+    
+    @Test
+    public void testCustomerCodeIndexClearedOnDelete() {
+        customerRepository.deleteById(customer1.getId());
+        
+        assertFalse(customerRepository.existsByCustomerCode("CUST001"));
+        assertFalse(customerRepository.findByCustomerCode("CUST001").isPresent());
+        
+        // The freed code can be reused by a new customer
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST001");
+        customer3.setFirstName("Bob");
+        customer3.setLastName("Johnson");
+        Customer saved = customerRepository.save(customer3);
+        
+        assertEquals(saved.getId(), customerRepository.findByCustomerCode("CUST001").get().getId());
+    }
+    
+    @Test
+    public void testCustomerCodeLookupWithNullCode() {
+        assertFalse(customerRepository.existsByCustomerCode(null));
+        assertFalse(customerRepository.findByCustomerCode(null).isPresent());
+    }
+    
+    @Test
+    public void testSearchReflectsUpdatedFields() {
+        customer1.setFullName("Jonathan Doe");
+        customer1.setEmail("jonathan@example.org");
+        customerRepository.save(customer1);
+        
+        assertEquals(1, customerRepository.search("jonathan").size());
+        assertEquals(0, customerRepository.findByEmailContaining("john.doe").size());
+        assertEquals(1, customerRepository.findByEmailContaining("example.org").size());
+        assertEquals(1, customerRepository.findByFullNameContaining("than d").size());
+    }
+    
+    @Test
+    public void testSearchDoesNotReturnDeletedCustomers() {
+        customerRepository.deleteById(customer2.getId());
+        
+        assertEquals(0, customerRepository.search("smith").size());
+        assertEquals(0, customerRepository.findByPhoneNumberContaining("987-65").size());
+    }
+    
+    @Test
+    public void testSearchMatchesBruteForceScan() {
+        Random random = new Random(42);
+        String[] names = {"Nguyen Van An", "Tran Thi Binh", "Le Van Cuong", "Pham Thi Dung", "Hoang Van Em"};
+        List<Customer> saved = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("C" + random.nextInt(100000));
+            customer.setFullName(names[random.nextInt(names.length)] + " " + i);
+            customer.setEmail("user" + random.nextInt(1000) + "@mail" + random.nextInt(5) + ".vn");
+            customer.setPhoneNumber("09" + random.nextInt(100000000));
+            saved.add(customerRepository.save(customer));
+        }
+        // Update and delete some of them so the indexes see every kind of change
+        for (int i = 0; i < 100; i++) {
+            Customer customer = saved.get(random.nextInt(saved.size()));
+            if (random.nextBoolean()) {
+                customer.setFullName(names[random.nextInt(names.length)] + " updated " + i);
+                customer.setPhoneNumber("08" + random.nextInt(100000000));
+                customerRepository.save(customer);
+            } else {
+                customerRepository.deleteById(customer.getId());
+            }
+        }
+        
+        List<Customer> all = customerRepository.findAll();
+        for (String keyword : new String[] {"van", "Thi B", "mail3", "@mail", "091", "c1", "updated 4", "xyz", "n"}) {
+            String term = keyword.toLowerCase().trim();
+            List<Long> expected = all.stream()
+                    .filter(c -> (c.getFullName() != null && c.getFullName().toLowerCase().contains(term))
+                            || (c.getEmail() != null && c.getEmail().toLowerCase().contains(term))
+                            || (c.getPhoneNumber() != null && c.getPhoneNumber().contains(term))
+                            || (c.getCustomerCode() != null && c.getCustomerCode().toLowerCase().contains(term)))
+                    .map(Customer::getId)
+                    .sorted()
+                    .collect(Collectors.toList());
+            List<Long> actual = customerRepository.search(keyword).stream()
+                    .map(Customer::getId)
+                    .collect(Collectors.toList());
+            assertEquals(expected, actual, "search(" + keyword + ")");
+        }
+    }
+    
+    @Test
+    public void testFindByPhoneNumberContainingIgnoresFormatting() {
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customer3.setFullName("Nguyen Van An");
+        customer3.setPhoneNumber("+84 912 345 678");
+        customerRepository.save(customer3);
+        
+        // Same number typed with the national prefix and different separators
+        List<Customer> customers = customerRepository.findByPhoneNumberContaining("0912-345-678");
+        assertEquals(1, customers.size());
+        assertEquals("CUST003", customers.get(0).getCustomerCode());
+        
+        // Separators in the stored value no longer break substring matches
+        customers = customerRepository.findByPhoneNumberContaining("5551234");
+        assertEquals(1, customers.size());
+        assertEquals("CUST001", customers.get(0).getCustomerCode());
+    }
+    
+    @Test
+    public void testFindByPhoneNumberContainingMatchesInternationalPrefixAsTyped() {
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customer3.setPhoneNumber("+84912345678");
+        customerRepository.save(customer3);
+        
+        // "84912" is only in the stored form; the canonical one is "0912345678"
+        for (String term : new String[] {"84912", "+8491", "0912345"}) {
+            List<Customer> customers = customerRepository.findByPhoneNumberContaining(term);
+            assertEquals(1, customers.size(), term);
+            assertEquals("CUST003", customers.get(0).getCustomerCode());
+            assertEquals(1, customerRepository.search(term).size(), term);
+        }
+        assertEquals(1, customerRepository.findByPhoneNumberEndingWith("84912345678").size());
+        assertEquals(1, customerRepository.findByPhoneNumberEndingWith("345678").size());
+    }
+    
+    @Test
+    public void testInternationalPrefixAnchorsPhoneNumberQueries() {
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customer3.setPhoneNumber("0123091456");
+        customerRepository.save(customer3);
+        Customer customer4 = new Customer();
+        customer4.setCustomerCode("CUST004");
+        customer4.setPhoneNumber("0912 345 678");
+        customerRepository.save(customer4);
+        
+        // "+84 91" is "091" at the start of the number, not anywhere in it
+        for (String term : new String[] {"+84 91", "0084 91"}) {
+            List<Customer> customers = customerRepository.findByPhoneNumberContaining(term);
+            assertEquals(1, customers.size(), term);
+            assertEquals("CUST004", customers.get(0).getCustomerCode());
+            assertEquals(List.of("CUST004"),
+                    customerRepository.search(term).stream().map(Customer::getCustomerCode).collect(Collectors.toList()));
+        }
+        // Without a prefix the digits may still be anywhere
+        assertEquals(2, customerRepository.findByPhoneNumberContaining("091").size());
+    }
+    
+    @Test
+    public void testFindByPhoneNumberEndingWith() {
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customer3.setPhoneNumber("0912.345.4567");
+        customerRepository.save(customer3);
+        
+        List<Customer> customers = customerRepository.findByPhoneNumberEndingWith("4567");
+        assertEquals(2, customers.size());
+        assertEquals("CUST001", customers.get(0).getCustomerCode());
+        assertEquals("CUST003", customers.get(1).getCustomerCode());
+        
+        customers = customerRepository.findByPhoneNumberEndingWith("+84 912 345 4567");
+        assertEquals(1, customers.size());
+        assertEquals("CUST003", customers.get(0).getCustomerCode());
+        
+        // A digit in the middle of the number is not a suffix
+        assertEquals(0, customerRepository.findByPhoneNumberEndingWith("123").size());
+        assertEquals(0, customerRepository.findByPhoneNumberEndingWith("").size());
+    }
+    
+    @Test
+    public void testFindByPhoneNumberEndingWithFollowsUpdatesAndDeletes() {
+        customer1.setPhoneNumber("555-000-1111");
+        customerRepository.save(customer1);
+        customerRepository.deleteById(customer2.getId());
+        
+        assertEquals(0, customerRepository.findByPhoneNumberEndingWith("4567").size());
+        assertEquals(0, customerRepository.findByPhoneNumberEndingWith("6543").size());
+        assertEquals(1, customerRepository.findByPhoneNumberEndingWith("1111").size());
+    }
+    
+    @Test
+    public void testSearchWithPhoneLikeKeyword() {
+        List<Customer> customers = customerRepository.search("123 4567");
+        
+        assertEquals(1, customers.size());
+        assertEquals("CUST001", customers.get(0).getCustomerCode());
+    }
+    
+    @Test
+    public void testFindAllPaged() {
+        for (int i = 3; i <= 10; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST00" + i);
+            customerRepository.save(customer);
+        }
+        
+        CustomerPage first = customerRepository.findAll(null, 4);
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(first.getItems()));
+        assertEquals(4L, first.getNextCursor());
+        
+        CustomerPage second = customerRepository.findAll(first.getNextCursor(), 4);
+        assertEquals(List.of(5L, 6L, 7L, 8L), ids(second.getItems()));
+        
+        CustomerPage last = customerRepository.findAll(second.getNextCursor(), 4);
+        assertEquals(List.of(9L, 10L), ids(last.getItems()));
+        assertNull(last.getNextCursor());
+    }
+    
+    @Test
+    public void testFindAllPagedIsStableAcrossDeletes() {
+        CustomerPage first = customerRepository.findAll(null, 1);
+        assertEquals(List.of(1L), ids(first.getItems()));
+        
+        // Deleting an already returned customer must not shift the next page
+        customerRepository.deleteById(1L);
+        CustomerPage second = customerRepository.findAll(first.getNextCursor(), 1);
+        assertEquals(List.of(2L), ids(second.getItems()));
+        assertNull(second.getNextCursor());
+    }
+    
+    @Test
+    public void testSearchPaged() {
+        for (int i = 3; i <= 20; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST0" + i);
+            customer.setFullName(i % 2 == 0 ? "Even Nguyen " + i : "Odd Tran " + i);
+            customerRepository.save(customer);
+        }
+        
+        // Depending on page size and keyword breadth, pages come from the trigram candidates or
+        // from walking the store in id order; both must return the same customers
+        for (int limit : new int[] {3, 10}) {
+            for (String keyword : new String[] {"nguyen", "cust", "e"}) {
+                List<Long> expected = ids(customerRepository.search(keyword));
+                List<Long> paged = new ArrayList<>();
+                Long cursor = null;
+                do {
+                    CustomerPage page = customerRepository.search(keyword, cursor, limit);
+                    assertTrue(page.getItems().size() <= limit);
+                    paged.addAll(ids(page.getItems()));
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+                assertEquals(expected, paged, "search(" + keyword + ") with limit " + limit);
+            }
+        }
+    }
+    
+    @Test
+    public void testStreamAllInIdOrder() {
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customerRepository.save(customer3);
+        
+        List<Long> ids = customerRepository.streamAll().map(Customer::getId).collect(Collectors.toList());
+        
+        assertEquals(List.of(1L, 2L, 3L), ids);
+    }
+    
+    @Test
+    public void testSearchPagedWithBlankKeyword() {
+        CustomerPage page = customerRepository.search(" ", null, 10);
+        
+        assertEquals(List.of(1L, 2L), ids(page.getItems()));
+        assertNull(page.getNextCursor());
+    }
+    
+    @Test
+    public void testSearchCacheServesRepeatedKeyword() {
+        CustomerSearchCache searchCache = new CustomerSearchCache(1_000);
+        customerRepository = newCachingRepository(searchCache);
+        
+        List<Customer> first = customerRepository.search(" JOHN ");
+        first.clear();
+        List<Customer> second = customerRepository.search("john");
+        
+        assertEquals(List.of(1L), ids(second));
+        assertEquals(1, searchCache.hits());
+        assertEquals(1, searchCache.misses());
+        // Blank keywords list everything and are never cached
+        customerRepository.search(" ");
+        assertEquals(1, searchCache.size());
+    }
+    
+    @Test
+    public void testSearchCacheEvictsOnlyAffectedKeywords() {
+        CustomerSearchCache searchCache = new CustomerSearchCache(1_000);
+        customerRepository = newCachingRepository(searchCache);
+        customerRepository.search("john");
+        customerRepository.search("jane");
+        customerRepository.search("smith");
+        
+        // Renaming John affects the keyword he matched before, and the one he matches now
+        Customer renamed = copyOf(customerRepository.findById(1L).orElseThrow());
+        renamed.setFullName("Johnny Smithers");
+        renamed.setEmail("johnny@example.com");
+        customerRepository.save(renamed);
+        
+        assertEquals(1, searchCache.size());
+        assertEquals(List.of(2L), ids(customerRepository.search("jane")));
+        assertEquals(1, searchCache.hits());
+        assertEquals(List.of(1L, 2L), ids(customerRepository.search("smith")));
+        assertEquals(List.of(1L), ids(customerRepository.search("john")));
+        
+        customerRepository.deleteById(2L);
+        
+        assertEquals(List.of(1L), ids(customerRepository.search("smith")));
+        assertEquals(List.of(), ids(customerRepository.search("jane")));
+        assertEquals(List.of(1L), ids(customerRepository.search("john")));
+        assertEquals(2, searchCache.hits());
+    }
+    
+    @Test
+    public void testSearchCacheEvictsOnSaveAll() {
+        CustomerSearchCache searchCache = new CustomerSearchCache(1_000);
+        customerRepository = newCachingRepository(searchCache);
+        customerRepository.search("jane");
+        customerRepository.search("doe");
+        
+        Customer jane = new Customer();
+        jane.setCustomerCode("CUST003");
+        jane.setFullName("Jane Tran");
+        customerRepository.saveAll(List.of(jane));
+        
+        assertEquals(List.of(2L, 3L), ids(customerRepository.search("jane")));
+        assertEquals(List.of(1L), ids(customerRepository.search("doe")));
+        assertEquals(1, searchCache.hits());
+    }
+    
+    @Test
+    public void testSearchPagedFromCache() {
+        CustomerSearchCache searchCache = new CustomerSearchCache(1_000);
+        customerRepository = newCachingRepository(searchCache);
+        for (int i = 3; i <= 20; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST0" + i);
+            customer.setFullName(i % 2 == 0 ? "Even Nguyen " + i : "Odd Tran " + i);
+            customerRepository.save(customer);
+        }
+        
+        List<Long> expected = ids(customerRepository.search("nguyen"));
+        List<Long> paged = new ArrayList<>();
+        Long cursor = null;
+        do {
+            CustomerPage page = customerRepository.search("nguyen", cursor, 4);
+            paged.addAll(ids(page.getItems()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        assertEquals(expected, paged);
+        assertEquals(3, searchCache.hits());
+    }
+    
+    // Whatever the interleaving, a cached result never outlives a change that affects it
+    @Test
+    public void testSearchCacheUnderConcurrentWrites() throws InterruptedException {
+        CustomerSearchCache searchCache = new CustomerSearchCache(1_000);
+        customerRepository = newCachingRepository(searchCache);
+        String[] names = {"Nguyen Van", "Tran Thi", "Le Minh", "Pham Hoa"};
+        String[] keywords = {"nguyen", "tran", "minh", "hoa", "an"};
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 2_000; i++) {
+                    if (seed % 2 == 0) {
+                        Customer customer = new Customer();
+                        customer.setId((long) random.nextInt(50) + 1);
+                        customer.setCustomerCode("C" + customer.getId());
+                        customer.setFullName(names[random.nextInt(names.length)]);
+                        customerRepository.save(customer);
+                    } else {
+                        customerRepository.search(keywords[random.nextInt(keywords.length)]);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        for (String keyword : keywords) {
+            List<Long> expected = customerRepository.findAll().stream()
+                    .filter(customer -> customer.getFullName().toLowerCase().contains(keyword)
+                            || customer.getCustomerCode().toLowerCase().contains(keyword)
+                            || (customer.getEmail() != null && customer.getEmail().contains(keyword)))
+                    .map(Customer::getId)
+                    .collect(Collectors.toList());
+            assertEquals(expected, ids(customerRepository.search(keyword)), keyword);
+        }
+    }
+    
+    @Test
+    public void testSearchIgnoresDiacritics() {
+        Customer duc = new Customer();
+        duc.setCustomerCode("CUST003");
+        duc.setFullName("Nguyễn Văn Đức");
+        duc.setEmail("duc.nguyen@example.com");
+        customerRepository.save(duc);
+        
+        assertEquals(List.of(3L), ids(customerRepository.search("nguyen van duc")));
+        assertEquals(List.of(3L), ids(customerRepository.search("NGUYỄN")));
+        assertEquals(List.of(3L), ids(customerRepository.search("Đuc")));
+        assertEquals(List.of(3L), ids(customerRepository.findByFullNameContaining("van đ")));
+        assertEquals(List.of(3L), ids(customerRepository.searchRanked("nguyên", 10)));
+        // Both ways: an accented keyword still finds a name entered without accents
+        assertEquals(List.of(1L), ids(customerRepository.search("Jöhn")));
+    }
+    
+    @Test
+    public void testSearchFuzzyToleratesTypos() {
+        String[] names = {"Nguyễn Văn An", "Nguyễn Thị Hoa", "Trần Văn An", "Ngô Văn Anh"};
+        for (int i = 0; i < names.length; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST00" + (i + 3));
+            customer.setFullName(names[i]);
+            customerRepository.save(customer);
+        }
+        
+        assertEquals(List.of(3L, 4L), ids(customerRepository.searchFuzzy("nguyn", 2, 10)));
+        // Fewest typos first: "ngyuen" is two edits from Nguyễn, "an" exactly the name's last word
+        assertEquals(List.of(3L), ids(customerRepository.searchFuzzy("Ngyuen An", 2, 10)));
+        assertEquals(List.of(), ids(customerRepository.searchFuzzy("Ngyuen An", 1, 10)));
+        // Words of up to two letters must match exactly, so "an" doesn't find Anh
+        assertEquals(List.of(3L, 5L), ids(customerRepository.searchFuzzy("van an", 2, 10)));
+        assertEquals(List.of(6L), ids(customerRepository.searchFuzzy("ngo vam", 2, 10)));
+        assertEquals(List.of(1L), ids(customerRepository.searchFuzzy("Jon", 1, 10)));
+        
+        // Follows renames
+        Customer renamed = customerRepository.findById(3L).orElseThrow();
+        renamed.setFullName("Lê Văn Bình");
+        customerRepository.save(renamed);
+        assertEquals(List.of(4L), ids(customerRepository.searchFuzzy("nguyn", 2, 10)));
+        assertEquals(List.of(3L), ids(customerRepository.searchFuzzy("binh", 2, 10)));
+    }
+    
+    @Test
+    public void testSearchRankedOrdersByRelevance() {
+        String[][] customers = {
+            {"CUST003", "Anna Tran", "ann@example.com"},
+            {"ANN", "Minh Le", null},
+            {"CUST005", "Thi Ann", null},
+            {"CUST006", "Joanna Pham", null},
+            {"CUST007", "Ann Nguyen", null},
+            {"CUST008", "Hoa Vu", "vu.ann@example.com"},
+        };
+        for (String[] fields : customers) {
+            Customer customer = new Customer();
+            customer.setCustomerCode(fields[0]);
+            customer.setFullName(fields[1]);
+            customer.setEmail(fields[2]);
+            customerRepository.save(customer);
+        }
+        
+        // Exact code, then names starting with "ann", then a later name word, then anything else
+        assertEquals(List.of(4L, 3L, 7L, 5L, 6L, 8L), ids(customerRepository.searchRanked("Ann", 10)));
+        assertEquals(List.of(4L, 3L), ids(customerRepository.searchRanked(" ann ", 2)));
+        assertEquals(List.of(1L), ids(customerRepository.searchRanked("cust001", 5)));
+        assertEquals(List.of(1L, 2L), ids(customerRepository.searchRanked(" ", 2)));
+    }
+    
+    // Early termination must not change the result: it is the full search sorted by rank, then id
+    @Test
+    public void testSearchRankedAgreesWithSortedSearch() {
+        Random random = new Random(7);
+        String[] words = {"nguyen", "van", "an", "anh", "tran", "thi", "binh", "le", "hoang", "lan"};
+        for (int i = 0; i < 2000; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode(random.nextInt(20) == 0 ? words[random.nextInt(words.length)] + i : "C" + i);
+            customer.setFullName(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + words[random.nextInt(words.length)]);
+            customer.setEmail(words[random.nextInt(words.length)] + i + "@example.com");
+            customerRepository.save(customer);
+        }
+        
+        for (String keyword : List.of("an", "AN", "nguyen", "van a", "lan", "le", "c12", "C1999", "example")) {
+            RankedMatches ranking = new RankedMatches(keyword, 1);
+            List<Customer> sorted = new ArrayList<>(customerRepository.search(keyword));
+            sorted.sort(Comparator.<Customer>comparingInt(customer -> ranking.rank(
+                    customer.getCustomerCode(), customer.getFullName().toLowerCase()))
+                    .thenComparing(Customer::getId));
+            for (int limit : new int[] {1, 5, 50, 1000}) {
+                assertEquals(ids(sorted.subList(0, Math.min(limit, sorted.size()))),
+                        ids(customerRepository.searchRanked(keyword, limit)), keyword + " top " + limit);
+            }
+        }
+    }
+    
+    @Test
+    public void testFilterCombinesCriteria() {
+        Object[][] customers = {
+            {"CUST003", "Hà Nội", "Female", LocalDate.of(1990, 5, 1)},
+            {"CUST004", "ha noi", "female", LocalDate.of(1985, 1, 1)},
+            {"CUST005", "Hà Nội", "Male", LocalDate.of(1990, 7, 1)},
+            {"CUST006", "Đà Nẵng", "Female", LocalDate.of(1991, 1, 1)},
+            {"CUST007", "Hà Nội", "Female", null},
+        };
+        for (Object[] fields : customers) {
+            Customer customer = new Customer();
+            customer.setCustomerCode((String) fields[0]);
+            customer.setCity((String) fields[1]);
+            customer.setGender((String) fields[2]);
+            customer.setDateOfBirth((LocalDate) fields[3]);
+            customerRepository.save(customer);
+        }
+        
+        assertEquals(List.of(3L, 4L, 7L), ids(customerRepository.filter(
+                new CustomerFilter(" HA NOI ", "FEMALE", null, null), null, 10).getItems()));
+        assertEquals(List.of(3L, 5L), ids(customerRepository.filter(
+                new CustomerFilter("Hà Nội", null, LocalDate.of(1990, 1, 1), LocalDate.of(1990, 12, 31)), null, 10)
+                .getItems()));
+        assertEquals(List.of(2L, 3L, 6L), ids(customerRepository.filter(
+                new CustomerFilter(null, "female", LocalDate.of(1990, 5, 1), null), null, 10).getItems()));
+        assertEquals(List.of(), customerRepository.filter(new CustomerFilter("Hue", "Female", null, null), null, 10)
+                .getItems());
+        // No criteria pages through everyone
+        assertEquals(List.of(1L, 2L), ids(customerRepository.filter(new CustomerFilter(), null, 2).getItems()));
+        
+        CustomerPage page = customerRepository.filter(new CustomerFilter("ha noi", null, null, null), null, 2);
+        assertEquals(List.of(3L, 4L), ids(page.getItems()));
+        assertEquals(4L, page.getNextCursor());
+        page = customerRepository.filter(new CustomerFilter("ha noi", null, null, null), page.getNextCursor(), 2);
+        assertEquals(List.of(5L, 7L), ids(page.getItems()));
+        assertNull(page.getNextCursor());
+        
+        // Follows moves and deletes
+        Customer moved = customerRepository.findById(4L).orElseThrow();
+        moved.setCity("Đà Nẵng");
+        customerRepository.save(moved);
+        customerRepository.deleteById(7L);
+        assertEquals(List.of(3L), ids(customerRepository.filter(
+                new CustomerFilter("Hà Nội", "Female", null, null), null, 10).getItems()));
+        assertEquals(List.of(4L, 6L), ids(customerRepository.filter(
+                new CustomerFilter("da nang", "female", null, null), null, 10).getItems()));
+    }
+    
+    // Whichever index the planner starts from, and whether it walks the store instead, the pages
+    // must hold exactly the matches of a full scan
+    @Test
+    public void testFilterMatchesBruteForceScan() {
+        Random random = new Random(3);
+        String[] cities = {"Hà Nội", "Hồ Chí Minh", "Đà Nẵng", "Huế", null};
+        String[] genders = {"Male", "Female", "Other", null};
+        for (int i = 0; i < 3000; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("C" + i);
+            // Skewed, so that some criteria select far fewer customers than others
+            customer.setCity(cities[Math.min(random.nextInt(8), cities.length - 1)]);
+            customer.setGender(genders[random.nextInt(genders.length)]);
+            customer.setDateOfBirth(random.nextInt(10) == 0 ? null
+                    : LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 50)));
+            customerRepository.save(customer);
+        }
+        for (int i = 0; i < 500; i++) {
+            long id = 1 + random.nextInt(3000);
+            Optional<Customer> customer = customerRepository.findById(id);
+            if (customer.isEmpty()) {
+                continue;
+            }
+            if (random.nextBoolean()) {
+                customer.get().setCity(cities[random.nextInt(cities.length)]);
+                customerRepository.save(customer.get());
+            } else {
+                customerRepository.deleteById(id);
+            }
+        }
+        
+        List<Customer> all = customerRepository.findAll();
+        List<CustomerFilter> filters = List.of(
+                new CustomerFilter("hue", null, null, null),
+                new CustomerFilter("Hà Nội", "female", null, null),
+                new CustomerFilter(null, "Other", LocalDate.of(1980, 1, 1), LocalDate.of(1980, 3, 31)),
+                new CustomerFilter("ho chi minh", "male", LocalDate.of(1990, 1, 1), null),
+                new CustomerFilter(null, null, null, LocalDate.of(1955, 1, 1)),
+                new CustomerFilter("Đà Nẵng", "Female", LocalDate.of(1960, 1, 1), LocalDate.of(1999, 12, 31)),
+                new CustomerFilter("Ha Noi", null, LocalDate.of(2000, 1, 1), LocalDate.of(1990, 1, 1)));
+        for (CustomerFilter filter : filters) {
+            FilterCriteria criteria = FilterCriteria.of(filter);
+            List<Long> expected = all.stream()
+                    .filter(customer -> criteria.matches(new CustomerEntry(customer)))
+                    .map(Customer::getId)
+                    .collect(Collectors.toList());
+            for (int limit : new int[] {1, 7, 100, 1000}) {
+                List<Long> actual = new ArrayList<>();
+                Long cursor = null;
+                do {
+                    CustomerPage page = customerRepository.filter(filter, cursor, limit);
+                    assertTrue(page.getItems().size() <= limit);
+                    actual.addAll(ids(page.getItems()));
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+                assertEquals(expected, actual, filter.getCity() + "/" + filter.getGender() + "/"
+                        + filter.getBornFrom() + ".." + filter.getBornTo() + " by " + limit);
+            }
+        }
+    }
+    
+    @Test
+    public void testFindByDateOfBirthBetween() {
+        LocalDate[] datesOfBirth = {LocalDate.of(1985, 3, 1), LocalDate.of(1990, 1, 15), null,
+            LocalDate.of(1992, 5, 20), LocalDate.of(1970, 12, 31)};
+        for (int i = 0; i < datesOfBirth.length; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST00" + (i + 3));
+            customer.setDateOfBirth(datesOfBirth[i]);
+            customerRepository.save(customer);
+        }
+        
+        // Oldest first, customers born on the same day in id order, both ends inclusive
+        assertEquals(List.of(3L, 1L, 4L, 2L, 6L), ids(customerRepository.findByDateOfBirthBetween(
+                LocalDate.of(1985, 3, 1), LocalDate.of(1992, 5, 20), 10)));
+        assertEquals(List.of(7L, 3L), ids(customerRepository.findByDateOfBirthBetween(null, null, 2)));
+        assertEquals(List.of(2L, 6L), ids(customerRepository.findByDateOfBirthBetween(
+                LocalDate.of(1991, 1, 1), null, 10)));
+        assertEquals(List.of(), customerRepository.findByDateOfBirthBetween(
+                LocalDate.of(1991, 1, 1), LocalDate.of(1990, 1, 1), 10));
+        
+        Customer moved = customerRepository.findById(7L).orElseThrow();
+        moved.setDateOfBirth(LocalDate.of(1991, 6, 1));
+        customerRepository.save(moved);
+        customerRepository.deleteById(2L);
+        assertEquals(List.of(7L, 6L), ids(customerRepository.findByDateOfBirthBetween(
+                LocalDate.of(1991, 1, 1), null, 10)));
+    }
+    
+    @Test
+    public void testFindUpcomingBirthdays() {
+        LocalDate[] datesOfBirth = {LocalDate.of(1980, 12, 30), LocalDate.of(1999, 1, 2), LocalDate.of(2000, 2, 29),
+            LocalDate.of(1975, 2, 28), LocalDate.of(1960, 3, 1)};
+        for (int i = 0; i < datesOfBirth.length; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("CUST00" + (i + 3));
+            customer.setDateOfBirth(datesOfBirth[i]);
+            customerRepository.save(customer);
+        }
+        
+        // Across the turn of the year, soonest first
+        assertEquals(List.of(3L, 4L), ids(customerRepository.findUpcomingBirthdays(LocalDate.of(2024, 12, 29), 7, 10)));
+        assertEquals(List.of(3L, 4L, 1L, 5L), ids(customerRepository.findUpcomingBirthdays(
+                LocalDate.of(2024, 12, 29), 365, 4)));
+        // 29 February falls on the 28th in a common year, and on its own day in a leap year
+        assertEquals(List.of(5L, 6L), ids(customerRepository.findUpcomingBirthdays(LocalDate.of(2025, 2, 28), 1, 10)));
+        assertEquals(List.of(6L), ids(customerRepository.findUpcomingBirthdays(LocalDate.of(2024, 2, 28), 1, 10)));
+        assertEquals(List.of(6L, 5L, 7L), ids(customerRepository.findUpcomingBirthdays(
+                LocalDate.of(2024, 2, 28), 3, 10)));
+        
+        Customer moved = customerRepository.findById(7L).orElseThrow();
+        moved.setDateOfBirth(LocalDate.of(1960, 12, 31));
+        customerRepository.save(moved);
+        assertEquals(List.of(3L, 7L, 4L), ids(customerRepository.findUpcomingBirthdays(
+                LocalDate.of(2024, 12, 29), 7, 10)));
+    }
+    
+    // The index walks stop early; their results must still be the first limit of a sorted scan
+    @Test
+    public void testDateOfBirthQueriesMatchSortedScan() {
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            Customer customer = new Customer();
+            customer.setCustomerCode("C" + i);
+            customer.setDateOfBirth(random.nextInt(20) == 0 ? null
+                    : LocalDate.of(1940, 1, 1).plusDays(random.nextInt(365 * 60)));
+            customerRepository.save(customer);
+        }
+        for (int i = 0; i < 500; i++) {
+            Optional<Customer> customer = customerRepository.findById(1L + random.nextInt(3000));
+            if (customer.isPresent() && random.nextBoolean()) {
+                customer.get().setDateOfBirth(LocalDate.of(1940, 1, 1).plusDays(random.nextInt(365 * 60)));
+                customerRepository.save(customer.get());
+            } else if (customer.isPresent()) {
+                customerRepository.deleteById(customer.get().getId());
+            }
+        }
+        
+        List<Customer> born = customerRepository.findAll().stream()
+                .filter(customer -> customer.getDateOfBirth() != null)
+                .collect(Collectors.toList());
+        LocalDate from = LocalDate.of(1970, 1, 1);
+        LocalDate to = LocalDate.of(1975, 6, 30);
+        List<Long> inRange = born.stream()
+                .filter(customer -> !customer.getDateOfBirth().isBefore(from) && !customer.getDateOfBirth().isAfter(to))
+                .sorted(Comparator.comparing(Customer::getDateOfBirth).thenComparing(Customer::getId))
+                .map(Customer::getId)
+                .collect(Collectors.toList());
+        for (LocalDate day : List.of(LocalDate.of(2023, 12, 20), LocalDate.of(2024, 2, 27), LocalDate.of(2025, 7, 1))) {
+            for (int days : new int[] {1, 10, 366}) {
+                List<Long> upcoming = born.stream()
+                        .filter(customer -> Birthdays.daysUntil(customer.getDateOfBirth(), day) < days)
+                        .sorted(Comparator.<Customer>comparingInt(customer -> Birthdays.daysUntil(
+                                customer.getDateOfBirth(), day)).thenComparing(Customer::getId))
+                        .map(Customer::getId)
+                        .collect(Collectors.toList());
+                for (int limit : new int[] {1, 20, 1000}) {
+                    assertEquals(upcoming.subList(0, Math.min(limit, upcoming.size())),
+                            ids(customerRepository.findUpcomingBirthdays(day, days, limit)), day + "+" + days);
+                    assertEquals(inRange.subList(0, Math.min(limit, inRange.size())),
+                            ids(customerRepository.findByDateOfBirthBetween(from, to, limit)));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testCountCustomersFollowsWrites() {
+        assertEquals(List.of("Boston=1", "New York=1"), describe(customerRepository.countCustomers().getByCity()));
+        
+        Customer moved = customerRepository.findById(1L).orElseThrow();
+        moved.setCity("Boston");
+        customerRepository.save(moved);
+        Customer customer3 = new Customer();
+        customer3.setCustomerCode("CUST003");
+        customer3.setGender("Female");
+        Customer customer4 = new Customer();
+        customer4.setCustomerCode("CUST004");
+        customer4.setCity("Boston");
+        customerRepository.saveAll(List.of(customer3, customer4));
+        
+        CustomerCounts counts = customerRepository.countCustomers();
+        assertEquals(4, counts.getTotal());
+        assertEquals(List.of("Boston=3", "null=1"), describe(counts.getByCity()));
+        assertEquals(List.of("Female=2", "Male=1", "null=1"), describe(counts.getByGender()));
+        
+        customerRepository.deleteById(2L);
+        customerRepository.deleteById(3L);
+        counts = customerRepository.countCustomers();
+        assertEquals(2, counts.getTotal());
+        assertEquals(List.of("Boston=2"), describe(counts.getByCity()));
+        assertEquals(List.of("Male=1", "null=1"), describe(counts.getByGender()));
+    }
+    
+    @Test
+    public void testCountCustomersMatchesScanAfterRecovery(@TempDir Path directory) throws Exception {
+        Random random = new Random(9);
+        String[] cities = {"Hà Nội", "Ha Noi", "Đà Nẵng", null};
+        String[] genders = {"Male", "Female", null};
+        CustomerRepositoryImpl logged = new CustomerRepositoryImpl(new CustomerWriteAheadLog(directory, false,
+                1_000_000));
+        for (int i = 0; i < 2000; i++) {
+            long id = 1 + random.nextInt(500);
+            if (random.nextInt(5) == 0) {
+                logged.deleteById(id);
+                continue;
+            }
+            Customer customer = new Customer();
+            customer.setId(id);
+            customer.setCustomerCode("C" + i);
+            customer.setCity(cities[random.nextInt(cities.length)]);
+            customer.setGender(genders[random.nextInt(genders.length)]);
+            logged.save(customer);
+        }
+        
+        List<Customer> all = logged.findAll();
+        Map<String, Long> byCity = all.stream().collect(Collectors.groupingBy(
+                customer -> String.valueOf(customer.getCity()), Collectors.counting()));
+        CustomerCounts counts = logged.countCustomers();
+        assertEquals(all.size(), counts.getTotal());
+        assertEquals(byCity, counts.getByCity().stream().collect(Collectors.toMap(
+                group -> String.valueOf(group.getValue()), CustomerGroupCount::getCount)));
+        assertEquals(all.size(), counts.getByGender().stream().mapToLong(CustomerGroupCount::getCount).sum());
+        logged.close();
+        
+        // Replaying the log rebuilds the same counts
+        CustomerRepositoryImpl recovered = new CustomerRepositoryImpl(new CustomerWriteAheadLog(directory, false,
+                1_000_000));
+        assertEquals(describe(counts.getByCity()), describe(recovered.countCustomers().getByCity()));
+        assertEquals(describe(counts.getByGender()), describe(recovered.countCustomers().getByGender()));
+        recovered.close();
+    }
+    
+    private CustomerRepositoryImpl newCachingRepository(CustomerSearchCache searchCache) {
+        CustomerRepositoryImpl repository = new CustomerRepositoryImpl(null, null, searchCache);
+        for (Customer customer : List.of(customer1, customer2)) {
+            Customer copy = copyOf(customer);
+            copy.setId(null);
+            repository.save(copy);
+        }
+        return repository;
+    }
+    
+    private static Customer newCustomer(String customerCode) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(customerCode);
+        customer.setFullName("Customer " + customerCode);
+        return customer;
+    }
+    
+    private static Customer copyOf(Customer customer) {
+        Customer copy = new Customer();
+        copy.setId(customer.getId());
+        copy.setCustomerCode(customer.getCustomerCode());
+        copy.setFirstName(customer.getFirstName());
+        copy.setLastName(customer.getLastName());
+        copy.setFullName(customer.getFullName());
+        copy.setEmail(customer.getEmail());
+        copy.setPhoneNumber(customer.getPhoneNumber());
+        return copy;
+    }
+    
+    private static List<String> describe(List<CustomerGroupCount> groups) {
+        return groups.stream().map(group -> group.getValue() + "=" + group.getCount()).collect(Collectors.toList());
+    }
+    
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,176 @@
+package vn.com.msb.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import vn.com.msb.model.Customer;
+
+public class CustomerSearchCacheTest {
+
+    @Test
+    public void testCachesCompletedSearch() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+
+        cache(cache, "nguyen", 3);
+
+        CustomerSearchCache.Lookup lookup = cache.lookUp("nguyen", nameContains("nguyen"));
+        assertNotNull(lookup.customers());
+        assertEquals(3, lookup.customers().size());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(4, cache.weight());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyReadWhenOverBudget() throws InterruptedException {
+        CustomerSearchCache cache = new CustomerSearchCache(40);
+        cache(cache, "a", 9);
+        cache(cache, "b", 9);
+        cache(cache, "c", 9);
+        cache(cache, "d", 9);
+        Thread.sleep(1);
+        // Reading "a" makes "b" and then "c" the least recently read
+        cache.peek("a");
+
+        cache(cache, "e", 9);
+
+        assertNull(cache.peek("b"));
+        assertNull(cache.peek("c"));
+        assertNotNull(cache.peek("a"));
+        assertNotNull(cache.peek("d"));
+        assertNotNull(cache.peek("e"));
+        // Down to nine tenths of the budget
+        assertEquals(2, cache.evictions());
+        assertEquals(30, cache.weight());
+    }
+
+    @Test
+    public void testDoesNotCacheResultsOverAQuarterOfTheBudget() {
+        CustomerSearchCache cache = new CustomerSearchCache(40);
+
+        cache(cache, "a", 10);
+
+        assertNull(cache.peek("a"));
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testDisabledWithZeroBudget() {
+        CustomerSearchCache cache = new CustomerSearchCache(0);
+
+        cache(cache, "a", 1);
+
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testInvalidatesMatchingResultsOnly() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+        cache(cache, "nguyen", 1);
+        cache(cache, "tran", 1);
+
+        cache.invalidate(List.of(entry("Tran Van")));
+
+        assertNotNull(cache.peek("nguyen"));
+        assertNull(cache.peek("tran"));
+        assertEquals(1, cache.invalidations());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void testDoesNotCacheSearchAffectedWhileReading() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+        CustomerSearchCache.Lookup nguyen = cache.lookUp("nguyen", nameContains("nguyen"));
+        CustomerSearchCache.Lookup tran = cache.lookUp("tran", nameContains("tran"));
+
+        cache.invalidate(List.of(entry("Nguyen Van")));
+        cache.complete(nguyen, customers(1));
+        cache.complete(tran, customers(1));
+
+        assertNull(cache.peek("nguyen"));
+        assertNotNull(cache.peek("tran"));
+    }
+
+    @Test
+    public void testDoesNotCacheSearchAffectedWhileCompleting() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+        CustomerSearchCache.Lookup lookup = cache.lookUp("nguyen", nameContains("nguyen"));
+        // The writer runs while complete() copies the customers, before their result is cached
+        List<Customer> customers = new ArrayList<>(customers(1)) {
+            @Override
+            public Object[] toArray() {
+                cache.invalidate(List.of(entry("Nguyen Van")));
+                return super.toArray();
+            }
+        };
+
+        cache.complete(lookup, customers);
+
+        assertNull(cache.peek("nguyen"));
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testLargeBatchClearsCache() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+        cache(cache, "nguyen", 1);
+        List<CustomerEntry> changed = new ArrayList<>();
+        for (int i = 0; i <= CustomerSearchCache.MAX_PRECISE_INVALIDATION; i++) {
+            changed.add(entry("Tran " + i));
+        }
+
+        cache.invalidate(changed);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testBindsCacheMetrics() {
+        CustomerSearchCache cache = new CustomerSearchCache(100);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache(cache, "nguyen", 2);
+        cache.peek("nguyen");
+
+        assertEquals(1, registry.get("cache.gets").tag("cache", CustomerSearchCache.CACHE_NAME)
+                .tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("cache.size").gauge().value());
+        assertEquals(3, registry.get("cache.weight").gauge().value());
+    }
+
+    private static void cache(CustomerSearchCache cache, String keyword, int customers) {
+        CustomerSearchCache.Lookup lookup = cache.lookUp(keyword, nameContains(keyword));
+        cache.complete(lookup, customers(customers));
+    }
+
+    private static Predicate<CustomerEntry> nameContains(String keyword) {
+        return entry -> entry.fullNameKey() != null && entry.fullNameKey().contains(keyword);
+    }
+
+    private static List<Customer> customers(int count) {
+        List<Customer> customers = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            Customer customer = new Customer();
+            customer.setId(id);
+            customers.add(customer);
+        }
+        return customers;
+    }
+
+    private static CustomerEntry entry(String fullName) {
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setFullName(fullName);
+        return new CustomerEntry(customer);
+    }
+}
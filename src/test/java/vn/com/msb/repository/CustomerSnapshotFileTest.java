@@ -0,0 +1,153 @@
+package vn.com.msb.repository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vn.com.msb.model.Customer;
+
+public class CustomerSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    private CustomerSnapshotFile snapshotFile;
+
+    @BeforeEach
+    public void setUp() {
+        snapshotFile = new CustomerSnapshotFile(directory.resolve("customers.snapshot"));
+    }
+
+    @Test
+    public void testMapReturnsNullWithoutSnapshot() throws Exception {
+        assertNull(snapshotFile.map());
+    }
+
+    @Test
+    public void testMappedSnapshotLooksUpCustomersById() throws Exception {
+        Customer john = newCustomer(1L, "CUST001", "John Doe");
+        john.setDateOfBirth(LocalDate.of(1990, 1, 15));
+        snapshotFile.write(10L, List.of(john, newCustomer(4L, "CUST004", "Jane Smith")).iterator());
+
+        CustomerSnapshotFile.Mapped mapped = snapshotFile.map();
+
+        assertEquals(2, mapped.size());
+        assertEquals(10L, mapped.nextId());
+        assertEquals("John Doe", mapped.findById(1L).getFullName());
+        assertEquals(LocalDate.of(1990, 1, 15), mapped.findById(1L).getDateOfBirth());
+        assertEquals("CUST004", mapped.findById(4L).getCustomerCode());
+        assertNull(mapped.findById(2L));
+        assertNull(mapped.findById(5L));
+    }
+
+    @Test
+    public void testWriteRejectsUnorderedCustomers() {
+        List<Customer> customers = List.of(newCustomer(2L, "CUST002", "B"), newCustomer(1L, "CUST001", "A"));
+
+        assertThrows(IllegalArgumentException.class, () -> snapshotFile.write(3L, customers.iterator()));
+        assertFalse(Files.exists(snapshotFile.path()));
+    }
+
+    @Test
+    public void testCorruptHeaderIsRejected() throws Exception {
+        snapshotFile.write(2L, List.of(newCustomer(1L, "CUST001", "John Doe")).iterator());
+        byte[] bytes = Files.readAllBytes(snapshotFile.path());
+        bytes[17] ^= 1;
+        Files.write(snapshotFile.path(), bytes);
+
+        assertThrows(IllegalStateException.class, () -> snapshotFile.map());
+    }
+
+    @Test
+    public void testCorruptRecordIsDetectedWhenDecoded() throws Exception {
+        snapshotFile.write(3L, List.of(newCustomer(1L, "CUST001", "John Doe"),
+                newCustomer(2L, "CUST002", "Jane Smith")).iterator());
+        byte[] bytes = Files.readAllBytes(snapshotFile.path());
+        // The first record's full name starts well inside its payload
+        bytes[60] ^= 1;
+        Files.write(snapshotFile.path(), bytes);
+
+        CustomerSnapshotFile.Mapped mapped = snapshotFile.map();
+
+        assertThrows(IllegalStateException.class, () -> mapped.findById(1L));
+        assertEquals("Jane Smith", mapped.findById(2L).getFullName());
+    }
+
+    @Test
+    public void testRepositoryWarmStartsFromSnapshotWrittenOnClose() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(null, snapshotFile);
+        Customer john = customerRepository.save(newCustomer(null, "CUST001", "John Doe"));
+        Customer jane = customerRepository.save(newCustomer(null, "CUST002", "Jane Smith"));
+        customerRepository.save(newCustomer(null, "CUST003", "Bob Johnson"));
+        customerRepository.deleteById(jane.getId());
+        customerRepository.close();
+
+        CustomerRepositoryImpl restarted = new CustomerRepositoryImpl(null, snapshotFile);
+
+        assertEquals("John Doe", restarted.findById(john.getId()).get().getFullName());
+        assertFalse(restarted.findById(jane.getId()).isPresent());
+        assertEquals(List.of("CUST001", "CUST003"), codes(restarted.findAll()));
+        assertEquals(List.of("CUST003"), codes(restarted.search("bob")));
+        assertTrue(restarted.existsByCustomerCode("CUST001"));
+        Customer created = restarted.save(newCustomer(null, "CUST004", "Alice Brown"));
+        assertTrue(created.getId() > jane.getId());
+        restarted.close();
+    }
+
+    @Test
+    public void testRepositoryKeepsServingWhenSnapshotBodyIsCorrupt() throws Exception {
+        snapshotFile.write(3L, List.of(newCustomer(1L, "CUST001", "John Doe"),
+                newCustomer(2L, "CUST002", "Jane Smith")).iterator());
+        byte[] bytes = Files.readAllBytes(snapshotFile.path());
+        bytes[60] ^= 1;
+        Files.write(snapshotFile.path(), bytes);
+
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(null, snapshotFile);
+
+        // Waits for the load to fail, then answers with what was loaded instead of rethrowing
+        assertTrue(customerRepository.findAll().isEmpty());
+        assertTrue(customerRepository.search("jane").isEmpty());
+        assertTrue(customerRepository.snapshotLoadFailure().get() instanceof IllegalStateException);
+        assertEquals(3L, customerRepository.save(newCustomer(null, "CUST003", "Bob Johnson")).getId());
+        customerRepository.close();
+        // The snapshot is kept for inspection rather than replaced by the partial store
+        assertArrayEquals(bytes, Files.readAllBytes(snapshotFile.path()));
+    }
+
+    @Test
+    public void testWriteAheadLogTakesPrecedenceOverSnapshot() throws Exception {
+        snapshotFile.write(2L, List.of(newCustomer(1L, "CUST001", "John Doe")).iterator());
+
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(
+                new CustomerWriteAheadLog(directory.resolve("wal"), false, 1000), snapshotFile);
+
+        assertTrue(customerRepository.findAll().isEmpty());
+        customerRepository.close();
+    }
+
+    private static Customer newCustomer(Long id, String code, String fullName) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setCustomerCode(code);
+        customer.setFullName(fullName);
+        customer.setEmail(code.toLowerCase() + "@example.com");
+        customer.setPhoneNumber("0912" + Math.abs(code.hashCode() % 1000000));
+        return customer;
+    }
+
+    private static List<String> codes(List<Customer> customers) {
+        return customers.stream().map(Customer::getCustomerCode).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,230 @@
+package vn.com.msb.repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vn.com.msb.model.Customer;
+
+public class CustomerWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoverRestoresCustomersAndNextId() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        Customer john = customerRepository.save(newCustomer("CUST001", "John Doe"));
+        Customer jane = customerRepository.save(newCustomer("CUST002", "Jane Smith"));
+        customerRepository.save(newCustomer("CUST003", "Bob Johnson"));
+        john.setFullName("Jonathan Doe");
+        customerRepository.save(john);
+        customerRepository.deleteById(jane.getId());
+        close(customerRepository);
+
+        CustomerRepositoryImpl recovered = open(1000);
+
+        assertEquals(List.of("CUST001", "CUST003"), codes(recovered.findAll()));
+        assertEquals("Jonathan Doe", recovered.findById(john.getId()).get().getFullName());
+        assertFalse(recovered.existsByCustomerCode("CUST002"));
+        assertEquals(1, recovered.search("jonathan").size());
+        assertEquals(2L, recovered.findById(john.getId()).get().getVersion());
+        // Ids keep increasing after a restart, even past deleted customers
+        assertEquals(4L, recovered.save(newCustomer("CUST004", "New Customer")).getId());
+        close(recovered);
+    }
+
+    @Test
+    public void testCheckpointWritesSnapshotAndTruncatesLog() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        for (int i = 1; i <= 50; i++) {
+            customerRepository.save(newCustomer("CUST" + i, "Customer " + i));
+        }
+        customerRepository.save(customerRepository.findById(2L).get());
+        customerRepository.checkpoint();
+        customerRepository.deleteById(1L);
+        customerRepository.save(newCustomer("CUST51", "Customer 51"));
+        close(customerRepository);
+
+        assertEquals(1, countFiles(".snap"));
+        // Segments older than the snapshot are gone; only the one written after it remains
+        assertEquals(1, countFiles(".wal"));
+
+        CustomerRepositoryImpl recovered = open(1000);
+        assertEquals(50, recovered.findAll().size());
+        assertFalse(recovered.findById(1L).isPresent());
+        assertTrue(recovered.existsByCustomerCode("CUST51"));
+        // Versions come back from the snapshot as well as from the log
+        assertEquals(2L, recovered.findById(2L).get().getVersion());
+        assertEquals(1L, recovered.findByCustomerCode("CUST51").get().getVersion());
+        assertEquals(52L, recovered.save(newCustomer("CUST52", "Customer 52")).getId());
+        close(recovered);
+    }
+
+    @Test
+    public void testCheckpointRunsAutomaticallyEveryInterval() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(10);
+        for (int i = 1; i <= 25; i++) {
+            customerRepository.save(newCustomer("CUST" + i, "Customer " + i));
+        }
+        close(customerRepository);
+
+        assertTrue(countFiles(".snap") >= 1);
+        CustomerRepositoryImpl recovered = open(10);
+        assertEquals(25, recovered.findAll().size());
+        close(recovered);
+    }
+
+    @Test
+    public void testRecoverIgnoresTornRecordAtEndOfLog() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        customerRepository.save(newCustomer("CUST001", "John Doe"));
+        customerRepository.save(newCustomer("CUST002", "Jane Smith"));
+        close(customerRepository);
+
+        // Simulate a crash in the middle of appending a record
+        Path lastSegment = lastSegment();
+        Files.write(lastSegment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        CustomerRepositoryImpl recovered = open(1000);
+        assertEquals(List.of("CUST001", "CUST002"), codes(recovered.findAll()));
+        recovered.save(newCustomer("CUST003", "Bob Johnson"));
+        close(recovered);
+
+        CustomerRepositoryImpl recoveredAgain = open(1000);
+        assertEquals(List.of("CUST001", "CUST002", "CUST003"), codes(recoveredAgain.findAll()));
+        close(recoveredAgain);
+    }
+
+    @Test
+    public void testRecoverSurvivesSegmentWithTornHeader() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        customerRepository.save(newCustomer("CUST001", "John Doe"));
+        close(customerRepository);
+
+        // Simulate a crash right after the next segment was created, before its header was written
+        Files.write(nextSegment(), new byte[] {1, 2, 3});
+
+        CustomerRepositoryImpl recovered = open(1000);
+        assertEquals(List.of("CUST001"), codes(recovered.findAll()));
+        recovered.save(newCustomer("CUST002", "Jane Smith"));
+        close(recovered);
+
+        // The second restart must not trip over the emptied segment from the first one
+        CustomerRepositoryImpl recoveredAgain = open(1000);
+        assertEquals(List.of("CUST001", "CUST002"), codes(recoveredAgain.findAll()));
+        close(recoveredAgain);
+    }
+
+    @Test
+    public void testFailedRotationKeepsLoggingToTheCurrentSegment() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        customerRepository.save(newCustomer("CUST001", "John Doe"));
+
+        // A directory in its place keeps the next segment from being created
+        Path blocker = Files.createDirectory(nextSegment());
+        assertThrows(IOException.class, customerRepository::checkpoint);
+        customerRepository.save(newCustomer("CUST002", "Jane Smith"));
+        close(customerRepository);
+        Files.delete(blocker);
+
+        CustomerRepositoryImpl recovered = open(1000);
+        assertEquals(List.of("CUST001", "CUST002"), codes(recovered.findAll()));
+        close(recovered);
+    }
+
+    @Test
+    public void testRecoverReplaysBatchesWholeOrNotAtAll() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(1000);
+        customerRepository.save(newCustomer("CUST001", "John Doe"));
+        customerRepository.saveAll(List.of(newCustomer("CUST002", "Jane Smith"), newCustomer("CUST003", "Bob Johnson")));
+        customerRepository.saveAll(List.of(newCustomer("CUST004", "Ann Lee"), newCustomer("CUST005", "Tom Tran")));
+        close(customerRepository);
+
+        // Cut the last batch short, as a crash in the middle of writing it would
+        try (FileChannel channel = FileChannel.open(lastSegment(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        CustomerRepositoryImpl recovered = open(1000);
+        assertEquals(List.of("CUST001", "CUST002", "CUST003"), codes(recovered.findAll()));
+        assertEquals(4L, recovered.save(newCustomer("CUST004", "Ann Lee")).getId());
+        close(recovered);
+    }
+
+    @Test
+    public void testBatchesCountTowardsTheCheckpointInterval() throws Exception {
+        CustomerRepositoryImpl customerRepository = open(10);
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            batch.add(newCustomer("CUST" + i, "Customer " + i));
+        }
+        customerRepository.saveAll(batch);
+        close(customerRepository);
+
+        assertEquals(1, countFiles(".snap"));
+        CustomerRepositoryImpl recovered = open(10);
+        assertEquals(25, recovered.findAll().size());
+        close(recovered);
+    }
+
+    private CustomerRepositoryImpl open(long checkpointInterval) throws IOException {
+        return new CustomerRepositoryImpl(new CustomerWriteAheadLog(directory, true, checkpointInterval));
+    }
+
+    private static void close(CustomerRepositoryImpl customerRepository) throws Exception {
+        customerRepository.close();
+    }
+
+    private static Customer newCustomer(String code, String fullName) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(code);
+        customer.setFullName(fullName);
+        customer.setEmail(code.toLowerCase() + "@example.com");
+        customer.setPhoneNumber("0912" + Math.abs(code.hashCode() % 1000000));
+        return customer;
+    }
+
+    private static List<String> codes(List<Customer> customers) {
+        return customers.stream().map(Customer::getCustomerCode).collect(Collectors.toList());
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).count();
+        }
+    }
+
+    private List<String> segmentNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".wal"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        List<String> names = segmentNames();
+        return directory.resolve(names.get(names.size() - 1));
+    }
+
+    private Path nextSegment() throws IOException {
+        String name = lastSegment().getFileName().toString();
+        long next = Long.parseLong(name.replaceAll("\\D", "")) + 1;
+        return directory.resolve(name.replaceAll("\\d+", String.format("%019d", next)));
+    }
+}
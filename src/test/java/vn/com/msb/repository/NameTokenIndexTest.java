@@ -0,0 +1,72 @@
+package vn.com.msb.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import vn.com.msb.model.Customer;
+
+public class NameTokenIndexTest {
+
+    @Test
+    public void testTokens() {
+        assertEquals(List.of("nguyen", "van", "an"), NameTokenIndex.tokens("nguyen  van-an"));
+        assertEquals(List.of("an"), NameTokenIndex.tokens("an an."));
+        assertEquals(List.of(), NameTokenIndex.tokens(null));
+    }
+
+    @Test
+    public void testAllowedEditsGrowWithWordLength() {
+        assertEquals(0, NameTokenIndex.allowedEdits("an", 2));
+        assertEquals(1, NameTokenIndex.allowedEdits("hoang", 2));
+        assertEquals(2, NameTokenIndex.allowedEdits("nguyen", 2));
+        assertEquals(1, NameTokenIndex.allowedEdits("nguyen", 1));
+    }
+
+    @Test
+    public void testFindsNamesWithEveryQueryWordClose() {
+        NameTokenIndex index = new NameTokenIndex();
+        index.add(entry(1L, "nguyen van an"));
+        index.add(entry(2L, "nguyen thi hoa"));
+        index.add(entry(3L, "tran van an"));
+
+        assertEquals(Map.of(1L, 1, 2L, 1), index.find(List.of("nguyn"), 2));
+        assertEquals(Map.of(1L, 2), index.find(List.of("ngyuen", "an"), 2));
+        assertEquals(Map.of(), index.find(List.of("ngyuen", "an"), 1));
+        // Words of up to two letters must match exactly
+        assertEquals(Map.of(), index.find(List.of("nguyen", "en"), 2));
+        // The closest word of a name counts: "van" is one edit from "an" too
+        assertEquals(Map.of(1L, 0, 3L, 0), index.find(List.of("van"), 2));
+    }
+
+    @Test
+    public void testFollowsReplacesAndRemoves() {
+        NameTokenIndex index = new NameTokenIndex();
+        CustomerEntry before = entry(1L, "nguyen van an");
+        CustomerEntry after = entry(1L, "le van an");
+        index.add(before);
+
+        index.replace(before, after);
+
+        assertEquals(Map.of(), index.find(List.of("nguyen"), 2));
+        assertEquals(Map.of(1L, 0), index.find(List.of("le"), 2));
+        index.remove(after);
+        assertEquals(Map.of(), index.find(List.of("van"), 2));
+    }
+
+    @Test
+    public void testEdits() {
+        assertEquals(2, NameTokenIndex.edits(List.of("ngyuen", "an"), "nguyen van an", 2));
+        assertEquals(-1, NameTokenIndex.edits(List.of("ngyuen", "an"), "nguyen van an", 1));
+        assertEquals(-1, NameTokenIndex.edits(List.of("nguyen"), null, 2));
+    }
+
+    private static CustomerEntry entry(long id, String fullName) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setFullName(fullName);
+        return new CustomerEntry(customer);
+    }
+}
@@ -0,0 +1,311 @@
+package vn.com.msb.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import vn.com.msb.exception.DuplicateCustomerCodeException;
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
+
+public class PartitionedCustomerRepositoryTest {
+
+    private PartitionedCustomerRepository customerRepository;
+
+    @BeforeEach
+    void setUp() {
+        customerRepository = new PartitionedCustomerRepository(4);
+    }
+
+    @Test
+    public void testPartitionCount() {
+        assertEquals(4, customerRepository.partitionCount());
+        assertEquals(Runtime.getRuntime().availableProcessors(), new PartitionedCustomerRepository(0).partitionCount());
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedCustomerRepository(-1));
+    }
+
+    @Test
+    public void testIdsAreUniqueAcrossPartitionsAndListedInOrder() {
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Customer customer = newCustomer("CUST" + i, "Customer " + i, null);
+            if (i % 2 == 0) {
+                customerRepository.save(customer);
+            } else {
+                batch.add(customer);
+            }
+        }
+        customerRepository.saveAll(batch);
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            expected.add(id);
+            assertEquals(id, customerRepository.findById(id).get().getId());
+        }
+        assertEquals(expected, ids(customerRepository.findAll()));
+        try (Stream<Customer> customers = customerRepository.streamAll()) {
+            assertEquals(expected, customers.map(Customer::getId).collect(Collectors.toList()));
+        }
+        CustomerPage page = customerRepository.findAll(95L, 3);
+        assertEquals(List.of(96L, 97L, 98L), ids(page.getItems()));
+        assertEquals(98L, page.getNextCursor());
+        assertEquals(List.of(99L, 100L), ids(customerRepository.findAll(98L, 3).getItems()));
+    }
+
+    @Test
+    public void testCustomerCodesAreCheckedAcrossPartitions() {
+        customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        Customer jane = customerRepository.save(newCustomer("CUST002", "Jane Smith", "Boston"));
+
+        assertEquals(jane.getId(), customerRepository.findByCustomerCode("CUST002").get().getId());
+        assertTrue(customerRepository.existsByCustomerCode("CUST001"));
+        assertTrue(customerRepository.existsByCustomerCodeAndIdNot("CUST002", 1L));
+        assertFalse(customerRepository.existsByCustomerCodeAndIdNot("CUST002", jane.getId()));
+        assertEquals(Set.of("CUST001", "CUST002"),
+                customerRepository.findExistingCustomerCodes(List.of("CUST001", "CUST002", "CUST003")));
+    }
+
+    @Test
+    public void testCustomerCodeIsClaimedOnceAcrossPartitions() {
+        Customer john = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        // Consecutive ids land in different partitions
+        assertThrows(DuplicateCustomerCodeException.class,
+                () -> customerRepository.save(newCustomer("CUST001", "Johnny Doe", "Boston")));
+        List<Customer> batch = List.of(newCustomer("CUST002", "Jane Smith", "Boston"),
+                newCustomer("CUST001", "Jon Doe", "Boston"));
+        assertThrows(DuplicateCustomerCodeException.class, () -> customerRepository.saveAll(batch));
+        assertFalse(customerRepository.existsByCustomerCode("CUST002"));
+        assertEquals(List.of(john.getId()), ids(customerRepository.findAll()));
+
+        // A code is given back when its customer changes code or is deleted
+        Customer renamed = newCustomer("CUST003", "John Doe", "Boston");
+        renamed.setId(john.getId());
+        customerRepository.save(renamed);
+        Customer other = customerRepository.save(newCustomer("CUST001", "Jon Doe", "Boston"));
+        customerRepository.deleteById(john.getId());
+        Customer third = customerRepository.save(newCustomer("CUST003", "Jane Smith", "Boston"));
+        assertEquals(other.getId(), customerRepository.findByCustomerCode("CUST001").get().getId());
+        assertEquals(third.getId(), customerRepository.findByCustomerCode("CUST003").get().getId());
+    }
+
+    @Test
+    public void testSaveAllIfCodesFreeLeavesOutTakenCodes() {
+        customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        List<Customer> batch = List.of(newCustomer("CUST002", "Jane Smith", null),
+                newCustomer("CUST001", "Jon Doe", null), newCustomer("CUST003", "Bob Johnson", null));
+
+        assertEquals(Set.of("CUST001"), customerRepository.saveAllIfCodesFree(batch, true));
+        assertFalse(customerRepository.existsByCustomerCode("CUST002"));
+        assertEquals(Set.of("CUST001"), customerRepository.saveAllIfCodesFree(batch, false));
+        assertNull(batch.get(1).getId());
+        assertEquals(Set.of("CUST001", "CUST002", "CUST003"),
+                customerRepository.findExistingCustomerCodes(List.of("CUST001", "CUST002", "CUST003")));
+        assertEquals(3, customerRepository.findAll().size());
+    }
+
+    @Test
+    public void testConcurrentCreatesOfOneCodeSaveOneCustomer() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 50; round++) {
+                String code = "CUST" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> saves = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    boolean batch = t % 2 == 0;
+                    saves.add(executor.submit(() -> {
+                        start.await();
+                        Customer customer = newCustomer(code, "Customer", null);
+                        try {
+                            if (batch) {
+                                customerRepository.saveAll(List.of(customer));
+                            } else {
+                                customerRepository.save(customer);
+                            }
+                            return true;
+                        } catch (DuplicateCustomerCodeException e) {
+                            return false;
+                        }
+                    }));
+                }
+                start.countDown();
+                int saved = 0;
+                for (Future<Boolean> future : saves) {
+                    saved += future.get(60, TimeUnit.SECONDS) ? 1 : 0;
+                }
+                assertEquals(1, saved);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(50, customerRepository.findAll().size());
+    }
+
+    @Test
+    public void testWritesGoToTheCustomersPartition() {
+        Customer john = customerRepository.save(newCustomer("CUST001", "John Doe", "Boston"));
+        long generation = customerRepository.generation();
+
+        Customer update = newCustomer("CUST001", "Jonathan Doe", "Boston");
+        update.setId(john.getId());
+        assertTrue(customerRepository.saveIfVersion(copy(update), 2L).isEmpty());
+        assertEquals(2L, customerRepository.saveIfVersion(update, 1L).get().getVersion());
+        assertEquals(generation + 1, customerRepository.generation());
+        assertEquals(List.of(john.getId()), ids(customerRepository.search("jonathan")));
+
+        customerRepository.deleteById(john.getId());
+        customerRepository.deleteById(null);
+        assertEquals(generation + 2, customerRepository.generation());
+        assertFalse(customerRepository.findById(john.getId()).isPresent());
+        assertThrows(IllegalArgumentException.class, () -> customerRepository.saveIfVersion(new Customer(), 1L));
+    }
+
+    @Test
+    public void testBehavesLikeHeapRepository() {
+        // Same random history applied to both stores; every query must agree
+        Random random = new Random(25);
+        String[] names = {"Nguyễn Văn An", "Trần Thị Bình", "John Doe", "Jane Smith", "Lê Hoàng"};
+        String[] cities = {"Hà Nội", "Đà Nẵng", "Boston", null};
+        CustomerRepositoryImpl heapRepository = new CustomerRepositoryImpl();
+        for (int i = 0; i < 3000; i++) {
+            long id = 1 + random.nextInt(800);
+            int operation = random.nextInt(10);
+            if (operation < 2) {
+                heapRepository.deleteById(id);
+                customerRepository.deleteById(id);
+            } else {
+                Customer customer = newCustomer("CUST" + random.nextInt(1000),
+                        names[random.nextInt(names.length)] + " " + i, cities[random.nextInt(cities.length)]);
+                customer.setPhoneNumber((random.nextBoolean() ? "+84 9" : "09") + (10_000_000 + random.nextInt(90_000_000)));
+                customer.setGender(new String[] {"Male", "Female", "female", null}[i % 4]);
+                customer.setDateOfBirth(i % 7 == 0 ? null : LocalDate.of(1960 + i % 40, 1 + i % 12, 1 + i % 28));
+                customer.setId(operation < 6 ? id : 900L + i);
+                if (!heapRepository.existsByCustomerCodeAndIdNot(customer.getCustomerCode(), customer.getId())) {
+                    heapRepository.save(copy(customer));
+                    customerRepository.save(copy(customer));
+                }
+            }
+        }
+
+        assertEquals(ids(heapRepository.findAll()), ids(customerRepository.findAll()));
+        for (String keyword : List.of("an", "Nguyễn", "nguyen", "TRAN THI", "đa nang", "smith", "@example", "cust1",
+                "CUST12", "0912", "+84 91", "9", "")) {
+            assertEquals(ids(heapRepository.search(keyword)), ids(customerRepository.search(keyword)), keyword);
+            for (Long cursor : new Long[] {null, 100L, 3000L}) {
+                CustomerPage heapPage = heapRepository.search(keyword, cursor, 25);
+                CustomerPage partitionedPage = customerRepository.search(keyword, cursor, 25);
+                assertEquals(ids(heapPage.getItems()), ids(partitionedPage.getItems()), keyword);
+                assertEquals(heapPage.getNextCursor(), partitionedPage.getNextCursor(), keyword);
+            }
+            for (int limit : new int[] {1, 10, 1000}) {
+                assertEquals(ids(heapRepository.searchRanked(keyword, limit)),
+                        ids(customerRepository.searchRanked(keyword, limit)), keyword + " top " + limit);
+            }
+        }
+        for (String keyword : List.of("nguyn", "tran thj", "Binh", "hoang 12", "smit")) {
+            for (int limit : new int[] {3, 50}) {
+                assertEquals(ids(heapRepository.searchFuzzy(keyword, 2, limit)),
+                        ids(customerRepository.searchFuzzy(keyword, 2, limit)), keyword);
+            }
+        }
+        for (CustomerFilter filter : List.of(new CustomerFilter("ha noi", null, null, null),
+                new CustomerFilter("Đà Nẵng", "FEMALE", null, null),
+                new CustomerFilter(null, "male", LocalDate.of(1970, 1, 1), LocalDate.of(1979, 12, 31)))) {
+            for (Long cursor : new Long[] {null, 300L}) {
+                CustomerPage heapPage = heapRepository.filter(filter, cursor, 40);
+                CustomerPage partitionedPage = customerRepository.filter(filter, cursor, 40);
+                assertEquals(ids(heapPage.getItems()), ids(partitionedPage.getItems()));
+                assertEquals(heapPage.getNextCursor(), partitionedPage.getNextCursor());
+            }
+        }
+        for (int limit : new int[] {1, 50, 1000}) {
+            for (LocalDate[] range : new LocalDate[][] {{LocalDate.of(1970, 1, 1), LocalDate.of(1985, 2, 28)},
+                    {LocalDate.of(1962, 3, 1), LocalDate.of(1975, 6, 30)}, {null, LocalDate.of(1969, 12, 31)}}) {
+                assertEquals(ids(heapRepository.findByDateOfBirthBetween(range[0], range[1], limit)),
+                        ids(customerRepository.findByDateOfBirthBetween(range[0], range[1], limit)),
+                        range[0] + ".." + range[1] + " top " + limit);
+            }
+            assertEquals(ids(heapRepository.findUpcomingBirthdays(LocalDate.of(2025, 12, 20), 30, limit)),
+                    ids(customerRepository.findUpcomingBirthdays(LocalDate.of(2025, 12, 20), 30, limit)));
+        }
+        CustomerCounts heapCounts = heapRepository.countCustomers();
+        CustomerCounts partitionedCounts = customerRepository.countCustomers();
+        assertEquals(heapCounts.getTotal(), partitionedCounts.getTotal());
+        assertEquals(describeGroups(heapCounts.getByCity()), describeGroups(partitionedCounts.getByCity()));
+        assertEquals(describeGroups(heapCounts.getByGender()), describeGroups(partitionedCounts.getByGender()));
+        assertEquals(ids(heapRepository.findByFullNameContaining("tran thi")),
+                ids(customerRepository.findByFullNameContaining("tran thi")));
+        assertEquals(ids(heapRepository.findByEmailContaining("cust12")),
+                ids(customerRepository.findByEmailContaining("cust12")));
+        assertEquals(ids(heapRepository.findByPhoneNumberContaining("+84 91")),
+                ids(customerRepository.findByPhoneNumberContaining("+84 91")));
+        assertEquals(ids(heapRepository.findByPhoneNumberEndingWith("12")),
+                ids(customerRepository.findByPhoneNumberEndingWith("12")));
+        for (int code = 0; code < 1000; code++) {
+            assertEquals(heapRepository.findByCustomerCode("CUST" + code).map(Customer::getId),
+                    customerRepository.findByCustomerCode("CUST" + code).map(Customer::getId));
+        }
+    }
+
+    @Test
+    public void testDateOfBirthRangeIncludesBirthsBefore1970() {
+        Customer[] customers = new Customer[6];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = newCustomer("CUST" + i, "Customer " + i, null);
+            customers[i].setDateOfBirth(LocalDate.of(1966 + i, 6, 15));
+            customerRepository.save(customers[i]);
+        }
+
+        assertEquals(ids(List.of(customers)),
+                ids(customerRepository.findByDateOfBirthBetween(LocalDate.of(1950, 1, 1), LocalDate.of(1990, 1, 1), 10)));
+        assertEquals(ids(List.of(customers[0], customers[1])),
+                ids(customerRepository.findByDateOfBirthBetween(null, LocalDate.of(1968, 1, 1), 2)));
+        assertEquals(ids(List.of(customers[3], customers[4])),
+                ids(customerRepository.findByDateOfBirthBetween(LocalDate.of(1969, 1, 1), null, 2)));
+    }
+
+    private static Customer newCustomer(String code, String fullName, String city) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(code);
+        customer.setFullName(fullName);
+        customer.setCity(city);
+        customer.setEmail(code.toLowerCase() + "@example.com");
+        customer.setPhoneNumber("0912" + Math.abs(code.hashCode() % 1000000));
+        return customer;
+    }
+
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getId(), customer.getCustomerCode(), customer.getFirstName(),
+                customer.getLastName(), customer.getFullName(), customer.getDateOfBirth(), customer.getGender(),
+                customer.getAddress(), customer.getCity(), customer.getEmail(), customer.getPhoneNumber());
+    }
+
+    private static List<String> describeGroups(List<CustomerGroupCount> groups) {
+        return groups.stream().map(group -> group.getValue() + "=" + group.getCount()).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,56 @@
+package vn.com.msb.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PhoneNumbersTest {
+
+    @Test
+    public void testCanonicalizeStripsSeparators() {
+        assertEquals("5551234567", PhoneNumbers.canonicalize("555-123-4567"));
+        assertEquals("5551234567", PhoneNumbers.canonicalize("(555) 123.4567"));
+        assertEquals("5551234567", PhoneNumbers.canonicalize("5551234567"));
+    }
+
+    @Test
+    public void testCanonicalizeFoldsVietnamesePrefix() {
+        assertEquals("0912345678", PhoneNumbers.canonicalize("+84 912 345 678"));
+        assertEquals("0912345678", PhoneNumbers.canonicalize("0084 912 345 678"));
+        assertEquals("0912345678", PhoneNumbers.canonicalize("84912345678"));
+        assertEquals("0912345678", PhoneNumbers.canonicalize("0912-345-678"));
+    }
+
+    @Test
+    public void testCanonicalizeKeepsOtherCountryCodes() {
+        assertEquals("15551234567", PhoneNumbers.canonicalize("+1 555 123 4567"));
+        assertEquals("8412", PhoneNumbers.canonicalize("8412"));
+    }
+
+    @Test
+    public void testCanonicalizeNullAndEmpty() {
+        assertNull(PhoneNumbers.canonicalize(null));
+        assertEquals("", PhoneNumbers.canonicalize("ext."));
+    }
+
+    @Test
+    public void testHasInternationalPrefix() {
+        assertTrue(PhoneNumbers.hasInternationalPrefix("+84 91"));
+        assertTrue(PhoneNumbers.hasInternationalPrefix(" +1 555"));
+        assertTrue(PhoneNumbers.hasInternationalPrefix("0084 912"));
+        assertTrue(PhoneNumbers.hasInternationalPrefix("84912345678"));
+        assertFalse(PhoneNumbers.hasInternationalPrefix("84912"));
+        assertFalse(PhoneNumbers.hasInternationalPrefix("0912-345"));
+        assertFalse(PhoneNumbers.hasInternationalPrefix(null));
+    }
+
+    @Test
+    public void testLooksLikePhoneNumber() {
+        assertTrue(PhoneNumbers.looksLikePhoneNumber("+84 912-345"));
+        assertTrue(PhoneNumbers.looksLikePhoneNumber("987"));
+        assertFalse(PhoneNumbers.looksLikePhoneNumber("cust001"));
+        assertFalse(PhoneNumbers.looksLikePhoneNumber("- -"));
+    }
+}
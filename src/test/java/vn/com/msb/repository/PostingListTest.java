@@ -0,0 +1,81 @@
+package vn.com.msb.repository;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class PostingListTest {
+
+    @Test
+    public void testAddRemoveKeepsIdsSortedAndUnique() {
+        PostingList ids = new PostingList();
+        ids.add(70_000);
+        ids.add(3);
+        ids.add(1);
+        ids.add(3);
+
+        assertArrayEquals(new long[] {1, 3, 70_000}, ids.toArray());
+
+        ids.remove(3);
+        ids.remove(42);
+
+        assertEquals(2, ids.size());
+        assertArrayEquals(new long[] {1, 70_000}, ids.toArray());
+    }
+
+    @Test
+    public void testAddAllMergesAscendingAndUnorderedIds() {
+        PostingList ids = new PostingList();
+        ids.add(5);
+        ids.addAll(new long[] {6, 7, 70_000, 70_001, 99}, 4);
+        ids.addAll(new long[] {2, 7, 65_535}, 3);
+
+        assertEquals(7, ids.size());
+        assertArrayEquals(new long[] {2, 5, 6, 7, 65_535, 70_000, 70_001}, ids.toArray());
+    }
+
+    @Test
+    public void testDenseChunkSwitchesToBitmapAndBack() {
+        PostingList ids = new PostingList();
+        for (long id = 0; id < 10_000; id++) {
+            ids.add(id);
+        }
+        assertEquals(10_000, ids.size());
+        assertEquals(9_999, ids.toArray()[9_999]);
+
+        for (long id = 0; id < 9_000; id++) {
+            ids.remove(id);
+        }
+        ids.add(5);
+
+        long[] remaining = ids.toArray();
+        assertEquals(1_001, remaining.length);
+        assertEquals(5, remaining[0]);
+        assertEquals(9_000, remaining[1]);
+    }
+
+    @Test
+    public void testMatchesSortedSetUnderRandomOperations() {
+        Random random = new Random(7);
+        PostingList ids = new PostingList();
+        TreeSet<Long> expected = new TreeSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // Skewed towards a few chunks so both container kinds and conversions get exercised
+            long id = random.nextInt(4) * 65_536L + random.nextInt(i % 2 == 0 ? 6_000 : 65_536);
+            if (random.nextInt(3) == 0) {
+                ids.remove(id);
+                expected.remove(id);
+            } else {
+                ids.add(id);
+                expected.add(id);
+            }
+        }
+
+        assertEquals(expected.size(), ids.size());
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), ids.toArray());
+    }
+}
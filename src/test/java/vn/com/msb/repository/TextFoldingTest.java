@@ -0,0 +1,50 @@
+package vn.com.msb.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TextFoldingTest {
+
+    @Test
+    public void testFoldsVietnameseDiacriticsAndCase() {
+        assertEquals("nguyen van duc", TextFolding.fold("Nguyễn Văn Đức"));
+        assertEquals("tran thi hong nhung", TextFolding.fold("TRẦN THỊ HỒNG NHUNG"));
+        assertEquals("le hoang uyen phuong", TextFolding.fold("Lê Hoàng Uyên Phương"));
+        assertEquals("da nang", TextFolding.fold("Đà Nẵng"));
+    }
+
+    @Test
+    public void testFoldsOtherLatinLetters() {
+        assertEquals("francois muller", TextFolding.fold("François Müller"));
+        assertEquals("jose@example.com", TextFolding.fold("José@Example.com"));
+    }
+
+    @Test
+    public void testReturnsFoldedTextAsIs() {
+        String folded = "nguyen van an 0901234567";
+
+        assertSame(folded, TextFolding.fold(folded));
+        assertNull(TextFolding.fold(null));
+    }
+
+    @Test
+    public void testDropsFreeStandingCombiningMarks() {
+        String decomposed = "Nguye\u0302\u0303n";
+
+        assertEquals("nguyen", TextFolding.fold(decomposed));
+        assertTrue(TextFolding.containsFolded(decomposed, "yen"));
+    }
+
+    @Test
+    public void testContainsFolded() {
+        assertTrue(TextFolding.containsFolded("Nguyễn Văn Đức", "van duc"));
+        assertTrue(TextFolding.containsFolded("Nguyễn Văn Đức", ""));
+        assertFalse(TextFolding.containsFolded("Nguyễn Văn Đức", "van dung"));
+        assertFalse(TextFolding.containsFolded("Đức", "duc anh"));
+        assertFalse(TextFolding.containsFolded(null, "duc"));
+    }
+}
@@ -0,0 +1,139 @@
+package vn.com.msb.repository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import vn.com.msb.model.Customer;
+import vn.com.msb.service.CustomerService;
+import vn.com.msb.service.CustomerServiceImpl;
+
+/**
+ * The stores are meant to be called from virtual threads (spring.threads.virtual.enabled), so a
+ * virtual thread must never park while holding a monitor: that pins its carrier thread. JFR
+ * reports every such park as a jdk.VirtualThreadPinned event.
+ */
+public class VirtualThreadPinningTest {
+
+    private static final int TASKS = 2_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testHeapStoreWithWriteAheadLogDoesNotPin() throws Exception {
+        CustomerRepositoryImpl customerRepository = new CustomerRepositoryImpl(
+                new CustomerWriteAheadLog(directory, true, 500));
+        try {
+            assertEquals(List.of(), pinnedFrames(() -> exercise(new CustomerServiceImpl(customerRepository))));
+        } finally {
+            customerRepository.close();
+        }
+    }
+
+    @Test
+    public void testColumnarStoreDoesNotPin() throws Exception {
+        ColumnarCustomerRepository customerRepository = new ColumnarCustomerRepository();
+        assertEquals(List.of(), pinnedFrames(() -> exercise(new CustomerServiceImpl(customerRepository))));
+    }
+
+    @Test
+    public void testParkingInsideMonitorIsDetected() throws Exception {
+        Object monitor = new Object();
+        List<String> frames = pinnedFrames(() -> runOnVirtualThreads(8, task -> {
+            synchronized (monitor) {
+                Thread.sleep(1);
+            }
+        }));
+        assertFalse(frames.isEmpty());
+    }
+
+    // Writers and readers on many more virtual threads than carriers, so that contended locks
+    // actually park
+    private static void exercise(CustomerService customerService) throws Exception {
+        runOnVirtualThreads(TASKS, task -> {
+            Customer created = customerService.createCustomer(newCustomer(task));
+            customerService.getCustomerById(created.getId());
+            customerService.searchCustomers("Virtual");
+            customerService.searchCustomers("Virtual", null, 20);
+            if (task % 4 == 0) {
+                customerService.deleteCustomer(created.getId());
+            } else if (task % 4 == 1) {
+                created.setEmail("updated" + task + "@example.com");
+                customerService.updateCustomer(created.getId(), created);
+            }
+        });
+    }
+
+    private static List<String> pinnedFrames(Workload workload) throws Exception {
+        List<String> frames = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> frames.add(topFrames(event)));
+            recording.startAsync();
+            workload.run();
+            // Delivers everything recorded so far before returning
+            recording.stop();
+        }
+        return frames;
+    }
+
+    private static String topFrames(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<no stack trace>";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(12)
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining(" <- "));
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    private interface Task {
+        void run(int task) throws Exception;
+    }
+
+    private static void runOnVirtualThreads(int tasks, Task body) throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new CopyOnWriteArrayList<>();
+            for (int t = 0; t < tasks; t++) {
+                int task = t;
+                futures.add(executor.submit(() -> {
+                    body.run(task);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static Customer newCustomer(int task) {
+        Customer customer = new Customer();
+        customer.setCustomerCode("VT" + task);
+        customer.setFirstName("Virtual");
+        customer.setLastName("Thread" + task);
+        customer.setEmail("virtual" + task + "@example.com");
+        customer.setPhoneNumber("0901" + String.format("%06d", task));
+        return customer;
+    }
+}
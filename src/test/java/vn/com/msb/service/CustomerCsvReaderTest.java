@@ -0,0 +1,134 @@
+package vn.com.msb.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class CustomerCsvReaderTest {
+
+    @Test
+    public void testReadsUnquotedRecords() throws IOException {
+        List<String[]> records = readAll("code,name\nC1,An\r\nC2,Binh");
+
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[] {"code", "name"}, records.get(0));
+        assertArrayEquals(new String[] {"C1", "An"}, records.get(1));
+        assertArrayEquals(new String[] {"C2", "Binh"}, records.get(2));
+    }
+
+    @Test
+    public void testKeepsEmptyFields() throws IOException {
+        List<String[]> records = readAll(",a,,\n\n");
+
+        assertArrayEquals(new String[] {"", "a", "", ""}, records.get(0));
+        assertArrayEquals(new String[] {""}, records.get(1));
+        assertEquals(2, records.size());
+    }
+
+    @Test
+    public void testReadsQuotedFields() throws IOException {
+        List<String[]> records = readAll("\"Nguyen, Van\",\"say \"\"hi\"\"\",\"\"\n\"two\nlines\",x\n");
+
+        assertArrayEquals(new String[] {"Nguyen, Van", "say \"hi\"", ""}, records.get(0));
+        assertArrayEquals(new String[] {"two\nlines", "x"}, records.get(1));
+    }
+
+    @Test
+    public void testKeepsTextAfterClosingQuote() throws IOException {
+        assertArrayEquals(new String[] {"ab c", "d"}, readAll("\"ab\" c,d").get(0));
+    }
+
+    @Test
+    public void testReportsLineOfEachRecord() throws IOException {
+        try (CustomerCsvReader reader = new CustomerCsvReader(new StringReader("a\n\"b\nc\"\nd\r\ne"))) {
+            List<Long> lines = new ArrayList<>();
+            while (reader.next() != null) {
+                lines.add(reader.line());
+            }
+            assertEquals(List.of(1L, 2L, 4L, 5L), lines);
+        }
+    }
+
+    @Test
+    public void testSkipsByteOrderMark() throws IOException {
+        assertArrayEquals(new String[] {"customerCode"}, readAll("\uFEFFcustomerCode\n").get(0));
+    }
+
+    @Test
+    public void testEmptyInputHasNoRecords() throws IOException {
+        try (CustomerCsvReader reader = new CustomerCsvReader(new StringReader(""))) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testRejectsUnterminatedQuote() {
+        IOException e = assertThrows(IOException.class, () -> readAll("a\n\"b,c\nd"));
+        assertTrue(e.getMessage().contains("line 2"));
+    }
+
+    // One character per read, so that every field crosses the end of the buffer
+    @Test
+    public void testFieldsSpanningReads() throws IOException {
+        String csv = "C1,\"Nguyen, Van\",An\nC2,\"a\"\"b\",\r\n";
+        List<String[]> records = readAll(new TrickleReader(csv));
+
+        assertArrayEquals(new String[] {"C1", "Nguyen, Van", "An"}, records.get(0));
+        assertArrayEquals(new String[] {"C2", "a\"b", ""}, records.get(1));
+        assertEquals(2, records.size());
+    }
+
+    @Test
+    public void testFieldsLongerThanBuffer() throws IOException {
+        String longField = "x".repeat(200_000);
+        List<String[]> records = readAll("a," + longField + "\n\"" + longField + "\",b\n");
+
+        assertArrayEquals(new String[] {"a", longField}, records.get(0));
+        assertArrayEquals(new String[] {longField, "b"}, records.get(1));
+    }
+
+    private static List<String[]> readAll(String csv) throws IOException {
+        return readAll(new StringReader(csv));
+    }
+
+    private static List<String[]> readAll(Reader in) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CustomerCsvReader reader = new CustomerCsvReader(in)) {
+            for (String[] record = reader.next(); record != null; record = reader.next()) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static final class TrickleReader extends Reader {
+        private final String text;
+        private int position;
+
+        TrickleReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            buffer[offset] = text.charAt(position++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package vn.com.msb.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vn.com.msb.exception.CustomerImportNotFoundException;
+import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerImport;
+import vn.com.msb.repository.ColumnarCustomerRepository;
+import vn.com.msb.repository.CustomerRepository;
+import vn.com.msb.repository.CustomerRepositoryImpl;
+
+public class CustomerImportServiceTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportServiceTest.class);
+
+    private static final String HEADER = "customerCode,firstName,lastName,fullName,dateOfBirth,gender,address,city,"
+            + "email,phoneNumber\n";
+
+    @TempDir
+    Path directory;
+
+    private CustomerRepository customerRepository = new CustomerRepositoryImpl();
+    private CustomerImportService importService;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (importService != null) {
+            importService.close();
+        }
+    }
+
+    @Test
+    public void testImportsRowsLikeCreateCustomer() throws Exception {
+        importService = newImportService(2);
+
+        CustomerImport customerImport = awaitImport(submit(HEADER
+                + "CUST001,Van,Nguyen,,1990-01-15,Male,\"12 Le Loi, Q1\",Ho Chi Minh,van@example.com,0901234567\n"
+                + "CUST002,Thi,Tran,Tran Thi,,Female,,Ha Noi,,\n"
+                + "CUST003,Minh,Le,,,,,,,\n"));
+
+        assertEquals(CustomerImport.State.COMPLETED, customerImport.getState());
+        assertEquals(3, customerImport.getRows());
+        assertEquals(3, customerImport.getCreated());
+        assertEquals(0, customerImport.getFailed());
+        assertEquals(customerImport.getFileBytes(), customerImport.getBytesRead());
+        assertNotNull(customerImport.getStartedAt());
+        assertNotNull(customerImport.getFinishedAt());
+
+        Customer van = customerRepository.findByCustomerCode("CUST001").orElseThrow();
+        assertEquals("Van Nguyen", van.getFullName());
+        assertEquals(LocalDate.of(1990, 1, 15), van.getDateOfBirth());
+        assertEquals("12 Le Loi, Q1", van.getAddress());
+        assertEquals("0901234567", van.getPhoneNumber());
+        Customer thi = customerRepository.findByCustomerCode("CUST002").orElseThrow();
+        assertEquals("Tran Thi", thi.getFullName());
+        assertNull(thi.getEmail());
+    }
+
+    @Test
+    public void testWritesRejectedRowsToErrorFile() throws Exception {
+        customerRepository.save(newCustomer("CUST001"));
+        importService = newImportService(2);
+
+        CustomerImport customerImport = awaitImport(submit("Customer Code,first_name,lastName,dateOfBirth\n"
+                + "CUST001,Van,Nguyen,\n"
+                + "CUST002,Thi,Tran,1990-02-30\n"
+                + "CUST003,Minh\n"
+                + "CUST004,\"Hoa, Mai\",Pham,\n"
+                + "CUST004,Hoa,Pham,\n"));
+
+        assertEquals(CustomerImport.State.COMPLETED, customerImport.getState());
+        assertEquals(5, customerImport.getRows());
+        assertEquals(1, customerImport.getCreated());
+        assertEquals(4, customerImport.getFailed());
+        assertEquals(List.of(
+                "line,error,Customer Code,first_name,lastName,dateOfBirth",
+                "3,\"Invalid dateOfBirth, expected yyyy-MM-dd: 1990-02-30\",CUST002,Thi,Tran,1990-02-30",
+                "4,Expected 4 fields but found 2,CUST003,Minh",
+                "2,Customer code already exists: CUST001,CUST001,Van,Nguyen,",
+                "6,Customer code already exists: CUST004,CUST004,Hoa,Pham,"),
+                Files.readAllLines(importService.getErrorFile(customerImport.getId())));
+        assertEquals("Hoa, Mai Pham", customerRepository.findByCustomerCode("CUST004").orElseThrow().getFullName());
+    }
+
+    @Test
+    public void testRejectsUnknownColumnsOnSubmit() throws Exception {
+        importService = newImportService(2);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> submit("customerCode,nickname\nCUST001,Bo\n"));
+        assertEquals("Unknown column: nickname", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> submit("customerCode,customer_code\n"));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testFailsImportOnMalformedFile() throws Exception {
+        importService = newImportService(2);
+
+        CustomerImport customerImport = awaitImport(submit("customerCode,firstName\n"
+                + "CUST001,Van\nCUST002,Thi\nCUST003,\"Minh\n"));
+
+        assertEquals(CustomerImport.State.FAILED, customerImport.getState());
+        assertEquals("Unterminated quoted field starting on line 4", customerImport.getMessage());
+        // Rows of earlier batches stay imported
+        assertEquals(2, customerImport.getCreated());
+        assertTrue(customerRepository.existsByCustomerCode("CUST002"));
+    }
+
+    @Test
+    public void testImportsEmptyFile() throws Exception {
+        importService = newImportService(2);
+
+        CustomerImport customerImport = awaitImport(submit(""));
+
+        assertEquals(CustomerImport.State.COMPLETED, customerImport.getState());
+        assertEquals(0, customerImport.getRows());
+    }
+
+    @Test
+    public void testUnknownImport() throws Exception {
+        importService = newImportService(2);
+
+        assertThrows(CustomerImportNotFoundException.class, () -> importService.getImport("missing"));
+        assertThrows(CustomerImportNotFoundException.class, () -> importService.getErrorFile("missing"));
+    }
+
+    @Test
+    public void testDeletesUploadedFileAfterImport() throws Exception {
+        importService = newImportService(2);
+
+        CustomerImport customerImport = awaitImport(submit(HEADER));
+
+        assertFalse(Files.exists(directory.resolve(customerImport.getId() + ".csv")));
+        assertTrue(Files.exists(importService.getErrorFile(customerImport.getId())));
+    }
+
+    @Test
+    public void testRejectsBatchSizeAboveServiceLimit() {
+        assertThrows(IllegalArgumentException.class, () -> newImportService(CustomerServiceImpl.MAX_BATCH_SIZE + 1));
+    }
+
+    @Test
+    public void testParseDate() {
+        assertEquals(LocalDate.of(2000, 2, 29), CustomerImportService.parseDate("2000-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> CustomerImportService.parseDate("2001-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> CustomerImportService.parseDate("15/01/1990"));
+        assertThrows(IllegalArgumentException.class, () -> CustomerImportService.parseDate("1990-1-15"));
+        assertThrows(IllegalArgumentException.class, () -> CustomerImportService.parseDate("+990-01-15"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.import.rows", matches = "\\d+")
+    public void benchmarkImport() throws Exception {
+        int rows = Integer.getInteger("benchmark.import.rows");
+        Path csv = directory.resolve("benchmark.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            for (int i = 0; i < rows; i++) {
+                writer.write("BULK" + i + ",Van" + (i % 1000) + ",Nguyen,," + (1950 + i % 50) + "-0" + (1 + i % 9)
+                        + "-1" + (i % 10) + ",Male,\"" + i + " Le Loi, Q1\",Ho Chi Minh,bulk" + i
+                        + "@example.com,09" + String.format("%08d", i) + "\n");
+            }
+        }
+        for (String store : new String[] {"heap", "columnar"}) {
+            for (int run = 0; run < 2; run++) {
+                customerRepository = store.equals("heap") ? new CustomerRepositoryImpl()
+                        : new ColumnarCustomerRepository();
+                importService = newImportService(5_000);
+                long start = System.nanoTime();
+                CustomerImport customerImport = awaitImport(
+                        importService.submit(target -> Files.copy(csv, target)));
+                long elapsed = System.nanoTime() - start;
+                assertEquals(CustomerImport.State.COMPLETED, customerImport.getState());
+                assertEquals(rows, customerImport.getCreated());
+                assertEquals(0, customerImport.getFailed());
+                assertEquals(rows, customerRepository.countCustomers().getTotal());
+                log.info("{} store, run {}: {} rows in {} s, {} rows/s", store, run + 1, rows,
+                        String.format("%.2f", elapsed / 1e9), String.format("%.0f", rows / (elapsed / 1e9)));
+                importService.close();
+                importService = null;
+            }
+        }
+    }
+
+    private CustomerImportService newImportService(int batchSize) throws IOException {
+        return new CustomerImportService(new CustomerServiceImpl(customerRepository), directory.toString(),
+                batchSize);
+    }
+
+    private CustomerImport submit(String csv) throws IOException {
+        return importService.submit(target -> Files.writeString(target, csv));
+    }
+
+    private CustomerImport awaitImport(CustomerImport submitted) throws InterruptedException {
+        CustomerImport customerImport = importService.getImport(submitted.getId());
+        while (customerImport.getFinishedAt() == null
+                || customerImport.getState() == CustomerImport.State.RUNNING) {
+            Thread.sleep(5);
+            customerImport = importService.getImport(submitted.getId());
+        }
+        return customerImport;
+    }
+
+    private static Customer newCustomer(String code) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(code);
+        customer.setFirstName("Existing");
+        customer.setLastName("Customer");
+        return customer;
+    }
+}
@@ -0,0 +1,76 @@
+package vn.com.msb.service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import vn.com.msb.model.Customer;
+
+public class CustomerMergePatchTest {
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = new Customer(1L, "CUST001", "John", "Doe", "John Doe", LocalDate.of(1990, 1, 15), "Male",
+                "123 Main St", "New York", "john.doe@example.com", "555-123-4567");
+        customer.setVersion(3L);
+    }
+
+    @Test
+    public void testSetsAndRemovesOnlyTheGivenFields() {
+        Map<String, Object> patch = new HashMap<>();
+        patch.put("phoneNumber", "555-999-0000");
+        patch.put("email", null);
+        patch.put("dateOfBirth", "1991-02-03");
+
+        Customer patched = new CustomerMergePatch(patch).applyTo(customer);
+
+        assertNotSame(customer, patched);
+        assertEquals("555-999-0000", patched.getPhoneNumber());
+        assertNull(patched.getEmail());
+        assertEquals(LocalDate.of(1991, 2, 3), patched.getDateOfBirth());
+        assertEquals("John Doe", patched.getFullName());
+        assertEquals("New York", patched.getCity());
+        assertEquals(3L, patched.getVersion());
+        // The stored customer is left as it was
+        assertEquals("555-123-4567", customer.getPhoneNumber());
+        assertEquals("john.doe@example.com", customer.getEmail());
+    }
+
+    @Test
+    public void testReturnsTheCustomerWhenNothingChanges() {
+        Map<String, Object> patch = Map.of("city", "New York", "id", 7, "version", 9);
+
+        assertSame(customer, new CustomerMergePatch(patch).applyTo(customer));
+        assertSame(customer, new CustomerMergePatch(Map.of()).applyTo(customer));
+    }
+
+    @Test
+    public void testClearsTheFullNameOnlyWhenANameChanges() {
+        assertNull(new CustomerMergePatch(Map.of("lastName", "Smith")).applyTo(customer).getFullName());
+        assertEquals("Johnny", new CustomerMergePatch(Map.of("firstName", "Jim", "fullName", "Johnny"))
+                .applyTo(customer).getFullName());
+        assertEquals("John Doe", new CustomerMergePatch(Map.of("firstName", "John", "city", "Boston"))
+                .applyTo(customer).getFullName());
+    }
+
+    @Test
+    public void testRejectsInvalidPatches() {
+        Map<String, Object> removeCode = new HashMap<>();
+        removeCode.put("customerCode", null);
+
+        assertThrows(IllegalArgumentException.class, () -> new CustomerMergePatch(Map.of("nickname", "JD")));
+        assertThrows(IllegalArgumentException.class, () -> new CustomerMergePatch(Map.of("city", 42)));
+        assertThrows(IllegalArgumentException.class, () -> new CustomerMergePatch(Map.of("dateOfBirth", "15/01/1990")));
+        assertThrows(IllegalArgumentException.class, () -> new CustomerMergePatch(removeCode));
+    }
+}
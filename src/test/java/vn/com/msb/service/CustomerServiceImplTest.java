@@ -1,30 +1,46 @@
 package vn.com.msb.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import vn.com.msb.exception.CustomerNotFoundException;
+import vn.com.msb.exception.CustomerVersionConflictException;
 import vn.com.msb.exception.DuplicateCustomerCodeException;
 import vn.com.msb.model.Customer;
+import vn.com.msb.model.CustomerBatchResult;
+import vn.com.msb.model.CustomerCounts;
+import vn.com.msb.model.CustomerFilter;
+import vn.com.msb.model.CustomerGroupCount;
+import vn.com.msb.model.CustomerPage;
 import vn.com.msb.repository.CustomerRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -66,6 +82,119 @@ public class CustomerServiceImplTest {
         assertEquals("CUST001", result.get(0).getCustomerCode());
     }
 
+    @Test
+    public void testGetCustomersPaged() {
+        CustomerPage page = new CustomerPage(Arrays.asList(customer), 1L);
+        when(customerRepository.findAll(null, 1)).thenReturn(page);
+
+        CustomerPage result = customerService.getCustomers(null, 1);
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(1L, result.getNextCursor());
+    }
+
+    @Test
+    public void testGetCustomersPagedRejectsInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> customerService.getCustomers(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> customerService.searchCustomers("John", null, 1001));
+    }
+
+    @Test
+    public void testSearchCustomersRanked() {
+        when(customerRepository.searchRanked("John", 5)).thenReturn(Arrays.asList(customer));
+
+        List<Customer> result = customerService.searchCustomersRanked("John", 5);
+
+        assertEquals("John Doe", result.get(0).getFullName());
+        assertThrows(IllegalArgumentException.class, () -> customerService.searchCustomersRanked("John", 0));
+    }
+
+    @Test
+    public void testSearchCustomersFuzzy() {
+        when(customerRepository.searchFuzzy("Jonh", 2, 5)).thenReturn(Arrays.asList(customer));
+
+        List<Customer> result = customerService.searchCustomersFuzzy("Jonh", 2, 5);
+
+        assertEquals("John Doe", result.get(0).getFullName());
+        assertThrows(IllegalArgumentException.class, () -> customerService.searchCustomersFuzzy("Jonh", 3, 5));
+        assertThrows(IllegalArgumentException.class, () -> customerService.searchCustomersFuzzy("Jonh", 0, 5));
+    }
+
+    @Test
+    public void testFilterCustomers() {
+        CustomerFilter filter = new CustomerFilter("Ha Noi", "Female", LocalDate.of(1990, 1, 1), null);
+        when(customerRepository.filter(filter, null, 10)).thenReturn(new CustomerPage(Arrays.asList(customer), null));
+
+        CustomerPage result = customerService.filterCustomers(filter, null, 10);
+
+        assertEquals("John Doe", result.getItems().get(0).getFullName());
+        assertThrows(IllegalArgumentException.class, () -> customerService.filterCustomers(filter, null, 0));
+        CustomerFilter reversed = new CustomerFilter(null, null, LocalDate.of(2000, 1, 1), LocalDate.of(1990, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> customerService.filterCustomers(reversed, null, 10));
+    }
+
+    @Test
+    public void testGetCustomersBornBetween() {
+        LocalDate from = LocalDate.of(1990, 1, 1);
+        LocalDate to = LocalDate.of(1990, 12, 31);
+        when(customerRepository.findByDateOfBirthBetween(from, to, 10)).thenReturn(Arrays.asList(customer));
+
+        assertEquals(1, customerService.getCustomersBornBetween(from, to, 10).size());
+        assertThrows(IllegalArgumentException.class, () -> customerService.getCustomersBornBetween(to, from, 10));
+        assertThrows(IllegalArgumentException.class, () -> customerService.getCustomersBornBetween(from, to, 1001));
+    }
+
+    @Test
+    public void testGetCustomersByAge() {
+        // Aged 30 to 39 on 2024-06-15: born from 1984-06-16 up to 1994-06-15
+        when(customerRepository.findByDateOfBirthBetween(LocalDate.of(1984, 6, 16), LocalDate.of(1994, 6, 15), 10))
+                .thenReturn(Arrays.asList(customer));
+
+        assertEquals(1, customerService.getCustomersByAge(30, 39, LocalDate.of(2024, 6, 15), 10).size());
+        assertThrows(IllegalArgumentException.class,
+                () -> customerService.getCustomersByAge(40, 39, LocalDate.of(2024, 6, 15), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> customerService.getCustomersByAge(-1, 39, LocalDate.of(2024, 6, 15), 10));
+    }
+
+    @Test
+    public void testGetUpcomingBirthdays() {
+        LocalDate from = LocalDate.of(2024, 12, 29);
+        when(customerRepository.findUpcomingBirthdays(from, 7, 10)).thenReturn(Arrays.asList(customer));
+
+        assertEquals(1, customerService.getUpcomingBirthdays(from, 7, 10).size());
+        assertThrows(IllegalArgumentException.class, () -> customerService.getUpcomingBirthdays(from, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> customerService.getUpcomingBirthdays(from, 367, 10));
+    }
+
+    @Test
+    public void testGetCustomerCounts() {
+        CustomerCounts counts = new CustomerCounts(1, List.of(new CustomerGroupCount("Boston", 1)), List.of());
+        when(customerRepository.countCustomers()).thenReturn(counts);
+
+        assertEquals(counts, customerService.getCustomerCounts());
+    }
+
+    @Test
+    public void testSearchCustomersPaged() {
+        CustomerPage page = new CustomerPage(Arrays.asList(customer), null);
+        when(customerRepository.search("John", 5L, 10)).thenReturn(page);
+
+        CustomerPage result = customerService.searchCustomers("John", 5L, 10);
+
+        assertEquals("John Doe", result.getItems().get(0).getFullName());
+    }
+
+    @Test
+    public void testStreamAllCustomers() {
+        when(customerRepository.streamAll()).thenReturn(Stream.of(customer));
+
+        List<Customer> result = customerService.streamAllCustomers().collect(Collectors.toList());
+
+        assertEquals(1, result.size());
+        assertEquals("CUST001", result.get(0).getCustomerCode());
+    }
+
     @Test
     public void testGetCustomerById() {
         when(customerRepository.findById(anyLong())).thenReturn(Optional.of(customer));
@@ -117,10 +246,29 @@ public class CustomerServiceImplTest {
         assertEquals("John Doe", result.get(0).getFullName());
     }
 
+    @Test
+    public void testSearchCustomersByPhoneNumberSuffix() {
+        when(customerRepository.findByPhoneNumberEndingWith("4567")).thenReturn(Arrays.asList(customer));
+
+        List<Customer> result = customerService.searchCustomersByPhoneNumber("4567", false);
+
+        assertEquals(1, result.size());
+        verify(customerRepository, times(1)).findByPhoneNumberEndingWith("4567");
+    }
+
+    @Test
+    public void testSearchCustomersByPhoneNumberContaining() {
+        when(customerRepository.findByPhoneNumberContaining("123")).thenReturn(Arrays.asList(customer));
+
+        List<Customer> result = customerService.searchCustomersByPhoneNumber("123", true);
+
+        assertEquals(1, result.size());
+        verify(customerRepository, times(1)).findByPhoneNumberContaining("123");
+    }
+
     @Test
     public void testCreateCustomer() {
-        when(customerRepository.existsByCustomerCode(anyString())).thenReturn(false);
-        when(customerRepository.save(any(Customer.class))).thenReturn(customer);
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(true))).thenReturn(Set.of());
 
         Customer newCustomer = new Customer();
         newCustomer.setCustomerCode("CUST001");
@@ -131,12 +279,12 @@ public class CustomerServiceImplTest {
 
         assertNotNull(result);
         assertEquals("John Doe", result.getFullName());
-        verify(customerRepository, times(1)).save(any(Customer.class));
+        verify(customerRepository, times(1)).saveAllIfCodesFree(List.of(newCustomer), true);
     }
 
     @Test
     public void testCreateCustomerWithDuplicateCode() {
-        when(customerRepository.existsByCustomerCode(anyString())).thenReturn(true);
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(true))).thenReturn(Set.of("CUST001"));
 
         Customer newCustomer = new Customer();
         newCustomer.setCustomerCode("CUST001");
@@ -148,6 +296,98 @@ public class CustomerServiceImplTest {
         });
     }
 
+    @Test
+    public void testCreateCustomers() {
+        when(customerRepository.findExistingCustomerCodes(List.of("CUST002", "CUST003"))).thenReturn(Set.of());
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(true))).thenReturn(Set.of());
+
+        List<Customer> result = customerService.createCustomers(
+                List.of(newCustomer("CUST002", "Jane", "Smith"), newCustomer("CUST003", "Bob", "Johnson")));
+
+        assertEquals(2, result.size());
+        assertEquals("Jane Smith", result.get(0).getFullName());
+        assertEquals("Bob Johnson", result.get(1).getFullName());
+        verify(customerRepository, times(1)).saveAllIfCodesFree(anyList(), eq(true));
+        verify(customerRepository, never()).existsByCustomerCode(anyString());
+    }
+
+    @Test
+    public void testCreateCustomersFailsWhenACodeIsTakenWhileSaving() {
+        when(customerRepository.findExistingCustomerCodes(anyList())).thenReturn(Set.of());
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(true))).thenReturn(Set.of("CUST003"));
+
+        DuplicateCustomerCodeException e = assertThrows(DuplicateCustomerCodeException.class, () -> {
+            customerService.createCustomers(
+                    List.of(newCustomer("CUST002", "Jane", "Smith"), newCustomer("CUST003", "Bob", "Johnson")));
+        });
+
+        assertEquals("Customer codes already exist: CUST003", e.getMessage());
+    }
+
+    @Test
+    public void testCreateCustomersSavesNothingWhenAnyCodeIsTaken() {
+        when(customerRepository.findExistingCustomerCodes(anyList())).thenReturn(Set.of("CUST001"));
+
+        List<Customer> batch = List.of(newCustomer("CUST002", "Jane", "Smith"), newCustomer("CUST001", "John", "Doe"),
+                newCustomer("CUST002", "Bob", "Johnson"));
+        DuplicateCustomerCodeException e = assertThrows(DuplicateCustomerCodeException.class, () -> {
+            customerService.createCustomers(batch);
+        });
+
+        assertEquals("Customer codes already exist or repeat within the batch: CUST001, CUST002", e.getMessage());
+        verify(customerRepository, never()).saveAllIfCodesFree(anyList(), anyBoolean());
+    }
+
+    @Test
+    public void testCreateCustomersRejectsOversizedBatch() {
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 0; i <= CustomerServiceImpl.MAX_BATCH_SIZE; i++) {
+            batch.add(newCustomer("CUST" + i, "John", "Doe"));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            customerService.createCustomers(batch);
+        });
+    }
+
+    @Test
+    public void testCreateCustomersIndividuallyReportsEachCustomer() {
+        when(customerRepository.findExistingCustomerCodes(anyList())).thenReturn(Set.of("CUST001"));
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(false))).thenReturn(Set.of());
+
+        CustomerBatchResult result = customerService.createCustomersIndividually(List.of(
+                newCustomer("CUST002", "Jane", "Smith"), newCustomer("CUST001", "John", "Doe"),
+                newCustomer("CUST002", "Bob", "Johnson"), newCustomer("CUST003", "Ann", "Lee")));
+
+        assertEquals(2, result.getCreated());
+        assertEquals(2, result.getFailed());
+        assertEquals(4, result.getItems().size());
+        assertEquals("Jane Smith", result.getItems().get(0).getCustomer().getFullName());
+        assertNull(result.getItems().get(0).getError());
+        assertNull(result.getItems().get(1).getCustomer());
+        assertEquals("Customer code already exists: CUST001", result.getItems().get(1).getError());
+        assertEquals("Customer code repeats within the batch: CUST002", result.getItems().get(2).getError());
+        assertEquals(3, result.getItems().get(3).getIndex());
+        assertNull(result.getItems().get(3).getError());
+        verify(customerRepository, times(1)).saveAllIfCodesFree(List.of(result.getItems().get(0).getCustomer(),
+                result.getItems().get(3).getCustomer()), false);
+    }
+
+    @Test
+    public void testCreateCustomersIndividuallyReportsCodesTakenWhileSaving() {
+        when(customerRepository.findExistingCustomerCodes(anyList())).thenReturn(Set.of());
+        when(customerRepository.saveAllIfCodesFree(anyList(), eq(false))).thenReturn(Set.of("CUST003"));
+
+        CustomerBatchResult result = customerService.createCustomersIndividually(List.of(
+                newCustomer("CUST002", "Jane", "Smith"), newCustomer("CUST003", "Bob", "Johnson")));
+
+        assertEquals(1, result.getCreated());
+        assertEquals(1, result.getFailed());
+        assertNull(result.getItems().get(0).getError());
+        assertNull(result.getItems().get(1).getCustomer());
+        assertEquals("Customer code already exists: CUST003", result.getItems().get(1).getError());
+    }
+
     @Test
     public void testUpdateCustomer() {
         Customer existingCustomer = new Customer();
@@ -187,6 +427,128 @@ public class CustomerServiceImplTest {
         });
     }
 
+    @Test
+    public void testUpdateCustomerWithExpectedVersion() {
+        customer.setVersion(3L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong()))
+                .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        Customer updatedCustomer = new Customer();
+        updatedCustomer.setCustomerCode("CUST001");
+        updatedCustomer.setFirstName("Johnny");
+        updatedCustomer.setLastName("Doe");
+
+        Customer result = customerService.updateCustomer(1L, updatedCustomer, 3L);
+
+        assertEquals("Johnny Doe", result.getFullName());
+        verify(customerRepository, times(1)).saveIfVersion(updatedCustomer, 3L);
+        verify(customerRepository, never()).save(any(Customer.class));
+    }
+
+    @Test
+    public void testUpdateCustomerWithStaleVersion() {
+        customer.setVersion(4L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.updateCustomer(1L, new Customer(), 3L));
+        verify(customerRepository, never()).saveIfVersion(any(Customer.class), anyLong());
+    }
+
+    @Test
+    public void testUpdateCustomerLosingTheRace() {
+        customer.setVersion(3L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong())).thenReturn(Optional.empty());
+
+        Customer updatedCustomer = new Customer();
+        updatedCustomer.setCustomerCode("CUST001");
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.updateCustomer(1L, updatedCustomer, 3L));
+
+        // Deleted meanwhile rather than updated
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer), Optional.empty());
+        assertThrows(CustomerNotFoundException.class,
+                () -> customerService.updateCustomer(1L, updatedCustomer, 3L));
+    }
+
+    @Test
+    public void testPatchCustomerSavesOnlyTheChangedCustomer() {
+        customer.setVersion(3L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong()))
+                .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        Customer result = customerService.patchCustomer(1L, Map.of("lastName", "Smith"), null);
+
+        assertEquals("John Smith", result.getFullName());
+        assertEquals("john.doe@example.com", result.getEmail());
+        verify(customerRepository, times(1)).saveIfVersion(result, 3L);
+        verify(customerRepository, never()).existsByCustomerCodeAndIdNot(anyString(), anyLong());
+
+        // A patch that changes nothing writes nothing
+        assertEquals(customer, customerService.patchCustomer(1L, Map.of("city", "New York"), 3L));
+        verify(customerRepository, times(1)).saveIfVersion(any(Customer.class), anyLong());
+    }
+
+    @Test
+    public void testPatchCustomerRetriesOnTopOfAConcurrentUpdate() {
+        customer.setVersion(3L);
+        Customer concurrentlyUpdated = new Customer(1L, "CUST001", "John", "Doe", "John Doe", null, null,
+                null, "Boston", "john.doe@example.com", null);
+        concurrentlyUpdated.setVersion(4L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer), Optional.of(concurrentlyUpdated));
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong()))
+                .thenReturn(Optional.empty())
+                .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        Customer result = customerService.patchCustomer(1L, Map.of("phoneNumber", "555-999-0000"), null);
+
+        assertEquals("Boston", result.getCity());
+        assertEquals("555-999-0000", result.getPhoneNumber());
+        verify(customerRepository, times(1)).saveIfVersion(result, 4L);
+    }
+
+    @Test
+    public void testPatchCustomerGivesUpUnderConstantContention() {
+        customer.setVersion(3L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong())).thenReturn(Optional.empty());
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.patchCustomer(1L, Map.of("city", "Boston"), null));
+        verify(customerRepository, times(CustomerServiceImpl.MAX_PATCH_ATTEMPTS))
+                .saveIfVersion(any(Customer.class), anyLong());
+    }
+
+    @Test
+    public void testPatchCustomerWithExpectedVersion() {
+        customer.setVersion(4L);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.patchCustomer(1L, Map.of("city", "Boston"), 3L));
+
+        when(customerRepository.saveIfVersion(any(Customer.class), anyLong())).thenReturn(Optional.empty());
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.patchCustomer(1L, Map.of("city", "Boston"), 4L));
+        verify(customerRepository, times(1)).saveIfVersion(any(Customer.class), anyLong());
+    }
+
+    @Test
+    public void testPatchCustomerWithDuplicateCode() {
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        when(customerRepository.existsByCustomerCodeAndIdNot("CUST002", 1L)).thenReturn(true);
+
+        assertThrows(DuplicateCustomerCodeException.class,
+                () -> customerService.patchCustomer(1L, Map.of("customerCode", "CUST002"), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> customerService.patchCustomer(1L, Map.of("nickname", "JD"), null));
+        verify(customerRepository, never()).saveIfVersion(any(Customer.class), anyLong());
+    }
+
     @Test
     public void testDeleteCustomer() {
         when(customerRepository.findById(anyLong())).thenReturn(Optional.of(customer));
@@ -205,4 +567,12 @@ public class CustomerServiceImplTest {
             customerService.deleteCustomer(1L);
         });
     }
+
+    private static Customer newCustomer(String code, String firstName, String lastName) {
+        Customer customer = new Customer();
+        customer.setCustomerCode(code);
+        customer.setFirstName(firstName);
+        customer.setLastName(lastName);
+        return customer;
+    }
 }